@@ -14,10 +14,11 @@ import azkaban.utils.Props;
 
 public abstract class AbstractJdbcLoader {
 	/**
-	 * Used for when we store text data. Plain uses UTF8 encoding.
+	 * Used for when we store text data. Plain uses UTF8 encoding. Binary is only used for
+	 * object data, see BinaryObjectUtils.
 	 */
 	public static enum EncodingType {
-		PLAIN(1), GZIP(2);
+		PLAIN(1), GZIP(2), BINARY(3);
 
 		private int numVal;
 
@@ -35,6 +36,8 @@ public abstract class AbstractJdbcLoader {
 				return PLAIN;
 			case 2:
 				return GZIP;
+			case 3:
+				return BINARY;
 			default:
 				return PLAIN;
 			}
@@ -18,8 +18,10 @@ package azkaban.execapp;
 
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.JdbcExecutorLoader;
+import azkaban.executor.WriteBehindExecutorLoader;
 import azkaban.jmx.JmxFlowRunnerManager;
 import azkaban.jmx.JmxJettyServer;
+import azkaban.jmx.JmxWriteBehindExecutorLoader;
 import azkaban.project.JdbcProjectLoader;
 import azkaban.project.ProjectLoader;
 import azkaban.utils.Props;
@@ -129,7 +131,11 @@ public class AzkabanExecutorServer {
 	}
 
 	private ExecutorLoader createExecLoader(Props props) {
-		return new JdbcExecutorLoader(props);
+		JdbcExecutorLoader loader = new JdbcExecutorLoader(props);
+		if (props.getBoolean("executor.loader.write.behind", true)) {
+			return new WriteBehindExecutorLoader(props, loader);
+		}
+		return loader;
 	}
 	
 	private ProjectLoader createProjectLoader(Props props) {
@@ -139,6 +145,10 @@ public class AzkabanExecutorServer {
 	public void stopServer() throws Exception {
 		server.stop();
 		server.destroy();
+		
+		if (executionLoader instanceof WriteBehindExecutorLoader) {
+			((WriteBehindExecutorLoader)executionLoader).shutdown();
+		}
 	}
 	
 	public ProjectLoader getProjectLoader() {
@@ -274,6 +284,9 @@ public class AzkabanExecutorServer {
 
 		registerMbean("executorJetty", new JmxJettyServer(server));
 		registerMbean("flowRunnerManager", new JmxFlowRunnerManager(runnerManager));
+		if (executionLoader instanceof WriteBehindExecutorLoader) {
+			registerMbean("executorLoader", new JmxWriteBehindExecutorLoader((WriteBehindExecutorLoader)executionLoader));
+		}
 	}
 	
 	public void close() {
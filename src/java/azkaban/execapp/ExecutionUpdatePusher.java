@@ -0,0 +1,224 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.log4j.Logger;
+
+import azkaban.executor.ConnectorParams;
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutorHttpClient;
+import azkaban.executor.Status;
+import azkaban.utils.JSONUtils;
+import azkaban.utils.Props;
+
+/**
+ * Pushes execution status deltas to the web server as the flow runners update
+ * their flows. Updates are batched over a short window and sent in a single
+ * post. Every running flow is also sent on a heartbeat interval, so the web server
+ * knows it can skip polling this executor.
+ */
+public class ExecutionUpdatePusher extends Thread {
+	private static final Logger logger = Logger.getLogger(ExecutionUpdatePusher.class);
+	private static final long DEFAULT_PUSH_INTERVAL_MS = 100;
+	private static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 5000;
+
+	private final URI pushUri;
+	private final String executorHost;
+	private final int executorPort;
+	private final String pushSecret;
+	private final long pushIntervalMs;
+	private final long heartbeatIntervalMs;
+	private final ExecutorHttpClient httpClient;
+
+	// Flows being tracked, and the last update time the web server has received for them.
+	private final Map<Integer, ExecutableFlow> trackedFlows = new HashMap<Integer, ExecutableFlow>();
+	private final Map<Integer, Long> lastPushedTimes = new HashMap<Integer, Long>();
+	private Set<Integer> dirtyFlows = new HashSet<Integer>();
+
+	private long lastHeartbeatTime = -1;
+	private long lastPushTime = -1;
+	private long numPushes = 0;
+	private long numPushErrors = 0;
+	private boolean shutdown = false;
+
+	public ExecutionUpdatePusher(Props props, String webServerUrl, String executorHost, int executorPort, String pushSecret) throws URISyntaxException {
+		this.setName("FlowRunnerManager-Update-Pusher-Thread");
+		this.setDaemon(true);
+		this.pushUri = new URI(webServerUrl.replaceAll("/+$", "") + "/executorupdate");
+		this.executorHost = executorHost;
+		this.executorPort = executorPort;
+		this.pushSecret = pushSecret;
+		this.pushIntervalMs = props.getLong("executor.push.interval.ms", DEFAULT_PUSH_INTERVAL_MS);
+		this.heartbeatIntervalMs = props.getLong("executor.push.heartbeat.ms", DEFAULT_HEARTBEAT_INTERVAL_MS);
+		this.httpClient = new ExecutorHttpClient(props);
+	}
+
+	/**
+	 * Called whenever a flow runner has written an update for its flow.
+	 */
+	public synchronized void flowUpdated(ExecutableFlow flow) {
+		Integer execId = flow.getExecutionId();
+		if (!trackedFlows.containsKey(execId)) {
+			trackedFlows.put(execId, flow);
+			lastPushedTimes.put(execId, -1L);
+		}
+
+		if (dirtyFlows.add(execId) && dirtyFlows.size() == 1) {
+			this.notify();
+		}
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		this.interrupt();
+	}
+
+	public void run() {
+		while (!shutdown) {
+			try {
+				Set<Integer> toPush = null;
+				synchronized (this) {
+					long waitTime = lastHeartbeatTime + heartbeatIntervalMs - System.currentTimeMillis();
+					if (dirtyFlows.isEmpty() && waitTime > 0) {
+						this.wait(waitTime);
+					}
+
+					if (!dirtyFlows.isEmpty()) {
+						// Give the other runners a moment to batch their updates with this one.
+						this.wait(pushIntervalMs);
+					}
+
+					if (System.currentTimeMillis() - lastHeartbeatTime >= heartbeatIntervalMs) {
+						toPush = new HashSet<Integer>(trackedFlows.keySet());
+						lastHeartbeatTime = System.currentTimeMillis();
+					}
+					else {
+						toPush = dirtyFlows;
+					}
+					dirtyFlows = new HashSet<Integer>();
+				}
+
+				if (!toPush.isEmpty()) {
+					pushUpdates(toPush);
+				}
+			} catch (InterruptedException e) {
+				logger.info("Interrupted. Probably to shut down.");
+			} catch (Exception e) {
+				logger.error("Error pushing execution updates.", e);
+			}
+		}
+
+		httpClient.shutdown();
+	}
+
+	private void pushUpdates(Set<Integer> execIds) throws InterruptedException {
+		List<Object> updates = new ArrayList<Object>();
+		Map<Integer, Long> sentTimes = new HashMap<Integer, Long>();
+		synchronized (this) {
+			for (Integer execId: execIds) {
+				ExecutableFlow flow = trackedFlows.get(execId);
+				if (flow == null) {
+					continue;
+				}
+
+				// The update time is captured before the delta is built. Anything that changes
+				// in between is re-sent next time, which the web server ignores.
+				long updateTime = flow.getUpdateTime();
+				updates.add(flow.toUpdateObject(lastPushedTimes.get(execId)));
+				sentTimes.put(execId, updateTime);
+			}
+		}
+
+		if (updates.isEmpty()) {
+			return;
+		}
+
+		List<NameValuePair> params = new ArrayList<NameValuePair>();
+		params.add(new BasicNameValuePair(ConnectorParams.PUSH_HOST_PARAM, executorHost));
+		params.add(new BasicNameValuePair(ConnectorParams.PUSH_PORT_PARAM, String.valueOf(executorPort)));
+		params.add(new BasicNameValuePair(ConnectorParams.PUSH_SECRET_PARAM, pushSecret));
+		params.add(new BasicNameValuePair(ConnectorParams.PUSH_UPDATE_LIST_PARAM, JSONUtils.toJSON(updates)));
+
+		try {
+			String response = httpClient.httpPost(pushUri, params);
+			@SuppressWarnings("unchecked")
+			Map<String, Object> jsonResponse = (Map<String, Object>)JSONUtils.parseJSONFromString(response);
+			String error = (String)jsonResponse.get(ConnectorParams.RESPONSE_ERROR);
+			if (error != null) {
+				throw new IOException(error);
+			}
+		} catch (IOException e) {
+			numPushErrors++;
+			logger.error("Failed to push " + updates.size() + " execution updates to " + pushUri + ". Will retry on the next heartbeat.", e);
+
+			// The deltas will be rebuilt from the last acknowledged time on the next heartbeat.
+			synchronized (this) {
+				this.wait(heartbeatIntervalMs);
+			}
+			return;
+		}
+
+		numPushes++;
+		lastPushTime = System.currentTimeMillis();
+		synchronized (this) {
+			for (Map.Entry<Integer, Long> entry: sentTimes.entrySet()) {
+				Integer execId = entry.getKey();
+				ExecutableFlow flow = trackedFlows.get(execId);
+				lastPushedTimes.put(execId, entry.getValue());
+
+				// Finished flows are dropped once their final state has been acknowledged.
+				if (flow != null && isFinished(flow) && flow.getUpdateTime() <= entry.getValue() && !dirtyFlows.contains(execId)) {
+					trackedFlows.remove(execId);
+					lastPushedTimes.remove(execId);
+				}
+			}
+		}
+	}
+
+	private boolean isFinished(ExecutableFlow flow) {
+		Status status = flow.getStatus();
+		return flow.getEndTime() != -1 && (status == Status.SUCCEEDED || status == Status.FAILED || status == Status.KILLED);
+	}
+
+	public synchronized int getNumTrackedFlows() {
+		return trackedFlows.size();
+	}
+
+	public long getLastPushTime() {
+		return lastPushTime;
+	}
+
+	public long getNumPushes() {
+		return numPushes;
+	}
+
+	public long getNumPushErrors() {
+		return numPushErrors;
+	}
+}
@@ -250,6 +250,16 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
 		else {
 			respMap.put(STATUS_PARAM, flow.getStatus().toString());
 			respMap.put(RESPONSE_UPDATETIME, flow.getUpdateTime());
+			
+			Map<String, Integer> jobCounts = flowRunnerManager.getJobCounts(execid);
+			if (jobCounts != null) {
+				respMap.putAll(jobCounts);
+			}
+			
+			Map<String, Object> admissionStatus = flowRunnerManager.getAdmissionStatus(execid);
+			if (admissionStatus != null) {
+				respMap.putAll(admissionStatus);
+			}
 		}
 	}
 	
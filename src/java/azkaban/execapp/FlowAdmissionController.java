@@ -0,0 +1,357 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import azkaban.utils.Pair;
+
+/**
+ * Holds submitted flows until the executor has room for them. A flow is admitted only while
+ * a flow slot is free and the jobs already in flight, the load average and the available
+ * memory are within their limits. Limits that are 0 aren't checked.
+ *
+ * Waiting flows are admitted highest priority first, and in submission order within a
+ * priority. The host limits are skipped while no flow is running, so load from outside the
+ * executor can slow the queue down but can't stall it.
+ */
+public class FlowAdmissionController {
+	private static final Logger logger = Logger.getLogger(FlowAdmissionController.class);
+
+	public static final long DEFAULT_CHECK_INTERVAL_MS = 1000;
+
+	public static final String FLOW_SLOTS = "flows";
+	public static final String JOB_SLOTS = "jobs";
+	public static final String LOAD_SLOTS = "load";
+	public static final String MEMORY_SLOTS = "memory";
+
+	private final int maxRunningFlows;
+	private final JobExecutionService jobExecutionService;
+	private final File procDir;
+	private int maxInFlightJobs = 0;
+	private double maxLoadPerCpu = 0;
+	private long minFreeMemoryBytes = 0;
+	private long checkIntervalMs = DEFAULT_CHECK_INTERVAL_MS;
+
+	private final PriorityQueue<QueuedFlow> queue = new PriorityQueue<QueuedFlow>(16, new QueuedFlowComparator());
+	private final Map<Integer, QueuedFlow> queuedFlows = new HashMap<Integer, QueuedFlow>();
+	private final Set<Integer> admittedFlows = new HashSet<Integer>();
+	private long nextSequence = 0;
+
+	// Metrics
+	private long numAdmittedFlows = 0;
+	private long totalQueueWaitMs = 0;
+	private long maxQueueWaitMs = 0;
+	private String lastRejectionReason = null;
+	private final Map<String, Long> rejectionCounts = new HashMap<String, Long>();
+
+	public FlowAdmissionController(int maxRunningFlows, JobExecutionService jobExecutionService) {
+		this(maxRunningFlows, jobExecutionService, new File("/proc"));
+	}
+
+	public FlowAdmissionController(int maxRunningFlows, JobExecutionService jobExecutionService, File procDir) {
+		this.maxRunningFlows = Math.max(1, maxRunningFlows);
+		this.jobExecutionService = jobExecutionService;
+		this.procDir = procDir;
+		for (String slot : new String[] {FLOW_SLOTS, JOB_SLOTS, LOAD_SLOTS, MEMORY_SLOTS}) {
+			rejectionCounts.put(slot, 0L);
+		}
+	}
+
+	/**
+	 * Running and queued jobs of all flows at which no more flows are admitted.
+	 */
+	public synchronized FlowAdmissionController setMaxInFlightJobs(int maxInFlightJobs) {
+		this.maxInFlightJobs = maxInFlightJobs;
+		return this;
+	}
+
+	/**
+	 * One minute load average per processor at which no more flows are admitted.
+	 */
+	public synchronized FlowAdmissionController setMaxLoadPerCpu(double maxLoadPerCpu) {
+		this.maxLoadPerCpu = maxLoadPerCpu;
+		return this;
+	}
+
+	/**
+	 * Available memory below which no more flows are admitted.
+	 */
+	public synchronized FlowAdmissionController setMinFreeMemoryBytes(long minFreeMemoryBytes) {
+		this.minFreeMemoryBytes = minFreeMemoryBytes;
+		return this;
+	}
+
+	/**
+	 * How often a waiting flow is checked again when nothing has finished.
+	 */
+	public synchronized FlowAdmissionController setCheckIntervalMs(long checkIntervalMs) {
+		this.checkIntervalMs = Math.max(1, checkIntervalMs);
+		return this;
+	}
+
+	public synchronized void add(int execId, int priority, Runnable flow) {
+		QueuedFlow queued = new QueuedFlow(execId, priority, nextSequence++, flow);
+		queue.add(queued);
+		queuedFlows.put(execId, queued);
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the next flow can be admitted and returns it. The flow takes a flow slot
+	 * until flowFinished is called for it.
+	 */
+	public synchronized Runnable takeAdmitted() throws InterruptedException {
+		while (true) {
+			QueuedFlow next = queue.peek();
+			if (next == null) {
+				wait();
+				continue;
+			}
+
+			Pair<String, String> rejection = checkSlots();
+			if (rejection == null) {
+				queue.poll();
+				queuedFlows.remove(next.execId);
+				admittedFlows.add(next.execId);
+
+				long waitMs = System.currentTimeMillis() - next.queueTime;
+				numAdmittedFlows++;
+				totalQueueWaitMs += waitMs;
+				maxQueueWaitMs = Math.max(maxQueueWaitMs, waitMs);
+				if (next.rejectionReason != null) {
+					logger.info("Admitting flow " + next.execId + " after waiting " + waitMs + " ms");
+				}
+				return next.flow;
+			}
+
+			// Counted once each time the waiting flow is held back by a different limit.
+			if (!rejection.getFirst().equals(next.rejectionSlot)) {
+				logger.info("Holding back flow " + next.execId + ". " + rejection.getSecond());
+				rejectionCounts.put(rejection.getFirst(), rejectionCounts.get(rejection.getFirst()) + 1);
+			}
+			next.rejectionSlot = rejection.getFirst();
+			next.rejectionReason = rejection.getSecond();
+			lastRejectionReason = rejection.getSecond();
+			wait(checkIntervalMs);
+		}
+	}
+
+	/**
+	 * Frees the flow slot of an admitted flow.
+	 */
+	public synchronized void flowFinished(int execId) {
+		if (admittedFlows.remove(execId)) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the limit and the reason the next flow can't be admitted, or null if it can.
+	 */
+	private Pair<String, String> checkSlots() {
+		int numRunningFlows = admittedFlows.size();
+		if (numRunningFlows >= maxRunningFlows) {
+			return new Pair<String, String>(FLOW_SLOTS, "All " + maxRunningFlows + " flow slots are in use.");
+		}
+
+		if (maxInFlightJobs > 0 && jobExecutionService != null) {
+			int inFlightJobs = jobExecutionService.getNumRunningJobs() + jobExecutionService.getNumQueuedJobs();
+			if (inFlightJobs >= maxInFlightJobs) {
+				return new Pair<String, String>(JOB_SLOTS, inFlightJobs + " jobs are running or queued, the limit is " + maxInFlightJobs + ".");
+			}
+		}
+
+		if (numRunningFlows == 0) {
+			return null;
+		}
+
+		if (maxLoadPerCpu > 0) {
+			double load = readLoadAverage();
+			int cpus = Runtime.getRuntime().availableProcessors();
+			if (load >= 0 && load / cpus >= maxLoadPerCpu) {
+				return new Pair<String, String>(LOAD_SLOTS, "Load average is " + load + " on " + cpus + " processors, the limit is " + maxLoadPerCpu + " per processor.");
+			}
+		}
+
+		if (minFreeMemoryBytes > 0) {
+			long freeMemory = readFreeMemory();
+			if (freeMemory >= 0 && freeMemory < minFreeMemoryBytes) {
+				return new Pair<String, String>(MEMORY_SLOTS, (freeMemory / (1024 * 1024)) + " MB of memory is available, the minimum is " + (minFreeMemoryBytes / (1024 * 1024)) + " MB.");
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the one minute load average, or -1 if it can't be read.
+	 */
+	private double readLoadAverage() {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(new File(procDir, "loadavg")));
+			String line = reader.readLine();
+			return line == null ? -1 : Double.parseDouble(line.trim().split("\\s+")[0]);
+		} catch (IOException e) {
+			return -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		} finally {
+			closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Returns the memory available to new processes, or -1 if it can't be read. Kernels that
+	 * don't report MemAvailable are estimated from the free memory and the page cache.
+	 */
+	private long readFreeMemory() {
+		BufferedReader reader = null;
+		long available = -1;
+		long free = -1;
+		long cached = 0;
+		try {
+			reader = new BufferedReader(new FileReader(new File(procDir, "meminfo")));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\\s+");
+				if (fields.length < 2) {
+					continue;
+				}
+				if (fields[0].equals("MemAvailable:")) {
+					available = Long.parseLong(fields[1]) * 1024;
+				}
+				else if (fields[0].equals("MemFree:")) {
+					free = Long.parseLong(fields[1]) * 1024;
+				}
+				else if (fields[0].equals("Cached:")) {
+					cached = Long.parseLong(fields[1]) * 1024;
+				}
+			}
+		} catch (IOException e) {
+			return -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		} finally {
+			closeQuietly(reader);
+		}
+
+		if (available >= 0) {
+			return available;
+		}
+		return free < 0 ? -1 : free + cached;
+	}
+
+	private static void closeQuietly(BufferedReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	public int getMaxRunningFlows() {
+		return maxRunningFlows;
+	}
+
+	public synchronized int getNumRunningFlows() {
+		return admittedFlows.size();
+	}
+
+	public synchronized int getNumQueuedFlows() {
+		return queue.size();
+	}
+
+	public synchronized long getNumAdmittedFlows() {
+		return numAdmittedFlows;
+	}
+
+	public synchronized long getAverageQueueWaitMs() {
+		return numAdmittedFlows == 0 ? 0 : totalQueueWaitMs / numAdmittedFlows;
+	}
+
+	public synchronized long getMaxQueueWaitMs() {
+		return maxQueueWaitMs;
+	}
+
+	public synchronized String getLastRejectionReason() {
+		return lastRejectionReason;
+	}
+
+	/**
+	 * Number of times a waiting flow was held back, by the limit that held it back.
+	 */
+	public synchronized Map<String, Long> getRejectionCounts() {
+		return new HashMap<String, Long>(rejectionCounts);
+	}
+
+	/**
+	 * How long the flow has been waiting for admission, or -1 if it isn't waiting.
+	 */
+	public synchronized long getQueueWaitMs(int execId) {
+		QueuedFlow queued = queuedFlows.get(execId);
+		return queued == null ? -1 : System.currentTimeMillis() - queued.queueTime;
+	}
+
+	/**
+	 * Why the flow was last held back, or null if it isn't waiting or hasn't been checked yet.
+	 */
+	public synchronized String getRejectionReason(int execId) {
+		QueuedFlow queued = queuedFlows.get(execId);
+		return queued == null ? null : queued.rejectionReason;
+	}
+
+	private static class QueuedFlow {
+		private final int execId;
+		private final int priority;
+		private final long sequence;
+		private final Runnable flow;
+		private final long queueTime = System.currentTimeMillis();
+		private String rejectionSlot = null;
+		private String rejectionReason = null;
+
+		private QueuedFlow(int execId, int priority, long sequence, Runnable flow) {
+			this.execId = execId;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.flow = flow;
+		}
+	}
+
+	private static class QueuedFlowComparator implements Comparator<QueuedFlow> {
+		@Override
+		public int compare(QueuedFlow a, QueuedFlow b) {
+			if (a.priority != b.priority) {
+				return a.priority > b.priority ? -1 : 1;
+			}
+			return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+		}
+	}
+}
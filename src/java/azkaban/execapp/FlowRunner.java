@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +43,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 	private static final Layout DEFAULT_LAYOUT = new PatternLayout("%d{dd-MM-yyyy HH:mm:ss z} %c{1} %p - %m\n");
 	// We check update every 5 minutes, just in case things get stuck. But for the most part, we'll be idling.
 	private static final long CHECK_WAIT_MS = 5*60*1000;
+	// How long a cancelled flow waits for its cancelled jobs to finish before marking the rest killed.
+	private static final long CANCEL_WAIT_MS = 10*1000;
 	
 	private Logger logger;
 	private Layout loggerLayout = DEFAULT_LAYOUT;
@@ -48,6 +52,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 	private File logFile;
 	
 	private ExecutorService executorService;
+	// Executor wide job pool. If not set, the flow runs its jobs in its own fixed pool.
+	private JobExecutionService jobExecutionService;
 	private ExecutorLoader executorLoader;
 	private ProjectLoader projectLoader;
 	
@@ -55,14 +61,28 @@ public class FlowRunner extends EventHandler implements Runnable {
 	private File execDir;
 	private ExecutableFlow flow;
 	private Thread flowRunnerThread;
+	// Set once run() stops waiting on jobs. The thread may go on to run other work after that.
+	private boolean flowRunnerFinished = false;
+	private final Object interruptSync = new Object();
 	private int numJobThreads = 10;
 	
 	// Sync object for queuing
 	private Object mainSyncObj = new Object();
 	
+	// Incremental scheduling state, guarded by mainSyncObj. Each node tracks how many of its
+	// dependencies haven't finished. Nodes are queued for evaluation only when that hits zero
+	// or their own state is reset, instead of rescanning the whole flow on every wake up.
+	private Map<String, Integer> pendingDependencies = new HashMap<String, Integer>();
+	private Set<String> finishedNodes = new HashSet<String>();
+	private LinkedHashSet<String> readyCandidates = new LinkedHashSet<String>();
+	
 	// Properties map
 	private Map<String, Props> sharedProps = new HashMap<String, Props>();
 	private Map<String, Props> jobOutputProps = new HashMap<String, Props>();
+	// Job override (.jor) properties of the flow's project version, fetched once at setup.
+	// Null if they couldn't be fetched, in which case each job looks its override up.
+	private Map<String, Props> jobOverrideProps = null;
+	private Props flowParamProps = null;
 	
 	private Props globalProps;
 	private Props commonProps;
@@ -78,6 +98,22 @@ public class FlowRunner extends EventHandler implements Runnable {
 	
 	// Watches external flows for execution.
 	private FlowWatcher watcher = null;
+	
+	// Pushes flow updates to the web server, if configured.
+	private ExecutionUpdatePusher updatePusher = null;
+	
+	// Uploads job logs while the jobs run, if configured.
+	private LogShipper logShipper = null;
+	
+	// Number of delta updates stored between full flow rewrites. 0 always rewrites the whole flow.
+	private int deltasPerCheckpoint = 0;
+	private int numDeltasSinceCheckpoint = 0;
+	private long lastPersistTime = -1;
+	
+	// Set up by the FlowRunnerManager before the flow log exists, so logged once the flow starts.
+	private int numFilesLinked = 0;
+	private long projectSetupTimeMs = -1;
+	private long linkTimeMs = -1;
 
 	private Set<String> proxyUsers = null;
 	private boolean validateUserProxy;
@@ -110,6 +146,33 @@ public class FlowRunner extends EventHandler implements Runnable {
 		return this;
 	}
 	
+	public FlowRunner setUpdatePusher(ExecutionUpdatePusher updatePusher) {
+		this.updatePusher = updatePusher;
+		return this;
+	}
+	
+	public FlowRunner setLogShipper(LogShipper logShipper) {
+		this.logShipper = logShipper;
+		return this;
+	}
+	
+	public FlowRunner setDeltasPerCheckpoint(int deltasPerCheckpoint) {
+		this.deltasPerCheckpoint = deltasPerCheckpoint;
+		return this;
+	}
+	
+	public FlowRunner setJobExecutionService(JobExecutionService jobExecutionService) {
+		this.jobExecutionService = jobExecutionService;
+		return this;
+	}
+	
+	public FlowRunner setDirectorySetupStats(int numFilesLinked, long projectSetupTimeMs, long linkTimeMs) {
+		this.numFilesLinked = numFilesLinked;
+		this.projectSetupTimeMs = projectSetupTimeMs;
+		this.linkTimeMs = linkTimeMs;
+		return this;
+	}
+	
 	public FlowRunner setGlobalProps(Props globalProps) {
 		this.globalProps = globalProps;
 		return this;
@@ -138,7 +201,10 @@ public class FlowRunner extends EventHandler implements Runnable {
 	
 	public void run() {
 		try {
-			if (this.executorService == null) {
+			if (jobExecutionService != null) {
+				jobExecutionService.registerFlow(execId, flow.getExecutionOptions().getFlowPriority(), numJobThreads);
+			}
+			else if (this.executorService == null) {
 				this.executorService = Executors.newFixedThreadPool(numJobThreads);
 			}
 			setupFlowExecution();
@@ -160,6 +226,20 @@ public class FlowRunner extends EventHandler implements Runnable {
 			flow.setStatus(Status.FAILED);
 		}
 		finally {
+			// Job threads finishing late must not interrupt whatever this thread does next.
+			synchronized(interruptSync) {
+				flowRunnerFinished = true;
+				Thread.interrupted();
+			}
+			
+			// Also when the flow failed before it ran, so its queue isn't left behind.
+			if (jobExecutionService != null) {
+				jobExecutionService.unregisterFlow(execId);
+			}
+			else if (executorService != null) {
+				executorService.shutdown();
+			}
+			
 			if (watcher != null) {
 				logger.info("Watcher is attached. Stopping watcher.");
 				watcher.stopWatcher();
@@ -194,6 +274,9 @@ public class FlowRunner extends EventHandler implements Runnable {
 		if (pipelineExecId != null) {
 			logger.info("Running simulateously with " + pipelineExecId + ". Pipelining level " + pipelineLevel);
 		}
+		if (linkTimeMs >= 0) {
+			logger.info("Project files set up in " + projectSetupTimeMs + " ms. Linked " + numFilesLinked + " files into the execution dir in " + linkTimeMs + " ms.");
+		}
 		
 		// The current thread is used for interrupting blocks
 		flowRunnerThread = Thread.currentThread();
@@ -215,10 +298,24 @@ public class FlowRunner extends EventHandler implements Runnable {
 	private synchronized void updateFlow(long time) {
 		try {
 			flow.setUpdateTime(time);
-			executorLoader.updateExecutableFlow(flow);
+			if (lastPersistTime >= 0 && numDeltasSinceCheckpoint < deltasPerCheckpoint && !Status.isStatusFinished(flow.getStatus())) {
+				executorLoader.updateExecutableFlowDelta(flow, lastPersistTime);
+				numDeltasSinceCheckpoint++;
+			}
+			else {
+				executorLoader.updateExecutableFlow(flow);
+				numDeltasSinceCheckpoint = 0;
+			}
+			
+			// Nodes updated in the same millisecond are written again with the next delta.
+			lastPersistTime = time - 1;
 		} catch (ExecutorManagerException e) {
 			logger.error("Error updating flow.", e);
 		}
+		
+		if (updatePusher != null) {
+			updatePusher.flowUpdated(flow);
+		}
 	}
 	
 	private void createLogger(String flowId) {
@@ -279,6 +376,15 @@ public class FlowRunner extends EventHandler implements Runnable {
 				props.setParent(globalProps);
 			}
 		}
+		
+		// Prefetch the job overrides so launching jobs doesn't wait on the database.
+		try {
+			jobOverrideProps = projectLoader.fetchJobOverrideProperties(flow.getProjectId(), flow.getVersion());
+			logger.info("Loaded " + jobOverrideProps.size() + " job override properties.");
+		}
+		catch (ProjectManagerException e) {
+			logger.error("Error loading job override properties. They will be fetched per job.", e);
+		}
 	}
 	
 	/**
@@ -291,6 +397,10 @@ public class FlowRunner extends EventHandler implements Runnable {
 		flow.setStatus(Status.RUNNING);
 		updateFlow();
 		
+		synchronized(mainSyncObj) {
+			rebuildReadyCandidates();
+		}
+		
 		while (!flowFinished) {
 			synchronized(mainSyncObj) {
 				if (flowPaused) {
@@ -313,21 +423,24 @@ public class FlowRunner extends EventHandler implements Runnable {
 								// Collect output props from the job's dependencies.
 								Props outputProps = collectOutputProps(node);
 								node.setStatus(Status.QUEUED);
+								node.setUpdateTime(currentTime);
 								JobRunner runner = createJobRunner(node, outputProps);
 								logger.info("Submitting job " + node.getJobId() + " to run.");
 								try {
-									executorService.submit(runner);
+									submitJobRunner(runner);
 									jobRunners.put(node.getJobId(), runner);
 									activeJobRunners.put(node.getJobId(), runner);
 								} catch (RejectedExecutionException e) {
 									logger.error(e);
-								};
+								}
 								
 							} // If killed, then auto complete and KILL
 							else if (node.getStatus() == Status.KILLED) {
 								logger.info("Killing " + node.getJobId() + " due to prior errors.");
 								node.setStartTime(currentTime);
 								node.setEndTime(currentTime);
+								node.setUpdateTime(currentTime);
+								markNodeFinished(node);
 								fireEventListeners(Event.create(this, Type.JOB_FINISHED, node));
 							} // If disabled, then we auto skip
 							else if (node.getStatus() == Status.DISABLED) {
@@ -335,6 +448,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 								node.setStartTime(currentTime);
 								node.setEndTime(currentTime);
 								node.setStatus(Status.SKIPPED);
+								node.setUpdateTime(currentTime);
+								markNodeFinished(node);
 								fireEventListeners(Event.create(this, Type.JOB_FINISHED, node));
 							}
 						}
@@ -349,6 +464,9 @@ public class FlowRunner extends EventHandler implements Runnable {
 					
 						try {
 							mainSyncObj.wait(CHECK_WAIT_MS);
+							// Woke up without being interrupted, so nothing told us about a change.
+							// Do a full rescan in case a state change slipped past the bookkeeping.
+							rebuildReadyCandidates();
 						} catch (InterruptedException e) {
 						}
 					}
@@ -362,6 +480,7 @@ public class FlowRunner extends EventHandler implements Runnable {
 				for(JobRunner activeRunner : activeJobRunners.values()) {
 					activeRunner.cancel();
 				}
+				awaitActiveJobRunners(CANCEL_WAIT_MS);
 				
 				for (ExecutableNode node: flow.getExecutableNodes()) {
 					if (Status.isStatusFinished(node.getStatus())) {
@@ -373,6 +492,7 @@ public class FlowRunner extends EventHandler implements Runnable {
 					else {
 						node.setStatus(Status.KILLED);
 					}
+					node.setUpdateTime(System.currentTimeMillis());
 					fireEventListeners(Event.create(this, Type.JOB_FINISHED, node));
 				}
 			} catch (Exception e) {
@@ -383,7 +503,6 @@ public class FlowRunner extends EventHandler implements Runnable {
 		}
 		
 		logger.info("Finishing up flow. Awaiting Termination");
-		executorService.shutdown();
 		
 		synchronized(mainSyncObj) {
 			switch(flow.getStatus()) {
@@ -401,26 +520,141 @@ public class FlowRunner extends EventHandler implements Runnable {
 		}
 	}
 	
+	/**
+	 * Waits for the active job runners to finish, so the jobs record how they ended themselves.
+	 */
+	private void awaitActiveJobRunners(long waitMs) {
+		long deadline = System.currentTimeMillis() + waitMs;
+		synchronized(mainSyncObj) {
+			while (!activeJobRunners.isEmpty()) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					logger.warn(activeJobRunners.size() + " cancelled jobs haven't finished after " + waitMs + " ms. Marking them killed.");
+					return;
+				}
+				try {
+					// Finished jobs interrupt this thread, but don't notify.
+					mainSyncObj.wait(Math.min(remaining, 100));
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Drains the ready candidates. Candidates that turn out not to be ready are dropped,
+	 * they'll be queued again by the state change that makes them ready.
+	 */
 	private List<ExecutableNode> findReadyJobsToRun() {
 		ArrayList<ExecutableNode> jobsToRun = new ArrayList<ExecutableNode>();
+		if (readyCandidates.isEmpty()) {
+			return jobsToRun;
+		}
+		
+		ArrayList<String> candidates = new ArrayList<String>(readyCandidates);
+		readyCandidates.clear();
+		for (String jobId : candidates) {
+			ExecutableNode node = flow.getExecutableNode(jobId);
+			if (Status.isStatusFinished(node.getStatus())) {
+				continue;
+			}
+			
+			Integer pending = pendingDependencies.get(jobId);
+			if (pending != null && pending > 0) {
+				continue;
+			}
+			
+			// Check the dependencies to see if execution conditions are met,
+			// and what the status should be set to.
+			Status impliedStatus = getImpliedStatus(node);
+			if (impliedStatus != null) {
+				node.setStatus(impliedStatus);
+				node.setUpdateTime(System.currentTimeMillis());
+				jobsToRun.add(node);
+			}
+		}
+		
+		return jobsToRun;
+	}
+	
+	/**
+	 * Recomputes the dependency counts for the whole flow and queues every node that could run.
+	 * Done once at start up, and as a safety net when the runner wakes up on its own.
+	 */
+	private void rebuildReadyCandidates() {
+		pendingDependencies.clear();
+		finishedNodes.clear();
+		readyCandidates.clear();
+		
 		for (ExecutableNode node : flow.getExecutableNodes()) {
 			if (Status.isStatusFinished(node.getStatus())) {
+				finishedNodes.add(node.getJobId());
+			}
+		}
+		
+		for (ExecutableNode node : flow.getExecutableNodes()) {
+			int pending = 0;
+			for (String dependency : node.getInNodes()) {
+				if (!finishedNodes.contains(dependency)) {
+					pending++;
+				}
+			}
+			
+			pendingDependencies.put(node.getJobId(), pending);
+			if (pending == 0 && !finishedNodes.contains(node.getJobId())) {
+				readyCandidates.add(node.getJobId());
+			}
+		}
+	}
+	
+	/**
+	 * Called when a node reaches a finished state. Its dependents are queued once all of their
+	 * dependencies have finished.
+	 */
+	private void markNodeFinished(ExecutableNode node) {
+		if (!finishedNodes.add(node.getJobId())) {
+			return;
+		}
+		
+		for (String dependent : node.getOutNodes()) {
+			Integer pending = pendingDependencies.get(dependent);
+			if (pending == null) {
 				continue;
 			}
-			else {
-				// Check the dependencies to see if execution conditions are met,
-				// and what the status should be set to.
-				Status impliedStatus = getImpliedStatus(node);
-				if (getImpliedStatus(node) != null) {
-					node.setStatus(impliedStatus);
-					jobsToRun.add(node);
+			
+			pending = Math.max(0, pending - 1);
+			pendingDependencies.put(dependent, pending);
+			if (pending == 0) {
+				readyCandidates.add(dependent);
+			}
+		}
+	}
+	
+	/**
+	 * Called when a finished node is set back to a runnable state, i.e. by a retry.
+	 */
+	private void markNodeReset(ExecutableNode node) {
+		if (finishedNodes.remove(node.getJobId())) {
+			for (String dependent : node.getOutNodes()) {
+				Integer pending = pendingDependencies.get(dependent);
+				if (pending != null) {
+					pendingDependencies.put(dependent, pending + 1);
 				}
 			}
 		}
 		
-		return jobsToRun;
+		readyCandidates.add(node.getJobId());
 	}
 
+	private void submitJobRunner(JobRunner runner) {
+		if (jobExecutionService != null) {
+			jobExecutionService.submit(execId, runner);
+		}
+		else {
+			executorService.submit(runner);
+		}
+	}
+	
 	private boolean isFlowFinished() {
 		if (!activeJobRunners.isEmpty()) {
 			return false;
@@ -442,8 +676,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 		for (String dependency : node.getInNodes()) {
 			Props output = jobOutputProps.get(dependency);
 			if (output != null) {
-				output = Props.clone(output);
-				output.setParent(previousOutput);
+				// Shares the output values rather than copying them for every downstream job.
+				output = output.withParent(previousOutput);
 				previousOutput = output;
 			}
 		}
@@ -451,6 +685,21 @@ public class FlowRunner extends EventHandler implements Runnable {
 		return previousOutput;
 	}
 	
+	/**
+	 * The flow parameters and common properties are the same for every job, so they're put
+	 * together once and shared as a layer of each job's props.
+	 */
+	private Props getFlowParamProps() {
+		if (flowParamProps == null) {
+			ExecutionOptions options = flow.getExecutionOptions();
+			@SuppressWarnings("unchecked")
+			Props props = new Props(null, options.getFlowParameters()); 
+			props.putAll(commonProps);
+			flowParamProps = props;
+		}
+		return flowParamProps;
+	}
+	
 	private JobRunner createJobRunner(ExecutableNode node, Props previousOutput) {
 		String source = node.getJobPropsSource();
 		String propsSource = node.getPropsSource();
@@ -459,12 +708,7 @@ public class FlowRunner extends EventHandler implements Runnable {
 		Props parentProps = propsSource == null ? globalProps : sharedProps.get(propsSource);
 
 		// Set up overrides
-		ExecutionOptions options = flow.getExecutionOptions();
-		@SuppressWarnings("unchecked")
-		Props flowProps = new Props(null, options.getFlowParameters()); 
-		flowProps.putAll(commonProps);
-		flowProps.setParent(parentProps);
-		parentProps = flowProps;
+		parentProps = getFlowParamProps().withParent(parentProps);
 
 		// We add the previous job output and put into this props.
 		if (previousOutput != null) {
@@ -479,12 +723,21 @@ public class FlowRunner extends EventHandler implements Runnable {
 		Props prop = null;
 		
 		// load the override props if any
-		try {
-			prop = projectLoader.fetchProjectProperty(flow.getProjectId(), flow.getVersion(), node.getJobId()+".jor");
+		if (jobOverrideProps != null) {
+			Props override = jobOverrideProps.get(node.getJobId()+".jor");
+			if (override != null) {
+				// Copied, since the job's props get their source and parent changed below.
+				prop = new Props(null, override);
+			}
 		}
-		catch(ProjectManagerException e) {
-			e.printStackTrace();
-			logger.error("Error loading job override property for job " + node.getJobId());
+		else {
+			try {
+				prop = projectLoader.fetchProjectProperty(flow.getProjectId(), flow.getVersion(), node.getJobId()+".jor");
+			}
+			catch(ProjectManagerException e) {
+				e.printStackTrace();
+				logger.error("Error loading job override property for job " + node.getJobId());
+			}
 		}
 		if(prop == null) {
 			// if no override prop, load the original one on disk
@@ -509,6 +762,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 		
 		jobRunner.setDelayStart(node.getDelayedExecution());
 		jobRunner.setLogSettings(logger, jobLogFileSize, jobLogNumFiles);
+		jobRunner.setLogShipper(logShipper);
+		jobRunner.setJobExecutionService(jobExecutionService);
 		jobRunner.addListener(listener);
 
 		return jobRunner;
@@ -599,6 +854,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 					node.setStartTime(-1);
 					node.setEndTime(-1);
 					node.setStatus(Status.READY);
+					node.setUpdateTime(System.currentTimeMillis());
+					markNodeReset(node);
 				}
 			}
 			
@@ -618,6 +875,7 @@ public class FlowRunner extends EventHandler implements Runnable {
 				if (Status.isStatusFinished(node.getStatus())) {
 					// Resets the status and increments the attempt number
 					node.resetForRetry();
+					markNodeReset(node);
 					reEnableDependents(node);
 					logger.info("Re-enabling job " + node.getJobId() + " attempt " + node.getAttempt());
 				}
@@ -654,18 +912,24 @@ public class FlowRunner extends EventHandler implements Runnable {
 			if (dependentNode.getStatus() == Status.KILLED) {
 				dependentNode.setStatus(Status.READY);
 				dependentNode.setUpdateTime(System.currentTimeMillis());
+				markNodeReset(dependentNode);
 				reEnableDependents(dependentNode);
 			}
 			else if (dependentNode.getStatus() == Status.SKIPPED) {
 				dependentNode.setStatus(Status.DISABLED);
 				dependentNode.setUpdateTime(System.currentTimeMillis());
+				markNodeReset(dependentNode);
 				reEnableDependents(dependentNode);
 			}
 		}
 	}
 	
 	private void interrupt() {
-		flowRunnerThread.interrupt();
+		synchronized(interruptSync) {
+			if (!flowRunnerFinished && flowRunnerThread != null) {
+				flowRunnerThread.interrupt();
+			}
+		}
 	}
 	
 	private Status getImpliedStatus(ExecutableNode node) {
@@ -771,6 +1035,14 @@ public class FlowRunner extends EventHandler implements Runnable {
 						}
 					}
 					
+					// A retried job goes back into the queue, otherwise its dependents may be ready.
+					if (Status.isStatusFinished(node.getStatus())) {
+						markNodeFinished(node);
+					}
+					else {
+						readyCandidates.add(node.getJobId());
+					}
+					
 					interrupt();
 	
 					fireEventListeners(event);
@@ -827,10 +1099,33 @@ public class FlowRunner extends EventHandler implements Runnable {
 	}
 	
 	public boolean isThreadPoolShutdown() {
+		if (jobExecutionService != null) {
+			return jobExecutionService.isShutdown();
+		}
 		return executorService.isShutdown();
 	}
 	
+	/**
+	 * Number of jobs holding a job slot. Queued and parked jobs aren't counted.
+	 */
 	public int getNumRunningJobs() {
-		return activeJobRunners.size();
+		return Math.max(0, activeJobRunners.size() - getNumQueuedJobs() - getNumParkedJobs());
+	}
+	
+	public int getNumQueuedJobs() {
+		if (jobExecutionService != null) {
+			return jobExecutionService.getNumQueuedJobs(execId);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Number of jobs waiting on a delay or a pipelined job without holding a job slot.
+	 */
+	public int getNumParkedJobs() {
+		if (jobExecutionService != null) {
+			return jobExecutionService.getNumParkedJobs(execId);
+		}
+		return 0;
 	}
 }
\ No newline at end of file
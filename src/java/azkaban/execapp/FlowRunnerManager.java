@@ -21,17 +21,16 @@ import java.io.FileFilter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.Thread.State;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
@@ -46,10 +45,13 @@ import azkaban.executor.ExecutableFlow;
 import azkaban.executor.ExecutionOptions;
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.ExecutorManagerException;
+import azkaban.jobExecutor.utils.process.ProcessOutputPump;
+import azkaban.jobExecutor.utils.process.ProcessResourceSampler;
 import azkaban.jobtype.JobTypeManager;
 
 import azkaban.utils.FileIOUtils;
 import azkaban.utils.FileIOUtils.JobMetaData;
+import azkaban.utils.FileIOUtils.LinkType;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
@@ -66,16 +68,23 @@ public class FlowRunnerManager implements EventListener {
 	private static final long RECENTLY_FINISHED_TIME_TO_LIVE = 60*1000; // recently finished secs to clean up. 1 minute
 	
 	private static final int DEFAULT_NUM_EXECUTING_FLOWS = 30;
+	private static final int DEFAULT_NUM_EXECUTING_JOBS = 100;
 	private Map<Pair<Integer,Integer>, ProjectVersion> installedProjects = new ConcurrentHashMap<Pair<Integer,Integer>, ProjectVersion>();
 	private Map<Integer, FlowRunner> runningFlows = new ConcurrentHashMap<Integer, FlowRunner>();
 	private Map<Integer, ExecutableFlow> recentlyFinishedFlows = new ConcurrentHashMap<Integer, ExecutableFlow>();
-	private LinkedBlockingQueue<FlowRunner> flowQueue = new LinkedBlockingQueue<FlowRunner>();
+	private FlowAdmissionController admissionController;
 	private int numThreads = DEFAULT_NUM_EXECUTING_FLOWS;
 
 	private ExecutorService executorService;
 	private SubmitterThread submitterThread;
 	private CleanerThread cleanerThread;
+	private ExecutionUpdatePusher updatePusher;
+	private LogShipper logShipper;
+	private JobExecutionService jobExecutionService;
+	private ProcessOutputPump outputPump;
+	private ProcessResourceSampler resourceSampler;
 	private int numJobThreadPerFlow = 10;
+	private int flowDeltasPerCheckpoint = 0;
 	
 	private ExecutorLoader executorLoader;
 	private ProjectLoader projectLoader;
@@ -98,6 +107,10 @@ public class FlowRunnerManager implements EventListener {
 	private boolean validateProxyUser = false;
 	
 	private Object executionDirDeletionSync = new Object();
+	
+	// How project files are linked into execution directories, and by how many shells at once.
+	private LinkType executionDirLinkType = LinkType.SYMBOLIC;
+	private int executionDirLinkShells = 4;
 		
 	public FlowRunnerManager(Props props, ExecutorLoader executorLoader, ProjectLoader projectLoader, ClassLoader parentClassLoader) throws IOException {
 		executionDirectory = new File(props.getString("azkaban.execution.dir", "executions"));
@@ -119,10 +132,43 @@ public class FlowRunnerManager implements EventListener {
 		installedProjects = loadExistingProjects();
 		
 		//azkaban.temp.dir
+		executionDirLinkType = LinkType.valueOf(props.getString("executor.execution.dir.link.type", executionDirLinkType.toString()).toUpperCase());
+		executionDirLinkShells = props.getInt("executor.execution.dir.link.shells", executionDirLinkShells);
+		
 		numThreads = props.getInt("executor.flow.threads", DEFAULT_NUM_EXECUTING_FLOWS);
 		numJobThreadPerFlow = props.getInt("flow.num.job.threads", numJobThreadPerFlow);
+		if (props.getBoolean("executor.flow.delta.enabled", false)) {
+			flowDeltasPerCheckpoint = props.getInt("executor.flow.delta.checkpoint", 20);
+		}
 		executorService = Executors.newFixedThreadPool(numThreads);
 		
+		// All flows share one job pool, capped for the whole executor.
+		int numJobThreads = props.getInt("executor.job.threads", DEFAULT_NUM_EXECUTING_JOBS);
+		jobExecutionService = new JobExecutionService(numJobThreads);
+		
+		// Process output of all jobs is drained by a few shared threads instead of two per job.
+		outputPump = new ProcessOutputPump(props.getInt("executor.process.output.threads", ProcessOutputPump.DEFAULT_NUM_THREADS));
+		ProcessOutputPump.setSharedPump(outputPump);
+		
+		// Submitted flows wait here until a flow thread is free and the host has room for them.
+		admissionController = new FlowAdmissionController(numThreads, jobExecutionService)
+			.setMaxInFlightJobs(props.getInt("executor.flow.admission.max.jobs", 0))
+			.setMaxLoadPerCpu(props.getDouble("executor.flow.admission.max.load.per.cpu", 0))
+			.setMinFreeMemoryBytes(props.getLong("executor.flow.admission.min.free.memory.mb", 0) * 1024 * 1024)
+			.setCheckIntervalMs(props.getLong("executor.flow.admission.check.interval.ms", FlowAdmissionController.DEFAULT_CHECK_INTERVAL_MS));
+		
+		// CPU, memory and I/O of job processes is sampled from /proc and stored with each attempt.
+		if (props.getBoolean("executor.job.resource.sampling.enabled", true)) {
+			if (ProcessResourceSampler.isSupported()) {
+				resourceSampler = new ProcessResourceSampler(props.getLong("executor.job.resource.sampling.interval.ms", ProcessResourceSampler.DEFAULT_INTERVAL_MS));
+				resourceSampler.start();
+				ProcessResourceSampler.setSharedSampler(resourceSampler);
+			}
+			else {
+				logger.info("No /proc on this host, job resource usage won't be recorded.");
+			}
+		}
+		
 		this.executorLoader = executorLoader;
 		this.projectLoader = projectLoader;
 		
@@ -131,12 +177,42 @@ public class FlowRunnerManager implements EventListener {
 		
 		this.validateProxyUser = azkabanProps.getBoolean("proxy.user.lock.down", false);
 		
-		submitterThread = new SubmitterThread(flowQueue);
+		// Upload job logs in chunks while the jobs run, instead of all at once when they finish.
+		if (props.getBoolean("executor.log.upload.streaming", true)) {
+			logShipper = new LogShipper(
+					executorLoader, 
+					props.getInt("executor.log.upload.threads", 2), 
+					props.getInt("executor.log.upload.chunk.size", 50*1024), 
+					props.getInt("executor.log.upload.max.pending.chunks", 4));
+		}
+		
+		submitterThread = new SubmitterThread(admissionController);
 		submitterThread.start();
 		
 		cleanerThread = new CleanerThread();
 		cleanerThread.start();
 		
+		// Push status updates to the web server if we know where it is. Otherwise the web server polls us.
+		String webServerUrl = props.getString("azkaban.webserver.url", null);
+		String pushSecret = props.getString("executor.push.secret", null);
+		if (webServerUrl != null && pushSecret == null) {
+			logger.error("azkaban.webserver.url is set without executor.push.secret. Execution updates will not be pushed.");
+		}
+		else if (webServerUrl != null && !props.containsKey("executor.host")) {
+			// The web server only accepts pushes from the host it dispatched the flow to.
+			logger.error("azkaban.webserver.url is set without executor.host. Execution updates will not be pushed.");
+		}
+		else if (webServerUrl != null) {
+			String host = props.getString("executor.host");
+			try {
+				updatePusher = new ExecutionUpdatePusher(props, webServerUrl, host, props.getInt("executor.port", AzkabanExecutorServer.DEFAULT_PORT_NUMBER), pushSecret);
+				updatePusher.start();
+				logger.info("Pushing execution updates to " + webServerUrl);
+			} catch (URISyntaxException e) {
+				logger.error("Invalid web server url " + webServerUrl + ". Execution updates will not be pushed.", e);
+			}
+		}
+		
 		jobtypeManager = new JobTypeManager(props.getString(AzkabanExecutorServer.JOBTYPE_PLUGIN_DIR, JobTypeManager.DEFAULT_JOBTYPEPLUGINDIR), parentClassLoader);
 		
 	}
@@ -176,12 +252,12 @@ public class FlowRunnerManager implements EventListener {
 	}
 	
 	private class SubmitterThread extends Thread {
-		private BlockingQueue<FlowRunner> queue;
+		private FlowAdmissionController admissionController;
 		private boolean shutdown = false;
 		
-		public SubmitterThread(BlockingQueue<FlowRunner> queue) {
+		public SubmitterThread(FlowAdmissionController admissionController) {
 			this.setName("FlowRunnerManager-Submitter-Thread");
-			this.queue = queue;
+			this.admissionController = admissionController;
 		}
 
 		@SuppressWarnings("unused")
@@ -194,7 +270,7 @@ public class FlowRunnerManager implements EventListener {
 			while (!shutdown) {
 				try {
 					lastSubmitterThreadCheckTime = System.currentTimeMillis();
-					FlowRunner flowRunner = queue.take();
+					Runnable flowRunner = admissionController.takeAdmitted();
 					executorService.submit(flowRunner);
 				} catch (InterruptedException e) {
 					logger.info("Interrupted. Probably to shut down.");
@@ -372,7 +448,7 @@ public class FlowRunnerManager implements EventListener {
 		}
 		
 		// Sets up the project files and execution directory.
-		setupFlow(flow);
+		long[] setupStats = setupFlow(flow);
 		
 		// Setup flow runner
 		FlowWatcher watcher = null;
@@ -395,6 +471,11 @@ public class FlowRunnerManager implements EventListener {
 			.setValidateProxyUser(validateProxyUser)
 			.setGlobalProps(globalProps)
 			.setNumJobThreads(numJobThreadPerFlow)
+			.setUpdatePusher(updatePusher)
+			.setLogShipper(logShipper)
+			.setDeltasPerCheckpoint(flowDeltasPerCheckpoint)
+			.setJobExecutionService(jobExecutionService)
+			.setDirectorySetupStats((int)setupStats[0], setupStats[1], setupStats[2])
 			.addListener(this);
 		
 		// Check again.
@@ -404,10 +485,14 @@ public class FlowRunnerManager implements EventListener {
 		
 		// Finally, queue the sucker.
 		runningFlows.put(execId, runner);
-		flowQueue.add(runner);
+		admissionController.add(execId, options.getFlowPriority(), runner);
 	}
 	
-	private void setupFlow(ExecutableFlow flow) throws ExecutorManagerException {
+	/**
+	 * Returns the number of files linked, the time to set up the project files and the time to
+	 * link them into the execution directory.
+	 */
+	private long[] setupFlow(ExecutableFlow flow) throws ExecutorManagerException {
 		int execId = flow.getExecutionId();
 		File execPath = new File(executionDirectory, String.valueOf(execId));
 		flow.setExecutionPath(execPath.getPath());
@@ -428,8 +513,12 @@ public class FlowRunnerManager implements EventListener {
 		}
 
 		try {
+			long startTime = System.currentTimeMillis();
 			projectVersion.setupProjectFiles(projectLoader, projectDirectory, logger);
-			projectVersion.copyCreateSymlinkDirectory(execPath);
+			long linkStartTime = System.currentTimeMillis();
+			int numLinked = projectVersion.copyCreateLinkedDirectory(execPath, executionDirLinkType, executionDirLinkShells);
+			long endTime = System.currentTimeMillis();
+			return new long[] {numLinked, linkStartTime - startTime, endTime - linkStartTime};
 		} catch (Exception e) {
 			e.printStackTrace();
 			if (execPath.exists()) {
@@ -512,6 +601,7 @@ public class FlowRunnerManager implements EventListener {
 			recentlyFinishedFlows.put(flow.getExecutionId(), flow);
 			logger.info("Flow " + flow.getExecutionId() + " is finished. Adding it to recently finished flows list.");
 			runningFlows.remove(flow.getExecutionId());
+			admissionController.flowFinished(flow.getExecutionId());
 		}
 	}
 	
@@ -635,6 +725,141 @@ public class FlowRunnerManager implements EventListener {
 		return runningFlows.size();
 	}
 
+	public boolean isUpdatePusherActive() {
+		return updatePusher != null && updatePusher.isAlive();
+	}
+	
+	public long getLastUpdatePushTime() {
+		return updatePusher == null ? -1 : updatePusher.getLastPushTime();
+	}
+	
+	public long getNumUpdatePushErrors() {
+		return updatePusher == null ? 0 : updatePusher.getNumPushErrors();
+	}
+	
+	public long getNumLogChunksUploaded() {
+		return logShipper == null ? 0 : logShipper.getNumChunksUploaded();
+	}
+	
+	public long getNumLogBytesUploaded() {
+		return logShipper == null ? 0 : logShipper.getNumBytesUploaded();
+	}
+	
+	public long getNumLogUploadErrors() {
+		return logShipper == null ? 0 : logShipper.getNumUploadErrors();
+	}
+	
+	public long getNumLogChunksDropped() {
+		return logShipper == null ? 0 : logShipper.getNumChunksDropped();
+	}
+	
+	public int getMaxRunningJobs() {
+		return jobExecutionService.getMaxRunningJobs();
+	}
+	
+	public int getNumQueuedJobs() {
+		return jobExecutionService.getNumQueuedJobs();
+	}
+	
+	public long getNumDispatchedJobs() {
+		return jobExecutionService.getNumDispatchedJobs();
+	}
+	
+	public long getAverageJobQueueWaitMs() {
+		return jobExecutionService.getAverageQueueWaitMs();
+	}
+	
+	public long getMaxJobQueueWaitMs() {
+		return jobExecutionService.getMaxQueueWaitMs();
+	}
+	
+	public double getJobSlotUtilization() {
+		return jobExecutionService.getUtilization();
+	}
+	
+	public int getNumParkedJobs() {
+		return jobExecutionService.getNumParkedJobs();
+	}
+	
+	/**
+	 * Running, queued and parked job counts of the flow, or null if the flow isn't running.
+	 */
+	public Map<String, Integer> getJobCounts(int execId) {
+		FlowRunner runner = runningFlows.get(execId);
+		if (runner == null) {
+			return null;
+		}
+		
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		counts.put("runningJobs", runner.getNumRunningJobs());
+		counts.put("queuedJobs", runner.getNumQueuedJobs());
+		counts.put("parkedJobs", runner.getNumParkedJobs());
+		return counts;
+	}
+	
+	public int getNumFlowsWaitingForAdmission() {
+		return admissionController.getNumQueuedFlows();
+	}
+	
+	public long getAverageFlowAdmissionWaitMs() {
+		return admissionController.getAverageQueueWaitMs();
+	}
+	
+	public long getMaxFlowAdmissionWaitMs() {
+		return admissionController.getMaxQueueWaitMs();
+	}
+	
+	public String getLastFlowAdmissionRejection() {
+		return admissionController.getLastRejectionReason();
+	}
+	
+	public Map<String, Long> getFlowAdmissionRejectionCounts() {
+		return admissionController.getRejectionCounts();
+	}
+	
+	/**
+	 * How long the flow has waited for admission and why it is held back, or null if it isn't
+	 * waiting for admission.
+	 */
+	public Map<String, Object> getAdmissionStatus(int execId) {
+		long waitMs = admissionController.getQueueWaitMs(execId);
+		if (waitMs < 0) {
+			return null;
+		}
+		
+		Map<String, Object> status = new HashMap<String, Object>();
+		status.put("admissionWaitMs", waitMs);
+		String reason = admissionController.getRejectionReason(execId);
+		if (reason != null) {
+			status.put("admissionRejection", reason);
+		}
+		return status;
+	}
+	
+	public int getNumPumpedProcessStreams() {
+		return outputPump.getNumStreams();
+	}
+	
+	public long getNumProcessOutputBytes() {
+		return outputPump.getTotalBytes();
+	}
+	
+	public long getNumProcessOutputLines() {
+		return outputPump.getTotalLines();
+	}
+	
+	public long getNumProcessOutputDroppedLines() {
+		return outputPump.getTotalDroppedLines();
+	}
+	
+	public int getNumResourceTrackedProcesses() {
+		return resourceSampler == null ? 0 : resourceSampler.getNumTrackedProcesses();
+	}
+	
+	public long getLastResourceSampleDurationMs() {
+		return resourceSampler == null ? 0 : resourceSampler.getLastSampleDurationMs();
+	}
+	
 	public int getNumExecutingJobs() {
 		int jobCount = 0;
 		for (FlowRunner runner: runningFlows.values()) {
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import azkaban.execapp.event.BlockingStatus;
+
+/**
+ * Executor wide pool that runs the jobs of every flow. The number of concurrently running
+ * jobs is capped for the whole executor, and each flow can additionally be capped on its own.
+ *
+ * Queued jobs are dispatched using stride scheduling. Every time a flow gets a slot, its pass
+ * is advanced by a stride inversely proportional to its priority, and the next slot goes to
+ * the waiting flow with the lowest pass. Over time each flow gets a share of the slots
+ * proportional to its priority.
+ *
+ * Jobs that have to wait for a delay or a pipelined job can park themselves instead of
+ * holding a slot. A parked job is queued again once its delay is up or the job it waits on
+ * has finished.
+ *
+ * A flow that is unregistered still runs the jobs it has queued or parked. Jobs that are queued
+ * or parked when the service is shut down won't run, and are dropped with a logged reason.
+ */
+public class JobExecutionService {
+	private static final Logger logger = Logger.getLogger(JobExecutionService.class);
+	private static final long STRIDE = 1000000;
+
+	private final int maxRunningJobs;
+	private final ExecutorService threadPool;
+	private final ScheduledExecutorService timer;
+	private final Map<Integer, FlowQueue> flowQueues = new HashMap<Integer, FlowQueue>();
+
+	private int numRunningJobs = 0;
+	private int numQueuedJobs = 0;
+	private int numParkedJobs = 0;
+	private long globalPass = 0;
+	private boolean shutdown = false;
+
+	// Metrics
+	private long numDispatchedJobs = 0;
+	private long totalQueueWaitMs = 0;
+	private long maxQueueWaitMs = 0;
+	private long busyTimeMs = 0;
+	private long lastBusyChangeTime = System.currentTimeMillis();
+	private final long startTime = System.currentTimeMillis();
+
+	public JobExecutionService(int maxRunningJobs) {
+		this.maxRunningJobs = maxRunningJobs;
+		this.threadPool = Executors.newFixedThreadPool(maxRunningJobs);
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JobExecutionService-Timer-Thread-1");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Registers a flow with the service. Jobs can only be submitted by registered flows.
+	 *
+	 * @param execId
+	 * @param priority relative share of the job slots
+	 * @param maxFlowJobs max number of jobs the flow may run at once
+	 */
+	public synchronized void registerFlow(int execId, int priority, int maxFlowJobs) {
+		if (flowQueues.containsKey(execId)) {
+			return;
+		}
+
+		// New flows start at the current pass, so they can't starve flows that have been waiting.
+		FlowQueue queue = new FlowQueue(execId, Math.max(1, priority), Math.max(1, maxFlowJobs));
+		queue.pass = globalPass;
+		flowQueues.put(execId, queue);
+	}
+
+	/**
+	 * Removes the flow. No more jobs can be submitted for it. Jobs it still has queued or parked
+	 * are run first, and the flow is removed once the last of them has finished.
+	 */
+	public synchronized void unregisterFlow(int execId) {
+		FlowQueue queue = flowQueues.get(execId);
+		if (queue == null || queue.unregistered) {
+			return;
+		}
+
+		queue.unregistered = true;
+		if (!queue.pending.isEmpty() || !queue.parked.isEmpty()) {
+			logger.warn("Execution " + execId + " was unregistered with " + queue.pending.size() + " queued and " + queue.parked.size() + " parked jobs. It will be removed once they have run.");
+		}
+		removeIfDone(queue);
+	}
+
+	public synchronized void submit(int execId, Runnable job) {
+		if (shutdown) {
+			throw new RejectedExecutionException("Job execution service has been shut down.");
+		}
+
+		FlowQueue queue = flowQueues.get(execId);
+		if (queue == null || queue.unregistered) {
+			throw new RejectedExecutionException("Execution " + execId + " isn't registered with the job execution service.");
+		}
+
+		queue.pending.add(new QueuedJob(job));
+		numQueuedJobs++;
+		dispatch();
+	}
+
+	/**
+	 * Parks a running job. Must be called by the job from its own run(), right before it
+	 * returns. The job gives up its slot and is queued again after delayMs, once the blocking
+	 * status has finished, or when unpark is called, whichever comes first.
+	 *
+	 * @param delayMs time to wait, or 0 to wait only on the blocking status
+	 * @param blockingStatus status to wait on, or null
+	 */
+	public synchronized void park(int execId, Runnable job, long delayMs, BlockingStatus blockingStatus) {
+		if (shutdown) {
+			throw new RejectedExecutionException("Job execution service has been shut down.");
+		}
+
+		FlowQueue queue = flowQueues.get(execId);
+		if (queue == null) {
+			throw new RejectedExecutionException("Execution " + execId + " isn't registered with the job execution service.");
+		}
+
+		// Armed once run() has returned, so the job can't be dispatched while it is still running.
+		queue.parked.put(job, new ParkedJob(delayMs, blockingStatus));
+		numParkedJobs++;
+	}
+
+	/**
+	 * Queues a parked job right away. Once the service has shut down, the job is dropped instead.
+	 *
+	 * @return false if the job wasn't parked or was dropped
+	 */
+	public boolean unpark(int execId, Runnable job) {
+		synchronized (this) {
+			FlowQueue queue = flowQueues.get(execId);
+			if (queue == null) {
+				return false;
+			}
+
+			ParkedJob parked = queue.parked.get(job);
+			if (parked == null) {
+				return false;
+			}
+			else if (!parked.armed) {
+				parked.wakeRequested = true;
+				return true;
+			}
+
+			queue.parked.remove(job);
+			numParkedJobs--;
+			if (parked.timeout != null) {
+				parked.timeout.cancel(false);
+			}
+
+			if (!shutdown) {
+				queue.pending.add(new QueuedJob(job));
+				numQueuedJobs++;
+				dispatch();
+				return true;
+			}
+			removeIfDone(queue);
+		}
+
+		dropJobs(execId, Collections.singletonList(job));
+		return false;
+	}
+
+	/**
+	 * Starts the wait of a job that parked itself during its run.
+	 */
+	private void armParkedJob(final FlowQueue queue, final Runnable job) {
+		ParkedJob parked;
+		boolean stopped;
+		synchronized (this) {
+			parked = queue.parked.get(job);
+			if (parked == null || parked.armed) {
+				return;
+			}
+			parked.armed = true;
+			stopped = shutdown;
+		}
+
+		if (stopped) {
+			// Parked while the service was being shut down.
+			unpark(queue.execId, job);
+			return;
+		}
+
+		Runnable wakeUp = new Runnable() {
+			@Override
+			public void run() {
+				unpark(queue.execId, job);
+			}
+		};
+
+		if (parked.wakeRequested) {
+			wakeUp.run();
+			return;
+		}
+
+		if (parked.delayMs > 0) {
+			ScheduledFuture<?> timeout = timer.schedule(wakeUp, parked.delayMs, TimeUnit.MILLISECONDS);
+			synchronized (this) {
+				parked.timeout = timeout;
+			}
+		}
+		if (parked.blockingStatus != null) {
+			// Runs right away if the status has already finished.
+			parked.blockingStatus.addFinishListener(wakeUp);
+		}
+		if (parked.delayMs <= 0 && parked.blockingStatus == null) {
+			wakeUp.run();
+		}
+	}
+
+	/**
+	 * Hands queued jobs to the pool while there are free slots. Must be called holding the lock.
+	 */
+	private void dispatch() {
+		while (numRunningJobs < maxRunningJobs) {
+			FlowQueue next = null;
+			for (FlowQueue queue: flowQueues.values()) {
+				if (queue.pending.isEmpty() || queue.running >= queue.maxJobs) {
+					continue;
+				}
+
+				if (next == null || queue.pass < next.pass) {
+					next = queue;
+				}
+			}
+
+			if (next == null) {
+				return;
+			}
+
+			QueuedJob job = next.pending.removeFirst();
+			numQueuedJobs--;
+			next.running++;
+			next.pass += STRIDE / next.priority;
+			globalPass = Math.max(globalPass, next.pass - STRIDE / next.priority);
+			updateBusyTime();
+			numRunningJobs++;
+
+			long waitTime = System.currentTimeMillis() - job.queueTime;
+			numDispatchedJobs++;
+			totalQueueWaitMs += waitTime;
+			maxQueueWaitMs = Math.max(maxQueueWaitMs, waitTime);
+
+			try {
+				threadPool.submit(new RunningJob(next, job.job));
+			} catch (RejectedExecutionException e) {
+				logger.error("Job for execution " + next.execId + " was rejected by the thread pool.", e);
+				next.running--;
+				updateBusyTime();
+				numRunningJobs--;
+				return;
+			}
+		}
+	}
+
+	private void jobFinished(FlowQueue queue, Runnable job) {
+		synchronized (this) {
+			queue.running--;
+			updateBusyTime();
+			numRunningJobs--;
+			dispatch();
+			removeIfDone(queue);
+		}
+		armParkedJob(queue, job);
+	}
+
+	/**
+	 * Removes an unregistered flow once it has no jobs left. Must be called holding the lock.
+	 */
+	private void removeIfDone(FlowQueue queue) {
+		if (queue.unregistered && queue.pending.isEmpty() && queue.parked.isEmpty() && queue.running == 0) {
+			flowQueues.remove(queue.execId);
+		}
+	}
+
+	/**
+	 * Tells jobs that they won't be run. Must be called without holding the lock, since the jobs
+	 * finish themselves.
+	 */
+	private void dropJobs(int execId, List<Runnable> jobs) {
+		String reason = "The job execution service was shut down before the job could run.";
+		logger.warn("Dropping " + jobs.size() + " jobs of execution " + execId + ". " + reason);
+		for (Runnable job: jobs) {
+			if (job instanceof DroppableJob) {
+				((DroppableJob)job).dropped(reason);
+			}
+		}
+	}
+
+	private void updateBusyTime() {
+		long now = System.currentTimeMillis();
+		busyTimeMs += (now - lastBusyChangeTime) * numRunningJobs;
+		lastBusyChangeTime = now;
+	}
+
+	/**
+	 * Stops the service. Running jobs finish. Queued and parked jobs are dropped. Jobs that are
+	 * parking themselves right now are dropped once their run() has returned.
+	 */
+	public void shutdown() {
+		Map<Integer, List<Runnable>> dropped = new HashMap<Integer, List<Runnable>>();
+		synchronized (this) {
+			shutdown = true;
+			threadPool.shutdown();
+			timer.shutdownNow();
+
+			for (FlowQueue queue: new ArrayList<FlowQueue>(flowQueues.values())) {
+				List<Runnable> jobs = new ArrayList<Runnable>();
+				for (QueuedJob job: queue.pending) {
+					jobs.add(job.job);
+				}
+				numQueuedJobs -= queue.pending.size();
+				queue.pending.clear();
+
+				for (Map.Entry<Runnable, ParkedJob> entry: new ArrayList<Map.Entry<Runnable, ParkedJob>>(queue.parked.entrySet())) {
+					ParkedJob parked = entry.getValue();
+					if (!parked.armed) {
+						continue;
+					}
+					if (parked.timeout != null) {
+						parked.timeout.cancel(false);
+					}
+					queue.parked.remove(entry.getKey());
+					numParkedJobs--;
+					jobs.add(entry.getKey());
+				}
+
+				removeIfDone(queue);
+				if (!jobs.isEmpty()) {
+					dropped.put(queue.execId, jobs);
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, List<Runnable>> entry: dropped.entrySet()) {
+			dropJobs(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean isShutdown() {
+		return threadPool.isShutdown();
+	}
+
+	public int getMaxRunningJobs() {
+		return maxRunningJobs;
+	}
+
+	public synchronized int getNumRunningJobs() {
+		return numRunningJobs;
+	}
+
+	public synchronized int getNumQueuedJobs() {
+		return numQueuedJobs;
+	}
+
+	public synchronized int getNumQueuedJobs(int execId) {
+		FlowQueue queue = flowQueues.get(execId);
+		return queue == null ? 0 : queue.pending.size();
+	}
+
+	public synchronized int getNumParkedJobs() {
+		return numParkedJobs;
+	}
+
+	public synchronized int getNumParkedJobs(int execId) {
+		FlowQueue queue = flowQueues.get(execId);
+		return queue == null ? 0 : queue.parked.size();
+	}
+
+	public synchronized long getNumDispatchedJobs() {
+		return numDispatchedJobs;
+	}
+
+	public synchronized long getAverageQueueWaitMs() {
+		return numDispatchedJobs == 0 ? 0 : totalQueueWaitMs / numDispatchedJobs;
+	}
+
+	public synchronized long getMaxQueueWaitMs() {
+		return maxQueueWaitMs;
+	}
+
+	/**
+	 * Fraction of the job slots in use, averaged since the service was started.
+	 */
+	public synchronized double getUtilization() {
+		updateBusyTime();
+		long elapsed = System.currentTimeMillis() - startTime;
+		if (elapsed <= 0) {
+			return 0;
+		}
+		return (double)busyTimeMs / (elapsed * maxRunningJobs);
+	}
+
+	/**
+	 * A job that has to be told when the service drops it without running it.
+	 */
+	public interface DroppableJob extends Runnable {
+		/**
+		 * Called instead of run() for a job that will never run. The job should finish
+		 * itself as failed or killed.
+		 */
+		public void dropped(String reason);
+	}
+
+	private static class FlowQueue {
+		private final int execId;
+		private final int priority;
+		private final int maxJobs;
+		private final LinkedList<QueuedJob> pending = new LinkedList<QueuedJob>();
+		private final Map<Runnable, ParkedJob> parked = new HashMap<Runnable, ParkedJob>();
+		private int running = 0;
+		private long pass = 0;
+		private boolean unregistered = false;
+
+		private FlowQueue(int execId, int priority, int maxJobs) {
+			this.execId = execId;
+			this.priority = priority;
+			this.maxJobs = maxJobs;
+		}
+	}
+
+	private static class QueuedJob {
+		private final Runnable job;
+		private final long queueTime = System.currentTimeMillis();
+
+		private QueuedJob(Runnable job) {
+			this.job = job;
+		}
+	}
+
+	private static class ParkedJob {
+		private final long delayMs;
+		private final BlockingStatus blockingStatus;
+		private boolean armed = false;
+		private boolean wakeRequested = false;
+		private ScheduledFuture<?> timeout = null;
+
+		private ParkedJob(long delayMs, BlockingStatus blockingStatus) {
+			this.delayMs = delayMs;
+			this.blockingStatus = blockingStatus;
+		}
+	}
+
+	private class RunningJob implements Runnable {
+		private final FlowQueue queue;
+		private final Runnable job;
+
+		private RunningJob(FlowQueue queue, Runnable job) {
+			this.queue = queue;
+			this.job = job;
+		}
+
+		@Override
+		public void run() {
+			try {
+				job.run();
+			} finally {
+				jobFinished(queue, job);
+			}
+		}
+	}
+}
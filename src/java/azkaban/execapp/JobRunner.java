@@ -25,6 +25,7 @@ import java.util.Set;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.log4j.Appender;
 import org.apache.log4j.Layout;
@@ -48,9 +49,12 @@ import azkaban.jobtype.JobTypeManager;
 import azkaban.jobtype.JobTypeManagerException;
 
 import azkaban.utils.Props;
+import azkaban.utils.ResourceUsage;
 
-public class JobRunner extends EventHandler implements Runnable {
+public class JobRunner extends EventHandler implements JobExecutionService.DroppableJob {
 	private static final Layout DEFAULT_LAYOUT = new PatternLayout("%d{dd-MM-yyyy HH:mm:ss z} %c{1} %p - %m\n");
+	// The log file and the streamed upload have to agree, since a failed upload continues from the file.
+	private static final String LOG_ENCODING = "UTF-8";
 	
 	private ExecutorLoader loader;
 	private Props props;
@@ -65,6 +69,11 @@ public class JobRunner extends EventHandler implements Runnable {
 	private Appender jobAppender;
 	private File logFile;
 	
+	// Uploads the log while the job runs, if set.
+	private LogShipper logShipper;
+	private LogShipper.LogUploadAppender logUploadAppender;
+	private long logUploadTimeoutMs = 60*1000;
+	
 	private Job job;
 	private int executionId = -1;
 	
@@ -87,6 +96,12 @@ public class JobRunner extends EventHandler implements Runnable {
 	private boolean cancelled = false;
 	private BlockingStatus currentBlockStatus = null;
 	
+	// Delayed and pipelined jobs park in the service instead of blocking its threads, if set.
+	private JobExecutionService jobExecutionService = null;
+	private boolean parked = false;
+	private boolean waitedOnPipeline = false;
+	private long delayEndTime = -1;
+	
 	public JobRunner(ExecutableNode node, Props props, File workingDir, ExecutorLoader loader, JobTypeManager jobtypeManager) {
 		this.props = props;
 		this.node = node;
@@ -106,6 +121,14 @@ public class JobRunner extends EventHandler implements Runnable {
 		this.jobLogBackupIndex = numLogBackup;
 	}
 	
+	public void setLogShipper(LogShipper logShipper) {
+		this.logShipper = logShipper;
+	}
+	
+	public void setJobExecutionService(JobExecutionService jobExecutionService) {
+		this.jobExecutionService = jobExecutionService;
+	}
+	
 	public Props getProps() {
 		return props;
 	}
@@ -152,7 +175,10 @@ public class JobRunner extends EventHandler implements Runnable {
 
 			jobAppender = null;
 			try {
-				RollingFileAppender fileAppender = new RollingFileAppender(loggerLayout, absolutePath, true);
+				RollingFileAppender fileAppender = new RollingFileAppender();
+				fileAppender.setLayout(loggerLayout);
+				fileAppender.setEncoding(LOG_ENCODING);
+				fileAppender.setFile(absolutePath, true, false, fileAppender.getBufferSize());
 				fileAppender.setMaxBackupIndex(jobLogBackupIndex);
 				fileAppender.setMaxFileSize(jobLogChunkSize);
 				jobAppender = fileAppender;
@@ -160,6 +186,17 @@ public class JobRunner extends EventHandler implements Runnable {
 			} catch (IOException e) {
 				flowLogger.error("Could not open log file in " + workingDir + " for job " + node.getJobId(), e);
 			}
+			
+			logUploadAppender = null;
+			if (logShipper != null) {
+				try {
+					logUploadAppender = logShipper.createAppender(loggerLayout, executionId, node.getJobId(), node.getAttempt());
+					logUploadAppender.setEncoding(LOG_ENCODING);
+					logger.addAppender(logUploadAppender);
+				} catch (ExecutorManagerException e) {
+					flowLogger.error("Could not start log upload for job " + node.getJobId() + ". Log will be uploaded when the job finishes.", e);
+				}
+			}
 		}
 	}
 
@@ -168,6 +205,10 @@ public class JobRunner extends EventHandler implements Runnable {
 			logger.removeAppender(jobAppender);
 			jobAppender.close();
 		}
+		if (logUploadAppender != null) {
+			logger.removeAppender(logUploadAppender);
+			logUploadAppender.close();
+		}
 	}
 	
 	private void writeStatus() {
@@ -183,20 +224,25 @@ public class JobRunner extends EventHandler implements Runnable {
 	public void run() {
 		Thread.currentThread().setName("JobRunner-" + node.getJobId() + "-" + executionId);
 		
-		if (node.getStatus() == Status.DISABLED) {
+		// Run again after being parked. The job has already been set up.
+		boolean resumed = parked;
+		parked = false;
+		
+		// The checks below were done on the first run, if the job is being resumed.
+		if (!resumed && node.getStatus() == Status.DISABLED) {
 			node.setStartTime(System.currentTimeMillis());
 			fireEvent(Event.create(this, Type.JOB_STARTED, null, false));
 			node.setStatus(Status.SKIPPED);
 			node.setEndTime(System.currentTimeMillis());
 			fireEvent(Event.create(this, Type.JOB_FINISHED));
 			return;
-		} else if (this.cancelled) {
+		} else if (!resumed && this.cancelled) {
 			node.setStartTime(System.currentTimeMillis());
 			fireEvent(Event.create(this, Type.JOB_STARTED, null, false));
 			node.setStatus(Status.FAILED);
 			node.setEndTime(System.currentTimeMillis());
 			fireEvent(Event.create(this, Type.JOB_FINISHED));
-		} else if (node.getStatus() == Status.FAILED || node.getStatus() == Status.KILLED) {
+		} else if (!resumed && (node.getStatus() == Status.FAILED || node.getStatus() == Status.KILLED)) {
 			node.setStartTime(System.currentTimeMillis());
 			fireEvent(Event.create(this, Type.JOB_STARTED, null, false));
 			node.setEndTime(System.currentTimeMillis());
@@ -204,37 +250,57 @@ public class JobRunner extends EventHandler implements Runnable {
 			return;
 		}
 		else {
-			createLogger();
-			node.setUpdateTime(System.currentTimeMillis());
+			if (!resumed) {
+				createLogger();
+				node.setUpdateTime(System.currentTimeMillis());
+			}
 
 			// For pipelining of jobs. Will watch other jobs.
 			if (!pipelineJobs.isEmpty()) {
+				if (resumed && currentBlockStatus != null && !cancelled) {
+					logger.info("Pipelined job " + currentBlockStatus.getJobId() + " finished.");
+				}
 				String blockedList = "";
 				ArrayList<BlockingStatus> blockingStatus = new ArrayList<BlockingStatus>();
 				for (String waitingJobId : pipelineJobs) {
 					Status status = watcher.peekStatus(waitingJobId);
 					if (status != null && !Status.isStatusFinished(status)) {
 						BlockingStatus block = watcher.getBlockingStatus(waitingJobId);
-						blockingStatus.add(block);
-						blockedList += waitingJobId + ",";
+						if (block != null) {
+							blockingStatus.add(block);
+							blockedList += waitingJobId + ",";
+						}
 					}
 				}
 				if (!blockingStatus.isEmpty()) {
-					logger.info("Pipeline job " + node.getJobId() + " waiting on " + blockedList + " in execution " + watcher.getExecId());
+					if (!waitedOnPipeline) {
+						logger.info("Pipeline job " + node.getJobId() + " waiting on " + blockedList + " in execution " + watcher.getExecId());
+						waitedOnPipeline = true;
+					}
 					
 					for(BlockingStatus bStatus: blockingStatus) {
+						if (cancelled) {
+							break;
+						}
 						logger.info("Waiting on pipelined job " + bStatus.getJobId());
 						currentBlockStatus = bStatus;
+						// Give up the job slot until it finishes and check the rest again. Otherwise wait here.
+						if (park(0, bStatus)) {
+							return;
+						}
 						bStatus.blockOnFinishedStatus();
 						logger.info("Pipelined job " + bStatus.getJobId() + " finished.");
 						if (watcher.isWatchCancelled()) {
 							break;
 						}
 					}
+				}
+				if (waitedOnPipeline) {
+					waitedOnPipeline = false;
 					writeStatus();	
 					fireEvent(Event.create(this, Type.JOB_STATUS_CHANGED));
 				}
-				if (watcher.isWatchCancelled()) {
+				if (watcher.isWatchCancelled() || (cancelled && currentBlockStatus != null)) {
 					logger.info("Job was cancelled while waiting on pipeline. Quiting.");
 					node.setStartTime(System.currentTimeMillis());
 					node.setEndTime(System.currentTimeMillis());
@@ -247,15 +313,29 @@ public class JobRunner extends EventHandler implements Runnable {
 			currentBlockStatus = null;
 			long currentTime = System.currentTimeMillis();
 			if (delayStartMs > 0) {
-				logger.info("Delaying start of execution for " + delayStartMs + " milliseconds.");
-				synchronized(this) {
-					try {
-						this.wait(delayStartMs);
-						logger.info("Execution has been delayed for " + delayStartMs + " ms. Continuing with execution.");
-					} catch (InterruptedException e) {
-						logger.error("Job " + node.getJobId() + " was to be delayed for " + delayStartMs + ". Interrupted after " + (System.currentTimeMillis() - currentTime));
+				if (delayEndTime < 0) {
+					logger.info("Delaying start of execution for " + delayStartMs + " milliseconds.");
+					delayEndTime = currentTime + delayStartMs;
+				}
+				
+				long remainingMs = delayEndTime - System.currentTimeMillis();
+				if (remainingMs > 0 && !cancelled) {
+					// Give up the job slot for the rest of the delay. Otherwise wait here.
+					if (park(remainingMs, null)) {
+						return;
+					}
+					synchronized(this) {
+						try {
+							this.wait(remainingMs);
+							logger.info("Execution has been delayed for " + delayStartMs + " ms. Continuing with execution.");
+						} catch (InterruptedException e) {
+							logger.error("Job " + node.getJobId() + " was to be delayed for " + delayStartMs + ". Interrupted after " + (System.currentTimeMillis() - currentTime));
+						}
 					}
 				}
+				else if (!cancelled) {
+					logger.info("Execution has been delayed for " + delayStartMs + " ms. Continuing with execution.");
+				}
 				
 				if (cancelled) {
 					logger.info("Job was cancelled while in delay. Quiting.");
@@ -290,30 +370,87 @@ public class JobRunner extends EventHandler implements Runnable {
 
 			closeLogger();
 			writeStatus();
-			
-			if (logFile != null) {
-				try {
-					File[] files = logFile.getParentFile().listFiles(new FilenameFilter() {
-						
-						@Override
-						public boolean accept(File dir, String name) {
-							return name.startsWith(logFile.getName());
-						}
-					} 
-					);
-					Arrays.sort(files, Collections.reverseOrder());
-					
+			uploadLog();
+		}
+		fireEvent(Event.create(this, Type.JOB_FINISHED));
+	}
+	
+	/**
+	 * Finishes a job the job execution service won't run, because it was queued or parked when
+	 * the service shut down.
+	 */
+	@Override
+	public void dropped(String reason) {
+		synchronized (syncObject) {
+			this.cancelled = true;
+		}
+		flowLogger.error("Killing job " + node.getJobId() + ". " + reason);
+		
+		long currentTime = System.currentTimeMillis();
+		if (node.getStartTime() <= 0) {
+			node.setStartTime(currentTime);
+		}
+		node.setEndTime(currentTime);
+		node.setStatus(Status.KILLED);
+		
+		// A parked job has already set up its log.
+		if (logger != null) {
+			logError("Job killed. " + reason);
+			closeLogger();
+			writeStatus();
+			uploadLog();
+		}
+		else {
+			writeStatus();
+		}
+		fireEvent(Event.create(this, Type.JOB_FINISHED));
+	}
+	
+	private void uploadLog() {
+		if (logUploadAppender != null && logUploadAppender.waitForUpload(logUploadTimeoutMs)) {
+			flowLogger.debug("Log for job " + node.getJobId() + " was uploaded while the job ran.");
+		}
+		else if (logFile != null) {
+			try {
+				File[] files = logFile.getParentFile().listFiles(new FilenameFilter() {
 					
-					loader.uploadLogFile(executionId, node.getJobId(), node.getAttempt(), files);
-				} catch (ExecutorManagerException e) {
-					flowLogger.error("Error writing out logs for job " + node.getJobId(), e);
-				}
-			}
-			else {
-				flowLogger.info("Log file for job " + node.getJobId() + " is null");
+					@Override
+					public boolean accept(File dir, String name) {
+						return name.startsWith(logFile.getName());
+					}
+				} 
+				);
+				Arrays.sort(files, Collections.reverseOrder());
+				
+				
+				loader.uploadLogFile(executionId, node.getJobId(), node.getAttempt(), files);
+			} catch (ExecutorManagerException e) {
+				flowLogger.error("Error writing out logs for job " + node.getJobId(), e);
 			}
 		}
-		fireEvent(Event.create(this, Type.JOB_FINISHED));
+		else {
+			flowLogger.info("Log file for job " + node.getJobId() + " is null");
+		}
+	}
+	
+	/**
+	 * Gives up the job slot until the delay is over or the blocking status has finished. If
+	 * this returns true, the caller has to return from run() right away.
+	 */
+	private boolean park(long delayMs, BlockingStatus blockingStatus) {
+		if (jobExecutionService == null) {
+			return false;
+		}
+		
+		parked = true;
+		try {
+			jobExecutionService.park(executionId, this, delayMs, blockingStatus);
+			return true;
+		} catch (RejectedExecutionException e) {
+			parked = false;
+			logger.warn("Couldn't give up the job slot while waiting. " + e.getMessage());
+			return false;
+		}
 	}
 	
 	private void fireEvent(Event event) {
@@ -376,6 +513,9 @@ public class JobRunner extends EventHandler implements Runnable {
 	}
 
 	private void runJob() {
+		// Processes the job starts from this thread are charged to its attempt.
+		ResourceUsage usage = new ResourceUsage();
+		ResourceUsage.setCurrent(usage);
 		try {
 			job.run();
 		} catch (Exception e) {
@@ -385,6 +525,12 @@ public class JobRunner extends EventHandler implements Runnable {
 			logError("Job run failed!");
 			logError(e.getMessage() + e.getCause());
 			return;
+		} finally {
+			ResourceUsage.setCurrent(null);
+			if (usage.getNumProcesses() > 0) {
+				node.setResourceUsage(usage);
+				logInfo("Resource usage: " + usage);
+			}
 		}
 
 		node.setStatus(Status.SUCCEEDED);
@@ -411,6 +557,9 @@ public class JobRunner extends EventHandler implements Runnable {
 				synchronized(this) {
 					this.notify();
 				}
+				if (jobExecutionService != null) {
+					jobExecutionService.unpark(executionId, this);
+				}
 				return;
 			}
 	
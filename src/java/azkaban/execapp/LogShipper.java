@@ -0,0 +1,321 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Layout;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.ExecutorManagerException;
+
+/**
+ * Uploads job logs to the db in chunks while the jobs are still running, so finishing a job only
+ * has to upload the last partial chunk.
+ *
+ * Every job log gets a LogUploadAppender. The appender fills a chunk sized buffer and hands full
+ * chunks to a small upload pool. Each log's chunks are uploaded in order, and only a few chunks
+ * per log may wait for upload at once. The logging thread never waits for the upload. If a log
+ * gets that far ahead of it, the appender drops its chunks and stops uploading that log, and the
+ * job runner uploads the rest from the log files when the job finishes.
+ */
+public class LogShipper {
+	private static final Logger logger = Logger.getLogger(LogShipper.class);
+	private static final int MAX_UPLOAD_ATTEMPTS = 3;
+
+	private final ExecutorLoader loader;
+	private final ExecutorService uploadPool;
+	private final int chunkSize;
+	private final int maxPendingChunks;
+
+	// Metrics
+	private long numChunksUploaded = 0;
+	private long numBytesUploaded = 0;
+	private long numUploadErrors = 0;
+	private long numChunksDropped = 0;
+
+	public LogShipper(ExecutorLoader loader, int numThreads, int chunkSize, int maxPendingChunks) {
+		this.loader = loader;
+		this.chunkSize = chunkSize;
+		this.maxPendingChunks = Math.max(1, maxPendingChunks);
+		this.uploadPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			private int threadNum = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "LogShipper-Thread-" + threadNum++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Creates an appender that uploads everything logged to it as the log of the given job
+	 * attempt. The upload continues after whatever part of that log is already in the db.
+	 */
+	public LogUploadAppender createAppender(Layout layout, int execId, String name, int attempt) throws ExecutorManagerException {
+		int startByte = loader.fetchLogEndByte(execId, name, attempt);
+		LogUploadAppender appender = new LogUploadAppender(execId, name, attempt, startByte);
+		appender.setLayout(layout);
+		return appender;
+	}
+
+	public void shutdown() {
+		uploadPool.shutdown();
+	}
+
+	public synchronized long getNumChunksUploaded() {
+		return numChunksUploaded;
+	}
+
+	public synchronized long getNumBytesUploaded() {
+		return numBytesUploaded;
+	}
+
+	public synchronized long getNumUploadErrors() {
+		return numUploadErrors;
+	}
+
+	public synchronized long getNumChunksDropped() {
+		return numChunksDropped;
+	}
+
+	private synchronized void chunkUploaded(int length) {
+		numChunksUploaded++;
+		numBytesUploaded += length;
+	}
+
+	private synchronized void uploadFailed() {
+		numUploadErrors++;
+	}
+
+	private synchronized void chunkDropped() {
+		numChunksDropped++;
+	}
+
+	private static class Chunk {
+		private final int startByte;
+		private final byte[] buffer;
+		private final int length;
+
+		private Chunk(int startByte, byte[] buffer, int length) {
+			this.startByte = startByte;
+			this.buffer = buffer;
+			this.length = length;
+		}
+	}
+
+	public class LogUploadAppender extends AppenderSkeleton {
+		private final int execId;
+		private final String name;
+		private final int attempt;
+
+		private Charset charset = Charset.forName("UTF-8");
+		private byte[] buffer = new byte[chunkSize];
+		private int pos = 0;
+		private int nextStartByte;
+
+		private final LinkedList<Chunk> pending = new LinkedList<Chunk>();
+		private boolean uploading = false;
+		private boolean failed = false;
+		private boolean dropped = false;
+
+		private LogUploadAppender(int execId, String name, int attempt, int startByte) {
+			this.execId = execId;
+			this.name = name;
+			this.attempt = attempt;
+			this.nextStartByte = startByte;
+		}
+
+		/**
+		 * Sets the encoding the log is uploaded in. It should match the log files, since the end
+		 * of job upload continues from the files at the uploaded byte count. Defaults to UTF-8.
+		 */
+		public void setEncoding(String encoding) {
+			this.charset = Charset.forName(encoding);
+		}
+
+		public String getEncoding() {
+			return charset.name();
+		}
+
+		@Override
+		protected void append(LoggingEvent event) {
+			// Same bytes the file appenders write.
+			write(layout.format(event));
+			if (layout.ignoresThrowable()) {
+				String[] lines = event.getThrowableStrRep();
+				if (lines != null) {
+					for (String line: lines) {
+						write(line + Layout.LINE_SEP);
+					}
+				}
+			}
+		}
+
+		private void write(String text) {
+			if (dropped) {
+				return;
+			}
+
+			byte[] bytes = text.getBytes(charset);
+			int offset = 0;
+			while (offset < bytes.length) {
+				int length = Math.min(bytes.length - offset, buffer.length - pos);
+				System.arraycopy(bytes, offset, buffer, pos, length);
+				pos += length;
+				offset += length;
+
+				if (pos == buffer.length) {
+					shipBuffer();
+				}
+			}
+		}
+
+		private void shipBuffer() {
+			if (pos == 0) {
+				return;
+			}
+
+			Chunk chunk = new Chunk(nextStartByte, buffer, pos);
+			nextStartByte += pos;
+			buffer = new byte[chunkSize];
+			pos = 0;
+
+			synchronized (pending) {
+				if (failed) {
+					// The end of job upload will pick up from the last chunk that made it.
+					return;
+				}
+				if (pending.size() >= maxPendingChunks || dropped) {
+					// Chunks have to be uploaded in order, so the rest of the log is left to the
+					// end of job upload too.
+					if (!dropped) {
+						logger.warn("Log upload of " + name + " for execution " + execId + " is " + maxPendingChunks + " chunks behind. The rest of the log will be uploaded when the job finishes.");
+						dropped = true;
+					}
+					chunkDropped();
+					return;
+				}
+
+				pending.add(chunk);
+				if (!uploading) {
+					uploading = true;
+					try {
+						uploadPool.submit(new Uploader());
+					} catch (RejectedExecutionException e) {
+						uploading = false;
+						failed = true;
+						pending.clear();
+						pending.notifyAll();
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			shipBuffer();
+		}
+
+		/**
+		 * Waits for the queued chunks to be uploaded. Returns false if the log couldn't be
+		 * completely uploaded, in which case the rest should be uploaded from the log files.
+		 */
+		public boolean waitForUpload(long timeoutMs) {
+			long endTime = System.currentTimeMillis() + timeoutMs;
+			synchronized (pending) {
+				// Chunks queued before any were dropped are still uploaded first, so the file upload
+				// doesn't write over them.
+				while ((uploading || !pending.isEmpty()) && !failed) {
+					long waitTime = endTime - System.currentTimeMillis();
+					if (waitTime <= 0) {
+						return false;
+					}
+					try {
+						pending.wait(waitTime);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				return !failed && !dropped;
+			}
+		}
+
+		@Override
+		public boolean requiresLayout() {
+			return true;
+		}
+
+		/**
+		 * Uploads the appender's chunks in order until none are left.
+		 */
+		private class Uploader implements Runnable {
+			@Override
+			public void run() {
+				while (true) {
+					Chunk chunk;
+					synchronized (pending) {
+						chunk = pending.peek();
+						if (chunk == null || failed) {
+							uploading = false;
+							pending.notifyAll();
+							return;
+						}
+					}
+
+					boolean uploaded = false;
+					for (int i = 0; i < MAX_UPLOAD_ATTEMPTS && !uploaded; ++i) {
+						try {
+							loader.uploadLogChunk(execId, name, attempt, chunk.startByte, chunk.buffer, chunk.length);
+							uploaded = true;
+						} catch (ExecutorManagerException e) {
+							logger.error("Error uploading log chunk of " + name + " for execution " + execId + " at " + chunk.startByte, e);
+							uploadFailed();
+						}
+					}
+
+					synchronized (pending) {
+						if (uploaded) {
+							chunkUploaded(chunk.length);
+							pending.poll();
+						}
+						else {
+							failed = true;
+							pending.clear();
+						}
+						pending.notifyAll();
+					}
+				}
+			}
+		}
+	}
+}
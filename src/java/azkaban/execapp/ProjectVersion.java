@@ -12,6 +12,7 @@ import azkaban.project.ProjectLoader;
 import azkaban.project.ProjectManagerException;
 
 import azkaban.utils.FileIOUtils;
+import azkaban.utils.FileIOUtils.LinkType;
 import azkaban.utils.Utils;
 
 public class ProjectVersion implements Comparable<ProjectVersion> {
@@ -56,7 +57,12 @@ public class ProjectVersion implements Comparable<ProjectVersion> {
 				if ("zip".equals(projectFileHandler.getFileType())) {
 					logger.info("Downloading zip file.");
 					ZipFile zip = new ZipFile(projectFileHandler.getLocalFile());
-					Utils.unzip(zip, tempDir);
+					try {
+						Utils.unzip(zip, tempDir);
+					}
+					finally {
+						zip.close();
+					}
 	
 					tempDir.renameTo(installedDir);
 				}
@@ -73,13 +79,21 @@ public class ProjectVersion implements Comparable<ProjectVersion> {
 	}
 	
 	public synchronized void copyCreateSymlinkDirectory(File executionDir) throws IOException {
+		copyCreateLinkedDirectory(executionDir, LinkType.SYMBOLIC, 1);
+	}
+	
+	/**
+	 * Links the installed project files into the execution directory. Returns the number of files
+	 * linked.
+	 */
+	public synchronized int copyCreateLinkedDirectory(File executionDir, LinkType linkType, int numShells) throws IOException {
 		if (installedDir == null || !installedDir.exists()) {
 			throw new IOException("Installed dir doesn't exist");
 		}
 		else if (executionDir == null || !executionDir.exists()) {
 			throw new IOException("Execution dir doesn't exist");
 		}
-		FileIOUtils.createDeepSymlink(installedDir, executionDir);
+		return FileIOUtils.createDeepLinks(installedDir, executionDir, linkType, numShells);
 	}
 	
 	public synchronized void deleteDirectory() throws IOException {
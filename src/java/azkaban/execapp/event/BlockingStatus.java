@@ -1,5 +1,8 @@
 package azkaban.execapp.event;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import azkaban.executor.Status;
 
 public class BlockingStatus {
@@ -7,6 +10,7 @@ public class BlockingStatus {
 	private final int execId;
 	private final String jobId;
 	private Status status;
+	private List<Runnable> finishListeners = new ArrayList<Runnable>();
 	
 	public BlockingStatus(int execId, String jobId, Status initialStatus) {
 		this.execId = execId;
@@ -41,11 +45,34 @@ public class BlockingStatus {
 		}
 	}
 	
+	/**
+	 * Runs the listener once the status has finished, or right away if it already has.
+	 */
+	public void addFinishListener(Runnable listener) {
+		synchronized(this) {
+			if (status != null && !Status.isStatusFinished(status)) {
+				finishListeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+	
 	public void changeStatus(Status status) {
+		List<Runnable> listeners = null;
 		synchronized(this) {
 			this.status = status;
 			if (Status.isStatusFinished(status)) {
 				unblock();
+				listeners = finishListeners;
+				finishListeners = new ArrayList<Runnable>();
+			}
+		}
+		
+		// Called outside the lock, since listeners may take locks of their own.
+		if (listeners != null) {
+			for (Runnable listener: listeners) {
+				listener.run();
 			}
 		}
 	}
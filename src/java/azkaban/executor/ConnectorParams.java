@@ -74,6 +74,11 @@ public interface ConnectorParams {
 	public static final String UPDATE_MAP_END_TIME = "endTime";
 	public static final String UPDATE_MAP_NODES = "nodes";
 	
+	public static final String PUSH_UPDATE_LIST_PARAM = "updates";
+	public static final String PUSH_HOST_PARAM = "host";
+	public static final String PUSH_PORT_PARAM = "port";
+	public static final String PUSH_SECRET_PARAM = "secret";
+	
 	public static final String JMX_GET_MBEANS = "getMBeans";
 	public static final String JMX_GET_MBEAN_INFO = "getMBeanInfo";
 	public static final String JMX_GET_MBEAN_ATTRIBUTE = "getAttribute";
@@ -3,6 +3,8 @@ package azkaban.executor;
 import java.util.HashMap;
 import java.util.Map;
 
+import azkaban.utils.ResourceUsage;
+
 public class ExecutableJobInfo {
 	private final int execId;
 	private final int projectId;
@@ -13,6 +15,7 @@ public class ExecutableJobInfo {
 	private final long endTime;
 	private final Status status;
 	private final int attempt;
+	private ResourceUsage resourceUsage = null;
 	
 	public ExecutableJobInfo(int execId, int projectId, int version, String flowId, String jobId, long startTime, long endTime, Status status, int attempt) {
 		this.execId = execId;
@@ -62,6 +65,17 @@ public class ExecutableJobInfo {
 		return attempt;
 	}
 	
+	/**
+	 * What the attempt's processes used, or null if it wasn't measured.
+	 */
+	public ResourceUsage getResourceUsage() {
+		return resourceUsage;
+	}
+	
+	public void setResourceUsage(ResourceUsage resourceUsage) {
+		this.resourceUsage = resourceUsage;
+	}
+	
 	public Map<String, Object> toObject() {
 		HashMap<String, Object> map = new HashMap<String, Object>();
 		map.put("execId", execId);
@@ -72,6 +86,9 @@ public class ExecutableJobInfo {
 		map.put("endTime", endTime);
 		map.put("status", status.toString());
 		map.put("attempt", attempt);
+		if (resourceUsage != null) {
+			map.put("resourceUsage", resourceUsage.toObject());
+		}
 		
 		return map;
 	}
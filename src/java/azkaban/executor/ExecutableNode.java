@@ -26,6 +26,7 @@ import java.util.Set;
 import azkaban.flow.Node;
 import azkaban.utils.JSONUtils;
 import azkaban.utils.Props;
+import azkaban.utils.ResourceUsage;
 
 public class ExecutableNode {
 	private String jobId;
@@ -51,6 +52,8 @@ public class ExecutableNode {
 	// Used if proxy node
 	private Integer externalExecutionId;
 	private ArrayList<Attempt> pastAttempts = null;
+	// Stored with the attempt's row in execution_jobs, not in the flow data.
+	private ResourceUsage resourceUsage = null;
 	
 	public ExecutableNode(Node node, ExecutableFlow flow) {
 		jobId = node.getId();
@@ -81,6 +84,7 @@ public class ExecutableNode {
 		endTime = -1;
 		updateTime = System.currentTimeMillis();
 		status = Status.READY;
+		resourceUsage = null;
 	}
 	
 	public void setExecutableFlow(ExecutableFlow flow) {
@@ -261,6 +265,17 @@ public class ExecutableNode {
 		return outputProps;
 	}
 
+	/**
+	 * What the processes of the current attempt used, or null if they weren't measured.
+	 */
+	public ResourceUsage getResourceUsage() {
+		return resourceUsage;
+	}
+
+	public void setResourceUsage(ResourceUsage resourceUsage) {
+		this.resourceUsage = resourceUsage;
+	}
+
 	public Integer getExternalExecutionId() {
 		return externalExecutionId;
 	}
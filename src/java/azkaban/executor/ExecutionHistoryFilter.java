@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Search criteria for the execution history. Project, flow, user and status filters are
+ * matched against the indexed execution_flows columns, so project names have to be resolved
+ * to ids by the caller. Unset criteria match everything.
+ */
+public class ExecutionHistoryFilter {
+	public enum MatchType {
+		EXACT,
+		PREFIX,
+		// Can't use an index. Only bounded by the page size when paging by execution id.
+		CONTAINS
+	}
+
+	private List<Integer> projectIds = null;
+	private String flowId = null;
+	private MatchType flowMatch = MatchType.EXACT;
+	private String submitUser = null;
+	private MatchType submitUserMatch = MatchType.EXACT;
+	private Status status = null;
+	private long startTime = -1;
+	private long endTime = -1;
+
+	public ExecutionHistoryFilter setProjectIds(Collection<Integer> projectIds) {
+		this.projectIds = projectIds == null ? null : new ArrayList<Integer>(projectIds);
+		return this;
+	}
+
+	public ExecutionHistoryFilter setFlowId(String flowId, MatchType match) {
+		this.flowId = flowId;
+		this.flowMatch = match;
+		return this;
+	}
+
+	public ExecutionHistoryFilter setSubmitUser(String submitUser, MatchType match) {
+		this.submitUser = submitUser;
+		this.submitUserMatch = match;
+		return this;
+	}
+
+	public ExecutionHistoryFilter setStatus(Status status) {
+		this.status = status;
+		return this;
+	}
+
+	/**
+	 * Only executions that started after the given time.
+	 */
+	public ExecutionHistoryFilter setStartTime(long startTime) {
+		this.startTime = startTime;
+		return this;
+	}
+
+	/**
+	 * Only executions that ended before the given time.
+	 */
+	public ExecutionHistoryFilter setEndTime(long endTime) {
+		this.endTime = endTime;
+		return this;
+	}
+
+	/**
+	 * Null if executions of any project match.
+	 */
+	public List<Integer> getProjectIds() {
+		return projectIds;
+	}
+
+	public String getFlowId() {
+		return flowId;
+	}
+
+	public MatchType getFlowMatch() {
+		return flowMatch;
+	}
+
+	public String getSubmitUser() {
+		return submitUser;
+	}
+
+	public MatchType getSubmitUserMatch() {
+		return submitUserMatch;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getEndTime() {
+		return endTime;
+	}
+}
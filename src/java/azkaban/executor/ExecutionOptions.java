@@ -16,6 +16,10 @@ public class ExecutionOptions {
 	public static final String CONCURRENT_OPTION_PIPELINE="pipeline";
 	public static final String CONCURRENT_OPTION_IGNORE="ignore";
 	
+	public static final int MIN_FLOW_PRIORITY = 1;
+	public static final int DEFAULT_FLOW_PRIORITY = 5;
+	public static final int MAX_FLOW_PRIORITY = 10;
+	
 	private boolean notifyOnFirstFailure = true;
 	private boolean notifyOnLastFailure = false;
 	private boolean failureEmailsOverride = false;
@@ -26,6 +30,7 @@ public class ExecutionOptions {
 	private Integer pipelineLevel = null;
 	private Integer pipelineExecId = null;
 	private Integer queueLevel = 0;
+	private int flowPriority = DEFAULT_FLOW_PRIORITY;
 	private String concurrentOption = CONCURRENT_OPTION_IGNORE;
 	private Map<String, String> flowParameters = new HashMap<String, String>();
 	
@@ -131,6 +136,18 @@ public class ExecutionOptions {
 		return queueLevel;
 	}
 	
+	/**
+	 * Relative priority of the flow on the executor. Higher priority flows get a larger
+	 * share of the executor's job slots.
+	 */
+	public int getFlowPriority() {
+		return flowPriority;
+	}
+	
+	public void setFlowPriority(int flowPriority) {
+		this.flowPriority = Math.max(MIN_FLOW_PRIORITY, Math.min(MAX_FLOW_PRIORITY, flowPriority));
+	}
+	
 	public List<String> getDisabledJobs() {
 		return new ArrayList<String>(initiallyDisabledJobs);
 	}
@@ -151,6 +168,7 @@ public class ExecutionOptions {
 		flowOptionObj.put("pipelineLevel", pipelineLevel);
 		flowOptionObj.put("pipelineExecId", pipelineExecId);
 		flowOptionObj.put("queueLevel", queueLevel);
+		flowOptionObj.put("flowPriority", flowPriority);
 		flowOptionObj.put("concurrentOption", concurrentOption);
 		flowOptionObj.put("disabled", initiallyDisabledJobs);
 		flowOptionObj.put("failureEmailsOverride", failureEmailsOverride);
@@ -181,7 +199,7 @@ public class ExecutionOptions {
 			options.concurrentOption = (String)optionsMap.get("concurrentOption");
 		}
 		if (optionsMap.containsKey("disabled")) {
-			options.initiallyDisabledJobs = new HashSet<String>((List<String>)optionsMap.get("disabled"));
+			options.initiallyDisabledJobs = new HashSet<String>((Collection<String>)optionsMap.get("disabled"));
 		}
 		
 		// Failure action
@@ -191,6 +209,9 @@ public class ExecutionOptions {
 		options.pipelineLevel = (Integer)optionsMap.get("pipelineLevel");
 		options.pipelineExecId = (Integer)optionsMap.get("pipelineExecId");
 		options.queueLevel = (Integer)optionsMap.get("queueLevel");
+		if (optionsMap.containsKey("flowPriority")) {
+			options.setFlowPriority((Integer)optionsMap.get("flowPriority"));
+		}
 		
 		// Success emails
 		if (optionsMap.containsKey("successEmails")) {
@@ -7,6 +7,7 @@ public class ExecutionReference {
 	private long updateTime;
 	private long nextCheckTime = -1;
 	private int numErrors = 0;
+	private long lastPushTime = -1;
 	
 	public ExecutionReference(int execId, String host, int port) {
 		this.execId = execId;
@@ -49,4 +50,12 @@ public class ExecutionReference {
 	public void setNumErrors(int numErrors) {
 		this.numErrors = numErrors;
 	}
- }
\ No newline at end of file
+
+	public long getLastPushTime() {
+		return lastPushTime;
+	}
+
+	public void setLastPushTime(long lastPushTime) {
+		this.lastPushTime = lastPushTime;
+	}
+ }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+
+import azkaban.utils.Props;
+
+/**
+ * Shared http client used between the web server and the executors. Connections
+ * are pooled and kept alive per host:port, so the updater thread and the ajax
+ * calls don't open a new socket for every request.
+ */
+public class ExecutorHttpClient {
+	private static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+	private static final int DEFAULT_SOCKET_TIMEOUT_MS = 60000;
+	private static final int DEFAULT_MAX_PER_ROUTE = 20;
+	private static final int DEFAULT_MAX_TOTAL = 100;
+	private static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+
+	private final PoolingClientConnectionManager connectionManager;
+	private final DefaultHttpClient httpClient;
+	private final long idleTimeoutMs;
+
+	public ExecutorHttpClient(Props props) {
+		connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+		connectionManager.setDefaultMaxPerRoute(props.getInt("executor.connection.max.per.route", DEFAULT_MAX_PER_ROUTE));
+		connectionManager.setMaxTotal(props.getInt("executor.connection.max.total", DEFAULT_MAX_TOTAL));
+
+		httpClient = new DefaultHttpClient(connectionManager);
+		HttpParams params = httpClient.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, props.getInt("executor.connection.timeout.ms", DEFAULT_CONNECT_TIMEOUT_MS));
+		HttpConnectionParams.setSoTimeout(params, props.getInt("executor.socket.timeout.ms", DEFAULT_SOCKET_TIMEOUT_MS));
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		HttpConnectionParams.setTcpNoDelay(params, true);
+
+		idleTimeoutMs = props.getLong("executor.connection.idle.timeout.ms", DEFAULT_IDLE_TIMEOUT_MS);
+	}
+
+	/**
+	 * Issues a GET and returns the body. The connection is released back into the pool
+	 * by the response handler once the entity has been consumed.
+	 */
+	public String httpGet(URI uri) throws IOException {
+		return execute(new HttpGet(uri));
+	}
+
+	/**
+	 * Issues a GET that gives up if the response stalls for longer than the given timeout,
+	 * instead of the client wide socket timeout.
+	 */
+	public String httpGet(URI uri, int socketTimeoutMs) throws IOException {
+		HttpGet httpget = new HttpGet(uri);
+		HttpConnectionParams.setSoTimeout(httpget.getParams(), socketTimeoutMs);
+		return execute(httpget);
+	}
+
+	/**
+	 * Issues a form encoded POST and returns the body.
+	 */
+	public String httpPost(URI uri, List<NameValuePair> params) throws IOException {
+		HttpPost httppost = new HttpPost(uri);
+		httppost.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+		return execute(httppost);
+	}
+
+	private String execute(HttpRequestBase request) throws IOException {
+		ResponseHandler<String> responseHandler = new BasicResponseHandler();
+		try {
+			return httpClient.execute(request, responseHandler);
+		}
+		catch (IOException e) {
+			request.abort();
+			throw e;
+		}
+		catch (RuntimeException e) {
+			request.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes expired connections and the ones that have been idle longer than the timeout.
+	 */
+	public void closeIdleConnections() {
+		connectionManager.closeExpiredConnections();
+		connectionManager.closeIdleConnections(idleTimeoutMs, TimeUnit.MILLISECONDS);
+	}
+
+	public PoolStats getTotalStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	public PoolStats getStats(String host, int port) {
+		return connectionManager.getStats(new HttpRoute(new HttpHost(host, port)));
+	}
+
+	public int getMaxPerRoute() {
+		return connectionManager.getDefaultMaxPerRoute();
+	}
+
+	public int getMaxTotal() {
+		return connectionManager.getMaxTotal();
+	}
+
+	public void shutdown() {
+		connectionManager.shutdown();
+	}
+}
@@ -39,6 +39,21 @@ public interface ExecutorLoader {
 
 	public List<ExecutableFlow> fetchFlowHistory(String projContain, String flowContains, String userNameContains, int status, long startData, long endData, int skip, int num) throws ExecutorManagerException;
 
+	public List<ExecutionSummary> fetchExecutionSummaries(int skip, int num) throws ExecutorManagerException;
+
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num) throws ExecutorManagerException;
+
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num, Status status) throws ExecutorManagerException;
+
+	public List<ExecutionSummary> fetchExecutionSummaries(String projContain, String flowContains, String userNameContains, int status, long startData, long endData, int skip, int num) throws ExecutorManagerException;
+
+	/**
+	 * Returns up to num summaries matching the filter, newest first. Pages are found by seeking
+	 * on exec_id: only executions older than beforeExecId, or newer than afterExecId, are
+	 * returned when they're positive.
+	 */
+	public List<ExecutionSummary> fetchExecutionSummaries(ExecutionHistoryFilter filter, int beforeExecId, int afterExecId, int num) throws ExecutorManagerException;
+
 	public void addActiveExecutableReference(ExecutionReference ref) throws ExecutorManagerException;
 
 	public void removeActiveExecutableReference(int execId) throws ExecutorManagerException;
@@ -49,8 +64,24 @@ public interface ExecutorLoader {
 
 	public void uploadLogFile(int execId, String name, int attempt, File ... files) throws ExecutorManagerException;
 
+	/**
+	 * Uploads one chunk of a log that is still being written. Chunks must be uploaded in order.
+	 */
+	public void uploadLogChunk(int execId, String name, int attempt, int startByte, byte[] buffer, int length) throws ExecutorManagerException;
+
+	/**
+	 * Returns the end of the part of the log that has been uploaded without gaps. 0 if none of it has.
+	 */
+	public int fetchLogEndByte(int execId, String name, int attempt) throws ExecutorManagerException;
+
 	public void updateExecutableFlow(ExecutableFlow flow) throws ExecutorManagerException;
 
+	/**
+	 * Stores only the flow status and the nodes that changed after lastUpdateTime. The next
+	 * updateExecutableFlow call rewrites the whole flow and drops the stored deltas.
+	 */
+	public void updateExecutableFlowDelta(ExecutableFlow flow, long lastUpdateTime) throws ExecutorManagerException;
+
 	public void uploadExecutableNode(ExecutableNode node, Props inputParams) throws ExecutorManagerException; 
 
 	public List<ExecutableJobInfo> fetchJobInfoAttempts(int execId, String jobId) throws ExecutorManagerException;
@@ -20,22 +20,28 @@ import java.io.IOException;
 import java.lang.Thread.State;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.pool.PoolStats;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 
@@ -44,8 +50,14 @@ import azkaban.scheduler.ScheduleStatisticManager;
 import azkaban.utils.FileIOUtils.JobMetaData;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.JSONUtils;
+import azkaban.utils.LatencyHistogram;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
+import azkaban.utils.cache.Cache;
+import azkaban.utils.cache.Cache.EjectionPolicy;
+import azkaban.utils.cache.CacheManager;
+
+import com.google.common.base.Charsets;
 
 /**
  * Executor manager used to manage the client side job.
@@ -63,13 +75,37 @@ public class ExecutorManager {
 	private ConcurrentHashMap<Integer, ExecutableFlow> recentlyFinished = new ConcurrentHashMap<Integer, ExecutableFlow>();
 
 	private ExecutorMailer mailer;
+	private ExecutorHttpClient httpClient;
 	private ExecutingManagerUpdaterThread executingManager;
 	
+	// Pushed and polled updates are applied one batch at a time.
+	private final Object updateSync = new Object();
+	private static final long DEFAULT_PUSH_TIMEOUT_MS = 15000;
+	private long pushTimeoutMs = DEFAULT_PUSH_TIMEOUT_MS;
+	private byte[] pushSecret;
+	private long numPushedUpdates = 0;
+	private long lastPushedUpdateTime = -1;
+	private Set<String> mismatchedPushSources = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
 	private static final long DEFAULT_EXECUTION_LOGS_RETENTION_MS = 3*4*7*24*60*60*1000l;
 	private long lastCleanerThreadCheckTime = -1;
 	
 	private long lastThreadCheckTime = -1;
 	
+	// Update polls to the executors run in parallel, each with its own deadline.
+	private static final int DEFAULT_UPDATE_THREADS = 8;
+	private static final int DEFAULT_UPDATE_TIMEOUT_MS = 10000;
+	private static final long QUEUED_POLL_CHECK_MS = 100;
+	private ExecutorService pollService;
+	private int updateTimeoutMs = DEFAULT_UPDATE_TIMEOUT_MS;
+	private ConcurrentHashMap<ConnectionInfo, ExecutorPollState> pollStates = new ConcurrentHashMap<ConnectionInfo, ExecutorPollState>();
+	
+	// Finished flows looked up by id, bounded by their estimated size.
+	private static final long DEFAULT_FINISHED_FLOW_CACHE_MB = 100;
+	private static final long FLOW_BASE_WEIGHT = 2048;
+	private static final long NODE_WEIGHT = 768;
+	private Cache finishedFlowCache;
+	
 	public ExecutorManager(Props props, ExecutorLoader loader) throws ExecutorManagerException {
 		this.executorLoader = loader;
 		this.loadRunningFlows();
@@ -77,6 +113,25 @@ public class ExecutorManager {
 		executorHost = props.getString("executor.host", "localhost");
 		executorPort = props.getInt("executor.port");
 		mailer = new ExecutorMailer(props);
+		httpClient = new ExecutorHttpClient(props);
+		pushTimeoutMs = props.getLong("executor.push.timeout.ms", DEFAULT_PUSH_TIMEOUT_MS);
+		if (props.containsKey("executor.push.secret")) {
+			pushSecret = props.getString("executor.push.secret").getBytes(Charsets.UTF_8);
+		}
+		updateTimeoutMs = props.getInt("executor.update.timeout.ms", DEFAULT_UPDATE_TIMEOUT_MS);
+		finishedFlowCache = CacheManager.getInstance().createCache();
+		finishedFlowCache.setEjectionPolicy(EjectionPolicy.LRU);
+		finishedFlowCache.setMaxWeight(props.getLong("executor.finished.flow.cache.mb", DEFAULT_FINISHED_FLOW_CACHE_MB) * 1024 * 1024);
+		pollService = Executors.newFixedThreadPool(props.getInt("executor.update.threads", DEFAULT_UPDATE_THREADS), new ThreadFactory() {
+			private int threadNum = 0;
+			
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ExecutorManager-Poller-Thread-" + threadNum++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 		executingManager = new ExecutingManagerUpdaterThread();
 		executingManager.start();
 
@@ -109,6 +164,29 @@ public class ExecutorManager {
 		return this.lastCleanerThreadCheckTime;
 	}
 	
+	public PoolStats getConnectionPoolStats() {
+		return httpClient.getTotalStats();
+	}
+	
+	public PoolStats getConnectionPoolStats(String host, int port) {
+		return httpClient.getStats(host, port);
+	}
+	
+	public int getConnectionPoolMaxPerRoute() {
+		return httpClient.getMaxPerRoute();
+	}
+	
+	/**
+	 * Poll latency and backoff state of each executor that has been polled for updates.
+	 */
+	public List<String> getPollStatsByExecutor() {
+		ArrayList<String> stats = new ArrayList<String>();
+		for (Map.Entry<ConnectionInfo, ExecutorPollState> entry: pollStates.entrySet()) {
+			stats.add(entry.getKey().getHost() + ":" + entry.getKey().getPort() + " " + entry.getValue().toString());
+		}
+		return stats;
+	}
+	
 	public Set<String> getPrimaryServerHosts() {
 		// Only one for now. More probably later.
 		HashSet<String> ports = new HashSet<String>();
@@ -158,12 +236,58 @@ public class ExecutorManager {
 		Pair<ExecutionReference, ExecutableFlow> active = runningFlows.get(execId);
 		
 		if (active == null) {
-			return executorLoader.fetchExecutableFlow(execId);
+			ExecutableFlow flow = recentlyFinished.get(execId);
+			if (flow != null) {
+				return flow;
+			}
+			
+			// Finished flows never change, so they can be served from memory.
+			flow = finishedFlowCache.<ExecutableFlow>get(execId);
+			if (flow != null) {
+				return flow;
+			}
+			
+			flow = executorLoader.fetchExecutableFlow(execId);
+			if (flow != null && isFinished(flow)) {
+				cacheFinishedFlow(flow);
+			}
+			return flow;
 		}
 
 		return active.getSecond();
 	}
 	
+	private void cacheFinishedFlow(ExecutableFlow flow) {
+		finishedFlowCache.insertElement(flow.getExecutionId(), flow, estimateFlowWeight(flow));
+	}
+	
+	/**
+	 * Rough estimate of the heap used by a loaded flow, in bytes.
+	 */
+	private static long estimateFlowWeight(ExecutableFlow flow) {
+		return FLOW_BASE_WEIGHT + (long)flow.getExecutableNodes().size() * NODE_WEIGHT;
+	}
+	
+	public int getFinishedFlowCacheSize() {
+		return finishedFlowCache.getSize();
+	}
+	
+	public long getFinishedFlowCacheWeight() {
+		return finishedFlowCache.getWeight();
+	}
+	
+	public long getFinishedFlowCacheHits() {
+		return finishedFlowCache.getNumHits();
+	}
+	
+	public long getFinishedFlowCacheMisses() {
+		return finishedFlowCache.getNumMisses();
+	}
+	
+	public long getFinishedFlowCacheEvictions() {
+		return finishedFlowCache.getNumEvictions();
+	}
+	
 	public List<ExecutableFlow> getRunningFlows() {
 		ArrayList<ExecutableFlow> flows = new ArrayList<ExecutableFlow>();
 		for (Pair<ExecutionReference, ExecutableFlow> ref : runningFlows.values()) {
@@ -196,6 +320,38 @@ public class ExecutorManager {
 		return flows;
 	}
 	
+	/**
+	 * Lists executions without loading their flow data. Use these for history listings.
+	 */
+	public List<ExecutionSummary> getExecutionSummaries(int skip, int size) throws ExecutorManagerException {
+		return executorLoader.fetchExecutionSummaries(skip, size);
+	}
+	
+	public List<ExecutionSummary> getExecutionSummaries(String flowIdContains, int skip, int size) throws ExecutorManagerException {
+		return executorLoader.fetchExecutionSummaries(null, '%'+flowIdContains+'%', null, 0, -1, -1 , skip, size);
+	}
+	
+	public List<ExecutionSummary> getExecutionSummaries(String projContain, String flowContain, String userContain, int status, long begin, long end, int skip, int size) throws ExecutorManagerException {
+		return executorLoader.fetchExecutionSummaries(projContain, flowContain, userContain, status, begin, end , skip, size);
+	}
+	
+	public int getExecutionSummaries(int projectId, String flowId, int from, int length, List<ExecutionSummary> outputList) throws ExecutorManagerException {
+		outputList.addAll(executorLoader.fetchExecutionSummaries(projectId, flowId, from, length));
+		return executorLoader.fetchNumExecutableFlows(projectId, flowId);
+	}
+	
+	public List<ExecutionSummary> getExecutionSummaries(int projectId, String flowId, int from, int length, Status status) throws ExecutorManagerException {
+		return executorLoader.fetchExecutionSummaries(projectId, flowId, from, length, status);
+	}
+	
+	/**
+	 * Pages through the history by execution id. Pass the oldest id of the current page as
+	 * beforeExecId for the next page, or the newest as afterExecId for the previous one.
+	 */
+	public List<ExecutionSummary> getExecutionSummaries(ExecutionHistoryFilter filter, int beforeExecId, int afterExecId, int size) throws ExecutorManagerException {
+		return executorLoader.fetchExecutionSummaries(filter, beforeExecId, afterExecId, size);
+	}
+	
 	public List<ExecutableJobInfo> getExecutableJobs(Project project, String jobId, int skip, int size) throws ExecutorManagerException {
 		List<ExecutableJobInfo> nodes = executorLoader.fetchJobHistory(project.getId(), jobId, skip, size);
 		return nodes;
@@ -466,6 +622,10 @@ public class ExecutorManager {
 	}
 	
 	private Map<String, Object> callExecutorServer(String host, int port, String action, Integer executionId, String user, Pair<String,String> ... params) throws IOException {
+		return callExecutorServer(host, port, action, executionId, user, -1, params == null ? null : Arrays.asList(params));
+	}
+	
+	private Map<String, Object> callExecutorServer(String host, int port, String action, Integer executionId, String user, int timeoutMs, List<Pair<String,String>> params) throws IOException {
 		URIBuilder builder = new URIBuilder();
 		builder.setScheme("http")
 			.setHost(host)
@@ -495,19 +655,7 @@ public class ExecutorManager {
 			throw new IOException(e);
 		}
 		
-		ResponseHandler<String> responseHandler = new BasicResponseHandler();
-		
-		HttpClient httpclient = new DefaultHttpClient();
-		HttpGet httpget = new HttpGet(uri);
-		String response = null;
-		try {
-			response = httpclient.execute(httpget, responseHandler);
-		} catch (IOException e) {
-			throw e;
-		}
-		finally {
-			httpclient.getConnectionManager().shutdown();
-		}
+		String response = timeoutMs > 0 ? httpClient.httpGet(uri, timeoutMs) : httpClient.httpGet(uri);
 		
 		@SuppressWarnings("unchecked")
 		Map<String, Object> jsonResponse = (Map<String, Object>)JSONUtils.parseJSONFromString(response);
@@ -540,19 +688,7 @@ public class ExecutorManager {
 			throw new IOException(e);
 		}
 		
-		ResponseHandler<String> responseHandler = new BasicResponseHandler();
-		
-		HttpClient httpclient = new DefaultHttpClient();
-		HttpGet httpget = new HttpGet(uri);
-		String response = null;
-		try {
-			response = httpclient.execute(httpget, responseHandler);
-		} catch (IOException e) {
-			throw e;
-		}
-		finally {
-			httpclient.getConnectionManager().shutdown();
-		}
+		String response = httpClient.httpGet(uri);
 		
 		@SuppressWarnings("unchecked")
 		Map<String, Object> jsonResponse = (Map<String, Object>)JSONUtils.parseJSONFromString(response);
@@ -565,6 +701,125 @@ public class ExecutorManager {
 	
 	public void shutdown() {
 		executingManager.shutdown();
+		pollService.shutdownNow();
+		CacheManager.getInstance().removeCache(finishedFlowCache);
+		httpClient.shutdown();
+	}
+	
+	private ExecutorPollState getPollState(ConnectionInfo connection) {
+		ExecutorPollState state = pollStates.get(connection);
+		if (state == null) {
+			pollStates.putIfAbsent(connection, new ExecutorPollState());
+			state = pollStates.get(connection);
+		}
+		return state;
+	}
+	
+	/**
+	 * Fetches the updates of one executor's flows.
+	 */
+	private class UpdatePoller implements Callable<Map<String, Object>> {
+		private final ConnectionInfo connection;
+		private final ExecutorPollState state;
+		private final List<Pair<String,String>> params = new ArrayList<Pair<String,String>>();
+		private volatile long startTime = -1;
+		private Future<Map<String, Object>> future;
+		
+		private UpdatePoller(ConnectionInfo connection, ExecutorPollState state, Pair<String,String> executionIds, Pair<String,String> updateTimes) {
+			this.connection = connection;
+			this.state = state;
+			params.add(executionIds);
+			params.add(updateTimes);
+		}
+		
+		private void submit() {
+			future = pollService.submit(this);
+			state.setInFlight(future);
+		}
+		
+		@Override
+		public Map<String, Object> call() throws IOException {
+			startTime = System.currentTimeMillis();
+			try {
+				return callExecutorServer(connection.getHost(), connection.getPort(), ConnectorParams.UPDATE_ACTION, null, null, updateTimeoutMs, params);
+			}
+			finally {
+				state.recordLatency(System.currentTimeMillis() - startTime);
+			}
+		}
+		
+		/**
+		 * Waits for the poll's result. The timeout runs from when the poll starts, so time
+		 * spent queued behind the polls of other executors doesn't count against it.
+		 */
+		private Map<String, Object> getResult() throws InterruptedException, ExecutionException, TimeoutException {
+			while (true) {
+				long started = startTime;
+				if (started >= 0) {
+					return future.get(Math.max(0, started + updateTimeoutMs - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				}
+				else if (pollService.isShutdown()) {
+					throw new InterruptedException("Poll service is shut down.");
+				}
+				
+				try {
+					return future.get(QUEUED_POLL_CHECK_MS, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// Still queued, or only just started.
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Per executor poll bookkeeping. An executor isn't polled again while its last poll is still
+	 * running or while it's backed off after repeated failures.
+	 */
+	private static class ExecutorPollState {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private Future<?> inFlight;
+		private int consecutiveFailures = 0;
+		private long backoffUntil = -1;
+		private long numFailures = 0;
+		
+		private synchronized boolean canPoll(long now) {
+			return (inFlight == null || inFlight.isDone()) && now >= backoffUntil;
+		}
+		
+		private synchronized void setInFlight(Future<?> inFlight) {
+			this.inFlight = inFlight;
+		}
+		
+		private void recordLatency(long latencyMs) {
+			latency.record(latencyMs);
+		}
+		
+		private synchronized void pollSucceeded() {
+			consecutiveFailures = 0;
+			backoffUntil = -1;
+		}
+		
+		/**
+		 * Returns how long to wait before polling the executor's flows again.
+		 */
+		private synchronized long pollFailed(long errorThreshold, int breakerFailures, long maxBackoffMs) {
+			consecutiveFailures++;
+			numFailures++;
+			if (consecutiveFailures < breakerFailures) {
+				return errorThreshold;
+			}
+			
+			int doublings = Math.min(consecutiveFailures - breakerFailures + 1, 16);
+			long backoff = Math.min(errorThreshold << doublings, maxBackoffMs);
+			backoffUntil = System.currentTimeMillis() + backoff;
+			return backoff;
+		}
+		
+		@Override
+		public synchronized String toString() {
+			return "latency " + latency.toString() + " failures=" + numFailures + " consecutiveFailures=" + consecutiveFailures + 
+					(backoffUntil > System.currentTimeMillis() ? " backedOffFor=" + (backoffUntil - System.currentTimeMillis()) + "ms" : "");
+		}
 	}
 	
 	private class ExecutingManagerUpdaterThread extends Thread {
@@ -583,22 +838,68 @@ public class ExecutorManager {
 		private int numErrors = 6;
 		private long errorThreshold = 10000;
 		
+		// After this many failed polls in a row, back off the executor exponentially up to the max.
+		private int breakerFailures = 3;
+		private long maxBackoffMs = 60000;
+		
+		// Pooled connections to the executors are reaped every 30 secs.
+		private long idleConnectionCheckMs = 30000;
+		private long lastIdleConnectionCheck = -1;
+		
 		private void shutdown() {
 			shutdown = true;
 		}
 		
+		/**
+		 * Pushes back the next check of the executor's flows. Once the executor has failed
+		 * breakerFailures times in a row, it isn't polled at all until the backoff, which
+		 * doubles with every further failure, runs out.
+		 */
+		private void handlePollFailure(ExecutorPollState state, List<ExecutableFlow> flows, List<ExecutableFlow> finalizeFlows) {
+			long backoff = state.pollFailed(errorThreshold, breakerFailures, maxBackoffMs);
+			for (ExecutableFlow flow: flows) {
+				Pair<ExecutionReference, ExecutableFlow> pair = runningFlows.get(flow.getExecutionId());
+				if (pair != null) {
+					ExecutionReference ref = pair.getFirst();
+					int numErrors = ref.getNumErrors();
+					if (ref.getNumErrors() < this.numErrors) {
+						ref.setNextCheckTime(System.currentTimeMillis() + backoff);
+						ref.setNumErrors(++numErrors);
+					}
+					else {
+						logger.error("Evicting flow " + flow.getExecutionId() + ". The executor is unresponsive.");
+						//TODO should send out an unresponsive email here.
+						finalizeFlows.add(pair.getSecond());
+					}
+				}
+			}
+		}
+		
 		@SuppressWarnings("unchecked")
 		public void run() {
 			while(!shutdown) {
 				try {
 					lastThreadCheckTime = System.currentTimeMillis();
+					if (lastThreadCheckTime - lastIdleConnectionCheck > idleConnectionCheckMs) {
+						httpClient.closeIdleConnections();
+						lastIdleConnectionCheck = lastThreadCheckTime;
+					}
 					
 					Map<ConnectionInfo, List<ExecutableFlow>> exFlowMap = getFlowToExecutorMap();
 					ArrayList<ExecutableFlow> finishedFlows = new ArrayList<ExecutableFlow>();
 					ArrayList<ExecutableFlow> finalizeFlows = new ArrayList<ExecutableFlow>();
 					
 					if (exFlowMap.size() > 0) {
+						// Poll every executor at once, so a slow executor only delays its own flows.
+						long cycleStart = System.currentTimeMillis();
+						Map<ConnectionInfo, UpdatePoller> polls = new HashMap<ConnectionInfo, UpdatePoller>();
 						for (Map.Entry<ConnectionInfo, List<ExecutableFlow>> entry: exFlowMap.entrySet()) {
+							ConnectionInfo connection = entry.getKey();
+							ExecutorPollState state = getPollState(connection);
+							if (!state.canPoll(cycleStart)) {
+								continue;
+							}
+							
 							List<Long> updateTimesList = new ArrayList<Long>();
 							List<Integer> executionIdsList = new ArrayList<Integer>();
 						
@@ -612,68 +913,46 @@ public class ExecutorManager {
 									ConnectorParams.EXEC_ID_LIST_PARAM, 
 									JSONUtils.toJSON(executionIdsList));
 							
+							UpdatePoller poller = new UpdatePoller(connection, state, executionIds, updateTimes);
+							poller.submit();
+							polls.put(connection, poller);
+						}
+						
+						for (Map.Entry<ConnectionInfo, UpdatePoller> entry: polls.entrySet()) {
 							ConnectionInfo connection = entry.getKey();
+							ExecutorPollState state = getPollState(connection);
 							Map<String, Object> results = null;
 							try {
-								results = callExecutorServer(connection.getHost(), connection.getPort(), ConnectorParams.UPDATE_ACTION, null, null, executionIds, updateTimes);
-							} catch (IOException e) {
-								logger.error(e);
-								for (ExecutableFlow flow: entry.getValue()) {
-									Pair<ExecutionReference, ExecutableFlow> pair = runningFlows.get(flow.getExecutionId());
-									if (pair != null) {
-										ExecutionReference ref = pair.getFirst();
-										int numErrors = ref.getNumErrors();
-										if (ref.getNumErrors() < this.numErrors) {
-											ref.setNextCheckTime(System.currentTimeMillis() + errorThreshold);
-											ref.setNumErrors(++numErrors);
-										}
-										else {
-											logger.error("Evicting flow " + flow.getExecutionId() + ". The executor is unresponsive.");
-											//TODO should send out an unresponsive email here.
-											finalizeFlows.add(pair.getSecond());
-										}
-									}
-								}
+								results = entry.getValue().getResult();
+								state.pollSucceeded();
+							} catch (TimeoutException e) {
+								logger.error("Update from executor " + connection.getHost() + ":" + connection.getPort() + " timed out after " + updateTimeoutMs + " ms.");
+								handlePollFailure(state, exFlowMap.get(connection), finalizeFlows);
+							} catch (ExecutionException e) {
+								logger.error(e.getCause());
+								handlePollFailure(state, exFlowMap.get(connection), finalizeFlows);
+							} catch (InterruptedException e) {
+								// Woken up to shut down. The results are picked up next time around.
+								break;
 							}
 							
 							// We gets results
 							if (results != null) {
 								List<Map<String,Object>> executionUpdates = (List<Map<String,Object>>)results.get(ConnectorParams.RESPONSE_UPDATED_FLOWS);
-								for (Map<String,Object> updateMap: executionUpdates) {
-									try {
-										ExecutableFlow flow = updateExecution(updateMap);
-										if (isFinished(flow)) {
-											finishedFlows.add(flow);
-											finalizeFlows.add(flow);
-										}
-									} catch (ExecutorManagerException e) {
-										ExecutableFlow flow = e.getExecutableFlow();
-										logger.error(e);
-
-										if (flow != null) {
-											logger.error("Finalizing flow " + flow.getExecutionId());
-											finalizeFlows.add(flow);
-										}
-									}
+								synchronized(updateSync) {
+									applyUpdates(executionUpdates, false, finishedFlows, finalizeFlows);
 								}
 							}
 						}
 	
-						evictOldRecentlyFinished(recentlyFinishedLifetimeMs);
-						// Add new finished
-						for (ExecutableFlow flow: finishedFlows) {
-							if(flow.getScheduleId() >= 0 && flow.getStatus() == Status.SUCCEEDED){
-								ScheduleStatisticManager.invalidateCache(flow.getScheduleId());
-							}
-							recentlyFinished.put(flow.getExecutionId(), flow);
-						}
-						
-						// Kill error flows
-						for (ExecutableFlow flow: finalizeFlows) {
-							finalizeFlows(flow);
+						synchronized(updateSync) {
+							completeFlows(finishedFlows, finalizeFlows);
 						}
 					}
 					
+					// Flows finished through pushed updates also need evicting, so this runs even without polling.
+					evictOldRecentlyFinished(recentlyFinishedLifetimeMs);
+					
 					synchronized(this) {
 						try {
 							if (runningFlows.size() > 0) {
@@ -693,8 +972,105 @@ public class ExecutorManager {
 		}
 	}
 	
+	/**
+	 * Pushes are only accepted when the web server and the executors share the same
+	 * executor.push.secret. Without one, pushing is disabled.
+	 */
+	public boolean isValidPushSecret(String secret) {
+		if (pushSecret == null || secret == null) {
+			return false;
+		}
+		
+		return MessageDigest.isEqual(pushSecret, secret.getBytes(Charsets.UTF_8));
+	}
+	
+	/**
+	 * Applies updates pushed by the executor at host:port. Updates for flows that
+	 * were not dispatched to that executor are ignored. Flows that receive pushes are
+	 * skipped by the updater thread until the pushes stop for longer than the push timeout.
+	 * 
+	 * The executor identifies itself by its executor.host and executor.port, which have to
+	 * match the ones the web server dispatched the flow to.
+	 */
+	public void handlePushedUpdates(String host, int port, List<Map<String,Object>> executionUpdates) {
+		ArrayList<Map<String,Object>> ownUpdates = new ArrayList<Map<String,Object>>();
+		for (Map<String,Object> updateMap: executionUpdates) {
+			Object execId = updateMap.get(ConnectorParams.UPDATE_MAP_EXEC_ID);
+			Pair<ExecutionReference, ExecutableFlow> refPair = execId instanceof Integer ? runningFlows.get(execId) : null;
+			if (refPair == null) {
+				continue;
+			}
+			
+			ExecutionReference ref = refPair.getFirst();
+			if (!ref.getHost().equals(host) || ref.getPort() != port) {
+				if (mismatchedPushSources.add(host + ":" + port)) {
+					logger.warn("Ignoring updates pushed by " + host + ":" + port + " for execution " + execId + ", which runs on " + ref.getHost() + ":" + ref.getPort() + 
+							". Set executor.host on the executor to the host the web server uses for it. Only the first of these is logged.");
+				}
+				continue;
+			}
+			ownUpdates.add(updateMap);
+		}
+		
+		ArrayList<ExecutableFlow> finishedFlows = new ArrayList<ExecutableFlow>();
+		ArrayList<ExecutableFlow> finalizeFlows = new ArrayList<ExecutableFlow>();
+		synchronized(updateSync) {
+			applyUpdates(ownUpdates, true, finishedFlows, finalizeFlows);
+			completeFlows(finishedFlows, finalizeFlows);
+			numPushedUpdates += ownUpdates.size();
+			lastPushedUpdateTime = System.currentTimeMillis();
+		}
+	}
+	
+	public long getNumPushedUpdates() {
+		return numPushedUpdates;
+	}
+	
+	public long getLastPushedUpdateTime() {
+		return lastPushedUpdateTime;
+	}
+	
+	private void applyUpdates(List<Map<String,Object>> executionUpdates, boolean pushed, List<ExecutableFlow> finishedFlows, List<ExecutableFlow> finalizeFlows) {
+		for (Map<String,Object> updateMap: executionUpdates) {
+			try {
+				ExecutableFlow flow = updateExecution(updateMap, pushed);
+				if (isFinished(flow)) {
+					finishedFlows.add(flow);
+					finalizeFlows.add(flow);
+				}
+			} catch (ExecutorManagerException e) {
+				ExecutableFlow flow = e.getExecutableFlow();
+				logger.error(e);
+
+				if (flow != null) {
+					logger.error("Finalizing flow " + flow.getExecutionId());
+					finalizeFlows.add(flow);
+				}
+			}
+		}
+	}
+	
+	private void completeFlows(List<ExecutableFlow> finishedFlows, List<ExecutableFlow> finalizeFlows) {
+		// Add new finished
+		for (ExecutableFlow flow: finishedFlows) {
+			if(flow.getScheduleId() >= 0 && flow.getStatus() == Status.SUCCEEDED){
+				ScheduleStatisticManager.invalidateCache(flow.getScheduleId());
+			}
+			recentlyFinished.put(flow.getExecutionId(), flow);
+		}
+		
+		// Kill error flows
+		for (ExecutableFlow flow: finalizeFlows) {
+			finalizeFlows(flow);
+		}
+	}
+	
 	private void finalizeFlows(ExecutableFlow flow) {
 		int execId = flow.getExecutionId();
+		if (!runningFlows.containsKey(execId)) {
+			// Already finalized by a pushed update or the updater thread.
+			return;
+		}
 		
 		// First we check if the execution in the datastore is complete
 		try {
@@ -796,13 +1172,14 @@ public class ExecutorManager {
 			ExecutableFlow flow = recentlyFinished.get(key);
 			
 			if (flow.getEndTime() < oldAgeThreshold) {
-				// Evict
+				// Evict, keeping the flow around for lookups while there's room.
 				recentlyFinished.remove(key);
+				cacheFinishedFlow(flow);
 			}
 		}
 	}
 	
-	private ExecutableFlow updateExecution(Map<String,Object> updateData) throws ExecutorManagerException {
+	private ExecutableFlow updateExecution(Map<String,Object> updateData, boolean pushed) throws ExecutorManagerException {
 		Integer execId = (Integer)updateData.get(ConnectorParams.UPDATE_MAP_EXEC_ID);
 		if (execId == null) {
 			throw new ExecutorManagerException("Response is malformed. Need exec id to update.");
@@ -823,6 +1200,16 @@ public class ExecutorManager {
 		// Reset errors.
 		ref.setNextCheckTime(0);
 		ref.setNumErrors(0);
+		if (pushed) {
+			ref.setLastPushTime(System.currentTimeMillis());
+		}
+		
+		// Polled and pushed updates can cross. Never go back to an older state.
+		long updateTime = JSONUtils.getLongFromObject(updateData.get(ConnectorParams.UPDATE_MAP_UPDATE_TIME));
+		if (updateTime < flow.getUpdateTime()) {
+			return flow;
+		}
+		
 		Status oldStatus = flow.getStatus();
 		flow.applyUpdateObject(updateData);
 		Status newStatus = flow.getStatus();
@@ -869,6 +1256,11 @@ public class ExecutorManager {
 				continue;
 			}
 			
+			// The executor is pushing updates for this flow, so polling is only needed if it goes quiet.
+			if (ref.getLastPushTime() + pushTimeoutMs >= System.currentTimeMillis()) {
+				continue;
+			}
+			
 			// Just a silly way to reduce object creation construction of objects since it's most likely that the values will be the same.
 			if (!lastPort.isEqual(ref.getHost(), ref.getPort())) {
 				lastPort = new ConnectionInfo(ref.getHost(), ref.getPort());
@@ -10,6 +10,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -23,6 +24,7 @@ import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 
 import azkaban.database.AbstractJdbcLoader;
+import azkaban.utils.BinaryObjectUtils;
 import azkaban.utils.FileIOUtils;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.GZIPUtils;
@@ -30,14 +32,24 @@ import azkaban.utils.JSONUtils;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import azkaban.utils.PropsUtils;
+import azkaban.utils.ResourceUsage;
 
 public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLoader {
 	private static final Logger logger = Logger.getLogger(JdbcExecutorLoader.class);
 
 	private EncodingType defaultEncodingType = EncodingType.GZIP;
+	private EncodingType flowEncodingType = EncodingType.GZIP;
+	private boolean flowDeltasEnabled = false;
 	
 	public JdbcExecutorLoader(Props props) {
 		super(props);
+		
+		flowDeltasEnabled = props.getBoolean("executor.flow.delta.enabled", false);
+		
+		String flowEncoding = props.getString("executor.flow.encoding", null);
+		if (flowEncoding != null) {
+			flowEncodingType = EncodingType.valueOf(flowEncoding.toUpperCase());
+		}
 	}
 
 	public EncodingType getDefaultEncodingType() {
@@ -47,12 +59,36 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 	public void setDefaultEncodingType(EncodingType defaultEncodingType) {
 		this.defaultEncodingType = defaultEncodingType;
 	}
+
+	public EncodingType getFlowEncodingType() {
+		return flowEncodingType;
+	}
+
+	/**
+	 * Sets the encoding of the flow_data stored in execution_flows. BINARY flow data can't be
+	 * read by older servers, so only switch once every web server and executor has been upgraded.
+	 */
+	public void setFlowEncodingType(EncodingType flowEncodingType) {
+		this.flowEncodingType = flowEncodingType;
+	}
+
+	public boolean isFlowDeltasEnabled() {
+		return flowDeltasEnabled;
+	}
+
+	/**
+	 * When enabled, flows read from the db have the deltas in execution_flow_deltas applied on top
+	 * of the stored flow data.
+	 */
+	public void setFlowDeltasEnabled(boolean flowDeltasEnabled) {
+		this.flowDeltasEnabled = flowDeltasEnabled;
+	}
 	
 	@Override
 	public synchronized void uploadExecutableFlow(ExecutableFlow flow) throws ExecutorManagerException {
 		Connection connection = getConnection();
 		try {
-			uploadExecutableFlow(connection, flow, defaultEncodingType);
+			uploadExecutableFlow(connection, flow, flowEncodingType);
 		} catch (IOException e) {
 			throw new ExecutorManagerException("Error uploading flow", e);
 		}
@@ -90,7 +126,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		Connection connection = this.getConnection();
 		
 		try {
-			updateExecutableFlow(connection, flow, defaultEncodingType);
+			updateExecutableFlow(connection, flow, flowEncodingType);
 		}
 		finally {
 			DbUtils.closeQuietly(connection);
@@ -99,24 +135,23 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 	
 	private void updateExecutableFlow(Connection connection, ExecutableFlow flow, EncodingType encType) throws ExecutorManagerException {
 		final String UPDATE_EXECUTABLE_FLOW_DATA = "UPDATE execution_flows SET status=?,update_time=?,start_time=?,end_time=?,enc_type=?,flow_data=? WHERE exec_id=?";
+		final String DELETE_FLOW_DELTAS = "DELETE FROM execution_flow_deltas WHERE exec_id=?";
 		QueryRunner runner = new QueryRunner();
 		
-		String json = JSONUtils.toJSON(flow.toObject());
 		byte[] data = null;
 		try {
-			byte[] stringData = json.getBytes("UTF-8");
-			data = stringData;
-	
-			if (encType == EncodingType.GZIP) {
-				data = GZIPUtils.gzipBytes(stringData);
-			}
+			data = encodeFlowData(flow.toObject(), encType);
 		}
 		catch (IOException e) {
-			throw new ExecutorManagerException("Error encoding the execution flow.");
+			throw new ExecutorManagerException("Error encoding the execution flow.", e);
 		}
 		
 		try {
 			runner.update(connection, UPDATE_EXECUTABLE_FLOW_DATA, flow.getStatus().getNumVal(), flow.getUpdateTime(), flow.getStartTime(), flow.getEndTime(), encType.getNumVal(), data, flow.getExecutionId());
+			if (flowDeltasEnabled) {
+				// The full flow now includes everything in the deltas.
+				runner.update(connection, DELETE_FLOW_DELTAS, flow.getExecutionId());
+			}
 			connection.commit();
 		}
 		catch(SQLException e) {
@@ -124,6 +159,167 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		}
 	}
 	
+	@Override
+	public void updateExecutableFlowDelta(ExecutableFlow flow, long lastUpdateTime) throws ExecutorManagerException {
+		if (!flowDeltasEnabled) {
+			updateExecutableFlow(flow);
+			return;
+		}
+		
+		final String UPDATE_EXECUTABLE_FLOW_STATUS = "UPDATE execution_flows SET status=?,update_time=?,start_time=?,end_time=? WHERE exec_id=?";
+		final String INSERT_FLOW_DELTA = "INSERT INTO execution_flow_deltas (exec_id, update_time, enc_type, delta_data) VALUES (?,?,?,?)";
+		
+		byte[] data = null;
+		try {
+			data = encodeFlowData(flow.toUpdateObject(lastUpdateTime), flowEncodingType);
+		}
+		catch (IOException e) {
+			throw new ExecutorManagerException("Error encoding the execution flow delta.", e);
+		}
+		
+		Connection connection = this.getConnection();
+		QueryRunner runner = new QueryRunner();
+		try {
+			runner.update(connection, UPDATE_EXECUTABLE_FLOW_STATUS, flow.getStatus().getNumVal(), flow.getUpdateTime(), flow.getStartTime(), flow.getEndTime(), flow.getExecutionId());
+			runner.update(connection, INSERT_FLOW_DELTA, flow.getExecutionId(), flow.getUpdateTime(), flowEncodingType.getNumVal(), data);
+			connection.commit();
+		}
+		catch(SQLException e) {
+			throw new ExecutorManagerException("Error updating flow delta.", e);
+		}
+		finally {
+			DbUtils.closeQuietly(connection);
+		}
+	}
+	
+	/**
+	 * Writes a batch of queued updates in a single transaction. Node inserts go first so the
+	 * node updates in the same batch find their rows.
+	 */
+	void writeBatch(List<ExecutableFlow> flows, List<Pair<ExecutableFlow, Long>> flowDeltas, List<WriteBehindExecutorLoader.NodeWrite> nodeInserts, List<WriteBehindExecutorLoader.NodeWrite> nodeUpdates) throws ExecutorManagerException {
+		final String INSERT_EXECUTION_NODE = "INSERT INTO execution_jobs (exec_id, project_id, version, flow_id, job_id, start_time, end_time, status, input_params, attempt) VALUES (?,?,?,?,?,?,?,?,?,?)";
+		final String UPDATE_EXECUTION_NODE = "UPDATE execution_jobs SET start_time=?, end_time=?, status=?, output_params=?, cpu_time=?, peak_rss=?, io_read_bytes=?, io_write_bytes=? WHERE exec_id=? AND job_id=? AND attempt=?";
+		final String UPDATE_EXECUTABLE_FLOW_DATA = "UPDATE execution_flows SET status=?,update_time=?,start_time=?,end_time=?,enc_type=?,flow_data=? WHERE exec_id=?";
+		final String DELETE_FLOW_DELTAS = "DELETE FROM execution_flow_deltas WHERE exec_id=?";
+		final String UPDATE_EXECUTABLE_FLOW_STATUS = "UPDATE execution_flows SET status=?,update_time=?,start_time=?,end_time=? WHERE exec_id=?";
+		final String INSERT_FLOW_DELTA = "INSERT INTO execution_flow_deltas (exec_id, update_time, enc_type, delta_data) VALUES (?,?,?,?)";
+		
+		if (!flowDeltasEnabled && !flowDeltas.isEmpty()) {
+			flows = new ArrayList<ExecutableFlow>(flows);
+			for (Pair<ExecutableFlow, Long> delta: flowDeltas) {
+				flows.add(delta.getFirst());
+			}
+			flowDeltas = Collections.emptyList();
+		}
+		
+		Object[][] insertParams = new Object[nodeInserts.size()][];
+		Object[][] updateParams = new Object[nodeUpdates.size()][];
+		Object[][] flowParams = new Object[flows.size()][];
+		Object[][] deleteDeltaParams = new Object[flows.size()][];
+		Object[][] statusParams = new Object[flowDeltas.size()][];
+		Object[][] deltaParams = new Object[flowDeltas.size()][];
+		try {
+			for (int i = 0; i < nodeInserts.size(); ++i) {
+				WriteBehindExecutorLoader.NodeWrite node = nodeInserts.get(i);
+				insertParams[i] = new Object[] {node.execId, node.projectId, node.version, node.flowId, node.jobId, node.startTime, node.endTime, node.status.getNumVal(), encodeProps(node.inputProps), node.attempt};
+			}
+			for (int i = 0; i < nodeUpdates.size(); ++i) {
+				WriteBehindExecutorLoader.NodeWrite node = nodeUpdates.get(i);
+				long[] usage = getResourceUsageValues(node.resourceUsage);
+				updateParams[i] = new Object[] {node.startTime, node.endTime, node.status.getNumVal(), encodeProps(node.outputProps), usage[0], usage[1], usage[2], usage[3], node.execId, node.jobId, node.attempt};
+			}
+			for (int i = 0; i < flows.size(); ++i) {
+				ExecutableFlow flow = flows.get(i);
+				byte[] data = encodeFlowData(flow.toObject(), flowEncodingType);
+				flowParams[i] = new Object[] {flow.getStatus().getNumVal(), flow.getUpdateTime(), flow.getStartTime(), flow.getEndTime(), flowEncodingType.getNumVal(), data, flow.getExecutionId()};
+				deleteDeltaParams[i] = new Object[] {flow.getExecutionId()};
+			}
+			for (int i = 0; i < flowDeltas.size(); ++i) {
+				ExecutableFlow flow = flowDeltas.get(i).getFirst();
+				byte[] data = encodeFlowData(flow.toUpdateObject(flowDeltas.get(i).getSecond()), flowEncodingType);
+				statusParams[i] = new Object[] {flow.getStatus().getNumVal(), flow.getUpdateTime(), flow.getStartTime(), flow.getEndTime(), flow.getExecutionId()};
+				deltaParams[i] = new Object[] {flow.getExecutionId(), flow.getUpdateTime(), flowEncodingType.getNumVal(), data};
+			}
+		}
+		catch (IOException e) {
+			throw new ExecutorManagerException("Error encoding batched updates.", e);
+		}
+		
+		Connection connection = this.getConnection();
+		QueryRunner runner = new QueryRunner();
+		try {
+			if (insertParams.length > 0) {
+				runner.batch(connection, INSERT_EXECUTION_NODE, insertParams);
+			}
+			if (updateParams.length > 0) {
+				runner.batch(connection, UPDATE_EXECUTION_NODE, updateParams);
+			}
+			if (flowParams.length > 0) {
+				runner.batch(connection, UPDATE_EXECUTABLE_FLOW_DATA, flowParams);
+				if (flowDeltasEnabled) {
+					runner.batch(connection, DELETE_FLOW_DELTAS, deleteDeltaParams);
+				}
+			}
+			if (statusParams.length > 0) {
+				runner.batch(connection, UPDATE_EXECUTABLE_FLOW_STATUS, statusParams);
+				runner.batch(connection, INSERT_FLOW_DELTA, deltaParams);
+			}
+			connection.commit();
+		}
+		catch (SQLException e) {
+			try {
+				connection.rollback();
+			} catch (SQLException e1) {
+				logger.error("Error rolling back batched updates.", e1);
+			}
+			throw new ExecutorManagerException("Error writing batched updates.", e);
+		}
+		finally {
+			DbUtils.closeQuietly(connection);
+		}
+	}
+	
+	private static byte[] encodeProps(Props props) throws IOException {
+		if (props == null) {
+			return null;
+		}
+		
+		String jsonString = JSONUtils.toJSON(PropsUtils.toHierarchicalMap(props));
+		return GZIPUtils.gzipString(jsonString, "UTF-8");
+	}
+	
+	/**
+	 * Brings the flows up to date with the deltas written since their flow data was stored.
+	 */
+	private void applyFlowDeltas(QueryRunner runner, Collection<ExecutableFlow> flows) throws SQLException {
+		if (!flowDeltasEnabled || flows.isEmpty()) {
+			return;
+		}
+		
+		Map<Integer, ExecutableFlow> flowMap = new HashMap<Integer, ExecutableFlow>();
+		StringBuilder query = new StringBuilder(FetchFlowDeltas.FETCH_FLOW_DELTAS);
+		for (ExecutableFlow flow: flows) {
+			if (flowMap.isEmpty()) {
+				query.append(flow.getExecutionId());
+			}
+			else {
+				query.append(',').append(flow.getExecutionId());
+			}
+			flowMap.put(flow.getExecutionId(), flow);
+		}
+		query.append(") ORDER BY delta_id");
+		
+		List<Pair<Integer, Map<String, Object>>> deltas = runner.query(query.toString(), new FetchFlowDeltas());
+		for (Pair<Integer, Map<String, Object>> delta: deltas) {
+			ExecutableFlow flow = flowMap.get(delta.getFirst());
+			long updateTime = JSONUtils.getLongFromObject(delta.getSecond().get("updateTime"));
+			// Deltas older than the stored flow data are already part of it.
+			if (flow != null && updateTime >= flow.getUpdateTime()) {
+				flow.applyUpdateObject(delta.getSecond());
+			}
+		}
+	}
+	
 	@Override
 	public ExecutableFlow fetchExecutableFlow(int id) throws ExecutorManagerException {
 		QueryRunner runner = createQueryRunner();
@@ -131,6 +327,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 
 		try {
 			List<ExecutableFlow> properties = runner.query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW, flowHandler, id);
+			applyFlowDeltas(runner, properties);
 			return properties.get(0);
 		} catch (SQLException e) {
 			throw new ExecutorManagerException("Error fetching flow id " + id, e);
@@ -144,6 +341,13 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 
 		try {
 			Map<Integer, Pair<ExecutionReference, ExecutableFlow>> properties = runner.query(FetchActiveExecutableFlows.FETCH_ACTIVE_EXECUTABLE_FLOW, flowHandler);
+			List<ExecutableFlow> flows = new ArrayList<ExecutableFlow>();
+			for (Pair<ExecutionReference, ExecutableFlow> pair: properties.values()) {
+				if (pair != null) {
+					flows.add(pair.getSecond());
+				}
+			}
+			applyFlowDeltas(runner, flows);
 			return properties;
 		} catch (SQLException e) {
 			throw new ExecutorManagerException("Error fetching active flows", e);
@@ -196,6 +400,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 
 		try {
 			List<ExecutableFlow> properties = runner.query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW_HISTORY, flowHandler, projectId, flowId, skip, num);
+			applyFlowDeltas(runner, properties);
 			return properties;
 		} catch (SQLException e) {
 			throw new ExecutorManagerException("Error fetching active flows", e);
@@ -209,6 +414,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 
 		try {
 			List<ExecutableFlow> properties = runner.query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW_BY_STATUS, flowHandler, projectId, flowId, status.getNumVal(), skip, num);
+			applyFlowDeltas(runner, properties);
 			return properties;
 		} catch (SQLException e) {
 			throw new ExecutorManagerException("Error fetching active flows", e);
@@ -223,6 +429,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		
 		try {
 			List<ExecutableFlow> properties = runner.query(FetchExecutableFlows.FETCH_ALL_EXECUTABLE_FLOW_HISTORY, flowHandler, skip, num);
+			applyFlowDeltas(runner, properties);
 			return properties;
 		} catch (SQLException e) {
 			throw new ExecutorManagerException("Error fetching active flows", e);
@@ -232,91 +439,191 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 
 	@Override
 	public List<ExecutableFlow> fetchFlowHistory(String projContain, String flowContains, String userNameContains, int status, long startTime, long endTime, int skip, int num) throws ExecutorManagerException {
-		String query = FetchExecutableFlows.FETCH_BASE_EXECUTABLE_FLOW_QUERY;
 		ArrayList<Object> params = new ArrayList<Object>();
+		String query = FetchExecutableFlows.FETCH_BASE_EXECUTABLE_FLOW_QUERY + buildHistoryFilter(projContain, flowContains, userNameContains, status, startTime, endTime, skip, num, params);
+		
+		QueryRunner runner = createQueryRunner();
+		FetchExecutableFlows flowHandler = new FetchExecutableFlows();
+
+		try {
+			List<ExecutableFlow> properties = runner.query(query, flowHandler, params.toArray());
+			applyFlowDeltas(runner, properties);
+			return properties;
+		} catch (SQLException e) {
+			throw new ExecutorManagerException("Error fetching active flows", e);
+		}
+	}
+	
+	/**
+	 * Builds the joins, where clause and paging of a filtered history query on execution_flows
+	 * aliased as ef, adding the parameters to the list.
+	 */
+	private static String buildHistoryFilter(String projContain, String flowContains, String userNameContains, int status, long startTime, long endTime, int skip, int num, List<Object> params) {
+		StringBuilder query = new StringBuilder();
+		ArrayList<String> conditions = new ArrayList<String>();
 		
-		boolean first = true;
 		if (projContain != null && !projContain.isEmpty()) {
-			query += " ef JOIN projects p ON ef.project_id = p.id WHERE name LIKE ?";
+			query.append(" JOIN projects p ON ef.project_id = p.id");
+			conditions.add("p.name LIKE ?");
 			params.add('%'+projContain+'%');
-			first = false;
 		}
 		
 		if (flowContains != null && !flowContains.isEmpty()) {
-			if (first) {
-				query += " WHERE ";
-				first = false;
-			}
-			else {
-				query += " AND ";
-			}
-
-			query += " flow_id LIKE ?";
+			conditions.add("ef.flow_id LIKE ?");
 			params.add('%'+flowContains+'%');
 		}
 		
 		if (userNameContains != null && !userNameContains.isEmpty()) {
-			if (first) {
-				query += " WHERE ";
-				first = false;
-			}
-			else {
-				query += " AND ";
-			}
-			query += " submit_user LIKE ?";
+			conditions.add("ef.submit_user LIKE ?");
 			params.add('%'+userNameContains+'%');
 		}
 		
 		if (status != 0) {
-			if (first) {
-				query += " WHERE ";
-				first = false;
-			}
-			else {
-				query += " AND ";
-			}
-			query += " status = ?";
+			conditions.add("ef.status = ?");
 			params.add(status);
 		}
 		
 		if (startTime > 0) {
-			if (first) {
-				query += " WHERE ";
-				first = false;
-			}
-			else {
-				query += " AND ";
-			}
-			query += " start_time > ?";
+			conditions.add("ef.start_time > ?");
 			params.add(startTime);
 		}
 		
 		if (endTime > 0) {
-			if (first) {
-				query += " WHERE ";
-				first = false;
-			}
-			else {
-				query += " AND "; 
-			}
-			query += " end_time < ?";
+			conditions.add("ef.end_time < ?");
 			params.add(endTime);
 		}
 		
+		for (int i = 0; i < conditions.size(); ++i) {
+			query.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+		}
+		
 		if (skip > -1 && num > 0) {
-			query += "  ORDER BY exec_id DESC LIMIT ?, ?";
+			query.append(" ORDER BY ef.exec_id DESC LIMIT ?, ?");
 			params.add(skip);
 			params.add(num);
 		}
 		
+		return query.toString();
+	}
+	
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int skip, int num) throws ExecutorManagerException {
+		return fetchExecutionSummaries(FetchExecutionSummaries.FETCH_ALL_SUMMARIES, skip, num);
+	}
+	
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num) throws ExecutorManagerException {
+		return fetchExecutionSummaries(FetchExecutionSummaries.FETCH_FLOW_SUMMARIES, projectId, flowId, skip, num);
+	}
+	
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num, Status status) throws ExecutorManagerException {
+		return fetchExecutionSummaries(FetchExecutionSummaries.FETCH_FLOW_SUMMARIES_BY_STATUS, projectId, flowId, status.getNumVal(), skip, num);
+	}
+	
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(String projContain, String flowContains, String userNameContains, int status, long startTime, long endTime, int skip, int num) throws ExecutorManagerException {
+		ArrayList<Object> params = new ArrayList<Object>();
+		String query = FetchExecutionSummaries.FETCH_BASE_SUMMARY_QUERY + buildHistoryFilter(projContain, flowContains, userNameContains, status, startTime, endTime, skip, num, params);
+		return fetchExecutionSummaries(query, params.toArray());
+	}
+	
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(ExecutionHistoryFilter filter, int beforeExecId, int afterExecId, int num) throws ExecutorManagerException {
+		List<Integer> projectIds = filter.getProjectIds();
+		if (num <= 0 || (projectIds != null && projectIds.isEmpty())) {
+			return new ArrayList<ExecutionSummary>();
+		}
+		
+		ArrayList<Object> params = new ArrayList<Object>();
+		ArrayList<String> conditions = new ArrayList<String>();
+		
+		if (projectIds != null) {
+			StringBuilder in = new StringBuilder("ef.project_id IN (");
+			for (int i = 0; i < projectIds.size(); ++i) {
+				in.append(i == 0 ? "?" : ",?");
+				params.add(projectIds.get(i));
+			}
+			conditions.add(in.append(")").toString());
+		}
+		
+		addMatchCondition("ef.flow_id", filter.getFlowId(), filter.getFlowMatch(), conditions, params);
+		addMatchCondition("ef.submit_user", filter.getSubmitUser(), filter.getSubmitUserMatch(), conditions, params);
+		
+		if (filter.getStatus() != null) {
+			conditions.add("ef.status = ?");
+			params.add(filter.getStatus().getNumVal());
+		}
+		
+		if (filter.getStartTime() > 0) {
+			conditions.add("ef.start_time > ?");
+			params.add(filter.getStartTime());
+		}
+		
+		if (filter.getEndTime() > 0) {
+			conditions.add("ef.end_time < ?");
+			params.add(filter.getEndTime());
+		}
+		
+		if (beforeExecId > 0) {
+			conditions.add("ef.exec_id < ?");
+			params.add(beforeExecId);
+		}
+		
+		// Paging towards newer executions walks the index upwards and reverses the page.
+		boolean ascending = afterExecId > 0 && beforeExecId <= 0;
+		if (ascending) {
+			conditions.add("ef.exec_id > ?");
+			params.add(afterExecId);
+		}
+		
+		StringBuilder query = new StringBuilder(FetchExecutionSummaries.FETCH_BASE_SUMMARY_QUERY);
+		for (int i = 0; i < conditions.size(); ++i) {
+			query.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+		}
+		query.append(ascending ? " ORDER BY ef.exec_id ASC LIMIT ?" : " ORDER BY ef.exec_id DESC LIMIT ?");
+		params.add(num);
+		
+		List<ExecutionSummary> summaries = fetchExecutionSummaries(query.toString(), params.toArray());
+		if (ascending) {
+			Collections.reverse(summaries);
+		}
+		return summaries;
+	}
+	
+	private static void addMatchCondition(String column, String value, ExecutionHistoryFilter.MatchType match, List<String> conditions, List<Object> params) {
+		if (value == null || value.isEmpty()) {
+			return;
+		}
+		
+		switch (match) {
+		case EXACT:
+			conditions.add(column + " = ?");
+			params.add(value);
+			break;
+		case PREFIX:
+			conditions.add(column + " LIKE ?");
+			params.add(escapeLike(value) + "%");
+			break;
+		default:
+			conditions.add(column + " LIKE ?");
+			params.add("%" + escapeLike(value) + "%");
+		}
+	}
+	
+	/**
+	 * Escapes the LIKE wildcards with the default backslash escape character.
+	 */
+	private static String escapeLike(String value) {
+		return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+	
+	private List<ExecutionSummary> fetchExecutionSummaries(String query, Object ... params) throws ExecutorManagerException {
 		QueryRunner runner = createQueryRunner();
-		FetchExecutableFlows flowHandler = new FetchExecutableFlows();
-
 		try {
-			List<ExecutableFlow> properties = runner.query(query, flowHandler, params.toArray());
-			return properties;
+			return runner.query(query, new FetchExecutionSummaries(), params);
 		} catch (SQLException e) {
-			throw new ExecutorManagerException("Error fetching active flows", e);
+			throw new ExecutorManagerException("Error fetching execution summaries", e);
 		}
 	}
 	
@@ -397,7 +704,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 	
 	@Override
 	public void updateExecutableNode(ExecutableNode node) throws ExecutorManagerException {
-		final String UPSERT_EXECUTION_NODE = "UPDATE execution_jobs SET start_time=?, end_time=?, status=?, output_params=? WHERE exec_id=? AND job_id=? AND attempt=?";
+		final String UPSERT_EXECUTION_NODE = "UPDATE execution_jobs SET start_time=?, end_time=?, status=?, output_params=?, cpu_time=?, peak_rss=?, io_read_bytes=?, io_write_bytes=? WHERE exec_id=? AND job_id=? AND attempt=?";
 		
 		byte[] outputParam = null;
 		Props outputProps = node.getOutputProps();
@@ -410,6 +717,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 			}
 		}
 		
+		long[] usage = getResourceUsageValues(node.getResourceUsage());
 		QueryRunner runner = createQueryRunner();
 		try {
 			runner.update(
@@ -418,6 +726,10 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 					node.getEndTime(), 
 					node.getStatus().getNumVal(), 
 					outputParam,
+					usage[0],
+					usage[1],
+					usage[2],
+					usage[3],
 					node.getFlow().getExecutionId(),
 					node.getJobId(),
 					node.getAttempt());
@@ -426,6 +738,16 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		}
 	}
 	
+	/**
+	 * Cpu time, peak rss, read and written bytes to store, -1 if they weren't measured.
+	 */
+	private static long[] getResourceUsageValues(ResourceUsage usage) {
+		if (usage == null || usage.getNumProcesses() == 0) {
+			return new long[] {-1, -1, -1, -1};
+		}
+		return new long[] {usage.getCpuTimeMs(), usage.getPeakRssBytes(), usage.getIoReadBytes(), usage.getIoWriteBytes()};
+	}
+	
 	@Override
 	public List<ExecutableJobInfo> fetchJobInfoAttempts(int execId, String jobId) throws ExecutorManagerException {
 		QueryRunner runner = createQueryRunner();
@@ -447,7 +769,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		QueryRunner runner = createQueryRunner();
 		
 		try {
-			List<ExecutableJobInfo> info = runner.query(FetchExecutableJobHandler.FETCH_EXECUTABLE_NODE, new FetchExecutableJobHandler(), execId, jobId);
+			List<ExecutableJobInfo> info = runner.query(FetchExecutableJobHandler.FETCH_EXECUTABLE_NODE, new FetchExecutableJobHandler(), execId, jobId, attempts);
 			if (info == null || info.isEmpty()) {
 				return null;
 			}
@@ -517,7 +839,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		FetchLogsHandler handler = new FetchLogsHandler(startByte, length + startByte);
 		
 		try {
-			LogData result = runner.query(FetchLogsHandler.FETCH_LOGS, handler, execId, name, attempt, startByte, startByte + length);
+			LogData result = runner.query(FetchLogsHandler.FETCH_LOGS, handler, execId, name, attempt, execId, name, attempt, startByte, startByte + length);
 			return result;
 		} catch (SQLException e) {
 			throw new ExecutorManagerException("Error fetching logs " + execId + " : " + name, e);
@@ -543,6 +865,8 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 	}
 	
 	private void uploadLogFile(Connection connection, int execId, String name, int attempt, File[] files, EncodingType encType) throws ExecutorManagerException, IOException {
+		final String DELETE_LOG_PARTS_AFTER = "DELETE FROM execution_logs WHERE exec_id=? AND name=? AND attempt=? AND start_byte >= ?";
+		
 		// 50K buffer... if logs are greater than this, we chunk.
 		// However, we better prevent large log files from being uploaded somehow
 		byte[] buffer = new byte[50*1024];
@@ -551,10 +875,25 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		int startByte = 0;
 		BufferedInputStream bufferedStream = null;
 		try {
+			// Continue after whatever part of the log has already been uploaded, by an earlier
+			// attempt at this upload or while the job was running.
+			QueryRunner runner = new QueryRunner();
+			startByte = runner.query(connection, FetchLogEndByte.FETCH_LOG_PARTS, new FetchLogEndByte(), execId, name, attempt);
+			runner.update(connection, DELETE_LOG_PARTS_AFTER, execId, name, attempt, startByte);
+			long skip = startByte;
+			
 			for (int i = 0; i < files.length; ++i) {
 				File file = files[i];
 				
 				bufferedStream = new BufferedInputStream(new FileInputStream(file));
+				while (skip > 0) {
+					long skipped = bufferedStream.skip(skip);
+					if (skipped <= 0) {
+						break;
+					}
+					skip -= skipped;
+				}
+				
 				int size = bufferedStream.read(buffer, pos, length);
 				while (size >= 0) {
 					if (pos + size == buffer.length) {
@@ -572,6 +911,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 					}
 					size = bufferedStream.read(buffer, pos, length);
 				}
+				IOUtils.closeQuietly(bufferedStream);
 			}
 			
 			// Final commit of buffer.
@@ -591,6 +931,34 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 
 	}
 	
+	@Override
+	public void uploadLogChunk(int execId, String name, int attempt, int startByte, byte[] buffer, int length) throws ExecutorManagerException {
+		Connection connection = getConnection();
+		try {
+			uploadLogPart(connection, execId, name, attempt, startByte, startByte + length, defaultEncodingType, buffer, length);
+			connection.commit();
+		}
+		catch (SQLException e) {
+			throw new ExecutorManagerException("Error uploading log chunk", e);
+		}
+		catch (IOException e) {
+			throw new ExecutorManagerException("Error uploading log chunk", e);
+		}
+		finally {
+			DbUtils.closeQuietly(connection);
+		}
+	}
+	
+	@Override
+	public int fetchLogEndByte(int execId, String name, int attempt) throws ExecutorManagerException {
+		QueryRunner runner = createQueryRunner();
+		try {
+			return runner.query(FetchLogEndByte.FETCH_LOG_PARTS, new FetchLogEndByte(), execId, name, attempt);
+		} catch (SQLException e) {
+			throw new ExecutorManagerException("Error fetching log end for " + execId + " " + name, e);
+		}
+	}
+	
 	private void uploadLogPart(Connection connection, int execId, String name, int attempt, int startByte, int endByte, EncodingType encType, byte[] buffer, int length) throws SQLException, IOException {
 		final String INSERT_EXECUTION_LOGS = "INSERT INTO execution_logs (exec_id, name, attempt, enc_type, start_byte, end_byte, log, upload_time) VALUES (?,?,?,?,?,?,?,?)";
 		QueryRunner runner = new QueryRunner();
@@ -634,7 +1002,10 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 	}
 	
 	private static class FetchLogsHandler implements ResultSetHandler<LogData> {
-		private static String FETCH_LOGS = "SELECT exec_id, name, attempt, enc_type, start_byte, end_byte, log FROM execution_logs WHERE exec_id=? AND name=? AND attempt=? AND end_byte > ? AND start_byte <= ? ORDER BY start_byte";
+		// Seeks straight to the part containing the start byte on the primary key, instead of
+		// checking every part of the log.
+		private static String FETCH_LOGS = "SELECT exec_id, name, attempt, enc_type, start_byte, end_byte, log FROM execution_logs WHERE exec_id=? AND name=? AND attempt=? " + 
+				"AND start_byte >= (SELECT COALESCE(MAX(start_byte), 0) FROM execution_logs WHERE exec_id=? AND name=? AND attempt=? AND start_byte <= ?) AND start_byte < ? ORDER BY start_byte";
 
 		private int startByte;
 		private int endByte;
@@ -665,13 +1036,18 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 
 				int offset = this.startByte > startByte ? this.startByte - startByte : 0;
 				int length = this.endByte < endByte ? this.endByte - startByte - offset: endByte - startByte - offset;
+				if (length <= 0) {
+					continue;
+				}
+				
 				try {
-					byte[] buffer = data;
 					if (encType == EncodingType.GZIP) {
-						buffer = GZIPUtils.unGzipBytes(data);
+						// Only inflate as far as the end of the requested range.
+						GZIPUtils.unGzipRange(data, offset, length, byteStream);
+					}
+					else {
+						byteStream.write(data, offset, length);
 					}
-
-					byteStream.write(buffer, offset, length);
 				} catch (IOException e) {
 					throw new SQLException(e);
 				}
@@ -685,9 +1061,9 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 	}
 	
 	private static class FetchExecutableJobHandler implements ResultSetHandler<List<ExecutableJobInfo>> {
-		private static String FETCH_EXECUTABLE_NODE = "SELECT exec_id, project_id, version, flow_id, job_id, start_time, end_time, status, attempt FROM execution_jobs WHERE exec_id=? AND job_id=? AND attempt_id=?";
-		private static String FETCH_EXECUTABLE_NODE_ATTEMPTS = "SELECT exec_id, project_id, version, flow_id, job_id, start_time, end_time, status, attempt FROM execution_jobs WHERE exec_id=? AND job_id=?";
-		private static String FETCH_PROJECT_EXECUTABLE_NODE = "SELECT exec_id, project_id, version, flow_id, job_id, start_time, end_time, status, attempt FROM execution_jobs WHERE project_id=? AND job_id=? ORDER BY exec_id DESC LIMIT ?, ? ";
+		private static String FETCH_EXECUTABLE_NODE = "SELECT exec_id, project_id, version, flow_id, job_id, start_time, end_time, status, attempt, cpu_time, peak_rss, io_read_bytes, io_write_bytes FROM execution_jobs WHERE exec_id=? AND job_id=? AND attempt=?";
+		private static String FETCH_EXECUTABLE_NODE_ATTEMPTS = "SELECT exec_id, project_id, version, flow_id, job_id, start_time, end_time, status, attempt, cpu_time, peak_rss, io_read_bytes, io_write_bytes FROM execution_jobs WHERE exec_id=? AND job_id=?";
+		private static String FETCH_PROJECT_EXECUTABLE_NODE = "SELECT exec_id, project_id, version, flow_id, job_id, start_time, end_time, status, attempt, cpu_time, peak_rss, io_read_bytes, io_write_bytes FROM execution_jobs WHERE project_id=? AND job_id=? ORDER BY exec_id DESC LIMIT ?, ? ";
 
 		@Override
 		public List<ExecutableJobInfo> handle(ResultSet rs) throws SQLException {
@@ -708,6 +1084,11 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 				int attempt = rs.getInt(9);
 				
 				ExecutableJobInfo info = new ExecutableJobInfo(execId, projectId, version, flowId, jobId, startTime, endTime, status, attempt);
+				long cpuTime = rs.getLong(10);
+				// Null for rows written before usage was recorded.
+				if (!rs.wasNull() && cpuTime >= 0) {
+					info.setResourceUsage(new ResourceUsage(cpuTime, rs.getLong(11), rs.getLong(12), rs.getLong(13)));
+				}
 				execNodes.add(info);
 			} while (rs.next());
 
@@ -771,6 +1152,73 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		
 	}
 
+	private static byte[] encodeFlowData(Object flowObj, EncodingType encType) throws IOException {
+		if (encType == EncodingType.BINARY) {
+			return BinaryObjectUtils.toBinary(flowObj);
+		}
+		
+		byte[] data = JSONUtils.toJSON(flowObj).getBytes("UTF-8");
+		if (encType == EncodingType.GZIP) {
+			data = GZIPUtils.gzipBytes(data);
+		}
+		return data;
+	}
+	
+	private static Object decodeFlowData(byte[] data, EncodingType encType) throws IOException {
+		if (encType == EncodingType.BINARY) {
+			return BinaryObjectUtils.fromBinary(data);
+		}
+		else if (encType == EncodingType.GZIP) {
+			return JSONUtils.parseJSONFromString(GZIPUtils.unGzipString(data, "UTF-8"));
+		}
+		
+		return JSONUtils.parseJSONFromString(new String(data, "UTF-8"));
+	}
+	
+	/**
+	 * Finds the end of the log uploaded so far, ignoring any parts after a gap.
+	 */
+	private static class FetchLogEndByte implements ResultSetHandler<Integer> {
+		private static String FETCH_LOG_PARTS = "SELECT start_byte, end_byte FROM execution_logs WHERE exec_id=? AND name=? AND attempt=? ORDER BY start_byte";
+		
+		@Override
+		public Integer handle(ResultSet rs) throws SQLException {
+			int endByte = 0;
+			while (rs.next()) {
+				if (rs.getInt(1) != endByte) {
+					break;
+				}
+				endByte = rs.getInt(2);
+			}
+			
+			return endByte;
+		}
+	}
+	
+	private static class FetchFlowDeltas implements ResultSetHandler<List<Pair<Integer, Map<String, Object>>>> {
+		private static String FETCH_FLOW_DELTAS = "SELECT exec_id, enc_type, delta_data FROM execution_flow_deltas WHERE exec_id IN (";
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		public List<Pair<Integer, Map<String, Object>>> handle(ResultSet rs) throws SQLException {
+			List<Pair<Integer, Map<String, Object>>> deltas = new ArrayList<Pair<Integer, Map<String, Object>>>();
+			while (rs.next()) {
+				int id = rs.getInt(1);
+				EncodingType encType = EncodingType.fromInteger(rs.getInt(2));
+				byte[] data = rs.getBytes(3);
+				
+				try {
+					Map<String, Object> delta = (Map<String, Object>)decodeFlowData(data, encType);
+					deltas.add(new Pair<Integer, Map<String, Object>>(id, delta));
+				} catch (IOException e) {
+					throw new SQLException("Error retrieving flow delta " + id, e);
+				}
+			}
+			
+			return deltas;
+		}
+	}
+	
 	private static class FetchActiveExecutableFlows implements ResultSetHandler<Map<Integer, Pair<ExecutionReference,ExecutableFlow>>> {
 		private static String FETCH_ACTIVE_EXECUTABLE_FLOW = "SELECT ex.exec_id exec_id, ex.enc_type enc_type, ex.flow_data flow_data, ax.host host, ax.port port, ax.update_time axUpdateTime FROM execution_flows ex INNER JOIN active_executing_flows ax ON ex.exec_id = ax.exec_id";
 		
@@ -794,18 +1242,8 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 				}
 				else {
 					EncodingType encType = EncodingType.fromInteger(encodingType);
-					Object flowObj;
 					try {
-						// Convoluted way to inflate strings. Should find common package or helper function.
-						if (encType == EncodingType.GZIP) {
-							// Decompress the sucker.
-							String jsonString = GZIPUtils.unGzipString(data, "UTF-8");
-							flowObj = JSONUtils.parseJSONFromString(jsonString);
-						}
-						else {
-							String jsonString = new String(data, "UTF-8");
-							flowObj = JSONUtils.parseJSONFromString(jsonString);
-						}
+						Object flowObj = decodeFlowData(data, encType);
 						
 						ExecutableFlow exFlow = ExecutableFlow.createExecutableFlowFromObject(flowObj);
 						ExecutionReference ref = new ExecutionReference(id, host, port);
@@ -824,7 +1262,7 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 	}
 	
 	private static class FetchExecutableFlows implements ResultSetHandler<List<ExecutableFlow>> {
-		private static String FETCH_BASE_EXECUTABLE_FLOW_QUERY = "SELECT exec_id, enc_type, flow_data FROM execution_flows ";
+		private static String FETCH_BASE_EXECUTABLE_FLOW_QUERY = "SELECT ef.exec_id, ef.enc_type, ef.flow_data FROM execution_flows ef";
 		private static String FETCH_EXECUTABLE_FLOW = "SELECT exec_id, enc_type, flow_data FROM execution_flows WHERE exec_id=?";
 		//private static String FETCH_ACTIVE_EXECUTABLE_FLOW = "SELECT ex.exec_id exec_id, ex.enc_type enc_type, ex.flow_data flow_data FROM execution_flows ex INNER JOIN active_executing_flows ax ON ex.exec_id = ax.exec_id";
 		private static String FETCH_ALL_EXECUTABLE_FLOW_HISTORY = "SELECT exec_id, enc_type, flow_data FROM execution_flows ORDER BY exec_id DESC LIMIT ?, ?";
@@ -845,18 +1283,8 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 				
 				if (data != null) {
 					EncodingType encType = EncodingType.fromInteger(encodingType);
-					Object flowObj;
 					try {
-						// Convoluted way to inflate strings. Should find common package or helper function.
-						if (encType == EncodingType.GZIP) {
-							// Decompress the sucker.
-							String jsonString = GZIPUtils.unGzipString(data, "UTF-8");
-							flowObj = JSONUtils.parseJSONFromString(jsonString);
-						}
-						else {
-							String jsonString = new String(data, "UTF-8");
-							flowObj = JSONUtils.parseJSONFromString(jsonString);
-						}
+						Object flowObj = decodeFlowData(data, encType);
 						
 						ExecutableFlow exFlow = ExecutableFlow.createExecutableFlowFromObject(flowObj);
 						execFlows.add(exFlow);
@@ -871,6 +1299,37 @@ public class JdbcExecutorLoader extends AbstractJdbcLoader implements ExecutorLo
 		
 	}
 	
+	/**
+	 * Reads executions from the execution_flows columns only, without touching flow_data.
+	 */
+	private static class FetchExecutionSummaries implements ResultSetHandler<List<ExecutionSummary>> {
+		private static String SUMMARY_COLUMNS = "ef.exec_id, ef.project_id, ef.version, ef.flow_id, ef.status, ef.submit_user, ef.submit_time, ef.update_time, ef.start_time, ef.end_time";
+		private static String FETCH_BASE_SUMMARY_QUERY = "SELECT " + SUMMARY_COLUMNS + " FROM execution_flows ef";
+		private static String FETCH_ALL_SUMMARIES = FETCH_BASE_SUMMARY_QUERY + " ORDER BY ef.exec_id DESC LIMIT ?, ?";
+		private static String FETCH_FLOW_SUMMARIES = FETCH_BASE_SUMMARY_QUERY + " WHERE ef.project_id=? AND ef.flow_id=? ORDER BY ef.exec_id DESC LIMIT ?, ?";
+		private static String FETCH_FLOW_SUMMARIES_BY_STATUS = FETCH_BASE_SUMMARY_QUERY + " WHERE ef.project_id=? AND ef.flow_id=? AND ef.status=? ORDER BY ef.exec_id DESC LIMIT ?, ?";
+		
+		@Override
+		public List<ExecutionSummary> handle(ResultSet rs) throws SQLException {
+			List<ExecutionSummary> summaries = new ArrayList<ExecutionSummary>();
+			while (rs.next()) {
+				summaries.add(new ExecutionSummary(
+						rs.getInt(1), 
+						rs.getInt(2), 
+						rs.getInt(3), 
+						rs.getString(4), 
+						Status.fromInteger(rs.getInt(5)), 
+						rs.getString(6), 
+						rs.getLong(7), 
+						rs.getLong(8), 
+						rs.getLong(9), 
+						rs.getLong(10)));
+			}
+			
+			return summaries;
+		}
+	}
+	
 	private static class IntHandler implements ResultSetHandler<Integer> {
 		private static String NUM_EXECUTIONS = "SELECT COUNT(1) FROM execution_flows";
 		private static String NUM_FLOW_EXECUTIONS = "SELECT COUNT(1) FROM execution_flows WHERE project_id=? AND flow_id=?";
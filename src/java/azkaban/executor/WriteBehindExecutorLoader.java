@@ -0,0 +1,651 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.Pair;
+import azkaban.utils.Props;
+import azkaban.utils.ResourceUsage;
+
+/**
+ * Queues the flow and job status writes of the executor and flushes them to the db in batches,
+ * one transaction per flush, from a background thread.
+ *
+ * Writes are coalesced while queued, so a flow or job attempt that changes several times between
+ * flushes is only written once. A flush happens every flush interval, or sooner when the queue
+ * reaches the flush size. Writing a finished flow flushes synchronously, so the final state of a
+ * flow is in the db before the flow runner returns. Reads flush first, so they see every write
+ * made through this loader.
+ */
+public class WriteBehindExecutorLoader implements ExecutorLoader {
+	private static final Logger logger = Logger.getLogger(WriteBehindExecutorLoader.class);
+
+	private final JdbcExecutorLoader loader;
+	private final long flushIntervalMs;
+	private final int flushSize;
+	private final int maxWriteAttempts;
+
+	private LinkedHashMap<String, NodeWrite> pendingNodes = new LinkedHashMap<String, NodeWrite>();
+	private LinkedHashMap<Integer, FlowWrite> pendingFlows = new LinkedHashMap<Integer, FlowWrite>();
+	private final Object flushSync = new Object();
+	private final FlusherThread flusherThread;
+
+	// Metrics
+	private long numWrites = 0;
+	private long numCoalescedWrites = 0;
+	private long numFlushes = 0;
+	private long numFlushErrors = 0;
+	private long numDroppedWrites = 0;
+	private long totalFlushTimeMs = 0;
+	private long maxFlushTimeMs = 0;
+	private long lastFlushTimeMs = 0;
+	private long lastFlushSize = 0;
+
+	public WriteBehindExecutorLoader(Props props, JdbcExecutorLoader loader) {
+		this.loader = loader;
+		this.flushIntervalMs = props.getLong("executor.loader.flush.interval.ms", 200);
+		this.flushSize = props.getInt("executor.loader.flush.size", 500);
+		this.maxWriteAttempts = props.getInt("executor.loader.max.write.attempts", 5);
+
+		flusherThread = new FlusherThread();
+		flusherThread.start();
+	}
+
+	@Override
+	public void uploadExecutableNode(ExecutableNode node, Props inputParams) throws ExecutorManagerException {
+		NodeWrite write = new NodeWrite(node);
+		write.insert = true;
+		write.inputProps = inputParams;
+		queueNodeWrite(write);
+	}
+
+	@Override
+	public void updateExecutableNode(ExecutableNode node) throws ExecutorManagerException {
+		NodeWrite write = new NodeWrite(node);
+		write.update = true;
+		write.outputProps = node.getOutputProps();
+		write.resourceUsage = node.getResourceUsage();
+		queueNodeWrite(write);
+	}
+
+	@Override
+	public void updateExecutableFlow(ExecutableFlow flow) throws ExecutorManagerException {
+		queueFlowWrite(flow, true, 0);
+		if (Status.isStatusFinished(flow.getStatus())) {
+			flush();
+		}
+	}
+
+	@Override
+	public void updateExecutableFlowDelta(ExecutableFlow flow, long lastUpdateTime) throws ExecutorManagerException {
+		queueFlowWrite(flow, false, lastUpdateTime);
+		if (Status.isStatusFinished(flow.getStatus())) {
+			flush();
+		}
+	}
+
+	private void queueNodeWrite(NodeWrite write) {
+		synchronized (this) {
+			numWrites++;
+			NodeWrite pending = pendingNodes.get(write.getKey());
+			if (pending != null) {
+				numCoalescedWrites++;
+				write.mergeOlder(pending);
+			}
+			pendingNodes.put(write.getKey(), write);
+
+			if (getQueueSize() >= flushSize) {
+				this.notify();
+			}
+		}
+	}
+
+	private void queueFlowWrite(ExecutableFlow flow, boolean full, long lastUpdateTime) {
+		synchronized (this) {
+			numWrites++;
+			FlowWrite pending = pendingFlows.get(flow.getExecutionId());
+			if (pending != null) {
+				numCoalescedWrites++;
+				pending.flow = flow;
+				pending.full |= full;
+				pending.lastUpdateTime = Math.min(pending.lastUpdateTime, lastUpdateTime);
+			}
+			else {
+				pendingFlows.put(flow.getExecutionId(), new FlowWrite(flow, full, lastUpdateTime));
+			}
+
+			if (getQueueSize() >= flushSize) {
+				this.notify();
+			}
+		}
+	}
+
+	/**
+	 * Writes everything queued so far. If the batch fails, its writes are tried one at a time so
+	 * a write that can't succeed doesn't hold up the others. Writes that still fail are queued
+	 * again for the next flush, and dropped once they've failed maxWriteAttempts times.
+	 * 
+	 * @throws ExecutorManagerException if none of the writes could be made
+	 */
+	public void flush() throws ExecutorManagerException {
+		synchronized (flushSync) {
+			LinkedHashMap<String, NodeWrite> nodes;
+			LinkedHashMap<Integer, FlowWrite> flows;
+			synchronized (this) {
+				if (pendingNodes.isEmpty() && pendingFlows.isEmpty()) {
+					return;
+				}
+				nodes = pendingNodes;
+				flows = pendingFlows;
+				pendingNodes = new LinkedHashMap<String, NodeWrite>();
+				pendingFlows = new LinkedHashMap<Integer, FlowWrite>();
+			}
+
+			long startTime = System.currentTimeMillis();
+			try {
+				writeBatch(nodes.values(), flows.values());
+			}
+			catch (ExecutorManagerException e) {
+				synchronized (this) {
+					numFlushErrors++;
+				}
+				logger.error("Error flushing " + (nodes.size() + flows.size()) + " queued updates. Trying them one at a time.", e);
+				writeEach(nodes, flows);
+			}
+
+			long flushTime = System.currentTimeMillis() - startTime;
+			synchronized (this) {
+				numFlushes++;
+				totalFlushTimeMs += flushTime;
+				maxFlushTimeMs = Math.max(maxFlushTimeMs, flushTime);
+				lastFlushTimeMs = flushTime;
+				lastFlushSize = nodes.size() + flows.size();
+			}
+		}
+	}
+
+	private void writeBatch(Collection<NodeWrite> nodes, Collection<FlowWrite> flows) throws ExecutorManagerException {
+		List<NodeWrite> nodeInserts = new ArrayList<NodeWrite>();
+		List<NodeWrite> nodeUpdates = new ArrayList<NodeWrite>();
+		for (NodeWrite write: nodes) {
+			if (write.insert) {
+				nodeInserts.add(write);
+			}
+			if (write.update) {
+				nodeUpdates.add(write);
+			}
+		}
+
+		List<ExecutableFlow> fullFlows = new ArrayList<ExecutableFlow>();
+		List<Pair<ExecutableFlow, Long>> flowDeltas = new ArrayList<Pair<ExecutableFlow, Long>>();
+		for (FlowWrite write: flows) {
+			if (write.full) {
+				fullFlows.add(write.flow);
+			}
+			else {
+				flowDeltas.add(new Pair<ExecutableFlow, Long>(write.flow, write.lastUpdateTime));
+			}
+		}
+
+		loader.writeBatch(fullFlows, flowDeltas, nodeInserts, nodeUpdates);
+	}
+
+	/**
+	 * Writes each of a failed batch's writes on its own. The ones that fail again are queued for
+	 * the next flush, or dropped if they've run out of attempts.
+	 * 
+	 * @throws ExecutorManagerException if every write failed, which usually means the db is down
+	 */
+	private void writeEach(LinkedHashMap<String, NodeWrite> nodes, LinkedHashMap<Integer, FlowWrite> flows) throws ExecutorManagerException {
+		LinkedHashMap<String, NodeWrite> failedNodes = new LinkedHashMap<String, NodeWrite>();
+		LinkedHashMap<Integer, FlowWrite> failedFlows = new LinkedHashMap<Integer, FlowWrite>();
+		List<FlowWrite> noFlows = Collections.emptyList();
+		List<NodeWrite> noNodes = Collections.emptyList();
+		ExecutorManagerException lastError = null;
+		boolean written = false;
+
+		for (Map.Entry<String, NodeWrite> entry: nodes.entrySet()) {
+			NodeWrite write = entry.getValue();
+			try {
+				writeBatch(Collections.singletonList(write), noFlows);
+				written = true;
+			}
+			catch (ExecutorManagerException e) {
+				lastError = e;
+				if (++write.failures < maxWriteAttempts) {
+					failedNodes.put(entry.getKey(), write);
+				}
+				else {
+					logger.error("Dropping the update of job " + write.jobId + " attempt " + write.attempt + " of execution " + write.execId + " after " + write.failures + " failed writes.", e);
+					synchronized (this) {
+						numDroppedWrites++;
+					}
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, FlowWrite> entry: flows.entrySet()) {
+			FlowWrite write = entry.getValue();
+			try {
+				writeBatch(noNodes, Collections.singletonList(write));
+				written = true;
+			}
+			catch (ExecutorManagerException e) {
+				lastError = e;
+				if (++write.failures < maxWriteAttempts) {
+					failedFlows.put(entry.getKey(), write);
+				}
+				else {
+					logger.error("Dropping the update of execution " + entry.getKey() + " after " + write.failures + " failed writes.", e);
+					synchronized (this) {
+						numDroppedWrites++;
+					}
+				}
+			}
+		}
+
+		if (!failedNodes.isEmpty() || !failedFlows.isEmpty()) {
+			requeue(failedNodes, failedFlows);
+		}
+		if (!written && lastError != null) {
+			throw lastError;
+		}
+	}
+
+	/**
+	 * Puts failed writes back in front of anything that was queued during the flush.
+	 */
+	private synchronized void requeue(LinkedHashMap<String, NodeWrite> nodes, LinkedHashMap<Integer, FlowWrite> flows) {
+		for (Map.Entry<String, NodeWrite> entry: pendingNodes.entrySet()) {
+			NodeWrite older = nodes.get(entry.getKey());
+			if (older != null) {
+				entry.getValue().mergeOlder(older);
+			}
+			nodes.put(entry.getKey(), entry.getValue());
+		}
+		pendingNodes = nodes;
+
+		for (Map.Entry<Integer, FlowWrite> entry: pendingFlows.entrySet()) {
+			FlowWrite older = flows.get(entry.getKey());
+			if (older != null) {
+				older.flow = entry.getValue().flow;
+				older.full |= entry.getValue().full;
+				older.lastUpdateTime = Math.min(older.lastUpdateTime, entry.getValue().lastUpdateTime);
+			}
+			else {
+				flows.put(entry.getKey(), entry.getValue());
+			}
+		}
+		pendingFlows = flows;
+	}
+
+	/**
+	 * Stops the flusher thread and writes anything still queued.
+	 */
+	public void shutdown() {
+		flusherThread.shutdown();
+		try {
+			flush();
+		} catch (ExecutorManagerException e) {
+			logger.error("Error flushing queued updates on shutdown.", e);
+		}
+	}
+
+	public synchronized int getQueueSize() {
+		return pendingNodes.size() + pendingFlows.size();
+	}
+
+	public synchronized long getNumWrites() {
+		return numWrites;
+	}
+
+	public synchronized long getNumCoalescedWrites() {
+		return numCoalescedWrites;
+	}
+
+	public synchronized long getNumFlushes() {
+		return numFlushes;
+	}
+
+	public synchronized long getNumFlushErrors() {
+		return numFlushErrors;
+	}
+
+	public synchronized long getNumDroppedWrites() {
+		return numDroppedWrites;
+	}
+
+	public synchronized long getAverageFlushTimeMs() {
+		return numFlushes == 0 ? 0 : totalFlushTimeMs / numFlushes;
+	}
+
+	public synchronized long getMaxFlushTimeMs() {
+		return maxFlushTimeMs;
+	}
+
+	public synchronized long getLastFlushTimeMs() {
+		return lastFlushTimeMs;
+	}
+
+	public synchronized long getLastFlushSize() {
+		return lastFlushSize;
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public int getFlushSize() {
+		return flushSize;
+	}
+
+	public int getMaxWriteAttempts() {
+		return maxWriteAttempts;
+	}
+
+	@Override
+	public void uploadExecutableFlow(ExecutableFlow flow) throws ExecutorManagerException {
+		loader.uploadExecutableFlow(flow);
+	}
+
+	@Override
+	public ExecutableFlow fetchExecutableFlow(int execId) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutableFlow(execId);
+	}
+
+	@Override
+	public Map<Integer, Pair<ExecutionReference, ExecutableFlow>> fetchActiveFlows() throws ExecutorManagerException {
+		flush();
+		return loader.fetchActiveFlows();
+	}
+
+	@Override
+	public List<ExecutableFlow> fetchFlowHistory(int skip, int num) throws ExecutorManagerException {
+		flush();
+		return loader.fetchFlowHistory(skip, num);
+	}
+
+	@Override
+	public List<ExecutableFlow> fetchFlowHistory(int projectId, String flowId, int skip, int num) throws ExecutorManagerException {
+		flush();
+		return loader.fetchFlowHistory(projectId, flowId, skip, num);
+	}
+
+	@Override
+	public List<ExecutableFlow> fetchFlowHistory(int projectId, String flowId, int skip, int num, Status status) throws ExecutorManagerException {
+		flush();
+		return loader.fetchFlowHistory(projectId, flowId, skip, num, status);
+	}
+
+	@Override
+	public List<ExecutableFlow> fetchFlowHistory(String projContain, String flowContains, String userNameContains, int status, long startData, long endData, int skip, int num) throws ExecutorManagerException {
+		flush();
+		return loader.fetchFlowHistory(projContain, flowContains, userNameContains, status, startData, endData, skip, num);
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int skip, int num) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionSummaries(skip, num);
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionSummaries(projectId, flowId, skip, num);
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num, Status status) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionSummaries(projectId, flowId, skip, num, status);
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(String projContain, String flowContains, String userNameContains, int status, long startData, long endData, int skip, int num) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionSummaries(projContain, flowContains, userNameContains, status, startData, endData, skip, num);
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(ExecutionHistoryFilter filter, int beforeExecId, int afterExecId, int num) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionSummaries(filter, beforeExecId, afterExecId, num);
+	}
+
+	@Override
+	public void addActiveExecutableReference(ExecutionReference ref) throws ExecutorManagerException {
+		loader.addActiveExecutableReference(ref);
+	}
+
+	@Override
+	public void removeActiveExecutableReference(int execId) throws ExecutorManagerException {
+		flush();
+		loader.removeActiveExecutableReference(execId);
+	}
+
+	@Override
+	public boolean updateExecutableReference(int execId, long updateTime) throws ExecutorManagerException {
+		return loader.updateExecutableReference(execId, updateTime);
+	}
+
+	@Override
+	public LogData fetchLogs(int execId, String name, int attempt, int startByte, int endByte) throws ExecutorManagerException {
+		return loader.fetchLogs(execId, name, attempt, startByte, endByte);
+	}
+
+	@Override
+	public void uploadLogFile(int execId, String name, int attempt, File... files) throws ExecutorManagerException {
+		loader.uploadLogFile(execId, name, attempt, files);
+	}
+
+	@Override
+	public void uploadLogChunk(int execId, String name, int attempt, int startByte, byte[] buffer, int length) throws ExecutorManagerException {
+		loader.uploadLogChunk(execId, name, attempt, startByte, buffer, length);
+	}
+
+	@Override
+	public int fetchLogEndByte(int execId, String name, int attempt) throws ExecutorManagerException {
+		return loader.fetchLogEndByte(execId, name, attempt);
+	}
+
+	@Override
+	public List<ExecutableJobInfo> fetchJobInfoAttempts(int execId, String jobId) throws ExecutorManagerException {
+		flush();
+		return loader.fetchJobInfoAttempts(execId, jobId);
+	}
+
+	@Override
+	public ExecutableJobInfo fetchJobInfo(int execId, String jobId, int attempt) throws ExecutorManagerException {
+		flush();
+		return loader.fetchJobInfo(execId, jobId, attempt);
+	}
+
+	@Override
+	public List<ExecutableJobInfo> fetchJobHistory(int projectId, String jobId, int skip, int size) throws ExecutorManagerException {
+		flush();
+		return loader.fetchJobHistory(projectId, jobId, skip, size);
+	}
+
+	@Override
+	public int fetchNumExecutableFlows(int projectId, String flowId) throws ExecutorManagerException {
+		flush();
+		return loader.fetchNumExecutableFlows(projectId, flowId);
+	}
+
+	@Override
+	public int fetchNumExecutableFlows() throws ExecutorManagerException {
+		flush();
+		return loader.fetchNumExecutableFlows();
+	}
+
+	@Override
+	public int fetchNumExecutableNodes(int projectId, String jobId) throws ExecutorManagerException {
+		flush();
+		return loader.fetchNumExecutableNodes(projectId, jobId);
+	}
+
+	@Override
+	public Props fetchExecutionJobInputProps(int execId, String jobId) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionJobInputProps(execId, jobId);
+	}
+
+	@Override
+	public Props fetchExecutionJobOutputProps(int execId, String jobId) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionJobOutputProps(execId, jobId);
+	}
+
+	@Override
+	public Pair<Props, Props> fetchExecutionJobProps(int execId, String jobId) throws ExecutorManagerException {
+		flush();
+		return loader.fetchExecutionJobProps(execId, jobId);
+	}
+
+	@Override
+	public int removeExecutionLogsByTime(long millis) throws ExecutorManagerException {
+		return loader.removeExecutionLogsByTime(millis);
+	}
+
+	/**
+	 * Snapshot of a job attempt's status. The values are copied when the write is queued, since
+	 * the node is reused by later attempts.
+	 */
+	static class NodeWrite {
+		final int execId;
+		final int projectId;
+		final int version;
+		final String flowId;
+		final String jobId;
+		final int attempt;
+		final long startTime;
+		final long endTime;
+		final Status status;
+		Props inputProps;
+		Props outputProps;
+		ResourceUsage resourceUsage;
+		boolean insert = false;
+		boolean update = false;
+		int failures = 0;
+
+		private NodeWrite(ExecutableNode node) {
+			ExecutableFlow flow = node.getFlow();
+			this.execId = flow.getExecutionId();
+			this.projectId = flow.getProjectId();
+			this.version = flow.getVersion();
+			this.flowId = flow.getFlowId();
+			this.jobId = node.getJobId();
+			this.attempt = node.getAttempt();
+			this.startTime = node.getStartTime();
+			this.endTime = node.getEndTime();
+			this.status = node.getStatus();
+		}
+
+		private String getKey() {
+			return execId + "." + jobId + "." + attempt;
+		}
+
+		/**
+		 * Keeps whatever the older queued write for the same attempt still needs to do.
+		 */
+		private void mergeOlder(NodeWrite older) {
+			failures = Math.max(failures, older.failures);
+			if (older.insert) {
+				insert = true;
+				if (inputProps == null) {
+					inputProps = older.inputProps;
+				}
+			}
+			if (older.update) {
+				update = true;
+				if (outputProps == null) {
+					outputProps = older.outputProps;
+				}
+				if (resourceUsage == null) {
+					resourceUsage = older.resourceUsage;
+				}
+			}
+		}
+	}
+
+	private static class FlowWrite {
+		private ExecutableFlow flow;
+		private boolean full;
+		private long lastUpdateTime;
+		private int failures = 0;
+
+		private FlowWrite(ExecutableFlow flow, boolean full, long lastUpdateTime) {
+			this.flow = flow;
+			this.full = full;
+			this.lastUpdateTime = lastUpdateTime;
+		}
+	}
+
+	private class FlusherThread extends Thread {
+		private boolean shutdown = false;
+
+		public FlusherThread() {
+			this.setName("ExecutorLoader-Flusher-Thread");
+			this.setDaemon(true);
+		}
+
+		public void shutdown() {
+			shutdown = true;
+			this.interrupt();
+		}
+
+		public void run() {
+			while (!shutdown) {
+				synchronized (WriteBehindExecutorLoader.this) {
+					try {
+						if (getQueueSize() < flushSize) {
+							WriteBehindExecutorLoader.this.wait(flushIntervalMs);
+						}
+					} catch (InterruptedException e) {
+					}
+				}
+
+				try {
+					flush();
+				} catch (ExecutorManagerException e) {
+					logger.error("Error writing any of the queued updates. Will retry.", e);
+					synchronized (this) {
+						try {
+							// Back off a bit so a down db isn't hammered.
+							this.wait(flushIntervalMs * 5);
+						} catch (InterruptedException e1) {
+						}
+					}
+				} catch (RuntimeException e) {
+					logger.error("Unexpected error flushing queued updates.", e);
+				}
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -73,27 +74,71 @@ public class Flow {
 				}
 			}
 			
-			for (Node node: startNodes) {
+			setLevels();
+		}
+	}
+
+	/**
+	 * Sets the level of every node to its longest distance from a start node, visiting each
+	 * node and edge once in topological order. Nodes on a cycle are never reached and keep
+	 * their level. The loader has already marked those as error edges.
+	 */
+	private void setLevels() {
+		Map<String, Integer> inDegrees = new HashMap<String, Integer>();
+		for (Node node : nodes.values()) {
+			inDegrees.put(node.getId(), 0);
+		}
+		for (Map.Entry<String, Set<Edge>> entry : outEdges.entrySet()) {
+			if (!nodes.containsKey(entry.getKey())) {
+				continue;
+			}
+			for (Edge edge : entry.getValue()) {
+				Integer degree = inDegrees.get(edge.getTargetId());
+				if (degree != null) {
+					inDegrees.put(edge.getTargetId(), degree + 1);
+				}
+			}
+		}
+
+		LinkedList<Node> queue = new LinkedList<Node>();
+		for (Node node : nodes.values()) {
+			if (inDegrees.get(node.getId()) == 0) {
 				node.setLevel(0);
-				numLevels = 0;
-				recursiveSetLevels(node);
+				queue.add(node);
 			}
 		}
-	}
 
-	private void recursiveSetLevels(Node node) {
-		Set<Edge> edges = outEdges.get(node.getId());
-		if (edges != null) {
+		numLevels = 0;
+		while (!queue.isEmpty()) {
+			Node node = queue.removeFirst();
+			Set<Edge> edges = outEdges.get(node.getId());
+			if (edges == null) {
+				continue;
+			}
+
 			for (Edge edge : edges) {
 				Node nextNode = nodes.get(edge.getTargetId());
+				if (nextNode == null) {
+					continue;
+				}
 				edge.setSource(node);
 				edge.setTarget(nextNode);
-				
-				// We pick whichever is higher to get the max distance from root.
-				int level = Math.max(node.getLevel() + 1, nextNode.getLevel());
-				nextNode.setLevel(level);
-				numLevels = Math.max(level, numLevels);
-				recursiveSetLevels(nextNode);
+
+				int degree = inDegrees.get(nextNode.getId()) - 1;
+				inDegrees.put(nextNode.getId(), degree);
+				if (degree == 0) {
+					// All parents are done, so this is the max distance from root.
+					int level = 0;
+					for (Edge inEdge : inEdges.get(nextNode.getId())) {
+						Node parent = nodes.get(inEdge.getSourceId());
+						if (parent != null) {
+							level = Math.max(level, parent.getLevel() + 1);
+						}
+					}
+					nextNode.setLevel(level);
+					numLevels = Math.max(level, numLevels);
+					queue.add(nextNode);
+				}
 			}
 		}
 	}
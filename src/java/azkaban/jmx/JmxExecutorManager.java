@@ -36,4 +36,79 @@ public class JmxExecutorManager implements JmxExecutorManagerMBean {
 	public List<String> getPrimaryExecutorHostPorts() {
 		return new ArrayList<String>(manager.getPrimaryServerHosts());
 	}
+
+	@Override
+	public int getConnectionPoolLeased() {
+		return manager.getConnectionPoolStats().getLeased();
+	}
+
+	@Override
+	public int getConnectionPoolAvailable() {
+		return manager.getConnectionPoolStats().getAvailable();
+	}
+
+	@Override
+	public int getConnectionPoolPending() {
+		return manager.getConnectionPoolStats().getPending();
+	}
+
+	@Override
+	public int getConnectionPoolMax() {
+		return manager.getConnectionPoolStats().getMax();
+	}
+
+	@Override
+	public int getConnectionPoolMaxPerRoute() {
+		return manager.getConnectionPoolMaxPerRoute();
+	}
+
+	@Override
+	public List<String> getConnectionPoolStatsByExecutor() {
+		ArrayList<String> stats = new ArrayList<String>();
+		for (String hostPort: manager.getAllActiveExecutorServerHosts()) {
+			String[] split = hostPort.split(":");
+			stats.add(hostPort + " " + manager.getConnectionPoolStats(split[0], Integer.parseInt(split[1])).toString());
+		}
+		return stats;
+	}
+
+	@Override
+	public List<String> getPollStatsByExecutor() {
+		return manager.getPollStatsByExecutor();
+	}
+
+	@Override
+	public int getFinishedFlowCacheSize() {
+		return manager.getFinishedFlowCacheSize();
+	}
+
+	@Override
+	public long getFinishedFlowCacheWeight() {
+		return manager.getFinishedFlowCacheWeight();
+	}
+
+	@Override
+	public long getFinishedFlowCacheHits() {
+		return manager.getFinishedFlowCacheHits();
+	}
+
+	@Override
+	public long getFinishedFlowCacheMisses() {
+		return manager.getFinishedFlowCacheMisses();
+	}
+
+	@Override
+	public long getFinishedFlowCacheEvictions() {
+		return manager.getFinishedFlowCacheEvictions();
+	}
+
+	@Override
+	public long getNumPushedUpdates() {
+		return manager.getNumPushedUpdates();
+	}
+
+	@Override
+	public long getLastPushedUpdateTime() {
+		return manager.getLastPushedUpdateTime();
+	}
 }
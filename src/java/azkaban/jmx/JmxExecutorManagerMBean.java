@@ -17,4 +17,46 @@ public interface JmxExecutorManagerMBean {
 
 	@DisplayName("OPERATION: getPrimaryExecutorHostPorts")
 	public List<String> getPrimaryExecutorHostPorts();
+
+	@DisplayName("OPERATION: getConnectionPoolLeased")
+	public int getConnectionPoolLeased();
+
+	@DisplayName("OPERATION: getConnectionPoolAvailable")
+	public int getConnectionPoolAvailable();
+
+	@DisplayName("OPERATION: getConnectionPoolPending")
+	public int getConnectionPoolPending();
+
+	@DisplayName("OPERATION: getConnectionPoolMax")
+	public int getConnectionPoolMax();
+
+	@DisplayName("OPERATION: getConnectionPoolMaxPerRoute")
+	public int getConnectionPoolMaxPerRoute();
+
+	@DisplayName("OPERATION: getConnectionPoolStatsByExecutor")
+	public List<String> getConnectionPoolStatsByExecutor();
+
+	@DisplayName("OPERATION: getPollStatsByExecutor")
+	public List<String> getPollStatsByExecutor();
+
+	@DisplayName("OPERATION: getFinishedFlowCacheSize")
+	public int getFinishedFlowCacheSize();
+
+	@DisplayName("OPERATION: getFinishedFlowCacheWeight")
+	public long getFinishedFlowCacheWeight();
+
+	@DisplayName("OPERATION: getFinishedFlowCacheHits")
+	public long getFinishedFlowCacheHits();
+
+	@DisplayName("OPERATION: getFinishedFlowCacheMisses")
+	public long getFinishedFlowCacheMisses();
+
+	@DisplayName("OPERATION: getFinishedFlowCacheEvictions")
+	public long getFinishedFlowCacheEvictions();
+
+	@DisplayName("OPERATION: getNumPushedUpdates")
+	public long getNumPushedUpdates();
+
+	@DisplayName("OPERATION: getLastPushedUpdateTime")
+	public long getLastPushedUpdateTime();
 }
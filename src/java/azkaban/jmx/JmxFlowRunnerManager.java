@@ -54,4 +54,128 @@ public class JmxFlowRunnerManager implements JmxFlowRunnerManagerMBean {
 		return manager.getNumExecutingJobs();
 	}
 
+	@Override
+	public boolean isUpdatePusherActive() {
+		return manager.isUpdatePusherActive();
+	}
+
+	@Override
+	public long getLastUpdatePushTime() {
+		return manager.getLastUpdatePushTime();
+	}
+
+	@Override
+	public long getNumUpdatePushErrors() {
+		return manager.getNumUpdatePushErrors();
+	}
+
+	@Override
+	public long getNumLogChunksUploaded() {
+		return manager.getNumLogChunksUploaded();
+	}
+
+	@Override
+	public long getNumLogBytesUploaded() {
+		return manager.getNumLogBytesUploaded();
+	}
+
+	@Override
+	public long getNumLogUploadErrors() {
+		return manager.getNumLogUploadErrors();
+	}
+
+	@Override
+	public long getNumLogChunksDropped() {
+		return manager.getNumLogChunksDropped();
+	}
+
+	@Override
+	public int getMaxRunningJobs() {
+		return manager.getMaxRunningJobs();
+	}
+
+	@Override
+	public int getNumQueuedJobs() {
+		return manager.getNumQueuedJobs();
+	}
+
+	@Override
+	public int getNumParkedJobs() {
+		return manager.getNumParkedJobs();
+	}
+
+	@Override
+	public long getNumDispatchedJobs() {
+		return manager.getNumDispatchedJobs();
+	}
+
+	@Override
+	public long getAverageJobQueueWaitMs() {
+		return manager.getAverageJobQueueWaitMs();
+	}
+
+	@Override
+	public long getMaxJobQueueWaitMs() {
+		return manager.getMaxJobQueueWaitMs();
+	}
+
+	@Override
+	public double getJobSlotUtilization() {
+		return manager.getJobSlotUtilization();
+	}
+
+	@Override
+	public int getNumPumpedProcessStreams() {
+		return manager.getNumPumpedProcessStreams();
+	}
+
+	@Override
+	public long getNumProcessOutputBytes() {
+		return manager.getNumProcessOutputBytes();
+	}
+
+	@Override
+	public long getNumProcessOutputLines() {
+		return manager.getNumProcessOutputLines();
+	}
+
+	@Override
+	public long getNumProcessOutputDroppedLines() {
+		return manager.getNumProcessOutputDroppedLines();
+	}
+
+	@Override
+	public int getNumFlowsWaitingForAdmission() {
+		return manager.getNumFlowsWaitingForAdmission();
+	}
+
+	@Override
+	public long getAverageFlowAdmissionWaitMs() {
+		return manager.getAverageFlowAdmissionWaitMs();
+	}
+
+	@Override
+	public long getMaxFlowAdmissionWaitMs() {
+		return manager.getMaxFlowAdmissionWaitMs();
+	}
+
+	@Override
+	public String getLastFlowAdmissionRejection() {
+		return manager.getLastFlowAdmissionRejection();
+	}
+
+	@Override
+	public String getFlowAdmissionRejectionCounts() {
+		return manager.getFlowAdmissionRejectionCounts().toString();
+	}
+
+	@Override
+	public int getNumResourceTrackedProcesses() {
+		return manager.getNumResourceTrackedProcesses();
+	}
+
+	@Override
+	public long getLastResourceSampleDurationMs() {
+		return manager.getLastResourceSampleDurationMs();
+	}
 }
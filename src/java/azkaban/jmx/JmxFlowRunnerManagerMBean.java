@@ -27,4 +27,79 @@ public interface JmxFlowRunnerManagerMBean {
 	
 	@DisplayName("OPERATION: getTotalNumRunningJobs")
 	public int countTotalNumRunningJobs();
+	
+	@DisplayName("OPERATION: isUpdatePusherActive")
+	public boolean isUpdatePusherActive();
+
+	@DisplayName("OPERATION: getLastUpdatePushTime")
+	public long getLastUpdatePushTime();
+
+	@DisplayName("OPERATION: getNumUpdatePushErrors")
+	public long getNumUpdatePushErrors();
+
+	@DisplayName("OPERATION: getNumLogChunksUploaded")
+	public long getNumLogChunksUploaded();
+
+	@DisplayName("OPERATION: getNumLogBytesUploaded")
+	public long getNumLogBytesUploaded();
+
+	@DisplayName("OPERATION: getNumLogUploadErrors")
+	public long getNumLogUploadErrors();
+
+	@DisplayName("OPERATION: getNumLogChunksDropped")
+	public long getNumLogChunksDropped();
+
+	@DisplayName("OPERATION: getMaxRunningJobs")
+	public int getMaxRunningJobs();
+
+	@DisplayName("OPERATION: getNumQueuedJobs")
+	public int getNumQueuedJobs();
+
+	@DisplayName("OPERATION: getNumParkedJobs")
+	public int getNumParkedJobs();
+
+	@DisplayName("OPERATION: getNumDispatchedJobs")
+	public long getNumDispatchedJobs();
+
+	@DisplayName("OPERATION: getAverageJobQueueWaitMs")
+	public long getAverageJobQueueWaitMs();
+
+	@DisplayName("OPERATION: getMaxJobQueueWaitMs")
+	public long getMaxJobQueueWaitMs();
+
+	@DisplayName("OPERATION: getJobSlotUtilization")
+	public double getJobSlotUtilization();
+
+	@DisplayName("OPERATION: getNumPumpedProcessStreams")
+	public int getNumPumpedProcessStreams();
+
+	@DisplayName("OPERATION: getNumProcessOutputBytes")
+	public long getNumProcessOutputBytes();
+
+	@DisplayName("OPERATION: getNumProcessOutputLines")
+	public long getNumProcessOutputLines();
+
+	@DisplayName("OPERATION: getNumProcessOutputDroppedLines")
+	public long getNumProcessOutputDroppedLines();
+
+	@DisplayName("OPERATION: getNumFlowsWaitingForAdmission")
+	public int getNumFlowsWaitingForAdmission();
+
+	@DisplayName("OPERATION: getAverageFlowAdmissionWaitMs")
+	public long getAverageFlowAdmissionWaitMs();
+
+	@DisplayName("OPERATION: getMaxFlowAdmissionWaitMs")
+	public long getMaxFlowAdmissionWaitMs();
+
+	@DisplayName("OPERATION: getLastFlowAdmissionRejection")
+	public String getLastFlowAdmissionRejection();
+
+	@DisplayName("OPERATION: getFlowAdmissionRejectionCounts")
+	public String getFlowAdmissionRejectionCounts();
+
+	@DisplayName("OPERATION: getNumResourceTrackedProcesses")
+	public int getNumResourceTrackedProcesses();
+
+	@DisplayName("OPERATION: getLastResourceSampleDurationMs")
+	public long getLastResourceSampleDurationMs();
 }
@@ -28,4 +28,29 @@ public class JmxScheduler implements JmxSchedulerMBean {
 	public Boolean isThreadActive() {
 		return manager.isThreadActive();
 	}
+
+	@Override
+	public String getFireSkew() {
+		return manager.getFireSkew();
+	}
+
+	@Override
+	public Long getFireSkewP99Ms() {
+		return manager.getFireSkewPercentileMs(99);
+	}
+
+	@Override
+	public Long getNumScheduledSubmissions() {
+		return manager.getNumScheduledSubmissions();
+	}
+
+	@Override
+	public Long getNumScheduledSubmissionFailures() {
+		return manager.getNumScheduledSubmissionFailures();
+	}
+
+	@Override
+	public Integer getNumPendingSubmissions() {
+		return manager.getNumPendingSubmissions();
+	}
 }
\ No newline at end of file
@@ -12,4 +12,19 @@ public interface JmxSchedulerMBean {
 	
 	@DisplayName("OPERATION: isThreadActive")
 	Boolean isThreadActive();
+	
+	@DisplayName("OPERATION: getFireSkew")
+	String getFireSkew();
+	
+	@DisplayName("OPERATION: getFireSkewP99Ms")
+	Long getFireSkewP99Ms();
+	
+	@DisplayName("OPERATION: getNumScheduledSubmissions")
+	Long getNumScheduledSubmissions();
+	
+	@DisplayName("OPERATION: getNumScheduledSubmissionFailures")
+	Long getNumScheduledSubmissionFailures();
+	
+	@DisplayName("OPERATION: getNumPendingSubmissions")
+	Integer getNumPendingSubmissions();
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package azkaban.jmx;
+
+import azkaban.executor.WriteBehindExecutorLoader;
+
+public class JmxWriteBehindExecutorLoader implements JmxWriteBehindExecutorLoaderMBean {
+	private WriteBehindExecutorLoader loader;
+
+	public JmxWriteBehindExecutorLoader(WriteBehindExecutorLoader loader) {
+		this.loader = loader;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return loader.getQueueSize();
+	}
+
+	@Override
+	public long getNumWrites() {
+		return loader.getNumWrites();
+	}
+
+	@Override
+	public long getNumCoalescedWrites() {
+		return loader.getNumCoalescedWrites();
+	}
+
+	@Override
+	public long getNumFlushes() {
+		return loader.getNumFlushes();
+	}
+
+	@Override
+	public long getNumFlushErrors() {
+		return loader.getNumFlushErrors();
+	}
+
+	@Override
+	public long getNumDroppedWrites() {
+		return loader.getNumDroppedWrites();
+	}
+
+	@Override
+	public long getAverageFlushTimeMs() {
+		return loader.getAverageFlushTimeMs();
+	}
+
+	@Override
+	public long getMaxFlushTimeMs() {
+		return loader.getMaxFlushTimeMs();
+	}
+
+	@Override
+	public long getLastFlushTimeMs() {
+		return loader.getLastFlushTimeMs();
+	}
+
+	@Override
+	public long getLastFlushSize() {
+		return loader.getLastFlushSize();
+	}
+
+	@Override
+	public long getFlushIntervalMs() {
+		return loader.getFlushIntervalMs();
+	}
+
+	@Override
+	public int getFlushSize() {
+		return loader.getFlushSize();
+	}
+
+	@Override
+	public int getMaxWriteAttempts() {
+		return loader.getMaxWriteAttempts();
+	}
+}
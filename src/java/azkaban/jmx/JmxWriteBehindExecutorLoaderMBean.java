@@ -0,0 +1,42 @@
+package azkaban.jmx;
+
+public interface JmxWriteBehindExecutorLoaderMBean {
+	@DisplayName("OPERATION: getQueueSize")
+	public int getQueueSize();
+
+	@DisplayName("OPERATION: getNumWrites")
+	public long getNumWrites();
+
+	@DisplayName("OPERATION: getNumCoalescedWrites")
+	public long getNumCoalescedWrites();
+
+	@DisplayName("OPERATION: getNumFlushes")
+	public long getNumFlushes();
+
+	@DisplayName("OPERATION: getNumFlushErrors")
+	public long getNumFlushErrors();
+
+	@DisplayName("OPERATION: getNumDroppedWrites")
+	public long getNumDroppedWrites();
+
+	@DisplayName("OPERATION: getAverageFlushTimeMs")
+	public long getAverageFlushTimeMs();
+
+	@DisplayName("OPERATION: getMaxFlushTimeMs")
+	public long getMaxFlushTimeMs();
+
+	@DisplayName("OPERATION: getLastFlushTimeMs")
+	public long getLastFlushTimeMs();
+
+	@DisplayName("OPERATION: getLastFlushSize")
+	public long getLastFlushSize();
+
+	@DisplayName("OPERATION: getFlushIntervalMs")
+	public long getFlushIntervalMs();
+
+	@DisplayName("OPERATION: getFlushSize")
+	public int getFlushSize();
+
+	@DisplayName("OPERATION: getMaxWriteAttempts")
+	public int getMaxWriteAttempts();
+}
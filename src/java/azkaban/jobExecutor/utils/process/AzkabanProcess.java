@@ -17,8 +17,8 @@ package azkaban.jobExecutor.utils.process;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -27,29 +27,47 @@ import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
-import azkaban.utils.LogGobbler;
+import azkaban.jobExecutor.utils.process.ProcessOutputPump.PumpedStream;
+import azkaban.jobExecutor.utils.process.ProcessResourceSampler.TrackedProcess;
+import azkaban.utils.ResourceUsage;
 
 import com.google.common.base.Joiner;
 
 /**
  * A less shitty version of java.lang.Process.
  * 
- * Output is read by seperate threads to avoid deadlock and logged to log4j
- * loggers.
+ * Output is drained by a shared ProcessOutputPump to avoid deadlock. The thread
+ * running the process logs it to the log4j logger while it waits for the
+ * process to exit, so only that thread is held up by a slow appender. The
+ * process counts as complete when it exits, before the rest of its output has
+ * been logged.
  * 
  */
 public class AzkabanProcess {
+	private static final long EXIT_POLL_MS = 50;
+	private static final long OUTPUT_FINISH_TIMEOUT_MS = 5000;
+
 	private final String workingDir;
 	private final List<String> cmd;
 	private final Map<String, String> env;
 	private final Logger logger;
+	private final ProcessOutputPump outputPump;
+	private final int stdOutSnippetSize;
+	private final int stdErrSnippetSize;
 	private final CountDownLatch startupLatch;
 	private final CountDownLatch completeLatch;
 	
 	private volatile int processId;
 	private volatile Process process;
+	private volatile PumpedStream outputStream;
+	private volatile PumpedStream errorStream;
+	private final Object outputSignal = new Object();
 	
 	public AzkabanProcess(final List<String> cmd, final Map<String, String> env, final String workingDir, final Logger logger) {
+		this(cmd, env, workingDir, logger, ProcessOutputPump.getSharedPump(), 30, 30);
+	}
+
+	public AzkabanProcess(final List<String> cmd, final Map<String, String> env, final String workingDir, final Logger logger, final ProcessOutputPump outputPump, final int stdOutSnippetSize, final int stdErrSnippetSize) {
 		this.cmd = cmd;
 		this.env = env;
 		this.workingDir = workingDir;
@@ -57,6 +75,9 @@ public class AzkabanProcess {
 		this.startupLatch = new CountDownLatch(1);
 		this.completeLatch = new CountDownLatch(1);
 		this.logger = logger;
+		this.outputPump = outputPump;
+		this.stdOutSnippetSize = stdOutSnippetSize;
+		this.stdErrSnippetSize = stdErrSnippetSize;
 	}
 
 	/**
@@ -80,26 +101,120 @@ public class AzkabanProcess {
 
 		this.startupLatch.countDown();
 
-		LogGobbler outputGobbler = new LogGobbler(new InputStreamReader(process.getInputStream()), logger, Level.INFO, 30);
-		LogGobbler errorGobbler = new LogGobbler(new InputStreamReader(process.getErrorStream()), logger, Level.ERROR, 30);
+		// Charge the process tree to the job this thread runs, if it is being measured.
+		ProcessResourceSampler sampler = ProcessResourceSampler.getSharedSampler();
+		ResourceUsage usage = ResourceUsage.getCurrent();
+		TrackedProcess trackedProcess = null;
+		if (sampler != null && usage != null && processId > 0) {
+			trackedProcess = sampler.track(processId, usage);
+		}
+
+		outputStream = outputPump.register(process.getInputStream(), logger, Level.INFO, stdOutSnippetSize, outputSignal);
+		errorStream = outputPump.register(process.getErrorStream(), logger, Level.ERROR, stdErrSnippetSize, outputSignal);
 		
-		outputGobbler.start();
-		errorGobbler.start();
 		int exitCode = -1;
 		try {
-			exitCode = process.waitFor();
+			exitCode = waitForExit();
 		} catch (InterruptedException e) {
 			logger.info("Process interrupted. Exit code is " + exitCode, e);
 		}
-
+		if (trackedProcess != null) {
+			sampler.untrack(trackedProcess);
+		}
+		// Kill and completion waits are done as soon as the process has exited.
 		completeLatch.countDown();
+
+		// Log the rest of the output, including anything its children still write to the pipes.
+		outputStream.processExited();
+		errorStream.processExited();
+		if (!finishOutput(OUTPUT_FINISH_TIMEOUT_MS)) {
+			outputStream.abandon();
+			errorStream.abandon();
+			logger.warn("Process output still open " + OUTPUT_FINISH_TIMEOUT_MS + " ms after the process ended. Dropping the rest of it.");
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug(String.format("Process output: stdout %d lines, %d bytes at %.1f KB/s. stderr %d lines, %d bytes at %.1f KB/s.", 
+					outputStream.getLines(), outputStream.getBytes(), outputStream.getBytesPerSecond() / 1024, 
+					errorStream.getLines(), errorStream.getBytes(), errorStream.getBytesPerSecond() / 1024));
+		}
+
 		if (exitCode != 0) {
-			throw new ProcessFailureException(exitCode, errorGobbler.getRecentLog());
+			throw new ProcessFailureException(exitCode, errorStream.getRecentLog());
+		}
+	}
+
+	/**
+	 * Logs the process output until the process exits.
+	 */
+	private int waitForExit() throws InterruptedException {
+		while (true) {
+			logOutput();
+			try {
+				return process.exitValue();
+			} catch (IllegalThreadStateException e) {
+				// Still running.
+			}
+
+			synchronized (outputSignal) {
+				if (!outputStream.hasPending() && !errorStream.hasPending()) {
+					outputSignal.wait(EXIT_POLL_MS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Logs the process output until both streams reach end of file.
+	 * 
+	 * @return true if the streams were drained within the given time
+	 */
+	private boolean finishOutput(long waitMs) {
+		long deadline = System.currentTimeMillis() + waitMs;
+		try {
+			while (true) {
+				boolean drained = outputStream.isDrained() && errorStream.isDrained();
+				logOutput();
+				if (drained) {
+					return true;
+				}
+
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				synchronized (outputSignal) {
+					if (!outputStream.hasPending() && !errorStream.hasPending() && !(outputStream.isDrained() && errorStream.isDrained())) {
+						outputSignal.wait(remaining);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.info("Interrupted while waiting for process output.", e);
+			return false;
 		}
+	}
 
-		// try to wait for everything to get logged out before exiting
-		outputGobbler.awaitCompletion(5000);
-		errorGobbler.awaitCompletion(5000);
+	private void logOutput() {
+		outputStream.logPending();
+		errorStream.logPending();
+	}
+
+	/**
+	 * Number of bytes the process has written to stdout and stderr so far.
+	 */
+	public long getOutputBytes() {
+		checkStarted();
+		long bytes = outputStream == null ? 0 : outputStream.getBytes();
+		return bytes + (errorStream == null ? 0 : errorStream.getBytes());
+	}
+
+	/**
+	 * Number of lines the process has written to stdout and stderr so far.
+	 */
+	public long getOutputLines() {
+		checkStarted();
+		long lines = outputStream == null ? 0 : outputStream.getLines();
+		return lines + (errorStream == null ? 0 : errorStream.getLines());
 	}
 
 	/**
@@ -174,13 +289,23 @@ public class AzkabanProcess {
 	 */
 	private int processId(final java.lang.Process process) {
 		int processId = 0;
+		try {
+			// Java 9 and later have Process.pid(), and don't let the field be read.
+			Method pid = Process.class.getMethod("pid");
+			return ((Long)pid.invoke(process)).intValue();
+		} catch (NoSuchMethodException e) {
+			// Fall back to the field below.
+		} catch (Throwable e) {
+			logger.warn("Could not read the process id through Process.pid().", e);
+		}
+		
 		try {
 			Field f = process.getClass().getDeclaredField("pid");
 			f.setAccessible(true);
 
 			processId = f.getInt(process);
 		} catch (Throwable e) {
-			e.printStackTrace();
+			logger.warn("Could not read the process id of " + process.getClass().getName() + ".", e);
 		}
 
 		return processId;
@@ -34,6 +34,7 @@ public class AzkabanProcessBuilder {
 	private Map<String, String> env = new HashMap<String, String>();
 	private String workingDir = System.getProperty("user.dir");
 	private Logger logger = Logger.getLogger(AzkabanProcess.class);
+	private ProcessOutputPump outputPump = null;
 
 	private int stdErrSnippetSize = 30;
 	private int stdOutSnippetSize = 30;
@@ -98,8 +99,17 @@ public class AzkabanProcessBuilder {
 		return this;
 	}
 
+	/**
+	 * The pump that drains the process output. Defaults to the shared pump.
+	 */
+	public AzkabanProcessBuilder setOutputPump(ProcessOutputPump outputPump) {
+		this.outputPump = outputPump;
+		return this;
+	}
+
 	public AzkabanProcess build() {
-		return new AzkabanProcess(cmd, env, workingDir, logger);
+		ProcessOutputPump pump = outputPump == null ? ProcessOutputPump.getSharedPump() : outputPump;
+		return new AzkabanProcess(cmd, env, workingDir, logger, pump, stdOutSnippetSize, stdErrSnippetSize);
 	}
 
 	public List<String> getCommand() {
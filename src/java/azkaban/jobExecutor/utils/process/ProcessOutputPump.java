@@ -0,0 +1,535 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package azkaban.jobExecutor.utils.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import azkaban.utils.CircularBuffer;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+
+/**
+ * Drains the output pipes of every running process with a small, fixed set of threads.
+ *
+ * Process streams can't be selected on, so each thread polls the streams assigned to it and
+ * only reads what is already available. A stream never gets more than one buffer per pass,
+ * so a chatty process can't hold up the others. Partial lines are held up to a bounded size
+ * before they are split anyway.
+ *
+ * The pump threads never log. Lines are queued on each stream, up to a bounded size, and the
+ * thread waiting on the process logs them with logPending(). A stream whose queue is full is
+ * not read until it has been logged, so a slow appender only holds up its own process.
+ *
+ * Once the process has exited, its streams are read until end of file by a finisher thread,
+ * since children of the process may still hold the pipes open.
+ */
+public class ProcessOutputPump {
+	private static final Logger logger = Logger.getLogger(ProcessOutputPump.class);
+
+	public static final int DEFAULT_NUM_THREADS = 2;
+	public static final Charset OUTPUT_CHARSET = Charsets.UTF_8;
+	private static final int READ_BUFFER_SIZE = 8 * 1024;
+	private static final int MAX_LINE_BYTES = 64 * 1024;
+	private static final int MAX_PENDING_BYTES = 256 * 1024;
+	private static final long IDLE_SLEEP_MS = 20;
+
+	private static ProcessOutputPump sharedPump = null;
+
+	private final PumpThread[] threads;
+	private int nextThread = 0;
+	private final ExecutorService finisherService;
+	private final AtomicInteger numFinishingStreams = new AtomicInteger(0);
+
+	private final AtomicLong totalBytes = new AtomicLong(0);
+	private final AtomicLong totalLines = new AtomicLong(0);
+	private final AtomicLong totalDroppedLines = new AtomicLong(0);
+
+	/**
+	 * The pump used by processes that aren't given one. Created with the default number of
+	 * threads the first time it is needed.
+	 */
+	public static synchronized ProcessOutputPump getSharedPump() {
+		if (sharedPump == null) {
+			sharedPump = new ProcessOutputPump(DEFAULT_NUM_THREADS);
+		}
+		return sharedPump;
+	}
+
+	/**
+	 * Replaces the shared pump. The previous one is shut down once its streams are drained.
+	 */
+	public static synchronized void setSharedPump(ProcessOutputPump pump) {
+		if (sharedPump != null && sharedPump != pump) {
+			sharedPump.shutdown();
+		}
+		sharedPump = pump;
+	}
+
+	public ProcessOutputPump(int numThreads) {
+		threads = new PumpThread[Math.max(1, numThreads)];
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i] = new PumpThread("ProcessOutputPump-Thread-" + (i + 1));
+			threads[i].start();
+		}
+
+		// Finishers only live while an exited process's pipe is still open.
+		finisherService = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threadNum = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ProcessOutputPump-Finisher-" + threadNum.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts draining the stream. Its lines are logged to the logger by whoever calls
+	 * logPending(). The signal is notified whenever lines are queued or the stream is drained,
+	 * so one signal can be shared by the streams of a process. The last snippetLines lines are
+	 * kept for error reporting.
+	 */
+	public PumpedStream register(InputStream stream, Logger streamLogger, Level level, int snippetLines, Object signal) {
+		PumpedStream pumped = new PumpedStream(stream, streamLogger, level, snippetLines, signal);
+		PumpThread thread;
+		synchronized (this) {
+			thread = threads[nextThread];
+			nextThread = (nextThread + 1) % threads.length;
+		}
+		thread.add(pumped);
+		return pumped;
+	}
+
+	/**
+	 * Stops the pump threads after the streams already registered have been drained.
+	 */
+	public void shutdown() {
+		for (PumpThread thread : threads) {
+			thread.shutdown();
+		}
+	}
+
+	public int getNumThreads() {
+		return threads.length;
+	}
+
+	public int getNumStreams() {
+		int count = numFinishingStreams.get();
+		for (PumpThread thread : threads) {
+			count += thread.getNumStreams();
+		}
+		return count;
+	}
+
+	public long getTotalBytes() {
+		return totalBytes.get();
+	}
+
+	public long getTotalLines() {
+		return totalLines.get();
+	}
+
+	public long getTotalDroppedLines() {
+		return totalDroppedLines.get();
+	}
+
+	/**
+	 * Hands the stream to a finisher thread. The caller has already counted it as finishing.
+	 */
+	private void finishStream(final PumpedStream stream) {
+		finisherService.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					stream.readToEnd();
+				} finally {
+					numFinishingStreams.decrementAndGet();
+					stream.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * One process output stream being drained by the pump.
+	 */
+	public class PumpedStream {
+		private final InputStream stream;
+		private final Logger streamLogger;
+		private final Level level;
+		private final CircularBuffer<String> snippet;
+		private final Object signal;
+		private final CountDownLatch drainedLatch = new CountDownLatch(1);
+		private final long startTime = System.currentTimeMillis();
+
+		// Only touched by the thread reading the stream.
+		private byte[] partialLine = new byte[256];
+		private int partialLength = 0;
+
+		// Lines waiting to be logged, guarded by signal.
+		private final ArrayDeque<String> pendingLines = new ArrayDeque<String>();
+		private int pendingBytes = 0;
+		private boolean abandoned = false;
+
+		private volatile boolean exited = false;
+		private boolean ended = false;
+		private volatile long bytes = 0;
+		private volatile long lines = 0;
+		private volatile long droppedLines = 0;
+		private volatile long endTime = -1;
+
+		private PumpedStream(InputStream stream, Logger streamLogger, Level level, int snippetLines, Object signal) {
+			this.stream = stream;
+			this.streamLogger = streamLogger;
+			this.level = level;
+			this.snippet = new CircularBuffer<String>(snippetLines);
+			this.signal = signal;
+		}
+
+		/**
+		 * Marks that the process has exited. The rest of the stream is read until end of file.
+		 */
+		public void processExited() {
+			exited = true;
+		}
+
+		/**
+		 * Logs the queued lines on the calling thread.
+		 *
+		 * @return the number of lines logged
+		 */
+		public int logPending() {
+			List<String> toLog;
+			synchronized (signal) {
+				if (pendingLines.isEmpty()) {
+					return 0;
+				}
+				toLog = new ArrayList<String>(pendingLines);
+				pendingLines.clear();
+				pendingBytes = 0;
+				signal.notifyAll();
+			}
+
+			if (streamLogger != null) {
+				for (String line : toLog) {
+					streamLogger.log(level, line);
+				}
+			}
+			return toLog.size();
+		}
+
+		public boolean hasPending() {
+			synchronized (signal) {
+				return !pendingLines.isEmpty();
+			}
+		}
+
+		/**
+		 * Stops queuing lines for logging. Lines still queued, and any read from here on, are
+		 * dropped, so nothing the process writes is held up by the stream any more.
+		 */
+		public void abandon() {
+			synchronized (signal) {
+				abandoned = true;
+				dropLines(pendingLines.size());
+				pendingLines.clear();
+				pendingBytes = 0;
+				signal.notifyAll();
+			}
+		}
+
+		public boolean isDrained() {
+			return drainedLatch.getCount() == 0;
+		}
+
+		public String getRecentLog() {
+			synchronized (snippet) {
+				return Joiner.on(System.getProperty("line.separator")).join(snippet);
+			}
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getLines() {
+			return lines;
+		}
+
+		/**
+		 * Lines that were read but not logged, because the stream was abandoned.
+		 */
+		public long getDroppedLines() {
+			return droppedLines;
+		}
+
+		/**
+		 * Bytes per second read from the stream, up to when it was drained.
+		 */
+		public double getBytesPerSecond() {
+			long end = endTime < 0 ? System.currentTimeMillis() : endTime;
+			long elapsed = Math.max(1, end - startTime);
+			return bytes * 1000.0 / elapsed;
+		}
+
+		private boolean isBacklogged() {
+			synchronized (signal) {
+				return pendingBytes >= MAX_PENDING_BYTES;
+			}
+		}
+
+		/**
+		 * Reads at most one buffer of what is available. Called only by the owning pump thread.
+		 *
+		 * @return the number of bytes read, or -1 once the pump thread is done with the stream
+		 */
+		private int pump(byte[] buffer) {
+			if (exited) {
+				return -1;
+			}
+			else if (isBacklogged()) {
+				return 0;
+			}
+
+			int read = 0;
+			try {
+				int available = stream.available();
+				if (available > 0) {
+					read = stream.read(buffer, 0, Math.min(available, buffer.length));
+				}
+			} catch (IOException e) {
+				// Thrown once the stream has been closed under us.
+				read = -1;
+			}
+
+			if (read > 0) {
+				addBytes(buffer, read);
+			}
+			else if (read < 0) {
+				ended = true;
+			}
+			return read;
+		}
+
+		/**
+		 * Reads the stream until end of file, blocking while the queue is full. Called by a
+		 * finisher thread once the pump thread has handed the stream over.
+		 */
+		private void readToEnd() {
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
+			try {
+				while (true) {
+					synchronized (signal) {
+						while (pendingBytes >= MAX_PENDING_BYTES) {
+							signal.wait();
+						}
+					}
+
+					int read = stream.read(buffer);
+					if (read < 0) {
+						break;
+					}
+					addBytes(buffer, read);
+				}
+			} catch (IOException e) {
+				// Thrown once the stream has been closed under us.
+			} catch (InterruptedException e) {
+				logger.info("Interrupted while reading the rest of the process output.");
+			}
+		}
+
+		private void addBytes(byte[] buffer, int length) {
+			bytes += length;
+			totalBytes.addAndGet(length);
+			for (int i = 0; i < length; ++i) {
+				byte b = buffer[i];
+				if (b == '\n') {
+					queueLine(partialLength);
+				}
+				else {
+					if (partialLength == partialLine.length) {
+						if (partialLength >= MAX_LINE_BYTES) {
+							queueLine(partialLength);
+						}
+						else {
+							byte[] grown = new byte[Math.min(MAX_LINE_BYTES, partialLine.length * 2)];
+							System.arraycopy(partialLine, 0, grown, 0, partialLength);
+							partialLine = grown;
+						}
+					}
+					partialLine[partialLength++] = b;
+				}
+			}
+		}
+
+		private void queueLine(int length) {
+			if (length > 0 && partialLine[length - 1] == '\r') {
+				length--;
+			}
+			String line = new String(partialLine, 0, length, OUTPUT_CHARSET);
+			partialLength = 0;
+
+			lines++;
+			totalLines.incrementAndGet();
+			synchronized (snippet) {
+				snippet.append(line);
+			}
+
+			synchronized (signal) {
+				if (abandoned) {
+					dropLines(1);
+				}
+				else {
+					pendingLines.add(line);
+					pendingBytes += length;
+					signal.notifyAll();
+				}
+			}
+		}
+
+		private void dropLines(int count) {
+			droppedLines += count;
+			totalDroppedLines.addAndGet(count);
+		}
+
+		private void close() {
+			if (partialLength > 0) {
+				queueLine(partialLength);
+			}
+			try {
+				stream.close();
+			} catch (IOException e) {
+				// Nothing left to read anyway
+			}
+			endTime = System.currentTimeMillis();
+			drainedLatch.countDown();
+			synchronized (signal) {
+				signal.notifyAll();
+			}
+		}
+	}
+
+	private class PumpThread extends Thread {
+		private final List<PumpedStream> added = new ArrayList<PumpedStream>();
+		private final List<PumpedStream> streams = new ArrayList<PumpedStream>();
+		private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+		private volatile int numStreams = 0;
+		private boolean shutdown = false;
+
+		private PumpThread(String name) {
+			super(name);
+			this.setDaemon(true);
+		}
+
+		private synchronized void add(PumpedStream stream) {
+			added.add(stream);
+			numStreams++;
+			notifyAll();
+		}
+
+		private synchronized void shutdown() {
+			shutdown = true;
+			notifyAll();
+		}
+
+		private int getNumStreams() {
+			return numStreams;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				synchronized (this) {
+					while (added.isEmpty() && streams.isEmpty() && !shutdown) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							// Keep pumping until shut down.
+						}
+					}
+					if (added.isEmpty() && streams.isEmpty()) {
+						return;
+					}
+					streams.addAll(added);
+					added.clear();
+				}
+
+				boolean readAny = false;
+				for (int i = streams.size() - 1; i >= 0; --i) {
+					PumpedStream stream = streams.get(i);
+					int read;
+					try {
+						read = stream.pump(buffer);
+					} catch (RuntimeException e) {
+						logger.error("Error pumping process output.", e);
+						stream.ended = true;
+						read = -1;
+					}
+
+					if (read < 0) {
+						// Counted as finishing before it stops counting here, so it is never missed.
+						streams.remove(i);
+						if (!stream.ended) {
+							numFinishingStreams.incrementAndGet();
+						}
+						synchronized (this) {
+							numStreams--;
+						}
+
+						if (stream.ended) {
+							stream.close();
+						}
+						else {
+							finishStream(stream);
+						}
+					}
+					else if (read > 0) {
+						readAny = true;
+					}
+				}
+
+				if (!readAny) {
+					synchronized (this) {
+						if (added.isEmpty() && !streams.isEmpty()) {
+							try {
+								wait(IDLE_SLEEP_MS);
+							} catch (InterruptedException e) {
+								// Keep pumping until shut down.
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
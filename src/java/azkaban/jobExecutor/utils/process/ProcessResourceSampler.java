@@ -0,0 +1,362 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package azkaban.jobExecutor.utils.process;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+import azkaban.utils.ResourceUsage;
+
+/**
+ * Measures what job processes use by periodically walking their process trees in /proc.
+ *
+ * Every sample reads the stat file of every process once, to find the descendants of the
+ * tracked processes. CPU time and I/O are charged as the increase since the last sample of
+ * each process, so children that come and go between samples are partly missed, and so is
+ * whatever a process does after its last sample. Resident memory is the peak of the sum over
+ * the tree.
+ */
+public class ProcessResourceSampler {
+	private static final Logger logger = Logger.getLogger(ProcessResourceSampler.class);
+
+	public static final long DEFAULT_INTERVAL_MS = 5000;
+	private static final long DEFAULT_CLOCK_TICKS = 100;
+	private static final long DEFAULT_PAGE_SIZE = 4096;
+
+	private static ProcessResourceSampler sharedSampler = null;
+
+	private final File procDir;
+	private final long intervalMs;
+	private final long clockTicksPerSecond;
+	private final long pageSize;
+	private final List<TrackedProcess> tracked = new CopyOnWriteArrayList<TrackedProcess>();
+	private SamplerThread samplerThread = null;
+
+	private volatile long numSamples = 0;
+	private volatile long lastSampleDurationMs = 0;
+
+	/**
+	 * The sampler job processes are tracked by, or null if they aren't measured.
+	 */
+	public static synchronized ProcessResourceSampler getSharedSampler() {
+		return sharedSampler;
+	}
+
+	public static synchronized void setSharedSampler(ProcessResourceSampler sampler) {
+		if (sharedSampler != null && sharedSampler != sampler) {
+			sharedSampler.shutdown();
+		}
+		sharedSampler = sampler;
+	}
+
+	/**
+	 * @return true if this host has a /proc to sample
+	 */
+	public static boolean isSupported() {
+		return new File("/proc/self/stat").exists();
+	}
+
+	public ProcessResourceSampler(long intervalMs) {
+		this(new File("/proc"), intervalMs, getConf("CLK_TCK", DEFAULT_CLOCK_TICKS), getConf("PAGESIZE", DEFAULT_PAGE_SIZE));
+	}
+
+	public ProcessResourceSampler(File procDir, long intervalMs, long clockTicksPerSecond, long pageSize) {
+		this.procDir = procDir;
+		this.intervalMs = intervalMs;
+		this.clockTicksPerSecond = clockTicksPerSecond;
+		this.pageSize = pageSize;
+	}
+
+	public synchronized void start() {
+		if (samplerThread == null) {
+			samplerThread = new SamplerThread();
+			samplerThread.start();
+		}
+	}
+
+	public synchronized void shutdown() {
+		if (samplerThread != null) {
+			samplerThread.shutdown();
+			samplerThread = null;
+		}
+	}
+
+	/**
+	 * Starts charging the process and its descendants to the usage.
+	 */
+	public TrackedProcess track(int pid, ResourceUsage usage) {
+		TrackedProcess process = new TrackedProcess(pid, usage);
+		usage.addProcess();
+		tracked.add(process);
+		return process;
+	}
+
+	public void untrack(TrackedProcess process) {
+		tracked.remove(process);
+	}
+
+	public int getNumTrackedProcesses() {
+		return tracked.size();
+	}
+
+	public long getNumSamples() {
+		return numSamples;
+	}
+
+	public long getLastSampleDurationMs() {
+		return lastSampleDurationMs;
+	}
+
+	/**
+	 * Takes one sample of every tracked process tree.
+	 */
+	public void sample() {
+		if (tracked.isEmpty()) {
+			return;
+		}
+
+		long startTime = System.currentTimeMillis();
+		Map<Integer, ProcStat> stats = new HashMap<Integer, ProcStat>();
+		Map<Integer, List<Integer>> children = new HashMap<Integer, List<Integer>>();
+		File[] entries = procDir.listFiles();
+		if (entries == null) {
+			return;
+		}
+
+		for (File entry : entries) {
+			int pid;
+			try {
+				pid = Integer.parseInt(entry.getName());
+			} catch (NumberFormatException e) {
+				continue;
+			}
+
+			ProcStat stat = readStat(entry);
+			if (stat == null) {
+				// Exited since the directory was listed.
+				continue;
+			}
+			stats.put(pid, stat);
+			List<Integer> siblings = children.get(stat.ppid);
+			if (siblings == null) {
+				siblings = new ArrayList<Integer>();
+				children.put(stat.ppid, siblings);
+			}
+			siblings.add(pid);
+		}
+
+		for (TrackedProcess process : tracked) {
+			long rssBytes = 0;
+			LinkedList<Integer> toVisit = new LinkedList<Integer>();
+			toVisit.add(process.pid);
+			while (!toVisit.isEmpty()) {
+				int pid = toVisit.removeFirst();
+				ProcStat stat = stats.get(pid);
+				if (stat == null) {
+					continue;
+				}
+
+				long[] io = readIo(new File(procDir, String.valueOf(pid)));
+				process.update(pid + ":" + stat.startTime, stat.cpuTicks * 1000 / clockTicksPerSecond, io[0], io[1]);
+				rssBytes += stat.rssPages * pageSize;
+
+				List<Integer> childPids = children.get(pid);
+				if (childPids != null) {
+					toVisit.addAll(childPids);
+				}
+			}
+			process.usage.recordRss(rssBytes);
+		}
+
+		numSamples++;
+		lastSampleDurationMs = System.currentTimeMillis() - startTime;
+	}
+
+	private ProcStat readStat(File procEntry) {
+		String line = readFirstLine(new File(procEntry, "stat"));
+		if (line == null) {
+			return null;
+		}
+
+		// The command name is in parentheses and can contain spaces, so fields are counted after it.
+		int end = line.lastIndexOf(')');
+		if (end < 0) {
+			return null;
+		}
+		String[] fields = line.substring(end + 2).split(" ");
+		if (fields.length < 22) {
+			return null;
+		}
+
+		try {
+			ProcStat stat = new ProcStat();
+			stat.ppid = Integer.parseInt(fields[1]);
+			stat.cpuTicks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+			stat.startTime = Long.parseLong(fields[19]);
+			stat.rssPages = Long.parseLong(fields[21]);
+			return stat;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the bytes read from and written to storage, or zeros if they can't be read.
+	 */
+	private long[] readIo(File procEntry) {
+		long[] io = new long[2];
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(new File(procEntry, "io")));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("read_bytes:")) {
+					io[0] = Long.parseLong(line.substring("read_bytes:".length()).trim());
+				}
+				else if (line.startsWith("write_bytes:")) {
+					io[1] = Long.parseLong(line.substring("write_bytes:".length()).trim());
+				}
+			}
+		} catch (IOException e) {
+			// Not readable for processes of other users, or gone.
+		} catch (NumberFormatException e) {
+			// Leave it at what was parsed.
+		} finally {
+			closeQuietly(reader);
+		}
+		return io;
+	}
+
+	private String readFirstLine(File file) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(file));
+			return reader.readLine();
+		} catch (IOException e) {
+			return null;
+		} finally {
+			closeQuietly(reader);
+		}
+	}
+
+	private static void closeQuietly(BufferedReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static long getConf(String name, long defaultValue) {
+		BufferedReader reader = null;
+		try {
+			Process process = Runtime.getRuntime().exec(new String[] {"getconf", name});
+			reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			String line = reader.readLine();
+			process.waitFor();
+			return line == null ? defaultValue : Long.parseLong(line.trim());
+		} catch (Exception e) {
+			logger.info("Couldn't get " + name + ", using " + defaultValue);
+			return defaultValue;
+		} finally {
+			closeQuietly(reader);
+		}
+	}
+
+	private static class ProcStat {
+		private int ppid;
+		private long cpuTicks;
+		private long startTime;
+		private long rssPages;
+	}
+
+	/**
+	 * A process whose tree is charged to a job attempt.
+	 */
+	public static class TrackedProcess {
+		private final int pid;
+		private final ResourceUsage usage;
+		// Last seen cpu time, read and written bytes by pid and start time, since pids get reused.
+		private final Map<String, long[]> lastSeen = new HashMap<String, long[]>();
+
+		private TrackedProcess(int pid, ResourceUsage usage) {
+			this.pid = pid;
+			this.usage = usage;
+		}
+
+		private void update(String key, long cpuTimeMs, long ioReadBytes, long ioWriteBytes) {
+			long[] last = lastSeen.get(key);
+			if (last == null) {
+				last = new long[3];
+				lastSeen.put(key, last);
+			}
+			usage.add(Math.max(0, cpuTimeMs - last[0]), Math.max(0, ioReadBytes - last[1]), Math.max(0, ioWriteBytes - last[2]));
+			last[0] = Math.max(last[0], cpuTimeMs);
+			last[1] = Math.max(last[1], ioReadBytes);
+			last[2] = Math.max(last[2], ioWriteBytes);
+		}
+	}
+
+	private class SamplerThread extends Thread {
+		private boolean shutdown = false;
+
+		private SamplerThread() {
+			super("ProcessResourceSampler-Thread-1");
+			this.setDaemon(true);
+		}
+
+		private synchronized void shutdown() {
+			shutdown = true;
+			notifyAll();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				synchronized (this) {
+					if (shutdown) {
+						return;
+					}
+					try {
+						wait(intervalMs);
+					} catch (InterruptedException e) {
+					}
+					if (shutdown) {
+						return;
+					}
+				}
+
+				try {
+					sample();
+				} catch (RuntimeException e) {
+					logger.error("Error sampling job processes.", e);
+				}
+			}
+		}
+	}
+}
@@ -957,6 +957,25 @@ public class JdbcProjectLoader extends AbstractJdbcLoader implements ProjectLoad
 		}
 	}
 	
+	@Override
+	public Map<String,Props> fetchJobOverrideProperties(int projectId, int version) throws ProjectManagerException {
+		QueryRunner runner = createQueryRunner();
+		
+		ProjectPropertiesResultsHandler handler = new ProjectPropertiesResultsHandler();
+		try {
+			List<Pair<String, Props>> properties = 
+					runner.query(ProjectPropertiesResultsHandler.SELECT_PROJECT_PROPERTIES_BY_SUFFIX, handler, projectId, version, "%.jor");
+
+			HashMap<String, Props> props = new HashMap<String, Props>();
+			for (Pair<String, Props> pair: properties) {
+				props.put(pair.getFirst(), pair.getSecond());
+			}
+			return props;
+		} catch (SQLException e) {
+			throw new ProjectManagerException("Error fetching job override properties", e);
+		}
+	}
+	
 	private static class ProjectResultHandler implements ResultSetHandler<List<Project>> {
 		private static String SELECT_PROJECT_BY_ID = 
 				"SELECT id, name, active, modified_time, create_time, version, last_modified_by, description, enc_type, settings_blob FROM projects WHERE id=?";
@@ -1111,6 +1130,9 @@ public class JdbcProjectLoader extends AbstractJdbcLoader implements ProjectLoad
 
 		private static String SELECT_PROJECT_PROPERTIES =
 				"SELECT project_id, version, name, modified_time, encoding_type, property FROM project_properties WHERE project_id=? AND version=?";
+
+		private static String SELECT_PROJECT_PROPERTIES_BY_SUFFIX =
+				"SELECT project_id, version, name, modified_time, encoding_type, property FROM project_properties WHERE project_id=? AND version=? AND name LIKE ?";
 		
 		@Override
 		public List<Pair<String, Props>> handle(ResultSet rs) throws SQLException {
@@ -207,6 +207,16 @@ public interface ProjectLoader {
 	 */
 	public Map<String,Props> fetchProjectProperties(int projectId, int version) throws ProjectManagerException;
 	
+	/**
+	 * Fetch all the job override (.jor) properties of a project version in one query.
+	 * 
+	 * @param projectId
+	 * @param version
+	 * @return the overrides keyed by property name. Empty if there are none.
+	 * @throws ProjectManagerException
+	 */
+	public Map<String,Props> fetchJobOverrideProperties(int projectId, int version) throws ProjectManagerException;
+	
 	/**
 	 * Cleans all project versions less tha
 	 * 
@@ -213,6 +213,24 @@ public class JdbcScheduleLoader extends AbstractJdbcLoader implements ScheduleLo
 		}
 	}
 	
+	@Override
+	public void updateNextExecTimes(List<Schedule> schedules) throws ScheduleManagerException {
+		logger.info("Update next run times of " + schedules.size() + " schedules into db.");
+		Object[][] params = new Object[schedules.size()][];
+		for (int i = 0; i < schedules.size(); ++i) {
+			Schedule s = schedules.get(i);
+			params[i] = new Object[] {s.getNextExecTime(), s.getScheduleId()};
+		}
+		
+		QueryRunner runner = createQueryRunner();
+		try {
+			runner.batch(UPDATE_NEXT_EXEC_TIME, params);
+		} catch (SQLException e) {
+			logger.error(UPDATE_NEXT_EXEC_TIME + " failed.", e);
+			throw new ScheduleManagerException("Update next run times of " + schedules.size() + " schedules into db failed. ", e);
+		}
+	}
+	
 	@Override
 	public void updateSchedule(Schedule s) throws ScheduleManagerException {
 		logger.info("Updating schedule " + s.getScheduleName() + " into db.");
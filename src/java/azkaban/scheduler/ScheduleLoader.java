@@ -30,4 +30,6 @@ public interface ScheduleLoader {
 
 	public void updateNextExecTime(Schedule s) throws ScheduleManagerException;
 
+	public void updateNextExecTimes(List<Schedule> schedules) throws ScheduleManagerException;
+
 }
\ No newline at end of file
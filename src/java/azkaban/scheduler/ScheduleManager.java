@@ -24,8 +24,14 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
@@ -46,13 +52,16 @@ import azkaban.sla.SLA.SlaRule;
 import azkaban.sla.SLA.SlaSetting;
 import azkaban.sla.SLAManager;
 import azkaban.sla.SlaOptions;
+import azkaban.utils.LatencyHistogram;
 import azkaban.utils.Pair;
+import azkaban.utils.Props;
 
 /**
  * The ScheduleManager stores and executes the schedule. It uses a single thread
  * instead and waits until correct loading time for the flow. It will not remove
  * the flow from the schedule when it is run, which can potentially allow the
- * flow to and overlap each other.
+ * flow to and overlap each other. All schedules that are due are taken at once
+ * and submitted by a pool of threads, so a burst of schedules doesn't run late.
  */
 public class ScheduleManager {
 	private static Logger logger = Logger.getLogger(ScheduleManager.class);
@@ -67,9 +76,16 @@ public class ScheduleManager {
 	private final ProjectManager projectManager;
 	private final SLAManager slaManager;
 	
+	// Submits the flows of due schedules
+	private final ExecutorService submitService;
+	
 	// Used for mbeans to query Scheduler status
 	private long lastCheckTime = -1;
 	private long nextWakupTime = -1;
+	// Time between when a schedule was due and when its flow was submitted
+	private final LatencyHistogram fireSkew = new LatencyHistogram();
+	private final AtomicLong numSubmitted = new AtomicLong(0);
+	private final AtomicLong numSubmitFailures = new AtomicLong(0);
 
 	/**
 	 * Give the schedule manager a loader class that will properly load the
@@ -81,20 +97,37 @@ public class ScheduleManager {
 							ProjectManager projectManager, 
 							SLAManager slaManager,
 							ScheduleLoader loader) 
+	{
+		this(executorManager, projectManager, slaManager, loader, new Props());
+	}
+	
+	public ScheduleManager(ExecutorManager executorManager,
+							ProjectManager projectManager, 
+							SLAManager slaManager,
+							ScheduleLoader loader,
+							Props props) 
 	{
 		this.executorManager = executorManager;
 		this.projectManager = projectManager;
 		this.slaManager = slaManager;
 		this.loader = loader;
 		this.runner = new ScheduleRunner();
+		this.submitService = Executors.newFixedThreadPool(props.getInt("scheduler.submit.threads", 8), new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger(0);
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ScheduleManager-Submit-Thread-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 
 		List<Schedule> scheduleList = null;
 		try {
 			scheduleList = loader.loadSchedules();
 		} catch (ScheduleManagerException e) {
-			// TODO Auto-generated catch block
-			logger.error("Failed to load schedules" + e.getCause() + e.getMessage());
-			e.printStackTrace();
+			logger.error("Failed to load schedules", e);
 		}
 
 		for (Schedule sched : scheduleList) {
@@ -110,6 +143,7 @@ public class ScheduleManager {
 	 */
 	public void shutdown() {
 		this.runner.shutdown();
+		this.submitService.shutdown();
 	}
 
 	/**
@@ -174,8 +208,7 @@ public class ScheduleManager {
 		try {
 			loader.removeSchedule(sched);
 		} catch (ScheduleManagerException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			logger.error("Failed to remove schedule " + sched.getScheduleId(), e);
 		}
 	}
 
@@ -282,8 +315,7 @@ public class ScheduleManager {
 					internalSchedule(s);
 				}
 			} catch (ScheduleManagerException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				logger.error("Failed to save schedule " + s.getScheduleName(), e);
 			}
 		}
 		else {
@@ -369,139 +401,94 @@ public class ScheduleManager {
 
 		public void run() {
 			while (stillAlive.get()) {
-				synchronized (this) {
-					try {
+				try {
+					List<Schedule> dueSchedules = null;
+					synchronized (this) {
 						lastCheckTime = System.currentTimeMillis();
-						// TODO clear up the exception handling
-						Schedule s = schedules.peek();
-
-						if (s == null) {
-							// If null, wake up every minute or so to see if
-							// there's something to do. Most likely there will not be.
-							try {
-								logger.info("Nothing scheduled to run. Checking again soon.");
-								nextWakupTime = System.currentTimeMillis() + TIMEOUT_MS;
-								this.wait(TIMEOUT_MS);
-							} catch (InterruptedException e) {
-								// interruption should occur when items are added or removed from the queue.
-							}
-						} else {
-							// We've passed the flow execution time, so we will run.
-							if (!(new DateTime(s.getNextExecTime())).isAfterNow()) {
-								// Run flow. The invocation of flows should be quick.
-								Schedule runningSched = schedules.poll();
-
-								logger.info("Scheduler ready to run " + runningSched.toString());
-								// Execute the flow here
-								try {
-									Project project = projectManager.getProject(runningSched.getProjectId());
-									if (project == null) {
-										logger.error("Scheduled Project " + runningSched.getProjectId() + " does not exist!");
-										throw new RuntimeException("Error finding the scheduled project. "+ runningSched.getProjectId());
-									}	
-									//TODO It is possible that the project is there, but the flow doesn't exist because upload a version that changes flow structure
-
-									Flow flow = project.getFlow(runningSched.getFlowName());
-									if (flow == null) {
-										logger.error("Flow " + runningSched.getScheduleName() + " cannot be found in project " + project.getName());
-										throw new RuntimeException("Error finding the scheduled flow. " + runningSched.getScheduleName());
-									}
-
-									// Create ExecutableFlow
-									ExecutableFlow exflow = new ExecutableFlow(flow);
-									System.out.println("ScheduleManager: creating schedule: " +runningSched.getScheduleId());
-									exflow.setScheduleId(runningSched.getScheduleId());
-									exflow.setSubmitUser(runningSched.getSubmitUser());
-									exflow.addAllProxyUsers(project.getProxyUsers());
-									
-									ExecutionOptions flowOptions = runningSched.getExecutionOptions();
-									if(flowOptions == null) {
-										flowOptions = new ExecutionOptions();
-										flowOptions.setConcurrentOption(ExecutionOptions.CONCURRENT_OPTION_SKIP);
-									}
-									exflow.setExecutionOptions(flowOptions);
-									
-									if (!flowOptions.isFailureEmailsOverridden()) {
-										flowOptions.setFailureEmails(flow.getFailureEmails());
-									}
-									if (!flowOptions.isSuccessEmailsOverridden()) {
-										flowOptions.setSuccessEmails(flow.getSuccessEmails());
-									}
-									
-									try {
-										executorManager.submitExecutableFlow(exflow);
-										logger.info("Scheduler has invoked " + exflow.getExecutionId());
-									} 
-									catch (ExecutorManagerException e) {
-										throw e;
-									}
-									catch (Exception e) {	
-										e.printStackTrace();
-										throw new ScheduleManagerException("Scheduler invoked flow " + exflow.getExecutionId() + " has failed.", e);
-									}
-									
-									SlaOptions slaOptions = runningSched.getSlaOptions();
-									if(slaOptions != null) {
-										logger.info("Submitting SLA checkings for " + runningSched.getFlowName());
-										// submit flow slas
-										List<SlaSetting> jobsettings = new ArrayList<SlaSetting>();
-										for(SlaSetting set : slaOptions.getSettings()) {
-											if(set.getId().equals("")) {
-												DateTime checkTime = new DateTime(runningSched.getNextExecTime()).plus(set.getDuration());
-												slaManager.submitSla(exflow.getExecutionId(), "", checkTime, slaOptions.getSlaEmails(), set.getActions(), null, set.getRule());
-											}
-											else {
-												jobsettings.add(set);
-											}
-										}
-										if(jobsettings.size() > 0) {
-											slaManager.submitSla(exflow.getExecutionId(), "", DateTime.now(), slaOptions.getSlaEmails(), new ArrayList<SlaAction>(), jobsettings, SlaRule.WAITANDCHECKJOB);
-										}
-									}
-									
-								} 
-								catch (ExecutorManagerException e) {
-									if (e.getReason() != null && e.getReason() == ExecutorManagerException.Reason.SkippedExecution) {
-										logger.info(e.getMessage());
-									}
-									else {
-										e.printStackTrace();
-									}
-								}
-								catch (Exception e) {
-									logger.info("Scheduler failed to run job. " + e.getMessage() + e.getCause());
-								}
-
-								removeRunnerSchedule(runningSched);
-
-								// Immediately reschedule if it's possible. Let
-								// the execution manager
-								// handle any duplicate runs.
-								if (runningSched.updateTime()) {
-									addRunnerSchedule(runningSched);
-									loader.updateSchedule(runningSched);
-								}
-								else {
-									removeSchedule(runningSched);
-								}								
-							} else {
-								// wait until flow run
-								long millisWait = Math.max(0, s.getNextExecTime() - (new DateTime()).getMillis());
-								try {
-									nextWakupTime = System.currentTimeMillis() + millisWait;
-									this.wait(Math.min(millisWait, TIMEOUT_MS));
-								} catch (InterruptedException e) {
-									// interruption should occur when items are
-									// added or removed from the queue.
-								}
-							}
+						dueSchedules = pollDueSchedules(lastCheckTime);
+						
+						if (dueSchedules.isEmpty()) {
+							waitForNextSchedule();
+							continue;
+						}
+					}
+					
+					dispatchSchedules(dueSchedules);
+				} catch (Exception e) {
+					logger.error("Unexpected exception has been thrown in scheduler", e);
+				} catch (Throwable e) {
+					logger.error("Unexpected throwable has been thrown in scheduler", e);
+				}
+			}
+		}
+		
+		/**
+		 * Takes every schedule that is due off the queue.
+		 */
+		private synchronized List<Schedule> pollDueSchedules(long currentTime) {
+			List<Schedule> dueSchedules = new ArrayList<Schedule>();
+			Schedule s = schedules.peek();
+			while (s != null && s.getNextExecTime() <= currentTime) {
+				dueSchedules.add(schedules.poll());
+				s = schedules.peek();
+			}
+			return dueSchedules;
+		}
+		
+		private synchronized void waitForNextSchedule() {
+			Schedule s = schedules.peek();
+			try {
+				if (s == null) {
+					// If null, wake up every minute or so to see if
+					// there's something to do. Most likely there will not be.
+					logger.info("Nothing scheduled to run. Checking again soon.");
+					nextWakupTime = System.currentTimeMillis() + TIMEOUT_MS;
+					this.wait(TIMEOUT_MS);
+				}
+				else {
+					// wait until flow run
+					long millisWait = Math.max(0, s.getNextExecTime() - System.currentTimeMillis());
+					nextWakupTime = System.currentTimeMillis() + millisWait;
+					this.wait(Math.min(millisWait, TIMEOUT_MS));
+				}
+			} catch (InterruptedException e) {
+				// interruption should occur when items are added or removed from the queue.
+			}
+		}
+		
+		/**
+		 * Hands the due schedules to the submit threads, moves them to their next time and saves
+		 * the new times together.
+		 */
+		private void dispatchSchedules(List<Schedule> dueSchedules) {
+			List<Schedule> rescheduled = new ArrayList<Schedule>();
+			for (Schedule runningSched : dueSchedules) {
+				logger.info("Scheduler ready to run " + runningSched.toString());
+				submitService.submit(new ScheduledFlowSubmitter(runningSched, runningSched.getNextExecTime()));
+				
+				// Immediately reschedule if it's possible. Let
+				// the execution manager
+				// handle any duplicate runs.
+				if (runningSched.updateTime()) {
+					synchronized (ScheduleManager.this) {
+						// Skip schedules that were removed or replaced while they were due.
+						if (getSchedule(runningSched.getScheduleId()) == runningSched) {
+							addRunnerSchedule(runningSched);
+							rescheduled.add(runningSched);
 						}
-					} catch (Exception e) {
-						logger.error("Unexpected exception has been thrown in scheduler", e);
-					} catch (Throwable e) {
-						logger.error("Unexpected throwable has been thrown in scheduler", e);
 					}
 				}
+				else {
+					removeSchedule(runningSched);
+				}
+			}
+			
+			if (!rescheduled.isEmpty()) {
+				try {
+					loader.updateNextExecTimes(rescheduled);
+				} catch (ScheduleManagerException e) {
+					logger.error("Failed to save the next run times of " + rescheduled.size() + " schedules", e);
+				}
 			}
 		}
 
@@ -527,10 +514,134 @@ public class ScheduleManager {
 		}
 	}
 	
+	/**
+	 * Submits the flow of a schedule that was due at the planned time.
+	 */
+	private class ScheduledFlowSubmitter implements Runnable {
+		private final Schedule runningSched;
+		private final long plannedTime;
+		
+		private ScheduledFlowSubmitter(Schedule runningSched, long plannedTime) {
+			this.runningSched = runningSched;
+			this.plannedTime = plannedTime;
+		}
+		
+		@Override
+		public void run() {
+			fireSkew.record(Math.max(0, System.currentTimeMillis() - plannedTime));
+			
+			// Execute the flow here
+			try {
+				Project project = projectManager.getProject(runningSched.getProjectId());
+				if (project == null) {
+					logger.error("Scheduled Project " + runningSched.getProjectId() + " does not exist!");
+					throw new RuntimeException("Error finding the scheduled project. "+ runningSched.getProjectId());
+				}	
+				//TODO It is possible that the project is there, but the flow doesn't exist because upload a version that changes flow structure
+
+				Flow flow = project.getFlow(runningSched.getFlowName());
+				if (flow == null) {
+					logger.error("Flow " + runningSched.getScheduleName() + " cannot be found in project " + project.getName());
+					throw new RuntimeException("Error finding the scheduled flow. " + runningSched.getScheduleName());
+				}
+
+				// Create ExecutableFlow
+				ExecutableFlow exflow = new ExecutableFlow(flow);
+				logger.info("Creating execution for schedule " + runningSched.getScheduleId());
+				exflow.setScheduleId(runningSched.getScheduleId());
+				exflow.setSubmitUser(runningSched.getSubmitUser());
+				exflow.addAllProxyUsers(project.getProxyUsers());
+				
+				// Every execution gets its own copy. The schedule's options are shared by all its runs.
+				ExecutionOptions flowOptions = runningSched.getExecutionOptions();
+				if(flowOptions == null) {
+					flowOptions = new ExecutionOptions();
+					flowOptions.setConcurrentOption(ExecutionOptions.CONCURRENT_OPTION_SKIP);
+				}
+				else {
+					flowOptions = ExecutionOptions.createFromObject(flowOptions.toObject());
+				}
+				exflow.setExecutionOptions(flowOptions);
+				
+				if (!flowOptions.isFailureEmailsOverridden()) {
+					flowOptions.setFailureEmails(flow.getFailureEmails());
+				}
+				if (!flowOptions.isSuccessEmailsOverridden()) {
+					flowOptions.setSuccessEmails(flow.getSuccessEmails());
+				}
+				
+				try {
+					executorManager.submitExecutableFlow(exflow);
+					numSubmitted.incrementAndGet();
+					logger.info("Scheduler has invoked " + exflow.getExecutionId());
+				} 
+				catch (ExecutorManagerException e) {
+					throw e;
+				}
+				catch (Exception e) {	
+					throw new ScheduleManagerException("Scheduler invoked flow " + exflow.getExecutionId() + " has failed.", e);
+				}
+				
+				SlaOptions slaOptions = runningSched.getSlaOptions();
+				if(slaOptions != null) {
+					logger.info("Submitting SLA checkings for " + runningSched.getFlowName());
+					// submit flow slas
+					List<SlaSetting> jobsettings = new ArrayList<SlaSetting>();
+					for(SlaSetting set : slaOptions.getSettings()) {
+						if(set.getId().equals("")) {
+							DateTime checkTime = new DateTime(plannedTime).plus(set.getDuration());
+							slaManager.submitSla(exflow.getExecutionId(), "", checkTime, slaOptions.getSlaEmails(), set.getActions(), null, set.getRule());
+						}
+						else {
+							jobsettings.add(set);
+						}
+					}
+					if(jobsettings.size() > 0) {
+						slaManager.submitSla(exflow.getExecutionId(), "", DateTime.now(), slaOptions.getSlaEmails(), new ArrayList<SlaAction>(), jobsettings, SlaRule.WAITANDCHECKJOB);
+					}
+				}
+				
+			} 
+			catch (ExecutorManagerException e) {
+				if (e.getReason() != null && e.getReason() == ExecutorManagerException.Reason.SkippedExecution) {
+					logger.info(e.getMessage());
+				}
+				else {
+					numSubmitFailures.incrementAndGet();
+					logger.error("Scheduler failed to submit the flow of schedule " + runningSched.getScheduleId(), e);
+				}
+			}
+			catch (Exception e) {
+				numSubmitFailures.incrementAndGet();
+				logger.error("Scheduler failed to run job. " + e.getMessage(), e);
+			}
+		}
+	}
+	
 	public long getLastCheckTime() {
 		return lastCheckTime;
 	}
 	
+	public String getFireSkew() {
+		return fireSkew.toString();
+	}
+	
+	public long getFireSkewPercentileMs(double percentile) {
+		return fireSkew.getPercentileMs(percentile);
+	}
+	
+	public long getNumScheduledSubmissions() {
+		return numSubmitted.get();
+	}
+	
+	public long getNumScheduledSubmissionFailures() {
+		return numSubmitFailures.get();
+	}
+	
+	public int getNumPendingSubmissions() {
+		return ((ThreadPoolExecutor)submitService).getQueue().size();
+	}
+	
 	public long getNextUpdateTime() {
 		return nextWakupTime;
 	}
@@ -7,7 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutionSummary;
 import azkaban.executor.ExecutorManager;
 import azkaban.executor.ExecutorManagerException;
 import azkaban.executor.Status;
@@ -40,7 +40,7 @@ public class ScheduleStatisticManager {
 		Schedule schedule = scheduleManager.getSchedule(scheduleId);
 
 		try {
-			List<ExecutableFlow> executables = executorManager.getExecutableFlows(schedule.getProjectId(), schedule.getFlowName(), 0, STAT_NUMBERS, Status.SUCCEEDED);
+			List<ExecutionSummary> executables = executorManager.getExecutionSummaries(schedule.getProjectId(), schedule.getFlowName(), 0, STAT_NUMBERS, Status.SUCCEEDED);
 
 			long average = 0;
 			long min = Integer.MAX_VALUE;
@@ -51,7 +51,7 @@ public class ScheduleStatisticManager {
 				max = 0;
 			}
 			else {
-				for (ExecutableFlow flow : executables) {
+				for (ExecutionSummary flow : executables) {
 					long time = flow.getEndTime() - flow.getStartTime();
 					average += time;
 					if (time < min) {
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding for the same object trees that JSONUtils handles (maps, lists,
+ * strings, numbers, booleans and nulls).
+ *
+ * The data starts with a magic number and a format version. Every string is written once and
+ * later occurrences refer back to it by index, so the repeated keys of large flows cost only a
+ * byte or two each. Decoding returns the same types the JSON parser does, i.e. HashMap,
+ * ArrayList, and Integer for any integral value that fits in an int.
+ */
+public class BinaryObjectUtils {
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = {'A', 'Z', 'B'};
+
+	private static final int TYPE_NULL = 0;
+	private static final int TYPE_FALSE = 1;
+	private static final int TYPE_TRUE = 2;
+	private static final int TYPE_INT = 3;
+	private static final int TYPE_LONG = 4;
+	private static final int TYPE_DOUBLE = 5;
+	private static final int TYPE_STRING = 6;
+	private static final int TYPE_STRING_REF = 7;
+	private static final int TYPE_MAP = 8;
+	private static final int TYPE_LIST = 9;
+
+	private BinaryObjectUtils() {
+	}
+
+	/**
+	 * Returns true if the data starts with the binary encoding's magic number.
+	 */
+	public static boolean isBinary(byte[] data) {
+		if (data == null || data.length < MAGIC.length + 1) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; ++i) {
+			if (data[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static byte[] toBinary(Object obj) throws IOException {
+		Encoder encoder = new Encoder();
+		encoder.out.write(MAGIC);
+		encoder.out.write(VERSION);
+		encoder.writeObject(obj);
+		return encoder.out.toByteArray();
+	}
+
+	public static Object fromBinary(byte[] data) throws IOException {
+		if (!isBinary(data)) {
+			throw new IOException("Data isn't binary encoded.");
+		}
+
+		int version = data[MAGIC.length] & 0xFF;
+		if (version > VERSION) {
+			throw new IOException("Unsupported binary encoding version " + version + ". Max supported version is " + VERSION);
+		}
+
+		Decoder decoder = new Decoder(data, MAGIC.length + 1);
+		Object obj = decoder.readObject();
+		if (decoder.pos != data.length) {
+			throw new IOException("Trailing data after binary encoded object.");
+		}
+		return obj;
+	}
+
+	private static class Encoder {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		private void writeObject(Object obj) throws IOException {
+			if (obj == null) {
+				out.write(TYPE_NULL);
+			}
+			else if (obj instanceof String) {
+				writeString((String)obj);
+			}
+			else if (obj instanceof Boolean) {
+				out.write((Boolean)obj ? TYPE_TRUE : TYPE_FALSE);
+			}
+			else if (obj instanceof Integer || obj instanceof Short || obj instanceof Byte) {
+				out.write(TYPE_INT);
+				writeVarLong(zigZag(((Number)obj).intValue()));
+			}
+			else if (obj instanceof Long) {
+				long val = (Long)obj;
+				// The JSON parser hands back an Integer for anything that fits, so do the same.
+				out.write(val >= Integer.MIN_VALUE && val <= Integer.MAX_VALUE ? TYPE_INT : TYPE_LONG);
+				writeVarLong(zigZag(val));
+			}
+			else if (obj instanceof Double || obj instanceof Float) {
+				out.write(TYPE_DOUBLE);
+				long bits = Double.doubleToLongBits(((Number)obj).doubleValue());
+				for (int i = 56; i >= 0; i -= 8) {
+					out.write((int)(bits >>> i));
+				}
+			}
+			else if (obj instanceof Map) {
+				Map<?, ?> map = (Map<?, ?>)obj;
+				out.write(TYPE_MAP);
+				writeVarLong(map.size());
+				for (Map.Entry<?, ?> entry: map.entrySet()) {
+					writeString(String.valueOf(entry.getKey()));
+					writeObject(entry.getValue());
+				}
+			}
+			else if (obj instanceof Collection) {
+				Collection<?> collection = (Collection<?>)obj;
+				out.write(TYPE_LIST);
+				writeVarLong(collection.size());
+				for (Object element: collection) {
+					writeObject(element);
+				}
+			}
+			else if (obj instanceof Object[]) {
+				Object[] array = (Object[])obj;
+				out.write(TYPE_LIST);
+				writeVarLong(array.length);
+				for (Object element: array) {
+					writeObject(element);
+				}
+			}
+			else if (obj instanceof Enum) {
+				writeString(((Enum<?>)obj).name());
+			}
+			else {
+				throw new IOException("Can't binary encode object of type " + obj.getClass().getName());
+			}
+		}
+
+		private void writeString(String str) throws UnsupportedEncodingException {
+			Integer index = strings.get(str);
+			if (index != null) {
+				out.write(TYPE_STRING_REF);
+				writeVarLong(index);
+				return;
+			}
+
+			strings.put(str, strings.size());
+			byte[] bytes = str.getBytes("UTF-8");
+			out.write(TYPE_STRING);
+			writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+
+		private void writeVarLong(long val) {
+			while ((val & ~0x7FL) != 0) {
+				out.write((int)((val & 0x7F) | 0x80));
+				val >>>= 7;
+			}
+			out.write((int)val);
+		}
+
+		private static long zigZag(long val) {
+			return (val << 1) ^ (val >> 63);
+		}
+	}
+
+	private static class Decoder {
+		private final byte[] data;
+		private int pos;
+		private final List<String> strings = new ArrayList<String>();
+
+		private Decoder(byte[] data, int pos) {
+			this.data = data;
+			this.pos = pos;
+		}
+
+		private Object readObject() throws IOException {
+			int type = readByte();
+			switch (type) {
+			case TYPE_NULL:
+				return null;
+			case TYPE_FALSE:
+				return Boolean.FALSE;
+			case TYPE_TRUE:
+				return Boolean.TRUE;
+			case TYPE_INT:
+				return (int)unZigZag(readVarLong());
+			case TYPE_LONG:
+				return unZigZag(readVarLong());
+			case TYPE_DOUBLE: {
+				long bits = 0;
+				for (int i = 0; i < 8; ++i) {
+					bits = (bits << 8) | readByte();
+				}
+				return Double.longBitsToDouble(bits);
+			}
+			case TYPE_STRING:
+			case TYPE_STRING_REF:
+				return readString(type);
+			case TYPE_MAP: {
+				int size = readSize();
+				HashMap<String, Object> map = new HashMap<String, Object>(size * 4 / 3 + 1);
+				for (int i = 0; i < size; ++i) {
+					String key = readString(readByte());
+					map.put(key, readObject());
+				}
+				return map;
+			}
+			case TYPE_LIST: {
+				int size = readSize();
+				ArrayList<Object> list = new ArrayList<Object>(size);
+				for (int i = 0; i < size; ++i) {
+					list.add(readObject());
+				}
+				return list;
+			}
+			default:
+				throw new IOException("Unknown binary type " + type + " at offset " + (pos - 1));
+			}
+		}
+
+		private String readString(int type) throws IOException {
+			if (type == TYPE_STRING_REF) {
+				long index = readVarLong();
+				if (index < 0 || index >= strings.size()) {
+					throw new IOException("Invalid string reference " + index + " at offset " + pos);
+				}
+				return strings.get((int)index);
+			}
+			else if (type != TYPE_STRING) {
+				throw new IOException("Expected string at offset " + (pos - 1) + " but found type " + type);
+			}
+
+			int length = readSize();
+			String str = new String(data, pos, length, "UTF-8");
+			pos += length;
+			strings.add(str);
+			return str;
+		}
+
+		private int readSize() throws IOException {
+			long size = readVarLong();
+			if (size < 0 || size > data.length - pos) {
+				throw new IOException("Invalid length " + size + " at offset " + pos);
+			}
+			return (int)size;
+		}
+
+		private int readByte() throws IOException {
+			if (pos >= data.length) {
+				throw new IOException("Unexpected end of binary data.");
+			}
+			return data[pos++] & 0xFF;
+		}
+
+		private long readVarLong() throws IOException {
+			long val = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				val |= (long)(b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return val;
+				}
+			}
+			throw new IOException("Malformed variable length number at offset " + pos);
+		}
+
+		private static long unZigZag(long val) {
+			return (val >>> 1) ^ -(val & 1);
+		}
+	}
+}
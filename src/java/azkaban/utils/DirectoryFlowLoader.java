@@ -3,11 +3,13 @@ package azkaban.utils;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -209,7 +211,6 @@ public class DirectoryFlowLoader {
 		}
 
 		// Now create flows. Bad flows are marked invalid
-		Set<String> visitedNodes = new HashSet<String>();
 		for (Node base: nodeMap.values()) {
 			if (!nonRootNodes.contains(base.getId())) {
 				Flow flow = new Flow(base.getId());
@@ -242,42 +243,73 @@ public class DirectoryFlowLoader {
 				flow.addSuccessEmails(successEmail);
 				
 				flow.addAllFlowProperties(flowPropsList);
-				constructFlow(flow, base, visitedNodes);
+				constructFlow(flow, base);
 				flow.initialize();
 				flowMap.put(base.getId(), flow);
 			}
 		}
 	}
 	
-	private void constructFlow(Flow flow, Node node, Set<String> visited) {
-		visited.add(node.getId());
+	/**
+	 * Adds the node and everything it depends on to the flow. Walks the dependencies depth
+	 * first with an explicit stack so each node is expanded once, however many paths lead to
+	 * it. A dependency on a node that is still on the stack closes a cycle and is added as an
+	 * error edge instead.
+	 */
+	private void constructFlow(Flow flow, Node base) {
+		Set<String> onStack = new HashSet<String>();
+		Set<String> done = new HashSet<String>();
+		ArrayDeque<Node> nodeStack = new ArrayDeque<Node>();
+		ArrayDeque<Iterator<Edge>> edgeStack = new ArrayDeque<Iterator<Edge>>();
 
-		// Clone the node so each flow can operate on its own node
-		flow.addNode(node);
-		Map<String, Edge> dependencies = nodeDependencies.get(node.getId());
+		flow.addNode(base);
+		onStack.add(base.getId());
+		nodeStack.push(base);
+		edgeStack.push(getDependencyEdges(base));
 
-		if (dependencies != null) {
-			for (Edge edge: dependencies.values()) {
-				if (edge.hasError()) {
-					flow.addEdge(edge);
-				}
-				else if (visited.contains(edge.getSourceId())){
-					// We have a cycle. We set it as an error edge
-					edge = new Edge(edge.getSourceId(), node.getId());
-					edge.setError("Cyclical dependencies found.");
-					errors.add("Cyclical dependency found at " + edge.getId());
-					flow.addEdge(edge);
-				}
-				else {
+		while (!nodeStack.isEmpty()) {
+			Node node = nodeStack.peek();
+			Iterator<Edge> iter = edgeStack.peek();
+			if (!iter.hasNext()) {
+				nodeStack.pop();
+				edgeStack.pop();
+				onStack.remove(node.getId());
+				done.add(node.getId());
+				continue;
+			}
+
+			Edge edge = iter.next();
+			String sourceId = edge.getSourceId();
+			if (edge.hasError()) {
+				flow.addEdge(edge);
+			}
+			else if (onStack.contains(sourceId)) {
+				// We have a cycle. We set it as an error edge
+				edge = new Edge(sourceId, node.getId());
+				edge.setError("Cyclical dependencies found.");
+				errors.add("Cyclical dependency found at " + edge.getId());
+				flow.addEdge(edge);
+			}
+			else {
+				flow.addEdge(edge);
+				if (!done.contains(sourceId)) {
 					// This should not be null
-					flow.addEdge(edge);
-					Node sourceNode = nodeMap.get(edge.getSourceId());
-					constructFlow(flow, sourceNode, visited);
+					Node sourceNode = nodeMap.get(sourceId);
+					flow.addNode(sourceNode);
+					onStack.add(sourceId);
+					nodeStack.push(sourceNode);
+					edgeStack.push(getDependencyEdges(sourceNode));
 				}
 			}
 		}
+	}
 
-		visited.remove(node.getId());
+	private Iterator<Edge> getDependencyEdges(Node node) {
+		Map<String, Edge> dependencies = nodeDependencies.get(node.getId());
+		if (dependencies == null) {
+			return Collections.<Edge>emptyList().iterator();
+		}
+		return dependencies.values().iterator();
 	}
 
 	private String getNameWithoutExtension(File file) {
@@ -1,26 +1,31 @@
 package azkaban.utils;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.StringTokenizer;
 
-import org.apache.commons.io.IOUtils;
 
 /**
  * Runs a few unix commands. Created this so that I can move to JNI in the future.
  */
 public class FileIOUtils {
+	// Keeps each ln command well under the shell's argument length limit.
+	private static final int MAX_FILES_PER_LINK_COMMAND = 256;
 	
 	public static class PrefixSuffixFileFilter implements FileFilter {
 		private String prefix;
@@ -64,10 +69,25 @@ public class FileIOUtils {
 		}
 	}
 	
+	public static enum LinkType {
+		SYMBOLIC,
+		HARD
+	}
+	
 	/**
 	 * Run a unix command that will symlink files, and recurse into directories.
 	 */
 	public static void createDeepSymlink(File sourceDir, File destDir) throws IOException {
+		createDeepLinks(sourceDir, destDir, LinkType.SYMBOLIC, 1);
+	}
+	
+	/**
+	 * Recreates the directories of sourceDir under destDir and links every file into them. The ln
+	 * commands are piped into numShells shells running side by side rather than passed as
+	 * arguments, so the command length doesn't grow with the project. Returns the number of
+	 * files linked.
+	 */
+	public static int createDeepLinks(File sourceDir, File destDir, LinkType linkType, int numShells) throws IOException {
 		if (!sourceDir.exists()) {
 			throw new IOException("Source directory " + sourceDir.getPath() + " doesn't exist");
 		}
@@ -78,63 +98,94 @@ public class FileIOUtils {
 			throw new IOException("Source or Destination is not a directory.");
 		}
 		
-		Set<String> paths = new HashSet<String>();
-		createDirsFindFiles(sourceDir, sourceDir, destDir, paths);
-		
-		StringBuffer buffer = new StringBuffer();
-		//buffer.append("sh '");
-		for (String path: paths) {
-			File sourceLink = new File(sourceDir, path);
-			path = "." + path;
-			
-			buffer.append("ln -s ").append(sourceLink.getAbsolutePath()).append("/*").append(" ").append(path).append(";");
+		ArrayList<String> commands = new ArrayList<String>();
+		int numFiles = createDirsFindFiles(sourceDir, destDir, linkType == LinkType.SYMBOLIC ? "ln -s" : "ln", commands);
+		if (commands.isEmpty()) {
+			return 0;
 		}
 		
-		//buffer.append("'");
-		String command = buffer.toString();
-		//System.out.println(command);
-		ProcessBuilder builder = new ProcessBuilder().command("sh", "-c", command);
-		builder.directory(destDir);
-		
-		Process process = builder.start();
-		NullLogger errorLogger = new NullLogger(process.getErrorStream());
-		NullLogger inputLogger = new NullLogger(process.getInputStream());
-		errorLogger.start();
-		inputLogger.start();
-		
+		numShells = Math.max(1, Math.min(numShells, commands.size()));
+		Process[] processes = new Process[numShells];
+		NullLogger[] outputLoggers = new NullLogger[numShells];
 		try {
-			if (process.waitFor() < 0) {
-				// Assume that the error will be in standard out. Otherwise it'll be in standard in.
-				String errorMessage = errorLogger.getLastMessages();
-				if (errorMessage.isEmpty()) {
-					errorMessage = inputLogger.getLastMessages();
+			for (int i = 0; i < numShells; ++i) {
+				processes[i] = new ProcessBuilder().command("sh").redirectErrorStream(true).start();
+				outputLoggers[i] = new NullLogger(processes[i].getInputStream());
+				outputLoggers[i].start();
+			}
+			
+			// The shells start linking as soon as their first lines arrive.
+			for (int i = 0; i < numShells; ++i) {
+				Writer script = new BufferedWriter(new OutputStreamWriter(processes[i].getOutputStream()));
+				try {
+					script.write("set -e\n");
+					for (int j = i; j < commands.size(); j += numShells) {
+						script.write(commands.get(j));
+					}
+				}
+				finally {
+					script.close();
 				}
-				
-				throw new IOException(errorMessage);
 			}
 			
-		//	System.out.println(errorLogger.getLastMessages());
+			for (int i = 0; i < numShells; ++i) {
+				if (processes[i].waitFor() != 0) {
+					outputLoggers[i].join();
+					throw new IOException("Error linking " + sourceDir + " into " + destDir + ": " + outputLoggers[i].getLastMessages());
+				}
+			}
 		} catch (InterruptedException e) {
-			e.printStackTrace();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while linking " + sourceDir + " into " + destDir);
+		}
+		finally {
+			for (Process process: processes) {
+				if (process != null) {
+					process.destroy();
+				}
+			}
 		}
+		
+		return numFiles;
 	}
 	
-	private static void createDirsFindFiles(File baseDir, File sourceDir, File destDir, Set<String> paths) {
-		File[] srcList = sourceDir.listFiles();
-		String path = getRelativePath(baseDir, sourceDir);
-		paths.add(path);
-		
-		for (File file: srcList) {
+	/**
+	 * Creates the destination directories and adds one ln command for every batch of files in each
+	 * directory. Returns the number of files found.
+	 */
+	private static int createDirsFindFiles(File sourceDir, File destDir, String linkCommand, List<String> commands) {
+		int numFiles = 0;
+		StringBuilder command = new StringBuilder();
+		int numInCommand = 0;
+		for (File file: sourceDir.listFiles()) {
 			if (file.isDirectory()) {
 				File newDestDir = new File(destDir, file.getName());
 				newDestDir.mkdirs();
-				createDirsFindFiles(baseDir, file, newDestDir, paths);
+				numFiles += createDirsFindFiles(file, newDestDir, linkCommand, commands);
+				continue;
+			}
+			
+			if (numInCommand == 0) {
+				command.append(linkCommand);
+			}
+			command.append(' ').append(shellQuote(file.getAbsolutePath()));
+			numFiles++;
+			
+			if (++numInCommand == MAX_FILES_PER_LINK_COMMAND) {
+				commands.add(command.append(' ').append(shellQuote(destDir.getAbsolutePath())).append('\n').toString());
+				command.setLength(0);
+				numInCommand = 0;
 			}
 		}
+		
+		if (numInCommand > 0) {
+			commands.add(command.append(' ').append(shellQuote(destDir.getAbsolutePath())).append('\n').toString());
+		}
+		return numFiles;
 	}
 	
-	private static String getRelativePath(File basePath, File sourceDir) {
-		return sourceDir.getPath().substring(basePath.getPath().length());
+	private static String shellQuote(String str) {
+		return "'" + str.replace("'", "'\\''") + "'";
 	}
 	
 	private static class NullLogger extends Thread {
@@ -170,27 +221,42 @@ public class FileIOUtils {
 		}
 	}
 	
-	public static Pair<Integer, Integer> readUtf8File(File file, int offset, int length, OutputStream stream) throws IOException {
-		byte[] buffer = new byte[length];
-
-		FileInputStream fileStream = new FileInputStream(file);
-		
-		long skipped = fileStream.skip(offset);
-		if (skipped < offset) {
-			fileStream.close();
-			return new Pair<Integer,Integer>(0, 0);
-		}
-
-		BufferedInputStream inputStream = null;
+	/**
+	 * Reads up to buffer.length bytes starting at the given file offset with positional reads, so
+	 * nothing before the offset has to be read or skipped. Keeps reading until the buffer is full
+	 * or the end of the file is reached. Returns the number of bytes read, or -1 if the offset is
+	 * past the end of the file.
+	 */
+	public static int readFileRange(File file, long offset, byte[] buffer) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
 		try {
-			inputStream = new BufferedInputStream(fileStream);
-			inputStream.read(buffer);
+			FileChannel channel = randomAccessFile.getChannel();
+			if (offset > channel.size()) {
+				return -1;
+			}
+			
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			while (byteBuffer.hasRemaining()) {
+				int read = channel.read(byteBuffer, offset + byteBuffer.position());
+				if (read < 0) {
+					break;
+				}
+			}
+			return byteBuffer.position();
 		}
 		finally {
-			IOUtils.closeQuietly(inputStream);
+			randomAccessFile.close();
+		}
+	}
+	
+	public static Pair<Integer, Integer> readUtf8File(File file, int offset, int length, OutputStream stream) throws IOException {
+		byte[] buffer = new byte[length];
+		int read = readFileRange(file, offset, buffer);
+		if (read <= 0) {
+			return new Pair<Integer,Integer>(0, 0);
 		}
 		
-		Pair<Integer, Integer> utf8Range = getUtf8Range(buffer, 0, length);
+		Pair<Integer, Integer> utf8Range = getUtf8Range(buffer, 0, read);
 		stream.write(buffer, utf8Range.getFirst(), utf8Range.getSecond());
 		
 		return new Pair<Integer,Integer>(offset + utf8Range.getFirst(), utf8Range.getSecond());
@@ -198,27 +264,11 @@ public class FileIOUtils {
 	
 	public static LogData readUtf8File(File file, int fileOffset, int length) throws IOException {
 		byte[] buffer = new byte[length];
-		FileInputStream fileStream = new FileInputStream(file);
-		
-		long skipped = fileStream.skip(fileOffset);
-		if (skipped < fileOffset) {
-			fileStream.close();
-			return new LogData(fileOffset, 0, "");
-		}
-		
-		BufferedInputStream inputStream = null;
-		int read = 0;
-		try {
-			inputStream = new BufferedInputStream(fileStream);
-			read = inputStream.read(buffer);
-		}
-		finally {
-			IOUtils.closeQuietly(inputStream);
-		}
-		
+		int read = readFileRange(file, fileOffset, buffer);
 		if (read <= 0) {
 			return new LogData(fileOffset, 0, "");
 		}
+		
 		Pair<Integer, Integer> utf8Range = getUtf8Range(buffer, 0, read);
 		String outputString = new String(buffer, utf8Range.getFirst(), utf8Range.getSecond());
 		
@@ -227,27 +277,11 @@ public class FileIOUtils {
 
 	public static JobMetaData readUtf8MetaDataFile(File file, int fileOffset, int length) throws IOException {
 		byte[] buffer = new byte[length];
-		FileInputStream fileStream = new FileInputStream(file);
-		
-		long skipped = fileStream.skip(fileOffset);
-		if (skipped < fileOffset) {
-			fileStream.close();
-			return new JobMetaData(fileOffset, 0, "");
-		}
-		
-		BufferedInputStream inputStream = null;
-		int read = 0;
-		try {
-			inputStream = new BufferedInputStream(fileStream);
-			read = inputStream.read(buffer);
-		}
-		finally {
-			IOUtils.closeQuietly(inputStream);
-		}
-		
+		int read = readFileRange(file, fileOffset, buffer);
 		if (read <= 0) {
 			return new JobMetaData(fileOffset, 0, "");
 		}
+		
 		Pair<Integer, Integer> utf8Range = getUtf8Range(buffer, 0, read);
 		String outputString = new String(buffer, utf8Range.getFirst(), utf8Range.getSecond());
 		
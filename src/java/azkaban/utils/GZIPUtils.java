@@ -3,6 +3,7 @@ package azkaban.utils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -41,6 +42,38 @@ public class GZIPUtils {
 		return byteOutputStream.toByteArray();
 	}
 	
+	/**
+	 * Inflates only the given range of the uncompressed data into the stream. Decompression stops
+	 * at the end of the range.
+	 */
+	public static void unGzipRange(byte[] bytes, int offset, int length, OutputStream stream) throws IOException {
+		GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(bytes));
+		try {
+			long skip = offset;
+			while (skip > 0) {
+				long skipped = gzipInputStream.skip(skip);
+				if (skipped <= 0) {
+					throw new IOException("Offset " + offset + " is past the end of the data.");
+				}
+				skip -= skipped;
+			}
+			
+			byte[] buffer = new byte[Math.min(length, 8192)];
+			int remaining = length;
+			while (remaining > 0) {
+				int read = gzipInputStream.read(buffer, 0, Math.min(remaining, buffer.length));
+				if (read < 0) {
+					throw new IOException("Range " + offset + "-" + (offset + length) + " is past the end of the data.");
+				}
+				stream.write(buffer, 0, read);
+				remaining -= read;
+			}
+		}
+		finally {
+			gzipInputStream.close();
+		}
+	}
+	
 	public static String unGzipString(byte[] bytes, String encType) throws IOException {
 		byte[] response = unGzipBytes(bytes);
 		return new String(response, encType);
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+/**
+ * Counts latencies into fixed, roughly logarithmic millisecond buckets. Percentiles are
+ * reported as the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+	private static final long[] BUCKET_BOUNDS_MS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+	// The last bucket holds everything above the largest bound.
+	private final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+	private long count = 0;
+	private long totalMs = 0;
+	private long maxMs = 0;
+
+	public synchronized void record(long latencyMs) {
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_MS.length && latencyMs > BUCKET_BOUNDS_MS[bucket]) {
+			bucket++;
+		}
+		counts[bucket]++;
+		count++;
+		totalMs += latencyMs;
+		maxMs = Math.max(maxMs, latencyMs);
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getMaxMs() {
+		return maxMs;
+	}
+
+	public synchronized double getMeanMs() {
+		return count == 0 ? 0 : (double)totalMs / count;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the given percentile (0 to 100), or the max
+	 * for anything past the largest bucket.
+	 */
+	public synchronized long getPercentileMs(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = (long)Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_BOUNDS_MS.length; ++i) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(BUCKET_BOUNDS_MS[i], maxMs);
+			}
+		}
+		return maxMs;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("count=").append(count);
+		builder.append(" mean=").append(Math.round(getMeanMs())).append("ms");
+		builder.append(" p50<=").append(getPercentileMs(50)).append("ms");
+		builder.append(" p99<=").append(getPercentileMs(99)).append("ms");
+		builder.append(" max=").append(maxMs).append("ms [");
+		for (int i = 0; i < counts.length; ++i) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(i < BUCKET_BOUNDS_MS.length ? "<=" + BUCKET_BOUNDS_MS[i] : ">" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1]);
+			builder.append(":").append(counts[i]);
+		}
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -42,9 +42,11 @@ import org.apache.log4j.Logger;
  * functions and Exception throwing. This class is not threadsafe.
  */
 public class Props {
-	private final Map<String, String> _current;
+	private Map<String, String> _current;
 	private Props _parent;
 	private String source = null;
+	// Set when _current is shared with another Props. Whichever changes it first copies it.
+	private boolean _currentShared = false;
 
 	/**
 	 * Constructor for empty props with empty parent.
@@ -202,6 +204,7 @@ public class Props {
 	 * Clear the current Props, but leaves the parent untouched.
 	 */
 	public void clearLocal() {
+		ensureOwnCurrent();
 		_current.clear();
 	}
 
@@ -276,6 +279,7 @@ public class Props {
 	 *             this Props.
 	 */
 	public String put(String key, String value) {
+		ensureOwnCurrent();
 		return _current.put(key, value);
 	}
 
@@ -293,6 +297,7 @@ public class Props {
 	 *             this Props.
 	 */
 	public void put(Properties properties) {
+		ensureOwnCurrent();
 		for (String propName : properties.stringPropertyNames()) {
 			_current.put(propName, properties.getProperty(propName));
 		}
@@ -306,6 +311,7 @@ public class Props {
 	 * @return
 	 */
 	public String put(String key, Integer value) {
+		ensureOwnCurrent();
 		return _current.put(key, value.toString());
 	}
 
@@ -317,6 +323,7 @@ public class Props {
 	 * @return
 	 */
 	public String put(String key, Long value) {
+		ensureOwnCurrent();
 		return _current.put(key, value.toString());
 	}
 
@@ -328,6 +335,7 @@ public class Props {
 	 * @return
 	 */
 	public String put(String key, Double value) {
+		ensureOwnCurrent();
 		return _current.put(key, value.toString());
 	}
 
@@ -380,6 +388,7 @@ public class Props {
 	 * @return
 	 */
 	public String removeLocal(Object s) {
+		ensureOwnCurrent();
 		return _current.remove(s);
 	}
 
@@ -983,4 +992,28 @@ public class Props {
 	public void setParent(Props prop) {
 		this._parent = prop;
 	}
+	
+	/**
+	 * Returns a Props with the given parent and the same local values and source as this one. The
+	 * local values are shared until either Props changes them, so layering the same values under
+	 * many parents doesn't copy them.
+	 * 
+	 * @param parent
+	 * @return
+	 */
+	public Props withParent(Props parent) {
+		Props props = new Props(parent);
+		props._current = _current;
+		props._currentShared = true;
+		props.source = source;
+		_currentShared = true;
+		return props;
+	}
+	
+	private void ensureOwnCurrent() {
+		if (_currentShared) {
+			_current = new HashMap<String, String>(_current);
+			_currentShared = false;
+		}
+	}
 }
@@ -18,8 +18,11 @@ package azkaban.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -148,17 +151,37 @@ public class PropsUtils {
 	private static final Pattern VARIABLE_PATTERN = Pattern
 			.compile("\\$\\{([a-zA-Z_.0-9]+)\\}");
 
+	// Parsed values, shared across resolutions since the same values show up in every job of a flow.
+	private static final int MAX_CACHED_TEMPLATES = 10000;
+	private static final Map<String, ValueTemplate> TEMPLATE_CACHE = Collections.synchronizedMap(
+			new LinkedHashMap<String, ValueTemplate>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, ValueTemplate> eldest) {
+					return size() > MAX_CACHED_TEMPLATES;
+				}
+			});
+
 	public static Props resolveProps(Props props) {
 		if (props == null) return null;
 		
-		Props resolvedProps = new Props();
+		// Flatten the parent chain once instead of walking it for every lookup.
+		Map<String, String> flattened = new HashMap<String, String>();
+		for (Props layer = props; layer != null; layer = layer.getParent()) {
+			for (String key : layer.localKeySet()) {
+				if (!flattened.containsKey(key)) {
+					flattened.put(key, layer.get(key));
+				}
+			}
+		}
 		
+		Map<String, String> resolved = new HashMap<String, String>();
 		LinkedHashSet<String> visitedVariables = new LinkedHashSet<String>();
-		for (String key : props.getKeySet()) {
-			String value = props.get(key);
-			
+		Props resolvedProps = new Props();
+		for (String key : flattened.keySet()) {
 			visitedVariables.add(key);
-			String replacedValue = resolveVariableReplacement(value, props, visitedVariables);
+			String replacedValue = resolveVariable(key, flattened, resolved, visitedVariables);
 			visitedVariables.clear();
 			
 			resolvedProps.put(key, replacedValue);
@@ -167,47 +190,101 @@ public class PropsUtils {
 		return resolvedProps;
 	};
 	
-	private static String resolveVariableReplacement(String value, Props props, LinkedHashSet<String> visitedVariables) {
-		StringBuffer buffer = new StringBuffer();
-		int startIndex = 0;
+	/**
+	 * Resolves the value of a key, remembering the result so every key is resolved only once.
+	 */
+	private static String resolveVariable(String key, Map<String, String> values, Map<String, String> resolved, LinkedHashSet<String> visitedVariables) {
+		String resolvedValue = resolved.get(key);
+		if (resolvedValue != null) {
+			return resolvedValue;
+		}
 		
-		Matcher matcher = VARIABLE_PATTERN.matcher(value);
-		while (matcher.find(startIndex)) {
-			if (startIndex < matcher.start()) {
-				// Copy everything up front to the buffer
-				buffer.append(value.substring(startIndex, matcher.start()));
+		String value = values.get(key);
+		if (value.indexOf("${") < 0) {
+			resolvedValue = value;
+		}
+		else {
+			resolvedValue = resolveVariableReplacement(getTemplate(value), values, resolved, visitedVariables);
+		}
+		
+		resolved.put(key, resolvedValue);
+		return resolvedValue;
+	}
+	
+	private static String resolveVariableReplacement(ValueTemplate template, Map<String, String> values, Map<String, String> resolved, LinkedHashSet<String> visitedVariables) {
+		StringBuilder buffer = new StringBuilder();
+		for (int i = 0; i < template.parts.length; ++i) {
+			if (!template.isVariable[i]) {
+				buffer.append(template.parts[i]);
+				continue;
 			}
 			
-			String subVariable = matcher.group(1);
+			String subVariable = template.parts[i];
 			// Detected a cycle
 			if (visitedVariables.contains(subVariable)) {
 				throw new IllegalArgumentException(
 						String.format("Circular variable substitution found: [%s] -> [%s]", 
 								StringUtils.join(visitedVariables, "->"), subVariable));
 			}
-			else {
-				// Add substitute variable and recurse.
-				String replacement = props.get(subVariable);
-				visitedVariables.add(subVariable);
-				
-				if (replacement == null) {
-					throw new UndefinedPropertyException(
-							String.format("Could not find variable substitution for variable(s) [%s]", 
-									StringUtils.join(visitedVariables, "->")));
-				}
-				
-				buffer.append(resolveVariableReplacement(replacement, props, visitedVariables));
-				visitedVariables.remove(subVariable);
+			
+			// Add substitute variable and recurse.
+			visitedVariables.add(subVariable);
+			if (!values.containsKey(subVariable)) {
+				throw new UndefinedPropertyException(
+						String.format("Could not find variable substitution for variable(s) [%s]", 
+								StringUtils.join(visitedVariables, "->")));
 			}
 			
-			startIndex = matcher.end();
+			buffer.append(resolveVariable(subVariable, values, resolved, visitedVariables));
+			visitedVariables.remove(subVariable);
 		}
 		
-		if (startIndex < value.length()) {
-			buffer.append(value.substring(startIndex));
+		return buffer.toString();
+	}
+	
+	private static ValueTemplate getTemplate(String value) {
+		ValueTemplate template = TEMPLATE_CACHE.get(value);
+		if (template == null) {
+			template = new ValueTemplate(value);
+			TEMPLATE_CACHE.put(value, template);
 		}
+		return template;
+	}
+	
+	/**
+	 * A value split into literal text and ${variable} references.
+	 */
+	private static class ValueTemplate {
+		private final String[] parts;
+		private final boolean[] isVariable;
 		
-		return buffer.toString();
+		private ValueTemplate(String value) {
+			ArrayList<String> partList = new ArrayList<String>();
+			ArrayList<Boolean> variableList = new ArrayList<Boolean>();
+			
+			int startIndex = 0;
+			Matcher matcher = VARIABLE_PATTERN.matcher(value);
+			while (matcher.find(startIndex)) {
+				if (startIndex < matcher.start()) {
+					partList.add(value.substring(startIndex, matcher.start()));
+					variableList.add(false);
+				}
+				partList.add(matcher.group(1));
+				variableList.add(true);
+				startIndex = matcher.end();
+			}
+			
+			if (startIndex < value.length()) {
+				partList.add(value.substring(startIndex));
+				variableList.add(false);
+			}
+			
+			parts = partList.toArray(new String[partList.size()]);
+			isVariable = new boolean[variableList.size()];
+			for (int i = 0; i < isVariable.length; ++i) {
+				isVariable[i] = variableList.get(i);
+			}
+		}
 	}
 	
 	public static Props addCommonFlowProperties(final ExecutableFlow flow) {
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CPU time, peak resident memory and disk I/O used by the processes of one job attempt.
+ *
+ * The usage a thread's processes are charged to is set with setCurrent, so process launchers
+ * don't need to know which job they run for.
+ */
+public class ResourceUsage {
+	private static final ThreadLocal<ResourceUsage> current = new ThreadLocal<ResourceUsage>();
+
+	private long cpuTimeMs = 0;
+	private long peakRssBytes = 0;
+	private long ioReadBytes = 0;
+	private long ioWriteBytes = 0;
+	private int numProcesses = 0;
+
+	public ResourceUsage() {
+	}
+
+	public ResourceUsage(long cpuTimeMs, long peakRssBytes, long ioReadBytes, long ioWriteBytes) {
+		this.cpuTimeMs = cpuTimeMs;
+		this.peakRssBytes = peakRssBytes;
+		this.ioReadBytes = ioReadBytes;
+		this.ioWriteBytes = ioWriteBytes;
+	}
+
+	/**
+	 * The usage processes started by this thread are charged to, or null if they aren't measured.
+	 */
+	public static ResourceUsage getCurrent() {
+		return current.get();
+	}
+
+	public static void setCurrent(ResourceUsage usage) {
+		if (usage == null) {
+			current.remove();
+		}
+		else {
+			current.set(usage);
+		}
+	}
+
+	public synchronized void addProcess() {
+		numProcesses++;
+	}
+
+	public synchronized void add(long cpuTimeMs, long ioReadBytes, long ioWriteBytes) {
+		this.cpuTimeMs += cpuTimeMs;
+		this.ioReadBytes += ioReadBytes;
+		this.ioWriteBytes += ioWriteBytes;
+	}
+
+	public synchronized void recordRss(long rssBytes) {
+		peakRssBytes = Math.max(peakRssBytes, rssBytes);
+	}
+
+	/**
+	 * Number of processes whose trees were sampled. Nothing was measured if it is 0.
+	 */
+	public synchronized int getNumProcesses() {
+		return numProcesses;
+	}
+
+	public synchronized long getCpuTimeMs() {
+		return cpuTimeMs;
+	}
+
+	public synchronized long getPeakRssBytes() {
+		return peakRssBytes;
+	}
+
+	public synchronized long getIoReadBytes() {
+		return ioReadBytes;
+	}
+
+	public synchronized long getIoWriteBytes() {
+		return ioWriteBytes;
+	}
+
+	public synchronized Map<String, Object> toObject() {
+		HashMap<String, Object> map = new HashMap<String, Object>();
+		map.put("cpuTimeMs", cpuTimeMs);
+		map.put("peakRssBytes", peakRssBytes);
+		map.put("ioReadBytes", ioReadBytes);
+		map.put("ioWriteBytes", ioWriteBytes);
+		return map;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "cpu=" + cpuTimeMs + "ms peakRss=" + peakRssBytes + " ioRead=" + ioReadBytes + " ioWrite=" + ioWriteBytes;
+	}
+}
@@ -1,13 +1,30 @@
 package azkaban.utils.cache;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Reads are lock free. Elements are kept in ejection order, oldest first, so ejecting is O(1).
+ * LRU reads are recorded in a buffer and applied to the order by the next write, or by the
+ * reader that fills the buffer.
+ */
 public class Cache {
+	private static final int ACCESS_BUFFER_DRAIN_THRESHOLD = 64;
+
 	private long nextUpdateTime = 0;
 	private long updateFrequency = 30 * 60 * 1000;
 	private int maxCacheSize = -1;
+	// Limit on the summed weight of the elements. No limit by default.
+	private long maxWeight = -1;
+	private final AtomicLong totalWeight = new AtomicLong(0);
 
 	private long expireTimeToLive = -1; // Never expires
 	private long expireTimeToIdle = -1;
@@ -16,6 +33,16 @@ public class Cache {
 	private CacheManager manager = null;
 
 	private Map<Object, Element<?>> elementMap = new ConcurrentHashMap<Object, Element<?>>();
+	// Ejection order, guarded by orderLock.
+	private final LinkedHashMap<Object, Element<?>> ejectionOrder = new LinkedHashMap<Object, Element<?>>();
+	private final ReentrantLock orderLock = new ReentrantLock();
+	private final Queue<Element<?>> accessBuffer = new ConcurrentLinkedQueue<Element<?>>();
+	private final AtomicInteger accessBufferSize = new AtomicInteger(0);
+
+	// Metrics
+	private final AtomicLong numHits = new AtomicLong(0);
+	private final AtomicLong numMisses = new AtomicLong(0);
+	private final AtomicLong numEvictions = new AtomicLong(0);
 
 	public enum EjectionPolicy {
 		LRU, FIFO
@@ -28,24 +55,57 @@ public class Cache {
 	@SuppressWarnings("unchecked")
 	public <T> T get(Object key) {
 		Element<?> element = elementMap.get(key);
+		if (element != null && shouldExpire(element)) {
+			// Don't wait for the expiry thread to drop it.
+			remove(key, element);
+			element = null;
+		}
 		if (element == null) {
+			numMisses.incrementAndGet();
 			return null;
 		}
+		numHits.incrementAndGet();
+		
+		if (ejectionPolicy == EjectionPolicy.LRU) {
+			recordAccess(element);
+		}
 		return (T) element.getElement();
 	}
 
 	public <T> void put(Object key, T item) {
 		Element<T> elem = new Element<T>(key, item);
-		elementMap.put(key, elem);
+		orderLock.lock();
+		try {
+			addElement(elem);
+		}
+		finally {
+			orderLock.unlock();
+		}
 	}
 
 	public boolean remove(Object key) {
-		Element<?> elem = elementMap.remove(key);
-		if (elem == null) {
-			return false;
+		return remove(key, null);
+	}
+
+	/**
+	 * Removes the key, only if it's still mapped to the given element when it isn't null.
+	 */
+	private boolean remove(Object key, Element<?> expected) {
+		orderLock.lock();
+		try {
+			Element<?> elem = elementMap.get(key);
+			if (elem == null || (expected != null && elem != expected)) {
+				return false;
+			}
+			
+			elementMap.remove(key);
+			ejectionOrder.remove(key);
+			totalWeight.addAndGet(-elem.getWeight());
+			return true;
+		}
+		finally {
+			orderLock.unlock();
 		}
-		
-		return true;
 	}
 
 	public Cache setMaxCacheSize(int size) {
@@ -53,6 +113,15 @@ public class Cache {
 		return this;
 	}
 
+	/**
+	 * Limits the summed weight of the cached elements. Only elements inserted with a weight
+	 * through insertElement count for more than 1.
+	 */
+	public Cache setMaxWeight(long weight) {
+		maxWeight = weight;
+		return this;
+	}
+
 	public Cache setEjectionPolicy(EjectionPolicy policy) {
 		ejectionPolicy = policy;
 		return this;
@@ -84,6 +153,28 @@ public class Cache {
 		return elementMap.size();
 	}
 
+	public long getWeight() {
+		return totalWeight.get();
+	}
+
+	public long getNumHits() {
+		return numHits.get();
+	}
+
+	public long getNumMisses() {
+		return numMisses.get();
+	}
+
+	public long getNumEvictions() {
+		return numEvictions.get();
+	}
+
+	public double getHitRate() {
+		long hits = numHits.get();
+		long total = hits + numMisses.get();
+		return total == 0 ? 0 : (double)hits / total;
+	}
+
 	public long getExpireTimeToLive() {
 		return expireTimeToLive;
 	}
@@ -92,52 +183,106 @@ public class Cache {
 		return expireTimeToIdle;
 	}
 
-	public synchronized <T> void insertElement(Object key, T item) {
-		if (maxCacheSize < 0 || elementMap.size() < maxCacheSize) {
-			Element<T> elem = new Element<T>(key, item);
-			elementMap.put(key, elem);
-		} else {
-			internalExpireCache();
+	public <T> void insertElement(Object key, T item) {
+		insertElement(key, item, 1);
+	}
 
-			Element<T> elem = new Element<T>(key, item);
-			if (elementMap.size() < maxCacheSize) {
-				elementMap.put(key, elem);
-			} else {
-				Element<?> element = getNextExpiryElement();
-				if (element != null) {
-					elementMap.remove(element.getKey());
-				}
+	/**
+	 * Inserts the element, ejecting others until it fits in both the max size and the max
+	 * weight. An element heavier than the max weight isn't cached at all.
+	 */
+	public <T> void insertElement(Object key, T item, long weight) {
+		if (maxWeight >= 0 && weight > maxWeight) {
+			return;
+		}
+		
+		orderLock.lock();
+		try {
+			drainAccessBuffer();
+			remove(key);
+
+			if (!fits(weight)) {
+				expireOldest();
 
-				elementMap.put(key, elem);
+				while (!fits(weight)) {
+					Element<?> element = getNextExpiryElement();
+					if (element == null) {
+						break;
+					}
+					remove(element.getKey());
+					numEvictions.incrementAndGet();
+				}
 			}
+
+			addElement(new Element<T>(key, item, weight));
+		}
+		finally {
+			orderLock.unlock();
 		}
 	}
 
-	private Element<?> getNextExpiryElement() {
-		if (ejectionPolicy == EjectionPolicy.LRU) {
-			long latestAccessTime = Long.MAX_VALUE;
-			Element<?> ejectionCandidate = null;
-			for (Element<?> elem : elementMap.values()) {
-				if (latestAccessTime > elem.getLastUpdateTime()) {
-					latestAccessTime = elem.getLastUpdateTime();
-					ejectionCandidate = elem;
-				}
+	private boolean fits(long weight) {
+		if (maxCacheSize >= 0 && elementMap.size() >= maxCacheSize) {
+			return false;
+		}
+		return maxWeight < 0 || totalWeight.get() + weight <= maxWeight;
+	}
+
+	/**
+	 * Must hold orderLock. New elements go to the back of the ejection order.
+	 */
+	private void addElement(Element<?> elem) {
+		Element<?> old = elementMap.put(elem.getKey(), elem);
+		ejectionOrder.remove(elem.getKey());
+		ejectionOrder.put(elem.getKey(), elem);
+		totalWeight.addAndGet(elem.getWeight() - (old == null ? 0 : old.getWeight()));
+	}
+
+	private void recordAccess(Element<?> element) {
+		accessBuffer.add(element);
+		if (accessBufferSize.incrementAndGet() >= ACCESS_BUFFER_DRAIN_THRESHOLD && orderLock.tryLock()) {
+			try {
+				drainAccessBuffer();
 			}
+			finally {
+				orderLock.unlock();
+			}
+		}
+	}
 
-			return ejectionCandidate;
-		} else if (ejectionPolicy == EjectionPolicy.FIFO) {
-			long earliestCreateTime = Long.MAX_VALUE;
-			Element<?> ejectionCandidate = null;
-			for (Element<?> elem : elementMap.values()) {
-				if (earliestCreateTime > elem.getCreationTime()) {
-					earliestCreateTime = elem.getCreationTime();
-					ejectionCandidate = elem;
-				}
+	/**
+	 * Must hold orderLock. Moves the recently read elements to the back of the ejection order.
+	 */
+	private void drainAccessBuffer() {
+		Element<?> element;
+		while ((element = accessBuffer.poll()) != null) {
+			accessBufferSize.decrementAndGet();
+			// Skip reads of elements that have been replaced or removed since.
+			if (ejectionOrder.get(element.getKey()) == element) {
+				ejectionOrder.remove(element.getKey());
+				ejectionOrder.put(element.getKey(), element);
 			}
-			return ejectionCandidate;
 		}
+	}
+
+	/**
+	 * Must hold orderLock.
+	 */
+	private Element<?> getNextExpiryElement() {
+		Iterator<Element<?>> iterator = ejectionOrder.values().iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
 
-		return null;
+	/**
+	 * Must hold orderLock. Removes expired elements from the front of the ejection order. The
+	 * order follows creation for FIFO and last access for LRU, so this stops at the first element
+	 * that hasn't expired. The expiry thread catches anything out of order.
+	 */
+	private void expireOldest() {
+		Element<?> element;
+		while ((element = getNextExpiryElement()) != null && shouldExpire(element)) {
+			remove(element.getKey());
+		}
 	}
 
 	public synchronized void expireCache() {
@@ -148,12 +293,12 @@ public class Cache {
 		}
 	}
 
-	private synchronized void internalExpireCache() {
+	private void internalExpireCache() {
 		ArrayList<Element<?>> elems = new ArrayList<Element<?>>(elementMap.values());
 		
 		for (Element<?> elem : elems) {
 			if (shouldExpire(elem)) {
-				elementMap.remove(elem.getKey());
+				remove(elem.getKey(), elem);
 			}
 		}
 	}
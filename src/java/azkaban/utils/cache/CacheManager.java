@@ -1,7 +1,7 @@
 package azkaban.utils.cache;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 public class CacheManager {
 	// Thread that expires caches at
@@ -24,7 +24,8 @@ public class CacheManager {
 	
 	private CacheManager() {
 		updaterThread = new CacheManagerThread();
-		caches = new HashSet<Cache>();
+		// Caches are added and removed while the updater thread iterates over them.
+		caches = new CopyOnWriteArraySet<Cache>();
 
 		updaterThread.start();
 	}
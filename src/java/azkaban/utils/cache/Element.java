@@ -5,9 +5,15 @@ public class Element<T> {
 	private T element;
 	private long creationTime = 0;
 	private long lastAccessTime = 0;
+	private long weight = 1;
 
 	public Element(Object key, T element) {
+		this(key, element, 1);
+	}
+
+	public Element(Object key, T element, long weight) {
 		this.key = key;
+		this.weight = weight;
 		creationTime = System.currentTimeMillis();
 		lastAccessTime = creationTime;
 		this.element = element;
@@ -29,4 +35,8 @@ public class Element<T> {
 	public long getLastUpdateTime() {
 		return lastAccessTime;
 	}
+
+	public long getWeight() {
+		return weight;
+	}
 }
\ No newline at end of file
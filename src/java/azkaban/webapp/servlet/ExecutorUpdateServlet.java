@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 LinkedIn, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.webapp.servlet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import azkaban.executor.ConnectorParams;
+import azkaban.executor.ExecutorManager;
+import azkaban.utils.JSONUtils;
+import azkaban.webapp.AzkabanWebServer;
+
+/**
+ * Receives execution status updates pushed by the executors.
+ */
+public class ExecutorUpdateServlet extends AbstractAzkabanServlet implements ConnectorParams {
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(ExecutorUpdateServlet.class.getName());
+
+	private ExecutorManager executorManager;
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		AzkabanWebServer server = (AzkabanWebServer)getApplication();
+		executorManager = server.getExecutorManager();
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		HashMap<String, Object> respMap = new HashMap<String, Object>();
+		if (!executorManager.isValidPushSecret(req.getParameter(PUSH_SECRET_PARAM))) {
+			logger.warn("Rejected execution updates from " + req.getRemoteAddr() + " without a valid push secret.");
+			resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+			respMap.put(RESPONSE_ERROR, "Execution updates need a valid push secret.");
+			writeJSON(resp, respMap);
+			return;
+		}
+		
+		try {
+			String host = getParam(req, PUSH_HOST_PARAM);
+			int port = getIntParam(req, PUSH_PORT_PARAM);
+			@SuppressWarnings("unchecked")
+			List<Map<String, Object>> updates = (List<Map<String, Object>>)JSONUtils.parseJSONFromString(getParam(req, PUSH_UPDATE_LIST_PARAM));
+			if (logger.isDebugEnabled()) {
+				logger.debug("Received " + updates.size() + " execution updates from " + host + ":" + port);
+			}
+			executorManager.handlePushedUpdates(host, port, updates);
+			respMap.put(STATUS_PARAM, RESPONSE_SUCCESS);
+		} catch (Exception e) {
+			logger.error("Error handling pushed execution updates.", e);
+			respMap.put(RESPONSE_ERROR, e.getMessage());
+		}
+
+		writeJSON(resp, respMap);
+	}
+}
@@ -18,7 +18,9 @@
 package azkaban.webapp.servlet;
 
 import java.io.IOException;
-
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -31,9 +33,11 @@ import javax.servlet.http.HttpServletResponse;
 import org.joda.time.format.DateTimeFormat;
 
 
-import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutionHistoryFilter;
+import azkaban.executor.ExecutionSummary;
 import azkaban.executor.ExecutorManager;
 import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.Status;
 import azkaban.project.Project;
 import azkaban.project.ProjectManager;
 import azkaban.webapp.AzkabanWebServer;
@@ -113,90 +117,151 @@ public class HistoryServlet extends LoginAbstractAzkabanServlet {
 		Page page = newPage(req, resp, session, "azkaban/webapp/servlet/velocity/historypage.vm");
 		int pageNum = getIntParam(req, "page", 1);
 		int pageSize = getIntParam(req, "size", 16);
+		int beforeExecId = getIntParam(req, "before", -1);
+		int afterExecId = getIntParam(req, "after", -1);
 		page.add("vmutils", vmHelper);
 		
-		if (pageNum < 0) {
-			pageNum = 1;
+		if (pageSize <= 0) {
+			pageSize = 16;
 		}
-		List<ExecutableFlow> history = null;
+		
+		// Pages are found by seeking on the execution id, so later pages cost the same as the first.
+		ExecutionHistoryFilter filter = new ExecutionHistoryFilter();
+		StringBuilder filterParams = new StringBuilder();
 		if(hasParam(req, "advfilter")) {
 			String projContain = getParam(req, "projcontain");
 			String flowContain = getParam(req, "flowcontain");
 			String userContain = getParam(req, "usercontain");
 			int status = getIntParam(req, "status");
 			String begin = getParam(req, "begin");
-			long beginTime = begin == "" ? -1 : DateTimeFormat.forPattern("MM/dd/yyyy-HH:mm").parseDateTime(begin).getMillis();
 			String end = getParam(req, "end");
-			long endTime = end == "" ? -1 : DateTimeFormat.forPattern("MM/dd/yyyy-HH:mm").parseDateTime(end).getMillis();
-			try {
-				history = executorManager.getExecutableFlows(projContain, flowContain, userContain, status, beginTime, endTime, (pageNum - 1)*pageSize, pageSize);
-			} catch (ExecutorManagerException e) {
-				page.add("error", e.getMessage());
+			
+			if (!projContain.isEmpty()) {
+				filter.setProjectIds(getProjectIdsContaining(projContain));
+			}
+			filter.setFlowId(flowContain, ExecutionHistoryFilter.MatchType.CONTAINS);
+			filter.setSubmitUser(userContain, ExecutionHistoryFilter.MatchType.CONTAINS);
+			if (status != 0) {
+				filter.setStatus(Status.fromInteger(status));
+			}
+			if (!begin.isEmpty()) {
+				filter.setStartTime(DateTimeFormat.forPattern("MM/dd/yyyy-HH:mm").parseDateTime(begin).getMillis());
 			}
+			if (!end.isEmpty()) {
+				filter.setEndTime(DateTimeFormat.forPattern("MM/dd/yyyy-HH:mm").parseDateTime(end).getMillis());
+			}
+			
+			filterParams.append("&advfilter=true");
+			appendParam(filterParams, "projcontain", projContain);
+			appendParam(filterParams, "flowcontain", flowContain);
+			appendParam(filterParams, "usercontain", userContain);
+			appendParam(filterParams, "status", String.valueOf(status));
+			appendParam(filterParams, "begin", begin);
+			appendParam(filterParams, "end", end);
 		}
 		else if(hasParam(req, "search")) {
 			String searchTerm = getParam(req, "searchterm");
-			try {
-				history = executorManager.getExecutableFlows(searchTerm, (pageNum - 1)*pageSize, pageSize);
-			} catch (ExecutorManagerException e) {
-				// TODO Auto-generated catch block
-				page.add("error", e.getMessage());
-			}			
+			filter.setFlowId(searchTerm, ExecutionHistoryFilter.MatchType.CONTAINS);
+			
+			filterParams.append("&search=true");
+			appendParam(filterParams, "searchterm", searchTerm);
 		}
-		else {
-				try {
-					history = executorManager.getExecutableFlows((pageNum - 1)*pageSize, pageSize);
-				} catch (ExecutorManagerException e) {
-					e.printStackTrace();
-				}
+		
+		List<ExecutionSummary> history = null;
+		List<ExecutionSummary> newer = null;
+		List<ExecutionSummary> older = null;
+		try {
+			history = executorManager.getExecutionSummaries(filter, beforeExecId, afterExecId, pageSize);
+			if (!history.isEmpty()) {
+				// The two pages either side of this one, for the page numbers.
+				newer = executorManager.getExecutionSummaries(filter, -1, history.get(0).getExecutionId(), 2*pageSize);
+				older = executorManager.getExecutionSummaries(filter, history.get(history.size() - 1).getExecutionId(), -1, 2*pageSize);
+			}
+		} catch (ExecutorManagerException e) {
+			page.add("error", e.getMessage());
+		}
+		if (newer == null || older == null) {
+			newer = new ArrayList<ExecutionSummary>();
+			older = new ArrayList<ExecutionSummary>();
+		}
+		
+		// The page number is only passed along by the links, so correct it near the first page.
+		if (newer.isEmpty()) {
+			pageNum = 1;
+		}
+		else if (newer.size() <= pageSize) {
+			pageNum = 2;
 		}
+		else if (newer.size() < 2*pageSize || pageNum < 3) {
+			pageNum = 3;
+		}
+		
 		page.add("flowHistory", history);
 		page.add("size", pageSize);
 		page.add("page", pageNum);
+		page.add("filterParams", filterParams.toString());
+		
+		PageSelection firstPage = new PageSelection(1, pageSize, "", false, false);
+		ArrayList<PageSelection> pageSelections = new ArrayList<PageSelection>();
+		if (pageNum > 2) {
+			pageSelections.add(pageNum == 3 ? firstPage : new PageSelection(pageNum - 2, pageSize, "&after=" + newer.get(pageSize).getExecutionId(), false, false));
+		}
+		if (pageNum > 1) {
+			pageSelections.add(pageNum == 2 ? firstPage : new PageSelection(pageNum - 1, pageSize, "&after=" + history.get(0).getExecutionId(), false, false));
+		}
+		pageSelections.add(new PageSelection(pageNum, pageSize, seekParam(beforeExecId, afterExecId), false, true));
+		if (!older.isEmpty()) {
+			pageSelections.add(new PageSelection(pageNum + 1, pageSize, "&before=" + history.get(history.size() - 1).getExecutionId(), false, false));
+		}
+		if (older.size() > pageSize) {
+			pageSelections.add(new PageSelection(pageNum + 2, pageSize, "&before=" + older.get(pageSize - 1).getExecutionId(), false, false));
+		}
+		
+		int selected = Math.min(pageNum - 1, 2);
+		page.add("pageSelections", pageSelections);
+		page.add("previous", pageNum > 1 ? pageSelections.get(selected - 1) : new PageSelection(1, pageSize, "", true, false));
+		page.add("next", selected + 1 < pageSelections.size() ? pageSelections.get(selected + 1) : new PageSelection(pageNum + 1, pageSize, seekParam(beforeExecId, afterExecId), true, false));
+		
 		//keep the search terms so that we can navigate to later pages
 		if(hasParam(req, "searchterm") && !getParam(req, "searchterm").equals("")) {
 			page.add("search", "true");
 			page.add("search_term", getParam(req, "searchterm"));
 		}
 		
-		if(hasParam(req, "advfilter")) {
-			page.add("advfilter", "true");
-			page.add("projcontain", getParam(req, "projcontain"));
-			page.add("flowcontain", getParam(req, "flowcontain"));
-			page.add("usercontain", getParam(req, "usercontain"));
-			page.add("status", getIntParam(req, "status"));
-			page.add("begin", getParam(req, "begin"));
-			page.add("end", getParam(req, "end"));
+		page.render();
+	}
+	
+	/**
+	 * Matches project names in memory, so the history query can use the project_id index
+	 * instead of joining on projects.
+	 */
+	private List<Integer> getProjectIdsContaining(String nameContains) {
+		String lowerName = nameContains.toLowerCase();
+		ArrayList<Integer> projectIds = new ArrayList<Integer>();
+		for (Project project: projectManager.getProjects()) {
+			if (project.getName().toLowerCase().contains(lowerName)) {
+				projectIds.add(project.getId());
+			}
 		}
-//		else {
-//			page.add("search_term", "");
-//		}
-		
-		if (pageNum == 1) {
-			page.add("previous", new PageSelection(1, pageSize, true, false));
+		return projectIds;
+	}
+	
+	private static String seekParam(int beforeExecId, int afterExecId) {
+		if (beforeExecId > 0) {
+			return "&before=" + beforeExecId;
 		}
-		else {
-			page.add("previous", new PageSelection(pageNum-1, pageSize, false, false));
+		else if (afterExecId > 0) {
+			return "&after=" + afterExecId;
 		}
-		page.add("next", new PageSelection(pageNum + 1, pageSize, false, false));
-		// Now for the 5 other values.
-		int pageStartValue = 1;
-		if (pageNum > 3) {
-			pageStartValue = pageNum - 2;
+		return "";
+	}
+	
+	private static void appendParam(StringBuilder params, String name, String value) {
+		try {
+			params.append('&').append(name).append('=').append(URLEncoder.encode(value, "UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
 		}
-		
-		page.add("page1", new PageSelection(pageStartValue, pageSize, false, pageStartValue == pageNum));
-		pageStartValue++;
-		page.add("page2", new PageSelection(pageStartValue, pageSize, false, pageStartValue == pageNum));
-		pageStartValue++;
-		page.add("page3", new PageSelection(pageStartValue, pageSize, false, pageStartValue == pageNum));
-		pageStartValue++;
-		page.add("page4", new PageSelection(pageStartValue, pageSize, false, pageStartValue == pageNum));
-		pageStartValue++;
-		page.add("page5", new PageSelection(pageStartValue, pageSize, false, pageStartValue == pageNum));
-		pageStartValue++;
-		
-		page.render();
 	}
 	
 	private void handleHistoryTimelinePage(HttpServletRequest req, HttpServletResponse resp, Session session) {
@@ -254,12 +319,14 @@ public class HistoryServlet extends LoginAbstractAzkabanServlet {
 	public class PageSelection {
 		private int page;
 		private int size;
+		private String seek;
 		private boolean disabled;
 		private boolean selected;
 		
-		public PageSelection(int page, int size, boolean disabled, boolean selected) {
+		public PageSelection(int page, int size, String seek, boolean disabled, boolean selected) {
 			this.page = page;
 			this.size = size;
+			this.seek = seek;
 			this.disabled = disabled;
 			this.setSelected(selected);
 		}
@@ -272,6 +339,13 @@ public class HistoryServlet extends LoginAbstractAzkabanServlet {
 			return size;
 		}
 		
+		/**
+		 * The before or after execution id parameter that finds this page.
+		 */
+		public String getSeek() {
+			return seek;
+		}
+		
 		public boolean getDisabled() {
 			return disabled;
 		}
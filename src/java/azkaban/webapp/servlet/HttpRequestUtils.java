@@ -73,6 +73,10 @@ public class HttpRequestUtils {
 			}
 		}
 		
+		if (hasParam(req, "flowPriority")) {
+			execOptions.setFlowPriority(getIntParam(req, "flowPriority", ExecutionOptions.DEFAULT_FLOW_PRIORITY));
+		}
+		
 		Map<String, String> flowParamGroup = getParamGroup(req, "flowOverride");
 		execOptions.setFlowParameters(flowParamGroup);
 		
@@ -44,6 +44,7 @@ import org.apache.log4j.Logger;
 
 import azkaban.executor.ExecutableFlow;
 import azkaban.executor.ExecutableJobInfo;
+import azkaban.executor.ExecutionSummary;
 import azkaban.executor.ExecutorManager;
 import azkaban.executor.ExecutorManagerException;
 import azkaban.flow.Edge;
@@ -310,10 +311,10 @@ public class ProjectManagerServlet extends LoginAbstractAzkabanServlet {
 		int from = Integer.valueOf(getParam(req, "start"));
 		int length = Integer.valueOf(getParam(req, "length"));
 		
-		ArrayList<ExecutableFlow> exFlows = new ArrayList<ExecutableFlow>();
+		ArrayList<ExecutionSummary> exFlows = new ArrayList<ExecutionSummary>();
 		int total = 0;
 		try {
-			total = executorManager.getExecutableFlows(project.getId(), flowId, from, length, exFlows);
+			total = executorManager.getExecutionSummaries(project.getId(), flowId, from, length, exFlows);
 		} catch (ExecutorManagerException e) {
 			ret.put("error", "Error retrieving executable flows");
 		}
@@ -324,7 +325,7 @@ public class ProjectManagerServlet extends LoginAbstractAzkabanServlet {
 		ret.put("length", length);
 		
 		ArrayList<Object> history = new ArrayList<Object>();
-		for (ExecutableFlow flow: exFlows) {
+		for (ExecutionSummary flow: exFlows) {
 			HashMap<String, Object> flowInfo = new HashMap<String, Object>();
 			flowInfo.put("execId", flow.getExecutionId());
 			flowInfo.put("flowId", flow.getFlowId());
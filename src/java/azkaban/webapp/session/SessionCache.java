@@ -70,7 +70,7 @@ public class SessionCache {
 	 * @param session
 	 */
 	public void addSession(Session session) {
-		cache.put(session.getSessionId(), session);
+		cache.insertElement(session.getSessionId(), session);
 	}
 
 	/**
@@ -0,0 +1,10 @@
+CREATE TABLE execution_flow_deltas (
+	delta_id BIGINT NOT NULL AUTO_INCREMENT,
+	exec_id INT NOT NULL,
+	update_time BIGINT,
+	enc_type TINYINT,
+	delta_data LONGBLOB,
+	PRIMARY KEY (delta_id)
+);
+
+CREATE INDEX ex_flow_deltas_exec_id ON execution_flow_deltas(exec_id);
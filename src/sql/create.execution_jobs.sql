@@ -11,6 +11,10 @@ CREATE TABLE execution_jobs (
 	input_params LONGBLOB,
 	output_params LONGBLOB,
 	attachments LONGBLOB,
+	cpu_time BIGINT DEFAULT -1,
+	peak_rss BIGINT DEFAULT -1,
+	io_read_bytes BIGINT DEFAULT -1,
+	io_write_bytes BIGINT DEFAULT -1,
 	PRIMARY KEY (exec_id, job_id, attempt)
 );
 
@@ -0,0 +1,4 @@
+ALTER TABLE execution_flows ADD INDEX ex_flows_flow_id (flow_id);
+ALTER TABLE execution_flows ADD INDEX ex_flows_submit_user (submit_user);
+ALTER TABLE execution_flows ADD INDEX ex_flows_status (status);
+ALTER TABLE execution_flows ADD INDEX ex_flows_flow_status (project_id, flow_id, status);
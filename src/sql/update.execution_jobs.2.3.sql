@@ -0,0 +1,4 @@
+ALTER TABLE execution_jobs ADD COLUMN cpu_time BIGINT DEFAULT -1;
+ALTER TABLE execution_jobs ADD COLUMN peak_rss BIGINT DEFAULT -1;
+ALTER TABLE execution_jobs ADD COLUMN io_read_bytes BIGINT DEFAULT -1;
+ALTER TABLE execution_jobs ADD COLUMN io_write_bytes BIGINT DEFAULT -1;
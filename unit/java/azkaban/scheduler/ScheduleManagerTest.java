@@ -0,0 +1,335 @@
+package azkaban.scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Seconds;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutionOptions;
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.ExecutorManager;
+import azkaban.executor.ExecutorManagerException;
+import azkaban.flow.Flow;
+import azkaban.project.Project;
+import azkaban.project.ProjectLoader;
+import azkaban.project.ProjectManager;
+import azkaban.utils.JSONUtils;
+import azkaban.utils.Props;
+
+/**
+ * Runs the schedule manager against in memory loaders and an executor manager that records
+ * what it is asked to run.
+ */
+public class ScheduleManagerTest {
+	private static final int PROJECT_ID = 1;
+	private static final String PROJECT_NAME = "testProject";
+	private static final String FLOW_ID = "derived-member-data";
+	private static final List<String> FLOW_FAILURE_EMAILS = Arrays.asList("flow@test.com");
+
+	private File flowDir = new File("unit/executions/exectest1");
+	private File tempDir = new File("_ScheduleManagerTestTemp");
+	private RecordingExecutorManager executorManager;
+	private MemoryScheduleLoader loader;
+	private ScheduleManager scheduleManager;
+
+	@Before
+	public void setUp() throws Exception {
+		Flow flow = loadFlow("exec1");
+		flow.addFailureEmails(FLOW_FAILURE_EMAILS);
+		final Project project = new Project(PROJECT_ID, PROJECT_NAME);
+		final List<Flow> flows = Arrays.asList(flow);
+
+		ProjectLoader projectLoader = createStub(ProjectLoader.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("fetchAllActiveProjects")) {
+					return new ArrayList<Project>(Arrays.asList(project));
+				}
+				if (method.getName().equals("fetchAllProjectFlows")) {
+					return new ArrayList<Flow>(flows);
+				}
+				return defaultValue(method.getReturnType());
+			}
+		});
+		Props projectProps = new Props();
+		projectProps.put("project.temp.dir", tempDir.getPath());
+		ProjectManager projectManager = new ProjectManager(projectLoader, projectProps);
+
+		Props executorProps = new Props();
+		executorProps.put("executor.port", 12321);
+		executorProps.put("server.port", 8081);
+		executorProps.put("server.useSSL", "false");
+		executorManager = new RecordingExecutorManager(executorProps);
+
+		loader = new MemoryScheduleLoader();
+		Props props = new Props();
+		props.put("scheduler.submit.threads", 4);
+		scheduleManager = new ScheduleManager(executorManager, projectManager, null, loader, props);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		scheduleManager.shutdown();
+		executorManager.shutdown();
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testConcurrentSubmissionsGetTheirOwnOptions() throws Exception {
+		int numSchedules = 8;
+		// Every submit thread has to be inside submitExecutableFlow at once before any returns.
+		executorManager.blockUntilConcurrent(4);
+
+		long firstTime = System.currentTimeMillis() + 500;
+		List<Schedule> schedules = new ArrayList<Schedule>();
+		for (int i = 0; i < numSchedules; ++i) {
+			schedules.add(schedule(firstTime, null, new ExecutionOptions()));
+		}
+
+		List<ExecutableFlow> submitted = executorManager.awaitSubmissions(numSchedules, 10000);
+		Assert.assertEquals(numSchedules, submitted.size());
+		Assert.assertTrue(executorManager.getMaxConcurrent() >= 4);
+
+		Set<Integer> scheduleIds = new HashSet<Integer>();
+		for (ExecutableFlow exflow : submitted) {
+			scheduleIds.add(exflow.getScheduleId());
+			Assert.assertEquals(FLOW_FAILURE_EMAILS, exflow.getExecutionOptions().getFailureEmails());
+		}
+		Assert.assertEquals(numSchedules, scheduleIds.size());
+
+		// The scheduler thread removes the last schedules while their flows are submitted.
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!loader.isRemoved(schedules.get(numSchedules - 1)) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		for (Schedule sched : schedules) {
+			// The schedule's options are copied, never filled in for one run.
+			Assert.assertTrue(sched.getExecutionOptions().getFailureEmails().isEmpty());
+			for (ExecutableFlow exflow : submitted) {
+				Assert.assertNotSame(sched.getExecutionOptions(), exflow.getExecutionOptions());
+			}
+			// Non-recurring schedules are removed once they run.
+			Assert.assertNull(scheduleManager.getSchedule(sched.getScheduleId()));
+			Assert.assertTrue(loader.isRemoved(sched));
+		}
+	}
+
+	@Test
+	public void testRescheduledRunsGetTheirOwnOptions() throws Exception {
+		ExecutionOptions options = new ExecutionOptions();
+		options.getFlowParameters().put("param", "scheduled");
+		long firstTime = System.currentTimeMillis() + 200;
+		Schedule sched = schedule(firstTime, Seconds.seconds(1), options);
+
+		List<ExecutableFlow> submitted = executorManager.awaitSubmissions(2, 10000);
+		Assert.assertEquals(2, submitted.size());
+		ExecutableFlow first = submitted.get(0);
+		ExecutableFlow second = submitted.get(1);
+		Assert.assertNotSame(first.getExecutionOptions(), second.getExecutionOptions());
+		Assert.assertNotSame(options, first.getExecutionOptions());
+		Assert.assertEquals("scheduled", second.getExecutionOptions().getFlowParameters().get("param"));
+
+		// A run changing its options doesn't leak into the schedule or the next run.
+		first.getExecutionOptions().getFlowParameters().put("param", "changed");
+		first.getExecutionOptions().setFailureEmails(Arrays.asList("changed@test.com"));
+		Assert.assertEquals("scheduled", options.getFlowParameters().get("param"));
+		Assert.assertEquals("scheduled", second.getExecutionOptions().getFlowParameters().get("param"));
+		Assert.assertTrue(options.getFailureEmails().isEmpty());
+		Assert.assertEquals(FLOW_FAILURE_EMAILS, second.getExecutionOptions().getFailureEmails());
+
+		// The schedule moved on and its next time was saved.
+		Assert.assertTrue(sched.getNextExecTime() > firstTime);
+		Assert.assertTrue(loader.getNumNextExecTimeUpdates(sched) >= 2);
+		Assert.assertSame(sched, scheduleManager.getSchedule(sched.getScheduleId()));
+
+		// Removed schedules aren't run again.
+		scheduleManager.removeSchedule(sched);
+		Thread.sleep(200);
+		int numRuns = executorManager.getSubmissions().size();
+		Thread.sleep(1500);
+		Assert.assertEquals(numRuns, executorManager.getSubmissions().size());
+		Assert.assertTrue(loader.isRemoved(sched));
+	}
+
+	private Schedule schedule(long firstTime, Seconds period, ExecutionOptions options) {
+		long now = System.currentTimeMillis();
+		return scheduleManager.scheduleFlow(-1, PROJECT_ID, PROJECT_NAME, FLOW_ID, "ready", firstTime, DateTimeZone.getDefault(), period, now, firstTime, now, "testUser", options, null);
+	}
+
+	private Flow loadFlow(String flowName) throws IOException {
+		File jsonFlowFile = new File(flowDir, flowName + ".flow");
+		@SuppressWarnings("unchecked")
+		HashMap<String, Object> flowObj = (HashMap<String, Object>) JSONUtils.parseJSONFromFile(jsonFlowFile);
+		return Flow.flowFromObject(flowObj);
+	}
+
+	private static <T> T createStub(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		}
+		else if (type == int.class) {
+			return 0;
+		}
+		else if (type == long.class) {
+			return 0L;
+		}
+		else if (type.isAssignableFrom(ArrayList.class)) {
+			return new ArrayList<Object>();
+		}
+		else if (type.isAssignableFrom(HashMap.class)) {
+			return new HashMap<Object, Object>();
+		}
+		return null;
+	}
+
+	/**
+	 * Records the flows it is asked to run instead of sending them to an executor.
+	 */
+	private static class RecordingExecutorManager extends ExecutorManager {
+		private final List<ExecutableFlow> submissions = new ArrayList<ExecutableFlow>();
+		private final AtomicInteger nextExecId = new AtomicInteger(1);
+		private final AtomicInteger concurrent = new AtomicInteger(0);
+		private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+		private volatile CountDownLatch concurrentLatch;
+
+		public RecordingExecutorManager(Props props) throws ExecutorManagerException {
+			super(props, createStub(ExecutorLoader.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					return defaultValue(method.getReturnType());
+				}
+			}));
+		}
+
+		public void blockUntilConcurrent(int numConcurrent) {
+			concurrentLatch = new CountDownLatch(numConcurrent);
+		}
+
+		@Override
+		public String submitExecutableFlow(ExecutableFlow exflow) throws ExecutorManagerException {
+			int running = concurrent.incrementAndGet();
+			synchronized (maxConcurrent) {
+				maxConcurrent.set(Math.max(maxConcurrent.get(), running));
+			}
+			try {
+				CountDownLatch latch = concurrentLatch;
+				if (latch != null) {
+					latch.countDown();
+					latch.await(10, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				throw new ExecutorManagerException("Interrupted while submitting.");
+			} finally {
+				concurrent.decrementAndGet();
+			}
+
+			exflow.setExecutionId(nextExecId.getAndIncrement());
+			synchronized (submissions) {
+				submissions.add(exflow);
+				submissions.notifyAll();
+			}
+			return "Submitted " + exflow.getExecutionId();
+		}
+
+		public int getMaxConcurrent() {
+			return maxConcurrent.get();
+		}
+
+		public List<ExecutableFlow> getSubmissions() {
+			synchronized (submissions) {
+				return new ArrayList<ExecutableFlow>(submissions);
+			}
+		}
+
+		public List<ExecutableFlow> awaitSubmissions(int count, long waitMs) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + waitMs;
+			synchronized (submissions) {
+				long remaining = waitMs;
+				while (submissions.size() < count && remaining > 0) {
+					submissions.wait(remaining);
+					remaining = deadline - System.currentTimeMillis();
+				}
+				return new ArrayList<ExecutableFlow>(submissions);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the schedules in memory.
+	 */
+	private static class MemoryScheduleLoader implements ScheduleLoader {
+		private int nextId = 1;
+		private final Map<Integer, Schedule> schedules = new HashMap<Integer, Schedule>();
+		private final Set<Integer> removed = new HashSet<Integer>();
+		private final Map<Integer, Integer> nextExecTimeUpdates = new HashMap<Integer, Integer>();
+
+		@Override
+		public synchronized void insertSchedule(Schedule s) {
+			s.setScheduleId(nextId++);
+			schedules.put(s.getScheduleId(), s);
+		}
+
+		@Override
+		public synchronized void updateSchedule(Schedule s) {
+			schedules.put(s.getScheduleId(), s);
+		}
+
+		@Override
+		public synchronized List<Schedule> loadSchedules() {
+			return new ArrayList<Schedule>(schedules.values());
+		}
+
+		@Override
+		public synchronized void removeSchedule(Schedule s) {
+			schedules.remove(s.getScheduleId());
+			removed.add(s.getScheduleId());
+		}
+
+		@Override
+		public void updateNextExecTime(Schedule s) {
+			updateNextExecTimes(Arrays.asList(s));
+		}
+
+		@Override
+		public synchronized void updateNextExecTimes(List<Schedule> updated) {
+			for (Schedule s : updated) {
+				Integer count = nextExecTimeUpdates.get(s.getScheduleId());
+				nextExecTimeUpdates.put(s.getScheduleId(), count == null ? 1 : count + 1);
+			}
+		}
+
+		public synchronized boolean isRemoved(Schedule s) {
+			return removed.contains(s.getScheduleId());
+		}
+
+		public synchronized int getNumNextExecTimeUpdates(Schedule s) {
+			Integer count = nextExecTimeUpdates.get(s.getScheduleId());
+			return count == null ? 0 : count;
+		}
+	}
+}
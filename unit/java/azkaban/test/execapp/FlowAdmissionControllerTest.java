@@ -0,0 +1,178 @@
+package azkaban.test.execapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import azkaban.execapp.FlowAdmissionController;
+import azkaban.execapp.JobExecutionService;
+
+public class FlowAdmissionControllerTest {
+	private File procDir;
+	private ExecutorService taker;
+
+	private static class NamedFlow implements Runnable {
+		private final int execId;
+
+		public NamedFlow(int execId) {
+			this.execId = execId;
+		}
+
+		@Override
+		public void run() {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		procDir = new File("_AzkabanTestDir_FlowAdmissionController");
+		if (procDir.exists()) {
+			FileUtils.deleteDirectory(procDir);
+		}
+		procDir.mkdirs();
+		taker = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		taker.shutdownNow();
+		FileUtils.deleteDirectory(procDir);
+	}
+
+	@Test
+	public void testPriorityOrder() throws Exception {
+		FlowAdmissionController controller = new FlowAdmissionController(1, null, procDir);
+		controller.add(1, 5, new NamedFlow(1));
+		controller.add(2, 5, new NamedFlow(2));
+		controller.add(3, 10, new NamedFlow(3));
+
+		Assert.assertEquals(3, takeAdmitted(controller).execId);
+		controller.flowFinished(3);
+		Assert.assertEquals(1, takeAdmitted(controller).execId);
+		controller.flowFinished(1);
+		Assert.assertEquals(2, takeAdmitted(controller).execId);
+		Assert.assertEquals(3, controller.getNumAdmittedFlows());
+		Assert.assertEquals(0, controller.getNumQueuedFlows());
+	}
+
+	@Test
+	public void testFlowSlots() throws Exception {
+		FlowAdmissionController controller = new FlowAdmissionController(2, null, procDir);
+		controller.setCheckIntervalMs(10);
+		for (int i = 1; i <= 3; ++i) {
+			controller.add(i, 5, new NamedFlow(i));
+		}
+		takeAdmitted(controller);
+		takeAdmitted(controller);
+
+		Future<NamedFlow> third = startTake(controller);
+		assertHeldBack(third);
+		Assert.assertTrue(controller.getQueueWaitMs(3) >= 0);
+		Assert.assertNotNull(controller.getRejectionReason(3));
+		Assert.assertEquals(1L, (long)controller.getRejectionCounts().get(FlowAdmissionController.FLOW_SLOTS));
+
+		controller.flowFinished(1);
+		Assert.assertEquals(3, third.get(5, TimeUnit.SECONDS).execId);
+		Assert.assertEquals(-1, controller.getQueueWaitMs(3));
+		Assert.assertEquals(2, controller.getNumRunningFlows());
+	}
+
+	@Test
+	public void testJobSlots() throws Exception {
+		JobExecutionService service = new JobExecutionService(2);
+		service.registerFlow(1, 5, 2);
+		final CountDownLatch release = new CountDownLatch(1);
+		service.submit(1, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+
+		FlowAdmissionController controller = new FlowAdmissionController(10, service, procDir);
+		controller.setMaxInFlightJobs(1).setCheckIntervalMs(10);
+		controller.add(2, 5, new NamedFlow(2));
+
+		Future<NamedFlow> next = startTake(controller);
+		assertHeldBack(next);
+		Assert.assertEquals(1L, (long)controller.getRejectionCounts().get(FlowAdmissionController.JOB_SLOTS));
+
+		release.countDown();
+		Assert.assertEquals(2, next.get(5, TimeUnit.SECONDS).execId);
+		service.shutdown();
+	}
+
+	@Test
+	public void testHostLimits() throws Exception {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		writeLoad(cpus * 10.0);
+		writeMemory(100 * 1024);
+
+		FlowAdmissionController controller = new FlowAdmissionController(10, null, procDir);
+		controller.setMaxLoadPerCpu(2.0).setMinFreeMemoryBytes(512 * 1024 * 1024).setCheckIntervalMs(10);
+		for (int i = 1; i <= 2; ++i) {
+			controller.add(i, 5, new NamedFlow(i));
+		}
+
+		// The first flow is admitted anyway, since nothing is running.
+		Assert.assertEquals(1, takeAdmitted(controller).execId);
+
+		Future<NamedFlow> next = startTake(controller);
+		assertHeldBack(next);
+		Assert.assertEquals(1L, (long)controller.getRejectionCounts().get(FlowAdmissionController.LOAD_SLOTS));
+
+		writeLoad(0.5);
+		assertHeldBack(next);
+		Assert.assertEquals(1L, (long)controller.getRejectionCounts().get(FlowAdmissionController.MEMORY_SLOTS));
+		Assert.assertTrue(controller.getLastRejectionReason().contains("100 MB"));
+
+		writeMemory(1024 * 1024);
+		Assert.assertEquals(2, next.get(5, TimeUnit.SECONDS).execId);
+		Assert.assertTrue(controller.getMaxQueueWaitMs() > 0);
+	}
+
+	private NamedFlow takeAdmitted(FlowAdmissionController controller) throws Exception {
+		return startTake(controller).get(5, TimeUnit.SECONDS);
+	}
+
+	private Future<NamedFlow> startTake(final FlowAdmissionController controller) {
+		return taker.submit(new Callable<NamedFlow>() {
+			@Override
+			public NamedFlow call() throws Exception {
+				return (NamedFlow)controller.takeAdmitted();
+			}
+		});
+	}
+
+	private void assertHeldBack(Future<NamedFlow> future) throws Exception {
+		try {
+			future.get(200, TimeUnit.MILLISECONDS);
+			Assert.fail("Flow should have been held back.");
+		} catch (TimeoutException e) {
+		}
+	}
+
+	private void writeLoad(double load) throws IOException {
+		FileUtils.writeStringToFile(new File(procDir, "loadavg"), load + " 0.00 0.00 1/100 12345\n");
+	}
+
+	private void writeMemory(long availableKb) throws IOException {
+		FileUtils.writeStringToFile(new File(procDir, "meminfo"), "MemTotal:       16384000 kB\nMemFree:          10000 kB\nMemAvailable:   " + availableKb + " kB\nCached:          20000 kB\n");
+	}
+}
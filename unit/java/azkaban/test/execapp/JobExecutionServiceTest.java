@@ -0,0 +1,311 @@
+package azkaban.test.execapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import azkaban.execapp.JobExecutionService;
+import azkaban.execapp.event.BlockingStatus;
+import azkaban.executor.Status;
+
+public class JobExecutionServiceTest {
+
+	private static class BlockingJob implements Runnable {
+		private final CountDownLatch release;
+		private final AtomicInteger running;
+		private final AtomicInteger maxRunning;
+		private final List<Integer> order;
+		private final int execId;
+
+		public BlockingJob(int execId, CountDownLatch release, AtomicInteger running, AtomicInteger maxRunning, List<Integer> order) {
+			this.execId = execId;
+			this.release = release;
+			this.running = running;
+			this.maxRunning = maxRunning;
+			this.order = order;
+		}
+
+		@Override
+		public void run() {
+			int current = running.incrementAndGet();
+			synchronized(maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), current));
+			}
+			synchronized(order) {
+				order.add(execId);
+			}
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+			}
+			running.decrementAndGet();
+		}
+	}
+
+	@Test
+	public void testGlobalLimit() throws Exception {
+		JobExecutionService service = new JobExecutionService(3);
+		service.registerFlow(1, 5, 10);
+		service.registerFlow(2, 5, 10);
+
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < 5; ++i) {
+			service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+			service.submit(2, new BlockingJob(2, release, running, maxRunning, order));
+		}
+
+		Thread.sleep(200);
+		Assert.assertEquals(3, service.getNumRunningJobs());
+		Assert.assertEquals(7, service.getNumQueuedJobs());
+
+		release.countDown();
+		waitForIdle(service);
+		Assert.assertEquals(3, maxRunning.get());
+		Assert.assertEquals(10, service.getNumDispatchedJobs());
+		service.shutdown();
+	}
+
+	@Test
+	public void testPerFlowLimit() throws Exception {
+		JobExecutionService service = new JobExecutionService(10);
+		service.registerFlow(1, 5, 2);
+
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < 6; ++i) {
+			service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+		}
+
+		Thread.sleep(200);
+		Assert.assertEquals(2, service.getNumRunningJobs());
+		Assert.assertEquals(4, service.getNumQueuedJobs(1));
+
+		release.countDown();
+		waitForIdle(service);
+		Assert.assertEquals(2, maxRunning.get());
+		service.shutdown();
+	}
+
+	@Test
+	public void testPriorityShare() throws Exception {
+		// One slot, so the dispatch order is exactly the scheduling order.
+		JobExecutionService service = new JobExecutionService(1);
+		service.registerFlow(1, 3, 10);
+		service.registerFlow(2, 1, 10);
+
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> order = new ArrayList<Integer>();
+
+		// Hold the only slot while the queues fill up.
+		CountDownLatch hold = new CountDownLatch(1);
+		service.registerFlow(3, 1, 1);
+		service.submit(3, new BlockingJob(3, hold, running, maxRunning, order));
+		Thread.sleep(100);
+
+		for (int i = 0; i < 8; ++i) {
+			service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+			service.submit(2, new BlockingJob(2, release, running, maxRunning, order));
+		}
+		release.countDown();
+		hold.countDown();
+		waitForIdle(service);
+
+		// Of the first 8 jobs after the blocker, flow 1 should get about three times the slots.
+		int flow1 = 0;
+		for (int i = 1; i <= 8; ++i) {
+			if (order.get(i) == 1) {
+				flow1++;
+			}
+		}
+		Assert.assertEquals(6, flow1);
+		service.shutdown();
+	}
+
+	@Test
+	public void testUnregisteredFlowRejected() {
+		JobExecutionService service = new JobExecutionService(1);
+		try {
+			service.submit(1, new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+			Assert.fail("Expected rejection");
+		} catch (Exception e) {
+		}
+		service.shutdown();
+	}
+
+	private static class ParkingJob implements Runnable {
+		private final JobExecutionService service;
+		private final long delayMs;
+		private final BlockingStatus blockingStatus;
+		private final AtomicInteger runs = new AtomicInteger();
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		public ParkingJob(JobExecutionService service, long delayMs, BlockingStatus blockingStatus) {
+			this.service = service;
+			this.delayMs = delayMs;
+			this.blockingStatus = blockingStatus;
+		}
+
+		@Override
+		public void run() {
+			if (runs.incrementAndGet() == 1) {
+				service.park(1, this, delayMs, blockingStatus);
+				return;
+			}
+			done.countDown();
+		}
+	}
+
+	@Test
+	public void testParkedJobsFreeSlots() throws Exception {
+		// One slot. Both parked jobs must give it up for the other jobs to run.
+		JobExecutionService service = new JobExecutionService(1);
+		service.registerFlow(1, 5, 1);
+
+		BlockingStatus blockingStatus = new BlockingStatus(2, "upstream", Status.RUNNING);
+		ParkingJob delayed = new ParkingJob(service, 500, null);
+		ParkingJob blocked = new ParkingJob(service, 0, blockingStatus);
+		service.submit(1, delayed);
+		service.submit(1, blocked);
+
+		CountDownLatch release = new CountDownLatch(0);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < 3; ++i) {
+			service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+		}
+
+		Thread.sleep(200);
+		Assert.assertEquals(3, order.size());
+		Assert.assertEquals(2, service.getNumParkedJobs(1));
+		Assert.assertEquals(0, service.getNumRunningJobs());
+
+		Assert.assertTrue(delayed.done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, service.getNumParkedJobs());
+		Assert.assertEquals(1, blocked.runs.get());
+
+		blockingStatus.changeStatus(Status.SUCCEEDED);
+		Assert.assertTrue(blocked.done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, service.getNumParkedJobs());
+		service.shutdown();
+	}
+
+	@Test
+	public void testUnpark() throws Exception {
+		JobExecutionService service = new JobExecutionService(1);
+		service.registerFlow(1, 5, 1);
+
+		ParkingJob delayed = new ParkingJob(service, 60000, null);
+		service.submit(1, delayed);
+		Thread.sleep(100);
+		Assert.assertEquals(1, service.getNumParkedJobs(1));
+
+		Assert.assertTrue(service.unpark(1, delayed));
+		Assert.assertTrue(delayed.done.await(5, TimeUnit.SECONDS));
+		Assert.assertFalse(service.unpark(1, delayed));
+		service.shutdown();
+	}
+
+	@Test
+	public void testUnregisteredFlowRunsRemainingJobs() throws Exception {
+		JobExecutionService service = new JobExecutionService(1);
+		service.registerFlow(1, 5, 1);
+
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> order = new ArrayList<Integer>();
+		service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+		service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+		ParkingJob delayed = new ParkingJob(service, 300, null);
+		service.submit(1, delayed);
+		Thread.sleep(100);
+
+		service.unregisterFlow(1);
+		try {
+			service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+			Assert.fail("Expected rejection");
+		} catch (RejectedExecutionException e) {
+		}
+
+		// The jobs it already had still run, parked ones included.
+		release.countDown();
+		Assert.assertTrue(delayed.done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(2, order.size());
+		waitForIdle(service);
+		Assert.assertEquals(0, service.getNumParkedJobs());
+		service.shutdown();
+	}
+
+	private static class DroppedJob extends ParkingJob implements JobExecutionService.DroppableJob {
+		private final CountDownLatch dropped = new CountDownLatch(1);
+
+		public DroppedJob(JobExecutionService service, long delayMs) {
+			super(service, delayMs, null);
+		}
+
+		@Override
+		public void dropped(String reason) {
+			dropped.countDown();
+		}
+	}
+
+	@Test
+	public void testShutdownDropsQueuedAndParkedJobs() throws Exception {
+		JobExecutionService service = new JobExecutionService(1);
+		service.registerFlow(1, 5, 1);
+
+		DroppedJob parked = new DroppedJob(service, 60000);
+		service.submit(1, parked);
+		Thread.sleep(100);
+		Assert.assertEquals(1, service.getNumParkedJobs(1));
+
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> order = new ArrayList<Integer>();
+		service.submit(1, new BlockingJob(1, release, running, maxRunning, order));
+		DroppedJob queued = new DroppedJob(service, 0);
+		service.submit(1, queued);
+		Thread.sleep(100);
+		Assert.assertEquals(1, service.getNumQueuedJobs(1));
+
+		service.shutdown();
+		Assert.assertTrue(parked.dropped.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(queued.dropped.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, service.getNumQueuedJobs());
+		Assert.assertEquals(0, service.getNumParkedJobs());
+		Assert.assertFalse(service.unpark(1, parked));
+
+		// The running job still finishes, and neither dropped job is run.
+		release.countDown();
+		waitForIdle(service);
+		Assert.assertEquals(1, ((ParkingJob)parked).runs.get());
+		Assert.assertEquals(0, ((ParkingJob)queued).runs.get());
+	}
+
+	private void waitForIdle(JobExecutionService service) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while ((service.getNumRunningJobs() > 0 || service.getNumQueuedJobs() > 0) && System.currentTimeMillis() - start < 10000) {
+			Thread.sleep(20);
+		}
+	}
+}
@@ -12,6 +12,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import azkaban.execapp.JobExecutionService;
 import azkaban.execapp.JobRunner;
 import azkaban.execapp.event.Event;
 import azkaban.execapp.event.Event.Type;
@@ -279,6 +280,34 @@ public class JobRunnerTest {
 		}
 	}
 	
+	@Test
+	public void testDelayedExecutionParkedJob() throws Exception {
+		MockExecutorLoader loader = new MockExecutorLoader();
+		EventCollectorListener eventCollector = new EventCollectorListener();
+		JobRunner runner = createJobRunner(1, "testJob", 1, false, loader, eventCollector);
+		runner.setDelayStart(2000);
+		ExecutableNode node = runner.getNode();
+		
+		JobExecutionService service = new JobExecutionService(1);
+		service.registerFlow(node.getExecutionId(), 5, 1);
+		runner.setJobExecutionService(service);
+		long startTime = System.currentTimeMillis();
+		service.submit(node.getExecutionId(), runner);
+		
+		// The delayed job doesn't hold the only slot.
+		Thread.sleep(500);
+		Assert.assertEquals(1, service.getNumParkedJobs(node.getExecutionId()));
+		Assert.assertEquals(0, service.getNumRunningJobs());
+		
+		while (!Status.isStatusFinished(node.getStatus()) && System.currentTimeMillis() - startTime < 20000) {
+			Thread.sleep(100);
+		}
+		Assert.assertTrue("Node status is " + node.getStatus(), node.getStatus() == Status.SUCCEEDED);
+		Assert.assertTrue(node.getStartTime() - startTime >= 2000);
+		Assert.assertEquals(0, service.getNumParkedJobs());
+		service.shutdown();
+	}
+	
 	@Test
 	public void testDelayedExecutionCancelledJob() {
 		MockExecutorLoader loader = new MockExecutorLoader();
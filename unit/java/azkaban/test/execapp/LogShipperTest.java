@@ -0,0 +1,163 @@
+package azkaban.test.execapp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.junit.Test;
+
+import azkaban.execapp.LogShipper;
+import azkaban.executor.ExecutorManagerException;
+
+public class LogShipperTest {
+	private static class ChunkRecordingLoader extends MockExecutorLoader {
+		private ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+		private int nextStartByte;
+		private boolean fail = false;
+		private CountDownLatch release = null;
+
+		private ChunkRecordingLoader(int startByte) {
+			this.nextStartByte = startByte;
+		}
+
+		@Override
+		public synchronized void uploadLogChunk(int execId, String name, int attempt, int startByte, byte[] buffer, int length) throws ExecutorManagerException {
+			if (release != null) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new ExecutorManagerException("Interrupted upload");
+				}
+			}
+			if (fail) {
+				throw new ExecutorManagerException("Failing upload");
+			}
+
+			Assert.assertEquals(nextStartByte, startByte);
+			uploaded.write(buffer, 0, length);
+			nextStartByte += length;
+		}
+
+		@Override
+		public int fetchLogEndByte(int execId, String name, int attempt) throws ExecutorManagerException {
+			return nextStartByte;
+		}
+	}
+
+	@Test
+	public void testChunkedUpload() throws Exception {
+		ChunkRecordingLoader loader = new ChunkRecordingLoader(0);
+		LogShipper shipper = new LogShipper(loader, 2, 16, 64);
+		LogShipper.LogUploadAppender appender = shipper.createAppender(new PatternLayout("%m\n"), 1, "job1", 0);
+
+		Logger logger = Logger.getLogger("LogShipperTest.testChunkedUpload");
+		logger.addAppender(appender);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; ++i) {
+			logger.info("line " + i);
+			expected.append("line " + i + "\n");
+		}
+		logger.removeAppender(appender);
+		appender.close();
+
+		Assert.assertTrue(appender.waitForUpload(5000));
+		Assert.assertEquals(expected.toString(), new String(loader.uploaded.toByteArray()));
+		Assert.assertEquals(expected.length(), shipper.getNumBytesUploaded());
+		shipper.shutdown();
+	}
+
+	@Test
+	public void testResumeAfterUploadedPart() throws Exception {
+		ChunkRecordingLoader loader = new ChunkRecordingLoader(100);
+		LogShipper shipper = new LogShipper(loader, 1, 16, 2);
+		LogShipper.LogUploadAppender appender = shipper.createAppender(new PatternLayout("%m\n"), 1, "job1", 0);
+
+		Logger logger = Logger.getLogger("LogShipperTest.testResumeAfterUploadedPart");
+		logger.addAppender(appender);
+		logger.info("more");
+		logger.removeAppender(appender);
+		appender.close();
+
+		// The chunk offsets are checked against the already uploaded part by the loader.
+		Assert.assertTrue(appender.waitForUpload(5000));
+		Assert.assertEquals(105, loader.nextStartByte);
+		shipper.shutdown();
+	}
+
+	@Test
+	public void testFailedUpload() throws Exception {
+		ChunkRecordingLoader loader = new ChunkRecordingLoader(0);
+		loader.fail = true;
+		LogShipper shipper = new LogShipper(loader, 1, 16, 2);
+		LogShipper.LogUploadAppender appender = shipper.createAppender(new PatternLayout("%m\n"), 1, "job1", 0);
+
+		Logger logger = Logger.getLogger("LogShipperTest.testFailedUpload");
+		logger.addAppender(appender);
+		for (int i = 0; i < 20; ++i) {
+			logger.info("line " + i);
+		}
+		logger.removeAppender(appender);
+		appender.close();
+
+		// The job runner falls back to uploading the log files.
+		Assert.assertFalse(appender.waitForUpload(5000));
+		Assert.assertTrue(shipper.getNumUploadErrors() > 0);
+		shipper.shutdown();
+	}
+
+	@Test
+	public void testEncoding() throws Exception {
+		ChunkRecordingLoader loader = new ChunkRecordingLoader(0);
+		LogShipper shipper = new LogShipper(loader, 1, 16, 2);
+		LogShipper.LogUploadAppender appender = shipper.createAppender(new PatternLayout("%m\n"), 1, "job1", 0);
+
+		Logger logger = Logger.getLogger("LogShipperTest.testEncoding");
+		logger.addAppender(appender);
+		String text = "caf\u00e9 \u2603 na\u00efve\n";
+		logger.info(text.trim());
+		logger.removeAppender(appender);
+		appender.close();
+
+		Assert.assertTrue(appender.waitForUpload(5000));
+		Assert.assertEquals("UTF-8", appender.getEncoding());
+		Assert.assertEquals(text, new String(loader.uploaded.toByteArray(), "UTF-8"));
+		Assert.assertEquals(text.getBytes("UTF-8").length, shipper.getNumBytesUploaded());
+		shipper.shutdown();
+	}
+
+	@Test
+	public void testLoggingDoesntWaitForUpload() throws Exception {
+		ChunkRecordingLoader loader = new ChunkRecordingLoader(0);
+		loader.release = new CountDownLatch(1);
+		LogShipper shipper = new LogShipper(loader, 1, 16, 2);
+		LogShipper.LogUploadAppender appender = shipper.createAppender(new PatternLayout("%m\n"), 1, "job1", 0);
+
+		Logger logger = Logger.getLogger("LogShipperTest.testLoggingDoesntWaitForUpload");
+		logger.addAppender(appender);
+		StringBuilder expected = new StringBuilder();
+		// An interrupted logging thread must neither block nor lose its interrupt.
+		Thread.currentThread().interrupt();
+		for (int i = 0; i < 100; ++i) {
+			logger.info("line " + i);
+			expected.append("line " + i + "\n");
+		}
+		Assert.assertTrue(Thread.interrupted());
+		logger.removeAppender(appender);
+		appender.close();
+		loader.release.countDown();
+
+		// The chunks queued before the limit are still uploaded, in order, and the rest is left
+		// to the upload from the log files.
+		Assert.assertFalse(appender.waitForUpload(5000));
+		Assert.assertTrue(shipper.getNumChunksDropped() > 0);
+		String uploaded = new String(loader.uploaded.toByteArray());
+		Assert.assertTrue(uploaded.length() > 0);
+		Assert.assertTrue(expected.toString().startsWith(uploaded));
+		Assert.assertEquals(uploaded.length(), loader.fetchLogEndByte(1, "job1", 0));
+		shipper.shutdown();
+	}
+}
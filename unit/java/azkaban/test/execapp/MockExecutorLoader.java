@@ -8,7 +8,9 @@ import java.util.Map;
 import azkaban.executor.ExecutableFlow;
 import azkaban.executor.ExecutableJobInfo;
 import azkaban.executor.ExecutableNode;
+import azkaban.executor.ExecutionHistoryFilter;
 import azkaban.executor.ExecutionReference;
+import azkaban.executor.ExecutionSummary;
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.ExecutorManagerException;
 import azkaban.executor.Status;
@@ -65,6 +67,16 @@ public class MockExecutorLoader implements ExecutorLoader {
 
 	}
 
+	@Override
+	public void uploadLogChunk(int execId, String name, int attempt, int startByte, byte[] buffer, int length) throws ExecutorManagerException {
+
+	}
+
+	@Override
+	public int fetchLogEndByte(int execId, String name, int attempt) throws ExecutorManagerException {
+		return 0;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public void updateExecutableFlow(ExecutableFlow flow) throws ExecutorManagerException {
@@ -74,6 +86,15 @@ public class MockExecutorLoader implements ExecutorLoader {
 		flowUpdateCount++;
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public void updateExecutableFlowDelta(ExecutableFlow flow, long lastUpdateTime) throws ExecutorManagerException {
+		ExecutableFlow toUpdate = flows.get(flow.getExecutionId());
+		
+		toUpdate.applyUpdateObject((Map<String,Object>)flow.toUpdateObject(lastUpdateTime));
+		flowUpdateCount++;
+	}
+
 	@Override
 	public void uploadExecutableNode(ExecutableNode node, Props inputParams) throws ExecutorManagerException {
 		nodes.put(node.getJobId(), ExecutableNode.createNodeFromObject(node.toObject(), null));
@@ -143,6 +164,31 @@ public class MockExecutorLoader implements ExecutorLoader {
 		return null;
 	}
 
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int skip, int num) throws ExecutorManagerException {
+		return null;
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num) throws ExecutorManagerException {
+		return null;
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(int projectId, String flowId, int skip, int num, Status status) throws ExecutorManagerException {
+		return null;
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(String projContain, String flowContains, String userNameContains, int status, long startData, long endData, int skip, int num) throws ExecutorManagerException {
+		return null;
+	}
+
+	@Override
+	public List<ExecutionSummary> fetchExecutionSummaries(ExecutionHistoryFilter filter, int beforeExecId, int afterExecId, int num) throws ExecutorManagerException {
+		return null;
+	}
+
 	@Override
 	public List<ExecutableFlow> fetchFlowHistory(String projectContains, String flowContains, String userNameContains, int status,
 			long startData, long endData, int skip, int num) throws ExecutorManagerException {
@@ -185,6 +185,12 @@ public class MockProjectLoader implements ProjectLoader {
 		return propertyMap;
 	}
 
+	@Override
+	public Map<String, Props> fetchJobOverrideProperties(int projectId, int version)
+			throws ProjectManagerException {
+		return new HashMap<String, Props>();
+	}
+
 	@Override
 	public void cleanOlderProjectVersion(int projectId, int version) throws ProjectManagerException {
 		// TODO Auto-generated method stub
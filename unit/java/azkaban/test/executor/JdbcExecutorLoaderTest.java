@@ -5,8 +5,10 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
@@ -24,11 +26,14 @@ import org.junit.Test;
 import azkaban.executor.ExecutableFlow;
 import azkaban.executor.ExecutableJobInfo;
 import azkaban.executor.ExecutableNode;
+import azkaban.executor.ExecutionHistoryFilter;
 import azkaban.executor.ExecutionReference;
+import azkaban.executor.ExecutionSummary;
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.ExecutorManagerException;
 import azkaban.executor.JdbcExecutorLoader;
 import azkaban.executor.Status;
+import azkaban.executor.WriteBehindExecutorLoader;
 import azkaban.flow.Flow;
 
 import azkaban.database.DataSourceUtils;
@@ -190,6 +195,72 @@ public class JdbcExecutorLoaderTest {
 		Assert.assertEquals(new HashSet<String>(flow.getEndNodes()), new HashSet<String>(fetchFlow.getEndNodes()));
 	}
 	
+	@Test
+	public void testFetchExecutionSummaries() throws Exception {
+		if (!isTestSetup()) {
+			return;
+		}
+		
+		ExecutorLoader loader = createLoader();
+		ExecutableFlow flow = createExecutableFlow("exec1");
+		flow.setSubmitUser("testUser");
+		loader.uploadExecutableFlow(flow);
+		
+		List<ExecutionSummary> summaries = loader.fetchExecutionSummaries(flow.getProjectId(), flow.getFlowId(), 0, 1);
+		Assert.assertEquals(1, summaries.size());
+		ExecutionSummary summary = summaries.get(0);
+		Assert.assertEquals(flow.getExecutionId(), summary.getExecutionId());
+		Assert.assertEquals(flow.getFlowId(), summary.getFlowId());
+		Assert.assertEquals(flow.getProjectId(), summary.getProjectId());
+		Assert.assertEquals(flow.getVersion(), summary.getVersion());
+		Assert.assertEquals(flow.getStatus(), summary.getStatus());
+		Assert.assertEquals("testUser", summary.getSubmitUser());
+		Assert.assertEquals(flow.getStartTime(), summary.getStartTime());
+		Assert.assertEquals(flow.getEndTime(), summary.getEndTime());
+		
+		summaries = loader.fetchExecutionSummaries(null, flow.getFlowId(), "testUser", 0, -1, -1, 0, 1);
+		Assert.assertEquals(flow.getExecutionId(), summaries.get(0).getExecutionId());
+	}
+	
+	@Test
+	public void testFetchExecutionSummariesByExecId() throws Exception {
+		if (!isTestSetup()) {
+			return;
+		}
+		
+		ExecutorLoader loader = createLoader();
+		ExecutableFlow flow1 = createExecutableFlow("exec1");
+		flow1.setSubmitUser("testUser");
+		loader.uploadExecutableFlow(flow1);
+		ExecutableFlow flow2 = createExecutableFlow("exec1");
+		flow2.setSubmitUser("testUser");
+		loader.uploadExecutableFlow(flow2);
+		ExecutableFlow flow3 = createExecutableFlow("exec1");
+		flow3.setSubmitUser("otherUser");
+		loader.uploadExecutableFlow(flow3);
+		
+		ExecutionHistoryFilter filter = new ExecutionHistoryFilter()
+				.setProjectIds(Arrays.asList(flow1.getProjectId()))
+				.setFlowId(flow1.getFlowId(), ExecutionHistoryFilter.MatchType.EXACT)
+				.setSubmitUser("test", ExecutionHistoryFilter.MatchType.PREFIX);
+		
+		List<ExecutionSummary> summaries = loader.fetchExecutionSummaries(filter, -1, -1, 1);
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertEquals(flow2.getExecutionId(), summaries.get(0).getExecutionId());
+		
+		summaries = loader.fetchExecutionSummaries(filter, flow2.getExecutionId(), -1, 1);
+		Assert.assertEquals(flow1.getExecutionId(), summaries.get(0).getExecutionId());
+		
+		summaries = loader.fetchExecutionSummaries(filter, -1, flow1.getExecutionId(), 1);
+		Assert.assertEquals(flow2.getExecutionId(), summaries.get(0).getExecutionId());
+		
+		filter.setSubmitUser("stUs", ExecutionHistoryFilter.MatchType.CONTAINS);
+		Assert.assertEquals(2, loader.fetchExecutionSummaries(filter, -1, -1, 10).size());
+		
+		filter.setSubmitUser("%User", ExecutionHistoryFilter.MatchType.CONTAINS);
+		Assert.assertTrue(loader.fetchExecutionSummaries(filter, -1, -1, 10).isEmpty());
+	}
+	
 	@Test
 	public void testUpdateExecutionFlows() throws Exception {
 		if (!isTestSetup()) {
@@ -222,6 +293,79 @@ public class JdbcExecutorLoaderTest {
 		Assert.assertEquals(new HashSet<String>(flow.getEndNodes()), new HashSet<String>(fetchFlow.getEndNodes()));
 	}
 	
+	@Test
+	public void testUpdateExecutionFlowDeltas() throws Exception {
+		if (!isTestSetup()) {
+			return;
+		}
+		
+		JdbcExecutorLoader loader = (JdbcExecutorLoader)createLoader();
+		loader.setFlowDeltasEnabled(true);
+		ExecutableFlow flow = createExecutableFlow("exec1");
+		flow.setUpdateTime(System.currentTimeMillis());
+		loader.uploadExecutableFlow(flow);
+		
+		long lastUpdateTime = flow.getUpdateTime();
+		ExecutableNode node = flow.getExecutableNode("job1");
+		node.setStatus(Status.SUCCEEDED);
+		node.setUpdateTime(lastUpdateTime + 1);
+		flow.setStatus(Status.RUNNING);
+		flow.setUpdateTime(lastUpdateTime + 1);
+		loader.updateExecutableFlowDelta(flow, lastUpdateTime);
+		
+		ExecutableFlow fetchFlow = loader.fetchExecutableFlow(flow.getExecutionId());
+		Assert.assertEquals(Status.RUNNING, fetchFlow.getStatus());
+		Assert.assertEquals(Status.SUCCEEDED, fetchFlow.getExecutableNode("job1").getStatus());
+		Assert.assertEquals(flow.getUpdateTime(), fetchFlow.getUpdateTime());
+		
+		// A full rewrite should compact the deltas away and keep the state.
+		flow.setStatus(Status.SUCCEEDED);
+		flow.setUpdateTime(lastUpdateTime + 2);
+		loader.updateExecutableFlow(flow);
+		fetchFlow = loader.fetchExecutableFlow(flow.getExecutionId());
+		Assert.assertEquals(Status.SUCCEEDED, fetchFlow.getStatus());
+		Assert.assertEquals(Status.SUCCEEDED, fetchFlow.getExecutableNode("job1").getStatus());
+	}
+	
+	@Test
+	public void testWriteBehindLoader() throws Exception {
+		if (!isTestSetup()) {
+			return;
+		}
+		
+		Props props = new Props();
+		props.put("executor.loader.flush.interval.ms", 60000);
+		WriteBehindExecutorLoader loader = new WriteBehindExecutorLoader(props, (JdbcExecutorLoader)createLoader());
+		ExecutableFlow flow = createExecutableFlow("exec1");
+		loader.uploadExecutableFlow(flow);
+		
+		ExecutableNode node = flow.getExecutableNode("job1");
+		node.setStartTime(System.currentTimeMillis());
+		node.setStatus(Status.RUNNING);
+		loader.uploadExecutableNode(node, null);
+		node.setEndTime(System.currentTimeMillis());
+		node.setStatus(Status.SUCCEEDED);
+		loader.updateExecutableNode(node);
+		flow.setStatus(Status.RUNNING);
+		loader.updateExecutableFlow(flow);
+		
+		// Nothing is written until the flush, and the node writes are coalesced.
+		Assert.assertEquals(2, loader.getQueueSize());
+		Assert.assertEquals(1, loader.getNumCoalescedWrites());
+		
+		// Reads flush first.
+		ExecutableJobInfo info = loader.fetchJobInfo(flow.getExecutionId(), "job1", 0);
+		Assert.assertEquals(0, loader.getQueueSize());
+		Assert.assertEquals(Status.SUCCEEDED, info.getStatus());
+		Assert.assertEquals(node.getEndTime(), info.getEndTime());
+		Assert.assertEquals(Status.RUNNING, loader.fetchExecutableFlow(flow.getExecutionId()).getStatus());
+		
+		// Finished flows are written right away.
+		flow.setStatus(Status.SUCCEEDED);
+		loader.updateExecutableFlow(flow);
+		Assert.assertEquals(0, loader.getQueueSize());
+		loader.shutdown();
+	}
 	
 	@Test
 	public void testUploadExecutableNode() throws Exception {
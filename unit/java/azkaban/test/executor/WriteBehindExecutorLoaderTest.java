@@ -0,0 +1,207 @@
+package azkaban.test.executor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import junit.framework.Assert;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import azkaban.database.DataSourceUtils;
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutableJobInfo;
+import azkaban.executor.ExecutableNode;
+import azkaban.executor.JdbcExecutorLoader;
+import azkaban.executor.Status;
+import azkaban.executor.WriteBehindExecutorLoader;
+import azkaban.flow.Flow;
+import azkaban.utils.JSONUtils;
+import azkaban.utils.Props;
+
+/**
+ * Runs the write-behind loader against an embedded h2 db created from the sql scripts.
+ */
+public class WriteBehindExecutorLoaderTest {
+	private static final String[] TABLE_SCRIPTS = {"create.execution_flows.sql", "create.execution_jobs.sql", "create.active_executing_flows.sql", "create.execution_flow_deltas.sql"};
+
+	private File dbDir = new File("_WriteBehindLoaderTestDb");
+	private File flowDir = new File("unit/executions/exectest1");
+	private JdbcExecutorLoader jdbcLoader;
+	private WriteBehindExecutorLoader loader;
+
+	@Before
+	public void setUp() throws Exception {
+		if (dbDir.exists()) {
+			FileUtils.deleteDirectory(dbDir);
+		}
+		dbDir.mkdirs();
+
+		Props props = new Props();
+		props.put("database.type", "h2");
+		// Pooled connections keep a db open, so every test gets its own.
+		props.put("h2.path", new File(dbDir, "h2db" + System.nanoTime()).getAbsolutePath());
+
+		DataSource dataSource = DataSourceUtils.getDataSource(props);
+		QueryRunner runner = new QueryRunner(dataSource);
+		for (String script : TABLE_SCRIPTS) {
+			String sql = FileUtils.readFileToString(new File("src/sql", script));
+			for (String statement : sql.split(";")) {
+				if (!statement.trim().isEmpty()) {
+					runner.update(statement);
+				}
+			}
+		}
+
+		jdbcLoader = new JdbcExecutorLoader(props);
+		Props loaderProps = new Props();
+		loaderProps.put("executor.loader.flush.interval.ms", 60000);
+		loader = new WriteBehindExecutorLoader(loaderProps, jdbcLoader);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		loader.shutdown();
+		FileUtils.deleteDirectory(dbDir);
+	}
+
+	@Test
+	public void testCoalesceAndFlushOnRead() throws Exception {
+		ExecutableFlow flow = createExecutableFlow("exec1");
+		loader.uploadExecutableFlow(flow);
+
+		ExecutableNode node = flow.getExecutableNode("job1");
+		node.setStartTime(System.currentTimeMillis());
+		node.setStatus(Status.RUNNING);
+		loader.uploadExecutableNode(node, null);
+		node.setEndTime(System.currentTimeMillis());
+		node.setStatus(Status.SUCCEEDED);
+		loader.updateExecutableNode(node);
+		flow.setStatus(Status.RUNNING);
+		loader.updateExecutableFlow(flow);
+
+		// Nothing is written until the flush, and the node writes are coalesced.
+		Assert.assertEquals(2, loader.getQueueSize());
+		Assert.assertEquals(1, loader.getNumCoalescedWrites());
+		Assert.assertNull(jdbcLoader.fetchJobInfo(flow.getExecutionId(), "job1", 0));
+
+		// Reads flush first.
+		ExecutableJobInfo info = loader.fetchJobInfo(flow.getExecutionId(), "job1", 0);
+		Assert.assertEquals(0, loader.getQueueSize());
+		Assert.assertEquals(Status.SUCCEEDED, info.getStatus());
+		Assert.assertEquals(node.getStartTime(), info.getStartTime());
+		Assert.assertEquals(node.getEndTime(), info.getEndTime());
+		Assert.assertEquals(Status.RUNNING, loader.fetchExecutableFlow(flow.getExecutionId()).getStatus());
+
+		// Finished flows are written right away.
+		flow.setStatus(Status.SUCCEEDED);
+		loader.updateExecutableFlow(flow);
+		Assert.assertEquals(0, loader.getQueueSize());
+		Assert.assertEquals(Status.SUCCEEDED, jdbcLoader.fetchExecutableFlow(flow.getExecutionId()).getStatus());
+	}
+
+	@Test
+	public void testAttemptsAreKeptApart() throws Exception {
+		ExecutableFlow flow = createExecutableFlow("exec1");
+		loader.uploadExecutableFlow(flow);
+
+		ExecutableNode node = flow.getExecutableNode("job1");
+		node.setStartTime(1000);
+		node.setEndTime(2000);
+		node.setStatus(Status.FAILED);
+		loader.uploadExecutableNode(node, null);
+		loader.updateExecutableNode(node);
+
+		node.resetForRetry();
+		node.setStartTime(3000);
+		node.setStatus(Status.RUNNING);
+		loader.uploadExecutableNode(node, null);
+
+		ExecutableJobInfo first = loader.fetchJobInfo(flow.getExecutionId(), "job1", 0);
+		ExecutableJobInfo second = loader.fetchJobInfo(flow.getExecutionId(), "job1", 1);
+		Assert.assertEquals(Status.FAILED, first.getStatus());
+		Assert.assertEquals(1000, first.getStartTime());
+		Assert.assertEquals(Status.RUNNING, second.getStatus());
+		Assert.assertEquals(3000, second.getStartTime());
+		Assert.assertNull(loader.fetchJobInfo(flow.getExecutionId(), "job1", 2));
+
+		List<ExecutableJobInfo> attempts = loader.fetchJobInfoAttempts(flow.getExecutionId(), "job1");
+		Assert.assertEquals(2, attempts.size());
+	}
+
+	@Test
+	public void testFlushOnQueueSize() throws Exception {
+		loader.shutdown();
+		Props loaderProps = new Props();
+		loaderProps.put("executor.loader.flush.interval.ms", 60000);
+		loaderProps.put("executor.loader.flush.size", 2);
+		loader = new WriteBehindExecutorLoader(loaderProps, jdbcLoader);
+
+		ExecutableFlow flow = createExecutableFlow("exec1");
+		loader.uploadExecutableFlow(flow);
+		for (String jobId : new String[] {"job1", "job2"}) {
+			ExecutableNode node = flow.getExecutableNode(jobId);
+			node.setStartTime(System.currentTimeMillis());
+			node.setStatus(Status.RUNNING);
+			loader.uploadExecutableNode(node, null);
+		}
+
+		// The flusher thread writes the batch without a read or the interval forcing it.
+		long deadline = System.currentTimeMillis() + 10000;
+		while (jdbcLoader.fetchJobInfo(flow.getExecutionId(), "job2", 0) == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(Status.RUNNING, jdbcLoader.fetchJobInfo(flow.getExecutionId(), "job1", 0).getStatus());
+		Assert.assertEquals(Status.RUNNING, jdbcLoader.fetchJobInfo(flow.getExecutionId(), "job2", 0).getStatus());
+	}
+
+	@Test
+	public void testFailingWriteDoesntBlockOthers() throws Exception {
+		loader.shutdown();
+		Props loaderProps = new Props();
+		loaderProps.put("executor.loader.flush.interval.ms", 60000);
+		loaderProps.put("executor.loader.max.write.attempts", 2);
+		loader = new WriteBehindExecutorLoader(loaderProps, jdbcLoader);
+
+		ExecutableFlow flow = createExecutableFlow("exec1");
+		loader.uploadExecutableFlow(flow);
+		ExecutableNode job1 = flow.getExecutableNode("job1");
+		job1.setStatus(Status.RUNNING);
+		loader.uploadExecutableNode(job1, null);
+		loader.flush();
+
+		// Inserting the same attempt again can never succeed.
+		loader.uploadExecutableNode(job1, null);
+		ExecutableNode job2 = flow.getExecutableNode("job2");
+		job2.setStatus(Status.RUNNING);
+		loader.uploadExecutableNode(job2, null);
+		loader.flush();
+
+		Assert.assertEquals(1, loader.getNumFlushErrors());
+		Assert.assertEquals(Status.RUNNING, jdbcLoader.fetchJobInfo(flow.getExecutionId(), "job2", 0).getStatus());
+		Assert.assertEquals(1, loader.getQueueSize());
+
+		// The failed write is dropped once it runs out of attempts, and the finished flow is written.
+		flow.setStatus(Status.SUCCEEDED);
+		loader.updateExecutableFlow(flow);
+		Assert.assertEquals(1, loader.getNumDroppedWrites());
+		Assert.assertEquals(0, loader.getQueueSize());
+		Assert.assertEquals(Status.SUCCEEDED, jdbcLoader.fetchExecutableFlow(flow.getExecutionId()).getStatus());
+	}
+
+	private ExecutableFlow createExecutableFlow(String flowName) throws IOException {
+		File jsonFlowFile = new File(flowDir, flowName + ".flow");
+		@SuppressWarnings("unchecked")
+		HashMap<String, Object> flowObj = (HashMap<String, Object>) JSONUtils.parseJSONFromFile(jsonFlowFile);
+
+		Flow flow = Flow.flowFromObject(flowObj);
+		return new ExecutableFlow(flow);
+	}
+}
@@ -0,0 +1,213 @@
+package azkaban.test.jobExecutor;
+
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import azkaban.jobExecutor.utils.process.AzkabanProcess;
+import azkaban.jobExecutor.utils.process.ProcessFailureException;
+import azkaban.jobExecutor.utils.process.ProcessOutputPump;
+import azkaban.jobExecutor.utils.process.ProcessOutputPump.PumpedStream;
+
+public class ProcessOutputPumpTest {
+	private Logger logger = Logger.getLogger(ProcessOutputPumpTest.class);
+
+	@Test
+	public void testManyProcessesFewThreads() throws Exception {
+		final ProcessOutputPump pump = new ProcessOutputPump(2);
+		ExecutorService pool = Executors.newFixedThreadPool(20);
+		List<Future<AzkabanProcess>> futures = new ArrayList<Future<AzkabanProcess>>();
+		for (int i = 0; i < 20; ++i) {
+			futures.add(pool.submit(new Callable<AzkabanProcess>() {
+				@Override
+				public AzkabanProcess call() throws Exception {
+					AzkabanProcess process = createProcess(pump, "for i in $(seq 1 500); do echo out $i; echo err $i 1>&2; done");
+					process.run();
+					return process;
+				}
+			}));
+		}
+
+		for (Future<AzkabanProcess> future : futures) {
+			AzkabanProcess process = future.get();
+			Assert.assertEquals(1000, process.getOutputLines());
+		}
+		pool.shutdown();
+
+		Assert.assertEquals(20000, pump.getTotalLines());
+		Assert.assertEquals(0, pump.getNumStreams());
+		pump.shutdown();
+	}
+
+	@Test
+	public void testFailureSnippet() throws Exception {
+		ProcessOutputPump pump = new ProcessOutputPump(1);
+		AzkabanProcess process = createProcess(pump, "for i in $(seq 1 100); do echo line $i 1>&2; done; printf partial 1>&2; exit 3");
+		try {
+			process.run();
+			Assert.fail("Process should have failed.");
+		}
+		catch (ProcessFailureException e) {
+			Assert.assertEquals(3, e.getExitCode());
+			String[] lines = e.getLogSnippet().split(System.getProperty("line.separator"));
+			Assert.assertEquals(30, lines.length);
+			Assert.assertEquals("line 72", lines[0]);
+			Assert.assertEquals("partial", lines[29]);
+		}
+		pump.shutdown();
+	}
+
+	@Test
+	public void testBlockedAppenderOnlyHoldsUpItsProcess() throws Exception {
+		ProcessOutputPump pump = new ProcessOutputPump(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Logger blockedLogger = Logger.getLogger("ProcessOutputPumpTest.blocked");
+		blockedLogger.setAdditivity(false);
+		blockedLogger.addAppender(new BlockingAppender(release));
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		final AzkabanProcess blocked = createProcess(pump, blockedLogger, "for i in $(seq 1 50000); do echo blocked output line $i; done");
+		Future<?> blockedFuture = pool.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				blocked.run();
+				return null;
+			}
+		});
+		blocked.awaitStartup();
+
+		// Shares the only pump thread with the process whose appender is stuck.
+		final AzkabanProcess other = createProcess(pump, "for i in $(seq 1 1000); do echo out $i; done");
+		Future<?> otherFuture = pool.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				other.run();
+				return null;
+			}
+		});
+		otherFuture.get(30, TimeUnit.SECONDS);
+		Assert.assertEquals(1000, other.getOutputLines());
+		Assert.assertFalse(blockedFuture.isDone());
+
+		release.countDown();
+		blockedFuture.get(60, TimeUnit.SECONDS);
+		Assert.assertEquals(50000, blocked.getOutputLines());
+		pool.shutdown();
+		pump.shutdown();
+	}
+
+	@Test
+	public void testReadsToEndAfterExit() throws Exception {
+		ProcessOutputPump pump = new ProcessOutputPump(1);
+		Object signal = new Object();
+		PipedOutputStream out = new PipedOutputStream();
+		PumpedStream stream = pump.register(new PipedInputStream(out), logger, Level.INFO, 30, signal);
+		out.write("before exit\n".getBytes("UTF-8"));
+		stream.processExited();
+
+		// Written by a child still holding the pipe after the process has exited.
+		Thread.sleep(200);
+		Assert.assertFalse(stream.isDrained());
+		out.write("after exit \u00e9\npartial".getBytes("UTF-8"));
+		out.close();
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!stream.isDrained() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(stream.isDrained());
+		Assert.assertEquals(3, stream.logPending());
+		Assert.assertEquals(3, stream.getLines());
+		String[] lines = stream.getRecentLog().split(System.getProperty("line.separator"));
+		Assert.assertEquals("after exit \u00e9", lines[1]);
+		Assert.assertEquals("partial", lines[2]);
+		pump.shutdown();
+	}
+
+	@Test
+	public void testCompleteBeforeOutputIsFinished() throws Exception {
+		ProcessOutputPump pump = new ProcessOutputPump(1);
+		Logger processLogger = Logger.getLogger("ProcessOutputPumpTest.complete");
+		processLogger.setLevel(Level.DEBUG);
+		final List<Boolean> completeWhenFinished = new ArrayList<Boolean>();
+		final AzkabanProcess process = createProcess(pump, processLogger, "echo done");
+		processLogger.addAppender(new AppenderSkeleton() {
+			@Override
+			protected void append(LoggingEvent event) {
+				// Logged once the output is finished.
+				if (String.valueOf(event.getMessage()).startsWith("Process output:")) {
+					completeWhenFinished.add(process.isComplete());
+				}
+			}
+
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public boolean requiresLayout() {
+				return false;
+			}
+		});
+
+		process.run();
+		Assert.assertEquals(1, completeWhenFinished.size());
+		Assert.assertTrue(completeWhenFinished.get(0));
+		processLogger.removeAllAppenders();
+		pump.shutdown();
+	}
+
+	private AzkabanProcess createProcess(ProcessOutputPump pump, String command) {
+		return createProcess(pump, logger, command);
+	}
+
+	private AzkabanProcess createProcess(ProcessOutputPump pump, Logger processLogger, String command) {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add("sh");
+		cmd.add("-c");
+		cmd.add(command);
+		return new AzkabanProcess(cmd, new HashMap<String, String>(), ".", processLogger, pump, 30, 30);
+	}
+
+	private static class BlockingAppender extends AppenderSkeleton {
+		private final CountDownLatch release;
+
+		private BlockingAppender(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		protected void append(LoggingEvent event) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public boolean requiresLayout() {
+			return false;
+		}
+	}
+}
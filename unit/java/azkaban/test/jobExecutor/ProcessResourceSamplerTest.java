@@ -0,0 +1,122 @@
+package azkaban.test.jobExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import azkaban.jobExecutor.utils.process.AzkabanProcess;
+import azkaban.jobExecutor.utils.process.ProcessOutputPump;
+import azkaban.jobExecutor.utils.process.ProcessResourceSampler;
+import azkaban.jobExecutor.utils.process.ProcessResourceSampler.TrackedProcess;
+import azkaban.utils.ResourceUsage;
+
+public class ProcessResourceSamplerTest {
+	private Logger logger = Logger.getLogger(ProcessResourceSamplerTest.class);
+	private File procDir;
+
+	@Before
+	public void setUp() throws Exception {
+		procDir = new File("_AzkabanTestDir_ProcessResourceSampler");
+		if (procDir.exists()) {
+			FileUtils.deleteDirectory(procDir);
+		}
+		procDir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(procDir);
+	}
+
+	@Test
+	public void testProcessTree() throws IOException {
+		// 10 is tracked, 11 is its child, 12 a grandchild and 20 unrelated.
+		writeProc(10, 1, 100, 50, 10, 1000, 2000);
+		writeProc(11, 10, 200, 0, 20, 0, 0);
+		writeProc(12, 11, 0, 100, 5, 300, 0);
+		writeProc(20, 1, 9999, 9999, 9999, 9999, 9999);
+
+		ProcessResourceSampler sampler = new ProcessResourceSampler(procDir, 1000, 100, 4096);
+		ResourceUsage usage = new ResourceUsage();
+		TrackedProcess process = sampler.track(10, usage);
+		sampler.sample();
+
+		Assert.assertEquals(1, usage.getNumProcesses());
+		Assert.assertEquals(4500, usage.getCpuTimeMs());
+		Assert.assertEquals(35 * 4096, usage.getPeakRssBytes());
+		Assert.assertEquals(1300, usage.getIoReadBytes());
+		Assert.assertEquals(2000, usage.getIoWriteBytes());
+
+		// Only the increase is charged, and the peak memory is kept once the tree shrinks.
+		writeProc(10, 1, 150, 50, 10, 1500, 2000);
+		FileUtils.deleteDirectory(new File(procDir, "11"));
+		FileUtils.deleteDirectory(new File(procDir, "12"));
+		sampler.sample();
+
+		Assert.assertEquals(5000, usage.getCpuTimeMs());
+		Assert.assertEquals(35 * 4096, usage.getPeakRssBytes());
+		Assert.assertEquals(1800, usage.getIoReadBytes());
+		Assert.assertEquals(2000, usage.getIoWriteBytes());
+
+		sampler.untrack(process);
+		Assert.assertEquals(0, sampler.getNumTrackedProcesses());
+		Assert.assertEquals(2, sampler.getNumSamples());
+	}
+
+	@Test
+	public void testJobProcess() throws Exception {
+		if (!ProcessResourceSampler.isSupported()) {
+			return;
+		}
+
+		ProcessResourceSampler sampler = new ProcessResourceSampler(50);
+		sampler.start();
+		ProcessResourceSampler.setSharedSampler(sampler);
+		ResourceUsage usage = new ResourceUsage();
+		ResourceUsage.setCurrent(usage);
+		try {
+			List<String> cmd = new ArrayList<String>();
+			cmd.add("sh");
+			cmd.add("-c");
+			cmd.add("i=0; while [ $i -lt 200000 ]; do i=$((i+1)); done");
+			AzkabanProcess process = new AzkabanProcess(cmd, new HashMap<String, String>(), ".", logger, ProcessOutputPump.getSharedPump(), 30, 30);
+			process.run();
+		}
+		finally {
+			ResourceUsage.setCurrent(null);
+			ProcessResourceSampler.setSharedSampler(null);
+		}
+
+		Assert.assertEquals(1, usage.getNumProcesses());
+		Assert.assertTrue(usage.getPeakRssBytes() > 0);
+		Assert.assertEquals(0, sampler.getNumTrackedProcesses());
+	}
+
+	private void writeProc(int pid, int ppid, long utime, long stime, long rssPages, long readBytes, long writeBytes) throws IOException {
+		File dir = new File(procDir, String.valueOf(pid));
+		dir.mkdirs();
+		// Field 2 onwards of /proc/[pid]/stat, with a command name that contains a space.
+		StringBuilder stat = new StringBuilder();
+		stat.append(pid).append(" (sh job) S ").append(ppid);
+		for (int i = 5; i <= 13; ++i) {
+			stat.append(" 0");
+		}
+		stat.append(" ").append(utime).append(" ").append(stime);
+		for (int i = 16; i <= 21; ++i) {
+			stat.append(" 0");
+		}
+		stat.append(" 12345 0 ").append(rssPages).append(" 0\n");
+		FileUtils.writeStringToFile(new File(dir, "stat"), stat.toString());
+		FileUtils.writeStringToFile(new File(dir, "io"), "rchar: 1\nwchar: 1\nread_bytes: " + readBytes + "\nwrite_bytes: " + writeBytes + "\n");
+	}
+}
@@ -0,0 +1,132 @@
+package azkaban.test.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.flow.Flow;
+import azkaban.utils.BinaryObjectUtils;
+import azkaban.utils.GZIPUtils;
+import azkaban.utils.JSONUtils;
+
+public class BinaryObjectUtilsTest {
+	@Test
+	public void testRoundTrip() throws IOException {
+		Map<String, Object> obj = new HashMap<String, Object>();
+		obj.put("string", "value");
+		obj.put("unicode", "é中文");
+		obj.put("int", -42);
+		obj.put("smallLong", 12L);
+		obj.put("long", System.currentTimeMillis() * 1000);
+		obj.put("double", 3.25);
+		obj.put("true", true);
+		obj.put("false", false);
+		obj.put("null", null);
+
+		List<Object> list = new ArrayList<Object>();
+		for (int i = 0; i < 10; ++i) {
+			Map<String, Object> node = new HashMap<String, Object>();
+			node.put("id", "job" + i);
+			node.put("status", "SUCCEEDED");
+			list.add(node);
+		}
+		obj.put("nodes", list);
+
+		byte[] data = BinaryObjectUtils.toBinary(obj);
+		Assert.assertTrue(BinaryObjectUtils.isBinary(data));
+
+		// Should come back exactly the way the JSON parser would have returned it.
+		Object fromJson = JSONUtils.parseJSONFromString(JSONUtils.toJSON(obj));
+		Object fromBinary = BinaryObjectUtils.fromBinary(data);
+		Assert.assertEquals(fromJson, fromBinary);
+		Assert.assertTrue(((Map<?,?>)fromBinary).get("smallLong") instanceof Integer);
+		Assert.assertTrue(((Map<?,?>)fromBinary).get("long") instanceof Long);
+	}
+
+	@Test
+	public void testRejectsBadData() throws IOException {
+		try {
+			BinaryObjectUtils.fromBinary("{\"a\":1}".getBytes("UTF-8"));
+			Assert.fail("Expected JSON to be rejected");
+		} catch (IOException e) {
+		}
+
+		byte[] data = BinaryObjectUtils.toBinary("value");
+		data[3] = (byte)(BinaryObjectUtils.VERSION + 1);
+		try {
+			BinaryObjectUtils.fromBinary(data);
+			Assert.fail("Expected newer version to be rejected");
+		} catch (IOException e) {
+		}
+
+		data = BinaryObjectUtils.toBinary("value");
+		byte[] truncated = new byte[data.length - 1];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		try {
+			BinaryObjectUtils.fromBinary(truncated);
+			Assert.fail("Expected truncated data to be rejected");
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Compares size and encode/decode time of the binary encoding against JSON + gzip for the
+	 * test flows. Times are only printed, since they depend on the machine.
+	 */
+	@Test
+	public void testExecutableFlowComparison() throws IOException {
+		File testDir = new File("unit/executions/exectest1");
+		String[] flowNames = {"exec1", "exec2", "exec3", "exec4-retry"};
+		int iterations = 200;
+
+		for (String flowName: flowNames) {
+			@SuppressWarnings("unchecked")
+			HashMap<String, Object> flowObj = (HashMap<String, Object>)JSONUtils.parseJSONFromFile(new File(testDir, flowName + ".flow"));
+			ExecutableFlow exFlow = new ExecutableFlow(Flow.flowFromObject(flowObj));
+			exFlow.setExecutionId(1);
+			Object obj = exFlow.toObject();
+
+			byte[] gzip = null;
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				gzip = GZIPUtils.gzipBytes(JSONUtils.toJSON(obj).getBytes("UTF-8"));
+			}
+			long gzipEncode = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				JSONUtils.parseJSONFromString(GZIPUtils.unGzipString(gzip, "UTF-8"));
+			}
+			long gzipDecode = System.nanoTime() - start;
+
+			byte[] binary = null;
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				binary = BinaryObjectUtils.toBinary(obj);
+			}
+			long binaryEncode = System.nanoTime() - start;
+
+			Object decoded = null;
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				decoded = BinaryObjectUtils.fromBinary(binary);
+			}
+			long binaryDecode = System.nanoTime() - start;
+
+			Assert.assertEquals(JSONUtils.parseJSONFromString(JSONUtils.toJSON(obj)), decoded);
+			ExecutableFlow decodedFlow = ExecutableFlow.createExecutableFlowFromObject(decoded);
+			Assert.assertEquals(exFlow.getExecutableNodes().size(), decodedFlow.getExecutableNodes().size());
+
+			System.out.println(flowName + ": json+gzip " + gzip.length + " bytes, encode " + (gzipEncode / iterations / 1000) + "us, decode " + (gzipDecode / iterations / 1000) + "us; " +
+					"binary " + binary.length + " bytes, encode " + (binaryEncode / iterations / 1000) + "us, decode " + (binaryDecode / iterations / 1000) + "us");
+		}
+	}
+}
@@ -1,21 +1,109 @@
 package azkaban.test.utils;
 
 import java.io.File;
+import java.io.IOException;
 
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import azkaban.flow.Flow;
 import azkaban.utils.DirectoryFlowLoader;
 
 public class DirectoryFlowLoaderTest {
+	private File testDir;
+
+	@Before
+	public void setUp() throws Exception {
+		testDir = new File("_AzkabanTestDir_DirectoryFlowLoader");
+		if (testDir.exists()) {
+			FileUtils.deleteDirectory(testDir);
+		}
+		testDir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(testDir);
+	}
 
 	@Test
 	public void testDirectoryLoad() {
 		Logger logger = Logger.getLogger(this.getClass());
 		DirectoryFlowLoader loader = new DirectoryFlowLoader(logger);
-		
+
 		loader.loadProjectFlow(new File("unit/executions/exectest1"));
 		logger.info(loader.getFlowMap().size());
 	}
-	
+
+	@Test
+	public void testDiamondLattice() throws IOException {
+		// Every job depends on both jobs of the level above, so there are 2^40 paths to the end.
+		int levels = 40;
+		writeJob("l0_a", null);
+		writeJob("l0_b", null);
+		for (int i = 1; i < levels; ++i) {
+			String deps = "l" + (i - 1) + "_a,l" + (i - 1) + "_b";
+			writeJob("l" + i + "_a", deps);
+			writeJob("l" + i + "_b", deps);
+		}
+		writeJob("end", "l" + (levels - 1) + "_a,l" + (levels - 1) + "_b");
+
+		DirectoryFlowLoader loader = load();
+		Assert.assertTrue(loader.getErrors().isEmpty());
+		Flow flow = loader.getFlowMap().get("end");
+		Assert.assertEquals(levels * 2 + 1, flow.getNodes().size());
+		Assert.assertEquals(levels, flow.getNumLevels());
+		Assert.assertEquals(2, flow.getStartNodes().size());
+		Assert.assertEquals(levels, flow.getNode("end").getLevel());
+		Assert.assertEquals(3, flow.getNode("l3_b").getLevel());
+	}
+
+	@Test
+	public void testDeepChain() throws IOException {
+		int length = 5000;
+		writeJob("job0", null);
+		for (int i = 1; i < length; ++i) {
+			writeJob("job" + i, "job" + (i - 1));
+		}
+
+		DirectoryFlowLoader loader = load();
+		Assert.assertTrue(loader.getErrors().isEmpty());
+		Flow flow = loader.getFlowMap().get("job" + (length - 1));
+		Assert.assertEquals(length, flow.getNodes().size());
+		Assert.assertEquals(length - 1, flow.getNumLevels());
+		Assert.assertEquals(0, flow.getNode("job0").getLevel());
+	}
+
+	@Test
+	public void testCycle() throws IOException {
+		writeJob("a", "c");
+		writeJob("b", "a");
+		writeJob("c", "b");
+		writeJob("end", "c");
+
+		DirectoryFlowLoader loader = load();
+		Assert.assertEquals(1, loader.getErrors().size());
+		Flow flow = loader.getFlowMap().get("end");
+		Assert.assertEquals(4, flow.getNodes().size());
+		Assert.assertNotNull(flow.getErrors());
+	}
+
+	private DirectoryFlowLoader load() {
+		DirectoryFlowLoader loader = new DirectoryFlowLoader(Logger.getLogger(this.getClass()));
+		loader.loadProjectFlow(testDir);
+		return loader;
+	}
+
+	private void writeJob(String name, String dependencies) throws IOException {
+		String contents = "type=command\ncommand=echo " + name + "\n";
+		if (dependencies != null) {
+			contents += "dependencies=" + dependencies + "\n";
+		}
+		FileUtils.writeStringToFile(new File(testDir, name + ".job"), contents);
+	}
 }
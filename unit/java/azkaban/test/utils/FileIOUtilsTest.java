@@ -1,5 +1,6 @@
 package azkaban.test.utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -12,6 +13,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import azkaban.utils.FileIOUtils;
+import azkaban.utils.FileIOUtils.LinkType;
+import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.GZIPUtils;
 import azkaban.utils.Pair;
 
 public class FileIOUtilsTest {
@@ -35,6 +39,27 @@ public class FileIOUtilsTest {
 		FileIOUtils.createDeepSymlink(sourceDir, destDir);
 	}
 	
+	@Test
+	public void testDeepLinks() throws IOException {
+		int numLinked = FileIOUtils.createDeepLinks(sourceDir, destDir, LinkType.HARD, 3);
+		Assert.assertEquals(countFiles(sourceDir), numLinked);
+		Assert.assertEquals(numLinked, countFiles(destDir));
+		
+		for (File file: sourceDir.listFiles()) {
+			if (file.isFile()) {
+				Assert.assertEquals(FileUtils.readFileToString(file), FileUtils.readFileToString(new File(destDir, file.getName())));
+			}
+		}
+	}
+	
+	private int countFiles(File dir) {
+		int count = 0;
+		for (File file: dir.listFiles()) {
+			count += file.isDirectory() ? countFiles(file) : 1;
+		}
+		return count;
+	}
+	
 	@Test
 	public void testSymlinkCopyNonSource() {
 		boolean exception = false;
@@ -106,6 +131,46 @@ public class FileIOUtilsTest {
 		
 	}
 	
+	@Test
+	public void testReadUtf8FileRange() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 10000; ++i) {
+			builder.append("line " + i + "\n");
+		}
+		String text = builder.toString();
+		File file = new File(destDir, "range.log");
+		FileUtils.writeStringToFile(file, text, "UTF-8");
+		
+		LogData data = FileIOUtils.readUtf8File(file, 50000, 1000);
+		Assert.assertEquals(50000, data.getOffset());
+		Assert.assertEquals(text.substring(50000, 51000), data.getData());
+		
+		// Reads running past the end return what is there.
+		data = FileIOUtils.readUtf8File(file, text.length() - 10, 1000);
+		Assert.assertEquals(10, data.getLength());
+		Assert.assertEquals(text.substring(text.length() - 10), data.getData());
+		
+		data = FileIOUtils.readUtf8File(file, text.length() + 10, 1000);
+		Assert.assertEquals(0, data.getLength());
+	}
+	
+	@Test
+	public void testUnGzipRange() throws IOException {
+		byte[] data = new byte[100000];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte)(i % 251);
+		}
+		byte[] gzipped = GZIPUtils.gzipBytes(data);
+		
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		GZIPUtils.unGzipRange(gzipped, 60000, 20000, stream);
+		byte[] range = stream.toByteArray();
+		Assert.assertEquals(20000, range.length);
+		for (int i = 0; i < range.length; ++i) {
+			Assert.assertEquals(data[60000 + i], range[i]);
+		}
+	}
+	
 	private byte[] createUTF8ByteArray(String text) {
 		byte[] textBytes= null;
 		try {
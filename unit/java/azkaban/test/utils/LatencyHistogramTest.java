@@ -0,0 +1,28 @@
+package azkaban.test.utils;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import azkaban.utils.LatencyHistogram;
+
+public class LatencyHistogramTest {
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.getPercentileMs(99));
+		
+		for (int i = 0; i < 98; ++i) {
+			histogram.record(3);
+		}
+		histogram.record(200);
+		histogram.record(70000);
+		
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(5, histogram.getPercentileMs(50));
+		Assert.assertEquals(250, histogram.getPercentileMs(99));
+		Assert.assertEquals(70000, histogram.getPercentileMs(100));
+		Assert.assertEquals(70000, histogram.getMaxMs());
+		Assert.assertTrue(histogram.toString().contains(">60000:1"));
+	}
+}
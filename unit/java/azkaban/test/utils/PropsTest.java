@@ -0,0 +1,41 @@
+package azkaban.test.utils;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import azkaban.utils.Props;
+
+public class PropsTest {
+	@Test
+	public void testWithParentSharesValues() {
+		Props parent1 = new Props();
+		parent1.put("parent", "one");
+		Props parent2 = new Props();
+		parent2.put("parent", "two");
+
+		Props layer = new Props();
+		layer.put("key", "value");
+		layer.setSource("layer.job");
+
+		Props copy1 = layer.withParent(parent1);
+		Props copy2 = layer.withParent(parent2);
+		Assert.assertEquals("value", copy1.get("key"));
+		Assert.assertEquals("one", copy1.get("parent"));
+		Assert.assertEquals("two", copy2.get("parent"));
+		Assert.assertEquals("layer.job", copy2.getSource());
+		Assert.assertNull(layer.getParent());
+
+		// Changes stay in the Props they were made to.
+		copy1.put("key", "changed");
+		layer.put("other", "added");
+		Assert.assertEquals("changed", copy1.get("key"));
+		Assert.assertEquals("value", copy2.get("key"));
+		Assert.assertEquals("value", layer.get("key"));
+		Assert.assertNull(copy1.get("other"));
+		Assert.assertNull(copy2.get("other"));
+
+		copy2.clearLocal();
+		Assert.assertEquals(2, layer.localSize());
+	}
+}
@@ -86,6 +86,32 @@ public class PropsUtilsTest {
 		failIfNotException(props);
 	}
 	
+	@Test
+	public void testResolveDeepChain() throws IOException {
+		Props props = new Props();
+		props.put("base", "root");
+		for (int i = 0; i < 20; ++i) {
+			props = new Props(props);
+			props.put("level" + i, "${base}/" + i);
+			props.put("shared", "${level" + i + "} shared");
+		}
+		props.put("base", "leaf");
+		
+		Props resolved = PropsUtils.resolveProps(props);
+		Assert.assertNull(resolved.getParent());
+		Assert.assertEquals("leaf/0", resolved.get("level0"));
+		Assert.assertEquals("leaf/19 shared", resolved.get("shared"));
+		
+		props.put("missing", "${level3} ${undefined}");
+		try {
+			PropsUtils.resolveProps(props);
+			Assert.fail();
+		}
+		catch (UndefinedPropertyException e) {
+			Assert.assertTrue(e.getMessage().contains("missing->undefined"));
+		}
+	}
+	
 	private void failIfNotException(Props props) {
 		try {
 			Props resolved = PropsUtils.resolveProps(props);
@@ -143,4 +143,72 @@ public class CacheTest {
 
 		Assert.assertNull(cache.get("key2"));
 	}
+
+	@Test
+	public void testMaxWeight() {
+		CacheManager manager = CacheManager.getInstance();
+		Cache cache = manager.createCache();
+		cache.setEjectionPolicy(EjectionPolicy.FIFO);
+		cache.setMaxWeight(100);
+
+		cache.insertElement("key1", "val1", 40);
+		synchronized (this) {
+			try {
+				wait(10);
+			} catch (InterruptedException e) {
+			}
+		}
+		cache.insertElement("key2", "val2", 40);
+		Assert.assertEquals(80, cache.getWeight());
+
+		// Needs the oldest element gone to fit.
+		cache.insertElement("key3", "val3", 50);
+		Assert.assertEquals(90, cache.getWeight());
+		Assert.assertNull(cache.get("key1"));
+		Assert.assertEquals("val2", cache.get("key2"));
+		Assert.assertEquals("val3", cache.get("key3"));
+
+		// Too heavy to cache at all.
+		cache.insertElement("key4", "val4", 101);
+		Assert.assertNull(cache.get("key4"));
+		Assert.assertEquals(2, cache.getSize());
+
+		cache.remove("key2");
+		Assert.assertEquals(50, cache.getWeight());
+
+		Assert.assertEquals(1, cache.getNumEvictions());
+		Assert.assertEquals(2, cache.getNumHits());
+		Assert.assertEquals(2, cache.getNumMisses());
+	}
+	
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		CacheManager manager = CacheManager.getInstance();
+		final Cache cache = manager.createCache();
+		cache.setEjectionPolicy(EjectionPolicy.LRU);
+		cache.setMaxCacheSize(100);
+		
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; ++i) {
+			final int threadNum = i;
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 5000; ++j) {
+						String key = "key" + ((threadNum * 31 + j) % 300);
+						if (cache.get(key) == null) {
+							cache.insertElement(key, key);
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		
+		Assert.assertEquals(100, cache.getSize());
+		Assert.assertEquals(100, cache.getWeight());
+		Assert.assertEquals(40000, cache.getNumHits() + cache.getNumMisses());
+	}
 }